@@ -0,0 +1,48 @@
+package org.restlesscode.javersion.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.restlesscode.javersion.SvnStore;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+/**
+ * A throwaway local FSFS repository and a store connected to it through a
+ * file:// URL, created for one benchmark trial and deleted after it.
+ */
+public class BenchmarkRepository {
+
+	protected File directory;
+	protected SvnStore svnStore;
+
+	public SvnStore open() throws IOException, SVNException {
+		directory = File.createTempFile("javersion", "bench");
+		directory.delete();
+		SVNURL url = SVNRepositoryFactory.createLocalRepository(directory, true, false);
+		svnStore = new SvnStore(url.toString());
+		return svnStore;
+	}
+
+	public void close() throws InterruptedException {
+		if (svnStore != null) {
+			svnStore.close();
+		}
+		delete(directory);
+	}
+
+	public SvnStore getStore() {
+		return svnStore;
+	}
+
+	protected static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		f.delete();
+	}
+}
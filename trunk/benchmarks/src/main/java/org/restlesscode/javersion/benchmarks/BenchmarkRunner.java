@@ -0,0 +1,27 @@
+package org.restlesscode.javersion.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so allocation rates are reported
+ * next to throughput and latency percentiles. Takes the usual JMH options:
+ * <pre>
+ * mvn package
+ * java -jar target/benchmarks.jar ReadBenchmark -p contentSize=256
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class);
+		if (commandLine.getIncludes().isEmpty()) {
+			options.include("org.restlesscode.javersion.benchmarks.*");
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,246 @@
+package org.restlesscode.javersion.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+import org.restlesscode.javersion.SerializationTable;
+import org.restlesscode.javersion.StringSerializer;
+import org.restlesscode.javersion.annotations.SvnContent;
+import org.restlesscode.javersion.annotations.SvnProperty;
+import org.restlesscode.javersion.annotations.SvnStorable;
+
+/**
+ * Storable classes the benchmarks write and read.
+ */
+public class Payloads {
+
+	/**
+	 * @return Text of a given size that does not compress to nothing
+	 */
+	public static String text(int size, long seed) {
+		Random random = new Random(seed);
+		char[] chars = new char[size];
+		for (int i = 0; i < size; i++) {
+			chars[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Registers the converter of {@link Point}, stored with StoreMethod.REGISTERED.
+	 */
+	public static void register(SerializationTable table) {
+		table.registerConvertibleClass(Point.class, new StringSerializer<Point>() {
+			public String serialize(Point p) {
+				return p.x + "," + p.y;
+			}
+			public Point deserialize(String s) {
+				int comma = s.indexOf(',');
+				return new Point(Integer.parseInt(s.substring(0, comma)), Integer.parseInt(s.substring(comma + 1)));
+			}
+		});
+	}
+
+	/**
+	 * A document with a few properties and text content.
+	 */
+	@SvnStorable(version=1)
+	public static class Document {
+		private String title;
+		private int revisionCount;
+		private String body;
+
+		public Document() { }
+
+		public Document(String title, String body) {
+			this.title = title;
+			this.body = body;
+		}
+
+		@SvnProperty
+		public String getTitle() { return title; }
+		public void setTitle(String title) { this.title = title; }
+
+		@SvnProperty
+		public int getRevisionCount() { return revisionCount; }
+		public void setRevisionCount(int revisionCount) { this.revisionCount = revisionCount; }
+
+		@SvnContent
+		public String getBody() { return body; }
+		public void setBody(String body) { this.body = body; }
+	}
+
+	/**
+	 * An object made only of properties, thirty two of them.
+	 */
+	@SvnStorable(version=1)
+	public static class Wide {
+		private final String[] values = new String[32];
+
+		public Wide() { }
+
+		public Wide(String prefix) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = prefix + i;
+			}
+		}
+
+		public void touch(int counter) {
+			values[counter % values.length] = "v" + counter;
+		}
+
+		@SvnProperty public String getP00() { return values[0]; }
+		public void setP00(String v) { values[0] = v; }
+		@SvnProperty public String getP01() { return values[1]; }
+		public void setP01(String v) { values[1] = v; }
+		@SvnProperty public String getP02() { return values[2]; }
+		public void setP02(String v) { values[2] = v; }
+		@SvnProperty public String getP03() { return values[3]; }
+		public void setP03(String v) { values[3] = v; }
+		@SvnProperty public String getP04() { return values[4]; }
+		public void setP04(String v) { values[4] = v; }
+		@SvnProperty public String getP05() { return values[5]; }
+		public void setP05(String v) { values[5] = v; }
+		@SvnProperty public String getP06() { return values[6]; }
+		public void setP06(String v) { values[6] = v; }
+		@SvnProperty public String getP07() { return values[7]; }
+		public void setP07(String v) { values[7] = v; }
+		@SvnProperty public String getP08() { return values[8]; }
+		public void setP08(String v) { values[8] = v; }
+		@SvnProperty public String getP09() { return values[9]; }
+		public void setP09(String v) { values[9] = v; }
+		@SvnProperty public String getP10() { return values[10]; }
+		public void setP10(String v) { values[10] = v; }
+		@SvnProperty public String getP11() { return values[11]; }
+		public void setP11(String v) { values[11] = v; }
+		@SvnProperty public String getP12() { return values[12]; }
+		public void setP12(String v) { values[12] = v; }
+		@SvnProperty public String getP13() { return values[13]; }
+		public void setP13(String v) { values[13] = v; }
+		@SvnProperty public String getP14() { return values[14]; }
+		public void setP14(String v) { values[14] = v; }
+		@SvnProperty public String getP15() { return values[15]; }
+		public void setP15(String v) { values[15] = v; }
+		@SvnProperty public String getP16() { return values[16]; }
+		public void setP16(String v) { values[16] = v; }
+		@SvnProperty public String getP17() { return values[17]; }
+		public void setP17(String v) { values[17] = v; }
+		@SvnProperty public String getP18() { return values[18]; }
+		public void setP18(String v) { values[18] = v; }
+		@SvnProperty public String getP19() { return values[19]; }
+		public void setP19(String v) { values[19] = v; }
+		@SvnProperty public String getP20() { return values[20]; }
+		public void setP20(String v) { values[20] = v; }
+		@SvnProperty public String getP21() { return values[21]; }
+		public void setP21(String v) { values[21] = v; }
+		@SvnProperty public String getP22() { return values[22]; }
+		public void setP22(String v) { values[22] = v; }
+		@SvnProperty public String getP23() { return values[23]; }
+		public void setP23(String v) { values[23] = v; }
+		@SvnProperty public String getP24() { return values[24]; }
+		public void setP24(String v) { values[24] = v; }
+		@SvnProperty public String getP25() { return values[25]; }
+		public void setP25(String v) { values[25] = v; }
+		@SvnProperty public String getP26() { return values[26]; }
+		public void setP26(String v) { values[26] = v; }
+		@SvnProperty public String getP27() { return values[27]; }
+		public void setP27(String v) { values[27] = v; }
+		@SvnProperty public String getP28() { return values[28]; }
+		public void setP28(String v) { values[28] = v; }
+		@SvnProperty public String getP29() { return values[29]; }
+		public void setP29(String v) { values[29] = v; }
+		@SvnProperty public String getP30() { return values[30]; }
+		public void setP30(String v) { values[30] = v; }
+		@SvnProperty public String getP31() { return values[31]; }
+		public void setP31(String v) { values[31] = v; }
+	}
+
+	/** A property stored with StoreMethod.TO_STRING */
+	@SvnStorable(version=1)
+	public static class ToStringValue {
+		private long value;
+
+		@SvnProperty
+		public long getValue() { return value; }
+		public void setValue(long value) { this.value = value; }
+	}
+
+	/** A property stored with StoreMethod.TO_STRING_CONSTRUCTOR */
+	@SvnStorable(version=1)
+	public static class ToStringConstructorValue {
+		private Double value;
+
+		@SvnProperty
+		public Double getValue() { return value; }
+		public void setValue(Double value) { this.value = value; }
+	}
+
+	/** A property stored with StoreMethod.REGISTERED */
+	@SvnStorable(version=1)
+	public static class RegisteredValue {
+		private Point value;
+
+		@SvnProperty
+		public Point getValue() { return value; }
+		public void setValue(Point value) { this.value = value; }
+	}
+
+	/** Properties stored with StoreMethod.SERIALIZE_OBJECT, by the compact and the java codec */
+	@SvnStorable(version=1)
+	public static class SerializedValue {
+		private Date date;
+		private Point3 point;
+
+		@SvnProperty
+		public Date getDate() { return date; }
+		public void setDate(Date date) { this.date = date; }
+
+		@SvnProperty
+		public Point3 getPoint() { return point; }
+		public void setPoint(Point3 point) { this.point = point; }
+	}
+
+	/** Content stored with StoreMethod.STREAM */
+	@SvnStorable(version=1)
+	public static class StreamedValue {
+		private InputStream data;
+
+		public StreamedValue() { }
+
+		public StreamedValue(byte[] data) {
+			this.data = new ByteArrayInputStream(data);
+		}
+
+		@SvnContent
+		public InputStream getData() { return data; }
+		public void setData(InputStream data) { this.data = data; }
+	}
+
+	public static class Point {
+		final int x;
+		final int y;
+
+		public Point(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	public static class Point3 implements Serializable {
+		private static final long serialVersionUID = 1L;
+		final int[] coordinates;
+
+		public Point3(int x, int y, int z) {
+			this.coordinates = new int[] { x, y, z };
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(coordinates);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package org.restlesscode.javersion.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restlesscode.javersion.LruObjectCache;
+import org.restlesscode.javersion.SvnObjectReader;
+import org.restlesscode.javersion.SvnObjectWriter;
+import org.restlesscode.javersion.SvnStore;
+
+/**
+ * Reads of small and large content and of many properties, from one thread and
+ * from eight, with and without an object cache.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadBenchmark {
+
+	@Param({ "256", "1048576" })
+	public int contentSize;
+
+	@Param({ "false", "true" })
+	public boolean cached;
+
+	private final BenchmarkRepository repository = new BenchmarkRepository();
+	private SvnObjectReader reader;
+	private long revision;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SvnStore svnStore = repository.open();
+		SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+		writer.write("documents/existing", new Payloads.Document("document", Payloads.text(contentSize, 1)));
+		revision = writer.write("wide/existing", new Payloads.Wide("wide")).getRevision();
+		if (cached) {
+			svnStore.setObjectCache(new LruObjectCache(64L * 1024 * 1024));
+		}
+		reader = new SvnObjectReader(svnStore);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		repository.close();
+	}
+
+	@Benchmark
+	public Payloads.Document readContent() throws Exception {
+		return reader.read("documents/existing", revision, Payloads.Document.class);
+	}
+
+	@Benchmark
+	public Payloads.Wide readManyProperties() throws Exception {
+		return reader.read("wide/existing", revision, Payloads.Wide.class);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Payloads.Document readContentConcurrently() throws Exception {
+		return reader.read("documents/existing", revision, Payloads.Document.class);
+	}
+}
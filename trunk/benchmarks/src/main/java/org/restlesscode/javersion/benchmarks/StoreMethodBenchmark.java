@@ -0,0 +1,127 @@
+package org.restlesscode.javersion.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.restlesscode.javersion.SerializationTable.StoreMethod;
+import org.restlesscode.javersion.SerializedObject;
+import org.restlesscode.javersion.SvnObjectReader;
+import org.restlesscode.javersion.SvnObjectWriter;
+import org.restlesscode.javersion.SvnStore;
+import org.restlesscode.javersion.WriteResult;
+
+/**
+ * Serialization alone, writes and reads of an object whose field is stored with
+ * each {@link StoreMethod}.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StoreMethodBenchmark {
+
+	@Param({ "TO_STRING", "TO_STRING_CONSTRUCTOR", "REGISTERED", "SERIALIZE_OBJECT", "STREAM" })
+	public StoreMethod storeMethod;
+
+	private final BenchmarkRepository repository = new BenchmarkRepository();
+	private SvnObjectWriter writer;
+	private SvnObjectReader reader;
+	private Class<?> clazz;
+	private long revision;
+	private int counter;
+	private byte[] streamData;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SvnStore svnStore = repository.open();
+		Payloads.register(svnStore.getSerializationTable());
+		writer = new SvnObjectWriter(svnStore);
+		reader = new SvnObjectReader(svnStore);
+		streamData = Payloads.text(64 * 1024, 2).getBytes("UTF-8");
+		Object object = next();
+		clazz = object.getClass();
+		revision = writer.write("values/existing", object).getRevision();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		repository.close();
+	}
+
+	/**
+	 * @return A new object of the class for the store method, different from the last one
+	 */
+	protected Object next() {
+		int n = ++counter;
+		switch (storeMethod) {
+			case TO_STRING:
+				Payloads.ToStringValue toString = new Payloads.ToStringValue();
+				toString.setValue(n);
+				return toString;
+			case TO_STRING_CONSTRUCTOR:
+				Payloads.ToStringConstructorValue constructed = new Payloads.ToStringConstructorValue();
+				constructed.setValue(n / 3.0);
+				return constructed;
+			case REGISTERED:
+				Payloads.RegisteredValue registered = new Payloads.RegisteredValue();
+				registered.setValue(new Payloads.Point(n, -n));
+				return registered;
+			case SERIALIZE_OBJECT:
+				Payloads.SerializedValue serialized = new Payloads.SerializedValue();
+				serialized.setDate(new Date(n));
+				serialized.setPoint(new Payloads.Point3(n, n + 1, n + 2));
+				return serialized;
+			case STREAM:
+				streamData[0] = (byte) ('a' + n % 26);
+				return new Payloads.StreamedValue(streamData);
+			default:
+				throw new IllegalStateException(storeMethod.toString());
+		}
+	}
+
+	@Benchmark
+	public SerializedObject serialize() throws IOException {
+		return writer.serialize("values/existing", next());
+	}
+
+	@Benchmark
+	public WriteResult write() throws IOException {
+		return writer.write("values/existing", next());
+	}
+
+	@Benchmark
+	public void read(Blackhole blackhole) throws Exception {
+		Object object = reader.read("values/existing", revision, clazz);
+		if (object instanceof Payloads.StreamedValue) {
+			// A streamed value has to be drained to be read at all
+			InputStream in = ((Payloads.StreamedValue) object).getData();
+			try {
+				byte[] buffer = new byte[8192];
+				for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+					blackhole.consume(n);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		blackhole.consume(object);
+	}
+}
@@ -0,0 +1,91 @@
+package org.restlesscode.javersion.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.restlesscode.javersion.SvnObjectWriter;
+import org.restlesscode.javersion.WriteResult;
+
+/**
+ * Writes of new and existing objects: small and large content, many
+ * properties and deep paths whose directories have to be created.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteBenchmark {
+
+	@Param({ "256", "1048576" })
+	public int contentSize;
+
+	private final BenchmarkRepository repository = new BenchmarkRepository();
+	private SvnObjectWriter writer;
+	private Payloads.Document document;
+	private Payloads.Wide wide;
+	private String body;
+	private int counter;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		writer = new SvnObjectWriter(repository.open());
+		body = Payloads.text(contentSize, 1);
+		document = new Payloads.Document("document", body);
+		writer.write("documents/existing", document);
+		wide = new Payloads.Wide("wide");
+		writer.write("wide/existing", wide);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		repository.close();
+	}
+
+	/** Changes a few characters of the content of an existing object */
+	@Benchmark
+	public WriteResult updateContent() throws Exception {
+		int n = ++counter;
+		document.setRevisionCount(n);
+		document.setBody(n + body.substring(Integer.toString(n).length()));
+		return writer.write("documents/existing", document);
+	}
+
+	@Benchmark
+	public WriteResult addObject() throws Exception {
+		return writer.write("documents/added/" + (++counter), document);
+	}
+
+	/** Changes one of thirty two properties of an existing object */
+	@Benchmark
+	public WriteResult updateOneOfManyProperties() throws Exception {
+		wide.touch(++counter);
+		return writer.write("wide/existing", wide);
+	}
+
+	/** Adds an object eight directories down, creating every directory */
+	@Benchmark
+	public WriteResult addAtDeepNewPath() throws Exception {
+		return writer.write("deep/" + (++counter) + "/b/c/d/e/f/g/object", document);
+	}
+
+	/** Updates an object eight directories down */
+	@Benchmark
+	public WriteResult updateAtDeepPath() throws Exception {
+		document.setRevisionCount(++counter);
+		return writer.write("deep/existing/b/c/d/e/f/g/object", document);
+	}
+}
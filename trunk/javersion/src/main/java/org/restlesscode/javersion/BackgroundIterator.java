@@ -0,0 +1,167 @@
+package org.restlesscode.javersion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An iterator fed by a producer running on another thread through a bounded
+ * queue, so a push-style SVN exchange can be consumed lazily and with flat
+ * memory use. Closing the iterator makes the producer stop at its next put.
+ * <p>
+ * The producer usually holds a pooled session, so an iterator that is not read
+ * to the end must be closed, with try-with-resources or in a finally block. An
+ * iterator abandoned without being closed is given up by its producer once the
+ * consumer has taken nothing for the idle timeout.
+ */
+public abstract class BackgroundIterator<T> implements Iterator<T>, Closeable {
+
+	private static final Object END = new Object();
+
+	protected final BlockingQueue<Object> queue;
+	protected volatile boolean closed;
+	protected volatile Throwable failure;
+	protected volatile long idleTimeoutMillis = TimeUnit.MINUTES.toMillis(10);
+	private Object next;
+
+	/**
+	 * @param capacity Number of elements the producer may run ahead of the consumer
+	 */
+	protected BackgroundIterator(int capacity) {
+		this.queue = new ArrayBlockingQueue<Object>(capacity);
+	}
+
+	/**
+	 * Starts the producer on a thread of the executor.
+	 * @return this iterator
+	 */
+	public BackgroundIterator<T> start(Executor executor) {
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					produce();
+				} catch (Throwable t) {
+					if (! closed) {
+						failure = t;
+					}
+				} finally {
+					try {
+						offer(END);
+					} catch (IOException e) {
+						// Nobody is reading any more
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Produces every element by calling {@link #put(Object)}.
+	 */
+	protected abstract void produce() throws Exception;
+
+	/**
+	 * Hands an element to the consumer, waiting while the queue is full.
+	 * @throws IOException If the iterator was closed, or the consumer took
+	 *  nothing for the idle timeout
+	 */
+	protected void put(T element) throws IOException, InterruptedException {
+		if (closed) {
+			throw new IOException("Iterator closed");
+		}
+		offer(element);
+	}
+
+	private void offer(Object element) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		while (! queue.offer(element, 100, TimeUnit.MILLISECONDS)) {
+			if (closed) {
+				if (element != END) {
+					throw new IOException("Iterator closed");
+				}
+				// Make room for the end, which a closed iterator still reports
+				queue.clear();
+			} else if (System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+				throw new IOException("Iterator abandoned, nothing taken for " + idleTimeoutMillis + " ms");
+			}
+		}
+	}
+
+	/**
+	 * @return Time the producer waits for the consumer to take an element before
+	 *  giving up on an iterator that was abandoned without being closed
+	 */
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	/**
+	 * @return true if the consumer closed the iterator and the producer should stop
+	 */
+	protected boolean isClosed() {
+		return closed;
+	}
+
+	public boolean hasNext() {
+		if (next == null) {
+			try {
+				next = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted waiting for next element", e);
+			}
+		}
+		if (next == END) {
+			// Keep reporting the end on later calls
+			queue.offer(END);
+			if (failure != null) {
+				Throwable t = failure;
+				failure = null;
+				if (t instanceof IOException) {
+					throw new UncheckedIOException((IOException) t);
+				} else if (t instanceof RuntimeException) {
+					throw (RuntimeException) t;
+				}
+				throw new UncheckedIOException(new IOException(t));
+			}
+			next = null;
+			return false;
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T next() {
+		if (! hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T element = (T) next;
+		next = null;
+		return element;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stops the producer and discards anything it already queued.
+	 */
+	public void close() {
+		closed = true;
+		queue.clear();
+	}
+}
@@ -0,0 +1,119 @@
+package org.restlesscode.javersion;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the latest known text of files so that commits can send updates as
+ * deltas against it instead of as full text. Entries are learned from commits
+ * made through the store and from reads. A base older than the file's latest
+ * revision makes the commit fail as out of date; the store then drops the bases
+ * of that commit and sends full text.
+ */
+public class BaseContentCache {
+
+	protected final long maxBytes;
+	protected final LinkedHashMap<String, Base> bases = new LinkedHashMap<String, Base>(16, 0.75f, true);
+	protected long bytes;
+
+	/**
+	 * @param maxBytes Maximum total size of the texts remembered, least recently
+	 *  used texts are forgotten first
+	 */
+	public BaseContentCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return Latest known text of a file, null if none is known
+	 */
+	public synchronized Base get(String path) {
+		return bases.get(Utils.normalizePath(path));
+	}
+
+	/**
+	 * Records the text of a file at a revision, unless a later revision is already known.
+	 * @param checksum Hex MD5 of the text, computed if null
+	 */
+	public synchronized void put(String path, long revision, byte[] content, String checksum) {
+		if (content == null || content.length > maxBytes) {
+			remove(path);
+			return;
+		}
+		path = Utils.normalizePath(path);
+		Base previous = bases.get(path);
+		if (previous != null && previous.revision > revision) {
+			return;
+		}
+		if (checksum == null) {
+			checksum = md5(content);
+		}
+		bases.put(path, new Base(revision, checksum, content));
+		if (previous != null) {
+			bytes -= previous.content.length;
+		}
+		bytes += content.length;
+		Iterator<Map.Entry<String, Base>> it = bases.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			bytes -= it.next().getValue().content.length;
+			it.remove();
+		}
+	}
+
+	public synchronized void remove(String path) {
+		Base previous = bases.remove(Utils.normalizePath(path));
+		if (previous != null) {
+			bytes -= previous.content.length;
+		}
+	}
+
+	public synchronized void clear() {
+		bases.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size() {
+		return bases.size();
+	}
+
+	protected static String md5(byte[] content) {
+		try {
+			return Utils.toHex(MessageDigest.getInstance("MD5").digest(content));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * The text of a file at a revision.
+	 */
+	public static class Base {
+		protected final long revision;
+		protected final String checksum;
+		protected final byte[] content;
+
+		public Base(long revision, String checksum, byte[] content) {
+			this.revision = revision;
+			this.checksum = checksum;
+			this.content = content;
+		}
+
+		public long getRevision() {
+			return revision;
+		}
+
+		/**
+		 * @return Hex MD5 of the text
+		 */
+		public String getChecksum() {
+			return checksum;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+	}
+}
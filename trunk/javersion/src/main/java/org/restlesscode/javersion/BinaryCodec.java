@@ -0,0 +1,26 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+
+/**
+ * Encodes values of SERIALIZE_OBJECT fields into bytes. The name of the codec
+ * that wrote a field is stored in the field's jvn.codec.&lt;field&gt; property so
+ * the reader can pick the same codec; fields without that property were written
+ * with java serialization. Registered with
+ * {@link SerializationTable#registerBinaryCodec(Class, BinaryCodec)}.
+ */
+public interface BinaryCodec {
+
+	/**
+	 * @return Name stored in the codec property, unique within a serialization table
+	 */
+	public String getName();
+	
+	public byte[] encode(Object o) throws IOException;
+	
+	/**
+	 * @param type Declared type of the field being read
+	 */
+	public Object decode(byte[] bytes, Class<?> type) throws IOException;
+	
+}
@@ -0,0 +1,500 @@
+package org.restlesscode.javersion;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Loads a large number of objects into a store, such as an initial migration.
+ * Objects are serialized in parallel on a pool of workers while the previous
+ * chunk is committed, and are committed in chunks limited by a number of
+ * objects and of bytes. Serialization runs ahead of the commits by at most a
+ * chunk's worth of objects and of bytes, give or take an object per worker, so
+ * only about two chunks are held at a time however long the input is. Each
+ * chunk is committed in path order, so every directory it touches is opened or
+ * added once; input that is already in path order also keeps chunks from
+ * sharing directories.
+ * <p>
+ * Imported objects are taken to be new: no stored collection manifests are
+ * fetched, and only directories not learned from earlier commits are checked.
+ * A chunk that cannot be added because one of its paths exists is serialized
+ * again against what is stored and committed as an ordinary write.
+ * <p>
+ * With a checkpoint file, the number of input objects committed is recorded
+ * after every commit, and an interrupted import given the same input in the same
+ * order resumes after the last committed chunk.
+ */
+public class BulkImporter {
+
+	private static final Log LOG = LogFactory.getLog(BulkImporter.class);
+
+	protected final SvnStore svnStore;
+	protected final SvnObjectWriter writer;
+	protected int maxObjectsPerCommit = 1000;
+	protected long maxBytesPerCommit = 32 * 1024 * 1024;
+	protected int parallelism = Runtime.getRuntime().availableProcessors();
+	protected File checkpointFile;
+	protected ProgressListener progressListener;
+
+	public BulkImporter(SvnStore svnStore) {
+		this.svnStore = svnStore;
+		this.writer = new SvnObjectWriter(svnStore);
+	}
+
+	/**
+	 * Imports a stream of objects.
+	 * @see #run(Iterator)
+	 */
+	public Progress run(Stream<? extends Map.Entry<String, ?>> objects) throws IOException {
+		return run(objects.iterator());
+	}
+
+	/**
+	 * Imports objects, resuming after the objects recorded in the checkpoint file
+	 * if there is one.
+	 * @param objects Objects to save keyed by path relative to SVN root
+	 * @return Progress of the import once every object was committed
+	 * @throws IOException Serialization problem, problem with an object or
+	 *  failed commit; the chunks committed before it remain
+	 */
+	public Progress run(Iterator<? extends Map.Entry<String, ?>> objects) throws IOException {
+		Progress progress = readCheckpoint();
+		for (long skipped = 0; skipped < progress.getObjects(); skipped++) {
+			if (! objects.hasNext()) {
+				throw new IOException("Checkpoint is past the end of the input after " + skipped + " objects");
+			}
+			objects.next();
+		}
+		if (progress.getObjects() > 0) {
+			LOG.info("Resuming import after objects=" + progress.getObjects() + " revision=" + progress.getRevision());
+		}
+
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "javersion-import-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		ReadAhead readAhead = new ReadAhead(maxBytesPerCommit);
+		LinkedList<Future<List<SerializedObject>>> pending = new LinkedList<Future<List<SerializedObject>>>();
+		LinkedList<Map.Entry<String, ?>> entries = new LinkedList<Map.Entry<String, ?>>();
+		long submitted = 0;
+		try {
+			Chunk chunk = new Chunk();
+			while (true) {
+				// Serialization runs ahead of the commits by at most one chunk
+				while (pending.size() < maxObjectsPerCommit && objects.hasNext()) {
+					Map.Entry<String, ?> entry = objects.next();
+					pending.add(workers.submit(serializer(entry, readAhead, submitted++)));
+					entries.add(entry);
+				}
+				if (pending.isEmpty()) {
+					break;
+				}
+				List<SerializedObject> serialized = take(pending.removeFirst());
+				readAhead.taken(size(serialized));
+				if (! chunk.fits(serialized)) {
+					progress = commit(chunk, progress);
+					chunk = new Chunk();
+				}
+				chunk.add(entries.removeFirst(), serialized);
+			}
+			if (chunk.size() > 0) {
+				progress = commit(chunk, progress);
+			}
+			return progress;
+		} finally {
+			for (Future<List<SerializedObject>> future : pending) {
+				future.cancel(true);
+			}
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param sequence Position of the object among those submitted by this run
+	 */
+	protected Callable<List<SerializedObject>> serializer(Map.Entry<String, ?> entry, final ReadAhead readAhead,
+			final long sequence) {
+		final String path = entry.getKey();
+		final Object o = entry.getValue();
+		return new Callable<List<SerializedObject>>() {
+			public List<SerializedObject> call() throws IOException {
+				try {
+					readAhead.await(sequence);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("Interrupted waiting to serialize " + path);
+				}
+				List<SerializedObject> serialized = writer.serializeNew(path, o);
+				readAhead.serialized(size(serialized));
+				return serialized;
+			}
+		};
+	}
+
+	private static long size(List<SerializedObject> serialized) {
+		long size = 0;
+		for (SerializedObject o : serialized) {
+			size += o.getSize();
+		}
+		return size;
+	}
+
+	private static List<SerializedObject> take(Future<List<SerializedObject>> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for an object to be serialized");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Commits a chunk, records the checkpoint and reports the progress.
+	 */
+	protected Progress commit(Chunk chunk, Progress previous) throws IOException {
+		long first = previous.getObjects() + 1;
+		long last = previous.getObjects() + chunk.size();
+		String message = "Importing objects " + first + " to " + last;
+		WriteResult result;
+		try {
+			result = svnStore.commit(message, chunk.objects, true);
+		} catch (IOException e) {
+			// Such as a chunk committed by an earlier run that stopped before its checkpoint
+			LOG.info("Could not add imported objects " + first + " to " + last + ", writing them instead: "
+					+ e.getMessage());
+			List<SerializedObject> objects = new ArrayList<SerializedObject>();
+			for (Map.Entry<String, ?> entry : chunk.entries) {
+				objects.addAll(writer.serializeAll(entry.getKey(), entry.getValue(), -1));
+			}
+			result = svnStore.commit(message, objects);
+		}
+		Progress progress = new Progress(previous, chunk.size(), chunk.bytes,
+				result.isCommitted() ? result.getRevision() : previous.getRevision());
+		writeCheckpoint(progress);
+		if (LOG.isInfoEnabled()) {
+			LOG.info("import revision=" + progress.getRevision() + " objects=" + progress.getObjects()
+					+ " bytes=" + progress.getBytes() + " objectsPerSecond=" + (long) progress.getObjectsPerSecond()
+					+ " bytesPerSecond=" + (long) progress.getBytesPerSecond());
+		}
+		if (progressListener != null) {
+			progressListener.committed(progress);
+		}
+		return progress;
+	}
+
+	/**
+	 * @return Progress recorded in the checkpoint file, or none
+	 */
+	protected Progress readCheckpoint() throws IOException {
+		if (checkpointFile == null || ! checkpointFile.exists()) {
+			return new Progress(0, 0, 0, -1);
+		}
+		Properties checkpoint = new Properties();
+		InputStream in = new FileInputStream(checkpointFile);
+		try {
+			checkpoint.load(in);
+		} finally {
+			in.close();
+		}
+		try {
+			return new Progress(Long.parseLong(checkpoint.getProperty("objects")),
+					Long.parseLong(checkpoint.getProperty("bytes")), Long.parseLong(checkpoint.getProperty("commits")),
+					Long.parseLong(checkpoint.getProperty("revision")));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid import checkpoint " + checkpointFile, e);
+		}
+	}
+
+	/**
+	 * Replaces the checkpoint file, so that it always holds a complete checkpoint.
+	 */
+	protected void writeCheckpoint(Progress progress) throws IOException {
+		if (checkpointFile == null) {
+			return;
+		}
+		Properties checkpoint = new Properties();
+		checkpoint.setProperty("objects", Long.toString(progress.getObjects()));
+		checkpoint.setProperty("bytes", Long.toString(progress.getBytes()));
+		checkpoint.setProperty("commits", Long.toString(progress.getCommits()));
+		checkpoint.setProperty("revision", Long.toString(progress.getRevision()));
+		File temp = new File(checkpointFile.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			checkpoint.store(out, "javersion import checkpoint");
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return Maximum number of input objects committed at once
+	 */
+	public int getMaxObjectsPerCommit() {
+		return maxObjectsPerCommit;
+	}
+
+	public void setMaxObjectsPerCommit(int maxObjectsPerCommit) {
+		if (maxObjectsPerCommit < 1) {
+			throw new IllegalArgumentException("maxObjectsPerCommit must be at least 1");
+		}
+		this.maxObjectsPerCommit = maxObjectsPerCommit;
+	}
+
+	/**
+	 * @return Size above which a chunk is committed, counted as by
+	 *  {@link SerializedObject#getSize()}; a single larger object is committed alone
+	 */
+	public long getMaxBytesPerCommit() {
+		return maxBytesPerCommit;
+	}
+
+	public void setMaxBytesPerCommit(long maxBytesPerCommit) {
+		this.maxBytesPerCommit = maxBytesPerCommit;
+	}
+
+	/**
+	 * @return Number of threads serializing objects
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return File the progress is recorded in after every commit, null for none
+	 */
+	public File getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	public void setCheckpointFile(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Objects of the input committed together. An object is never committed
+	 * with another one at the same path, which a single commit cannot add twice.
+	 */
+	protected class Chunk {
+		final List<Map.Entry<String, ?>> entries = new ArrayList<Map.Entry<String, ?>>();
+		final List<SerializedObject> objects = new ArrayList<SerializedObject>();
+		final Set<String> paths = new HashSet<String>();
+		int size;
+		long bytes;
+
+		boolean fits(List<SerializedObject> serialized) {
+			if (size == 0) {
+				return true;
+			}
+			if (size >= maxObjectsPerCommit) {
+				return false;
+			}
+			long added = 0;
+			for (SerializedObject o : serialized) {
+				if (paths.contains(o.getPath())) {
+					return false;
+				}
+				added += o.getSize();
+			}
+			return bytes + added <= maxBytesPerCommit;
+		}
+
+		void add(Map.Entry<String, ?> entry, List<SerializedObject> serialized) {
+			entries.add(entry);
+			for (SerializedObject o : serialized) {
+				objects.add(o);
+				paths.add(o.getPath());
+				bytes += o.getSize();
+			}
+			size++;
+		}
+
+		int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Bytes of objects serialized but not yet taken into a chunk. Serializing
+	 * waits while they exceed the limit, except for the next object to be taken,
+	 * which the committing thread may be waiting for.
+	 */
+	protected static class ReadAhead {
+		private final long maxBytes;
+		private long bytes;
+		private long taken;
+
+		ReadAhead(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized void await(long sequence) throws InterruptedException {
+			while (bytes >= maxBytes && sequence != taken) {
+				wait();
+			}
+		}
+
+		synchronized void serialized(long size) {
+			bytes += size;
+		}
+
+		synchronized void taken(long size) {
+			bytes -= size;
+			taken++;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Receives the progress of an import after every commit.
+	 */
+	public interface ProgressListener {
+
+		/**
+		 * Called once a chunk is committed and checkpointed. Throwing stops the
+		 * import, which resumes after this chunk.
+		 */
+		void committed(Progress progress);
+	}
+
+	/**
+	 * How far an import got, counting the objects of the input rather than the
+	 * files of their collections. Throughput covers this run only.
+	 */
+	public static class Progress {
+		protected final long objects;
+		protected final long bytes;
+		protected final long commits;
+		protected final long revision;
+		protected final long resumedObjects;
+		protected final long resumedBytes;
+		protected final long startNanos;
+		protected final long elapsedNanos;
+
+		Progress(long objects, long bytes, long commits, long revision) {
+			this.objects = objects;
+			this.bytes = bytes;
+			this.commits = commits;
+			this.revision = revision;
+			this.resumedObjects = objects;
+			this.resumedBytes = bytes;
+			this.startNanos = System.nanoTime();
+			this.elapsedNanos = 0;
+		}
+
+		Progress(Progress previous, long objects, long bytes, long revision) {
+			this.objects = previous.objects + objects;
+			this.bytes = previous.bytes + bytes;
+			this.commits = previous.commits + 1;
+			this.revision = revision;
+			this.resumedObjects = previous.resumedObjects;
+			this.resumedBytes = previous.resumedBytes;
+			this.startNanos = previous.startNanos;
+			this.elapsedNanos = System.nanoTime() - startNanos;
+		}
+
+		/**
+		 * @return Number of input objects committed, including those of earlier runs
+		 */
+		public long getObjects() {
+			return objects;
+		}
+
+		/**
+		 * @return Approximate number of bytes committed, including earlier runs
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return Number of chunks committed, including earlier runs
+		 */
+		public long getCommits() {
+			return commits;
+		}
+
+		/**
+		 * @return Revision of the last commit, -1 if nothing was committed
+		 */
+		public long getRevision() {
+			return revision;
+		}
+
+		/**
+		 * @return Number of objects committed by earlier runs this one resumed after
+		 */
+		public long getResumedObjects() {
+			return resumedObjects;
+		}
+
+		/**
+		 * @return Time this run has taken up to the last commit
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		public double getObjectsPerSecond() {
+			return elapsedNanos == 0 ? 0 : (objects - resumedObjects) * 1e9 / elapsedNanos;
+		}
+
+		public double getBytesPerSecond() {
+			return elapsedNanos == 0 ? 0 : (bytes - resumedBytes) * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return objects + " objects in " + commits + " commits, r" + revision;
+		}
+	}
+}
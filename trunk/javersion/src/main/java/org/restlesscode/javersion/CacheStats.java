@@ -0,0 +1,60 @@
+package org.restlesscode.javersion;
+
+/**
+ * Counters of an {@link ObjectCache} at a point in time.
+ */
+public class CacheStats {
+
+	protected final long hits;
+	protected final long misses;
+	protected final long evictions;
+	protected final long size;
+	protected final long weight;
+
+	public CacheStats(long hits, long misses, long evictions, long size, long weight) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.size = size;
+		this.weight = weight;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return Number of cached entries
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return Total weight of the cached entries, roughly their size in bytes
+	 */
+	public long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @return Fraction of lookups that were hits, 0 if there were none
+	 */
+	public double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits=%d misses=%d evictions=%d size=%d weight=%d", hits, misses, evictions, size, weight);
+	}
+}
@@ -0,0 +1,29 @@
+package org.restlesscode.javersion;
+
+import java.util.Date;
+
+/**
+ * A change to an object made by a revision, delivered to subscribers. Added
+ * and modified events carry the object as of the revision; deleted events
+ * carry no object.
+ */
+public class ChangeEvent<T> extends ObjectVersion<T> {
+
+	public enum Type { ADDED, MODIFIED, DELETED }
+
+	protected final Type type;
+
+	public ChangeEvent(Type type, String path, long revision, String author, Date date, T object) {
+		super(path, revision, author, date, object);
+		this.type = type;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + super.toString();
+	}
+}
@@ -0,0 +1,18 @@
+package org.restlesscode.javersion;
+
+import java.util.List;
+
+/**
+ * Receives the changes to objects found by a {@link Subscription}.
+ */
+public interface ChangeListener<T> {
+
+	/**
+	 * Handles a batch of changes, in revision order. A batch always holds every
+	 * change of the revisions it covers. The subscription fetches nothing more
+	 * until this returns, and its checkpoint only moves past the batch once it
+	 * has returned normally. If it throws, the batch is delivered again at the
+	 * next poll.
+	 */
+	void onChanges(List<ChangeEvent<T>> changes) throws Exception;
+}
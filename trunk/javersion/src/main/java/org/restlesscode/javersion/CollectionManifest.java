@@ -0,0 +1,147 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.tmatesoft.svn.core.SVNPropertyValue;
+
+/**
+ * The element files of an SvnCollection, in collection order, as listed by a
+ * property of the owning object. Each line holds the MD5 of an element file's
+ * text and properties followed by the file's name, so a writer can tell which
+ * elements changed without fetching them. List elements are named by their
+ * digest, so inserting or removing an element leaves the files of the others
+ * alone; map elements are named by their escaped key.
+ */
+class CollectionManifest {
+
+	protected final List<String> names = new ArrayList<String>();
+	protected final List<String> digests = new ArrayList<String>();
+
+	/**
+	 * @param value Value of the manifest property, null for a collection never written
+	 */
+	static CollectionManifest parse(String value) {
+		CollectionManifest manifest = new CollectionManifest();
+		if (value == null) {
+			return manifest;
+		}
+		for (String line : value.split("\n")) {
+			int space = line.indexOf(' ');
+			if (space > 0) {
+				manifest.add(line.substring(space + 1), line.substring(0, space));
+			}
+		}
+		return manifest;
+	}
+
+	void add(String name, String digest) {
+		names.add(name);
+		digests.add(digest);
+	}
+
+	int size() {
+		return names.size();
+	}
+
+	String getName(int index) {
+		return names.get(index);
+	}
+
+	String getDigest(int index) {
+		return digests.get(index);
+	}
+
+	/**
+	 * @return Digest of each element file by name; a list's repeated elements share a file
+	 */
+	Map<String, String> getFiles() {
+		Map<String, String> files = new LinkedHashMap<String, String>();
+		for (int i = 0; i < names.size(); i++) {
+			files.put(names.get(i), digests.get(i));
+		}
+		return files;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < names.size(); i++) {
+			value.append(digests.get(i)).append(' ').append(names.get(i)).append('\n');
+		}
+		return value.toString();
+	}
+
+	/**
+	 * @return File name of a map element: letters, digits, '-', '_' and '.' are
+	 *  kept, other characters and a leading '.' are written as ~ and the hex of
+	 *  their UTF-8 bytes
+	 */
+	static String nameOf(String key) {
+		if (key.length() == 0) {
+			return "~";
+		}
+		StringBuilder name = new StringBuilder(key.length());
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < bytes.length; i++) {
+			char c = (char) (bytes[i] & 0xff);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_'
+					|| (c == '.' && i > 0)) {
+				name.append(c);
+			} else {
+				name.append('~').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+			}
+		}
+		return name.toString();
+	}
+
+	/**
+	 * @return Key of a map element from its file name
+	 * @see #nameOf(String)
+	 */
+	static String keyOf(String name) {
+		if (name.equals("~")) {
+			return "";
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '~') {
+				bytes.write(Integer.parseInt(name.substring(i + 1, i + 3), 16));
+				i += 2;
+			} else {
+				bytes.write(c);
+			}
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return Hex MD5 of the text and properties of an element file
+	 */
+	static String digest(SerializedObject element) {
+		try {
+			MessageDigest md5 = MessageDigest.getInstance("MD5");
+			if (element.getContent() != null) {
+				md5.update(element.getContent());
+			}
+			for (Map.Entry<String, SVNPropertyValue> property
+					: new TreeMap<String, SVNPropertyValue>(element.getProperties()).entrySet()) {
+				md5.update((byte) 0);
+				md5.update(property.getKey().getBytes(StandardCharsets.UTF_8));
+				md5.update((byte) 0);
+				md5.update(SVNPropertyValue.getPropertyAsBytes(property.getValue()));
+			}
+			return Utils.toHex(md5.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
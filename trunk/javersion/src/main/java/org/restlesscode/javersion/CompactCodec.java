@@ -0,0 +1,325 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * A compact tagged binary codec for common JDK types: strings, boxed primitives,
+ * dates, enums, byte arrays, big numbers, UUIDs and the standard lists, sets and
+ * maps of those. Each value is a one byte tag followed by its data, with integers
+ * written as variable length numbers, so a Date takes a handful of bytes instead
+ * of the hundred java serialization needs. Values of any other class found
+ * inside a collection are embedded in java serialized form.
+ */
+public class CompactCodec implements BinaryCodec {
+
+	public static final String NAME = "compact";
+
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int BOOLEAN = 2;
+	private static final int BYTE = 3;
+	private static final int SHORT = 4;
+	private static final int INT = 5;
+	private static final int LONG = 6;
+	private static final int FLOAT = 7;
+	private static final int DOUBLE = 8;
+	private static final int CHAR = 9;
+	private static final int DATE = 10;
+	private static final int BYTES = 11;
+	private static final int ENUM = 12;
+	private static final int BIG_INTEGER = 13;
+	private static final int BIG_DECIMAL = 14;
+	private static final int UUID_VALUE = 15;
+	private static final int ARRAY_LIST = 16;
+	private static final int LINKED_LIST = 17;
+	private static final int HASH_SET = 18;
+	private static final int LINKED_HASH_SET = 19;
+	private static final int TREE_SET = 20;
+	private static final int HASH_MAP = 21;
+	private static final int LINKED_HASH_MAP = 22;
+	private static final int TREE_MAP = 23;
+	private static final int JAVA = 24;
+
+	private static final Set<Class<?>> SUPPORTED = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+			String.class, Boolean.class, Byte.class, Short.class, Integer.class, Long.class, Float.class,
+			Double.class, Character.class, Date.class, byte[].class, BigInteger.class, BigDecimal.class,
+			UUID.class, Collection.class, List.class, ArrayList.class, LinkedList.class, Set.class,
+			HashSet.class, LinkedHashSet.class, SortedSet.class, TreeSet.class, Map.class, HashMap.class,
+			LinkedHashMap.class, SortedMap.class, TreeMap.class));
+
+	protected final JavaSerializationCodec fallback = new JavaSerializationCodec();
+
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * @return true if fields of a type are stored with this codec by default
+	 */
+	public boolean supports(Class<?> type) {
+		return SUPPORTED.contains(type) || type.isEnum();
+	}
+
+	public byte[] encode(Object o) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(32);
+		DataOutputStream out = new DataOutputStream(baos);
+		write(out, o);
+		out.flush();
+		return baos.toByteArray();
+	}
+
+	public Object decode(byte[] bytes, Class<?> type) throws IOException {
+		ClassLoader loader = type.getClassLoader();
+		if (loader == null) {
+			loader = Thread.currentThread().getContextClassLoader();
+		}
+		return read(new DataInputStream(new ByteArrayInputStream(bytes)), loader);
+	}
+
+	protected void write(DataOutputStream out, Object o) throws IOException {
+		if (o == null) {
+			out.writeByte(NULL);
+			return;
+		}
+		Class<?> c = o.getClass();
+		if (c == String.class) {
+			out.writeByte(STRING);
+			writeString(out, (String) o);
+		} else if (c == Boolean.class) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) o);
+		} else if (c == Byte.class) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) o);
+		} else if (c == Short.class) {
+			out.writeByte(SHORT);
+			writeVarLong(out, (Short) o);
+		} else if (c == Integer.class) {
+			out.writeByte(INT);
+			writeVarLong(out, (Integer) o);
+		} else if (c == Long.class) {
+			out.writeByte(LONG);
+			writeVarLong(out, (Long) o);
+		} else if (c == Float.class) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) o);
+		} else if (c == Double.class) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) o);
+		} else if (c == Character.class) {
+			out.writeByte(CHAR);
+			out.writeChar((Character) o);
+		} else if (c == Date.class) {
+			out.writeByte(DATE);
+			writeVarLong(out, ((Date) o).getTime());
+		} else if (c == byte[].class) {
+			out.writeByte(BYTES);
+			writeBytes(out, (byte[]) o);
+		} else if (o instanceof Enum) {
+			out.writeByte(ENUM);
+			writeString(out, ((Enum<?>) o).getDeclaringClass().getName());
+			writeString(out, ((Enum<?>) o).name());
+		} else if (c == BigInteger.class) {
+			out.writeByte(BIG_INTEGER);
+			writeBytes(out, ((BigInteger) o).toByteArray());
+		} else if (c == BigDecimal.class) {
+			out.writeByte(BIG_DECIMAL);
+			writeBytes(out, ((BigDecimal) o).unscaledValue().toByteArray());
+			writeVarLong(out, ((BigDecimal) o).scale());
+		} else if (c == UUID.class) {
+			out.writeByte(UUID_VALUE);
+			out.writeLong(((UUID) o).getMostSignificantBits());
+			out.writeLong(((UUID) o).getLeastSignificantBits());
+		} else if (c == ArrayList.class || c == LinkedList.class) {
+			out.writeByte(c == ArrayList.class ? ARRAY_LIST : LINKED_LIST);
+			writeElements(out, (Collection<?>) o);
+		} else if (c == HashSet.class || c == LinkedHashSet.class
+				|| (c == TreeSet.class && ((TreeSet<?>) o).comparator() == null)) {
+			out.writeByte(c == HashSet.class ? HASH_SET : c == LinkedHashSet.class ? LINKED_HASH_SET : TREE_SET);
+			writeElements(out, (Collection<?>) o);
+		} else if (c == HashMap.class || c == LinkedHashMap.class
+				|| (c == TreeMap.class && ((TreeMap<?, ?>) o).comparator() == null)) {
+			out.writeByte(c == HashMap.class ? HASH_MAP : c == LinkedHashMap.class ? LINKED_HASH_MAP : TREE_MAP);
+			Map<?, ?> map = (Map<?, ?>) o;
+			writeVarLong(out, map.size());
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				write(out, entry.getKey());
+				write(out, entry.getValue());
+			}
+		} else {
+			// Subclasses, other collection classes, sorted collections with a comparator and
+			// anything unknown keep their exact class through java serialization
+			out.writeByte(JAVA);
+			writeBytes(out, fallback.encode(o));
+		}
+	}
+
+	protected Object read(DataInputStream in, ClassLoader loader) throws IOException {
+		int tag = in.readUnsignedByte();
+		switch (tag) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString(in);
+			case BOOLEAN:
+				return in.readBoolean();
+			case BYTE:
+				return in.readByte();
+			case SHORT:
+				return (short) readVarLong(in);
+			case INT:
+				return (int) readVarLong(in);
+			case LONG:
+				return readVarLong(in);
+			case FLOAT:
+				return in.readFloat();
+			case DOUBLE:
+				return in.readDouble();
+			case CHAR:
+				return in.readChar();
+			case DATE:
+				return new Date(readVarLong(in));
+			case BYTES:
+				return readBytes(in);
+			case ENUM:
+				return readEnum(in, loader);
+			case BIG_INTEGER:
+				return new BigInteger(readBytes(in));
+			case BIG_DECIMAL:
+				return new BigDecimal(new BigInteger(readBytes(in)), (int) readVarLong(in));
+			case UUID_VALUE:
+				return new UUID(in.readLong(), in.readLong());
+			case ARRAY_LIST:
+				return readElements(in, loader, new ArrayList<Object>());
+			case LINKED_LIST:
+				return readElements(in, loader, new LinkedList<Object>());
+			case HASH_SET:
+				return readElements(in, loader, new HashSet<Object>());
+			case LINKED_HASH_SET:
+				return readElements(in, loader, new LinkedHashSet<Object>());
+			case TREE_SET:
+				return readElements(in, loader, new TreeSet<Object>());
+			case HASH_MAP:
+				return readEntries(in, loader, new HashMap<Object, Object>());
+			case LINKED_HASH_MAP:
+				return readEntries(in, loader, new LinkedHashMap<Object, Object>());
+			case TREE_MAP:
+				return readEntries(in, loader, new TreeMap<Object, Object>());
+			case JAVA:
+				return fallback.decode(readBytes(in), Object.class);
+			default:
+				throw new IOException("Unknown compact codec tag " + tag);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected Object readEnum(DataInputStream in, ClassLoader loader) throws IOException {
+		String className = readString(in);
+		String name = readString(in);
+		try {
+			return Enum.valueOf((Class<Enum>) Class.forName(className, false, loader), name);
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("No constant " + name + " in " + className, e);
+		}
+	}
+
+	protected void writeElements(DataOutputStream out, Collection<?> elements) throws IOException {
+		writeVarLong(out, elements.size());
+		for (Object element : elements) {
+			write(out, element);
+		}
+	}
+
+	protected Collection<Object> readElements(DataInputStream in, ClassLoader loader, Collection<Object> elements)
+			throws IOException {
+		long size = readVarLong(in);
+		for (long i = 0; i < size; i++) {
+			elements.add(read(in, loader));
+		}
+		return elements;
+	}
+
+	protected Map<Object, Object> readEntries(DataInputStream in, ClassLoader loader, Map<Object, Object> entries)
+			throws IOException {
+		long size = readVarLong(in);
+		for (long i = 0; i < size; i++) {
+			Object key = read(in, loader);
+			entries.put(key, read(in, loader));
+		}
+		return entries;
+	}
+
+	protected static void writeString(DataOutputStream out, String s) throws IOException {
+		writeBytes(out, s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	protected static String readString(DataInputStream in) throws IOException {
+		return new String(readBytes(in), StandardCharsets.UTF_8);
+	}
+
+	protected static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	protected static byte[] readBytes(DataInputStream in) throws IOException {
+		long length = readVarLong(in);
+		if (length < 0 || length > Integer.MAX_VALUE) {
+			throw new IOException("Bad length " + length);
+		}
+		byte[] bytes = new byte[(int) length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Writes a zig-zag encoded number, seven bits per byte, so small negative and
+	 * positive numbers both take few bytes.
+	 */
+	protected static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		long v = (value << 1) ^ (value >> 63);
+		while ((v & ~0x7fL) != 0) {
+			out.writeByte((int) ((v & 0x7f) | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	protected static long readVarLong(DataInputStream in) throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return (v >>> 1) ^ -(v & 1);
+			}
+		}
+		throw new IOException("Malformed variable length number");
+	}
+}
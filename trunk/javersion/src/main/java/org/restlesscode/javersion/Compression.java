@@ -0,0 +1,122 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of stored content and binary properties. Compressed values
+ * are marked with the jvn.encoding property of the content or jvn.encoding.&lt;field&gt;
+ * of a property. Each thread keeps its own deflater, inflater and work buffer, so
+ * compressing adds one array per value to the garbage collector's load.
+ */
+final class Compression {
+
+	static final String ENCODING_PROPERTY = "jvn.encoding";
+	static final String DEFLATE = "deflate";
+
+	private static final ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_SPEED);
+		}
+	};
+
+	private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+
+	private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
+
+	/** Work buffers larger than this are not kept between calls */
+	private static final int MAX_KEPT_BUFFER = 1024 * 1024;
+
+	private Compression() { }
+
+	/**
+	 * @return Compressed bytes, or null if the data is shorter than the threshold
+	 *  or does not get smaller
+	 */
+	static byte[] deflate(byte[] data, int threshold) {
+		if (data.length < threshold) {
+			return null;
+		}
+		Deflater deflater = DEFLATERS.get();
+		deflater.reset();
+		deflater.setInput(data);
+		deflater.finish();
+		byte[] buffer = buffer(data.length);
+		int length = 0;
+		while (! deflater.finished()) {
+			if (length == buffer.length) {
+				// Larger than the input, not worth storing compressed
+				return null;
+			}
+			length += deflater.deflate(buffer, length, buffer.length - length);
+		}
+		return length < data.length ? Arrays.copyOf(buffer, length) : null;
+	}
+
+	static byte[] inflate(byte[] data) throws IOException {
+		Inflater inflater = INFLATERS.get();
+		inflater.reset();
+		inflater.setInput(data);
+		byte[] buffer = buffer(data.length * 4);
+		int length = 0;
+		try {
+			while (! inflater.finished()) {
+				if (length == buffer.length) {
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+					keep(buffer);
+				}
+				int n = inflater.inflate(buffer, length, buffer.length - length);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Truncated compressed data");
+				}
+				length += n;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		}
+		return Arrays.copyOf(buffer, length);
+	}
+
+	/**
+	 * Decodes a value according to its encoding property.
+	 * @param encoding Value of the encoding property, null if the value is not encoded
+	 */
+	static byte[] decode(byte[] data, String encoding) throws IOException {
+		if (encoding == null || data == null) {
+			return data;
+		}
+		if (DEFLATE.equals(encoding)) {
+			return inflate(data);
+		}
+		throw new IOException("Unknown encoding " + encoding);
+	}
+
+	private static byte[] buffer(int minLength) {
+		byte[] buffer = BUFFERS.get();
+		if (buffer.length < minLength) {
+			buffer = new byte[Math.max(minLength, buffer.length * 2)];
+			keep(buffer);
+		}
+		return buffer;
+	}
+
+	private static void keep(byte[] buffer) {
+		if (buffer.length <= MAX_KEPT_BUFFER) {
+			BUFFERS.set(buffer);
+		}
+	}
+}
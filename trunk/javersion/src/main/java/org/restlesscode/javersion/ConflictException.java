@@ -0,0 +1,45 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+
+/**
+ * Thrown by an optimistic write when an object was changed or deleted in the
+ * repository after the revision the writer expected it at.
+ */
+public class ConflictException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final String path;
+	protected final long expectedRevision;
+	protected final long currentRevision;
+
+	public ConflictException(String path, long expectedRevision, long currentRevision) {
+		super(currentRevision < 0 ? path + " was deleted after revision " + expectedRevision
+				: path + " was changed in revision " + currentRevision + " after revision " + expectedRevision);
+		this.path = path;
+		this.expectedRevision = expectedRevision;
+		this.currentRevision = currentRevision;
+	}
+
+	/**
+	 * @return Path of the object in conflict
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return Revision the writer expected the object to be unchanged since
+	 */
+	public long getExpectedRevision() {
+		return expectedRevision;
+	}
+
+	/**
+	 * @return Revision that last changed the object, -1 if it no longer exists
+	 */
+	public long getCurrentRevision() {
+		return currentRevision;
+	}
+}
@@ -0,0 +1,99 @@
+package org.restlesscode.javersion;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Routes paths to shards by consistent hashing: every shard owns a number of
+ * points on a ring of 64 bit hashes and a path goes to the shard owning the
+ * first point at or after the path's hash. Adding a shard to N moves about
+ * 1/(N+1) of the paths, all of them to the new shard, and removing one moves
+ * only the paths it held.
+ */
+public class ConsistentHashRouter implements ShardRouter {
+
+	public static final int DEFAULT_POINTS_PER_SHARD = 128;
+
+	protected final Set<String> shards;
+	protected final int pointsPerShard;
+	protected final TreeMap<Long, String> ring = new TreeMap<Long, String>();
+
+	public ConsistentHashRouter(Collection<String> shards) {
+		this(shards, DEFAULT_POINTS_PER_SHARD);
+	}
+
+	/**
+	 * @param pointsPerShard Points each shard owns on the ring, more spread paths
+	 *  more evenly
+	 */
+	public ConsistentHashRouter(Collection<String> shards, int pointsPerShard) {
+		if (shards.isEmpty()) {
+			throw new IllegalArgumentException("At least one shard is needed");
+		}
+		if (pointsPerShard < 1) {
+			throw new IllegalArgumentException("pointsPerShard must be at least 1");
+		}
+		this.shards = Collections.unmodifiableSet(new LinkedHashSet<String>(shards));
+		this.pointsPerShard = pointsPerShard;
+		for (String shard : this.shards) {
+			for (int i = 0; i < pointsPerShard; i++) {
+				ring.put(hash(shard + "#" + i), shard);
+			}
+		}
+	}
+
+	/**
+	 * @return A router with one more shard
+	 */
+	public ConsistentHashRouter withShard(String shard) {
+		Set<String> more = new LinkedHashSet<String>(shards);
+		more.add(shard);
+		return new ConsistentHashRouter(more, pointsPerShard);
+	}
+
+	/**
+	 * @return A router without a shard, whose paths go to the remaining shards
+	 */
+	public ConsistentHashRouter withoutShard(String shard) {
+		Set<String> fewer = new LinkedHashSet<String>(shards);
+		fewer.remove(shard);
+		return new ConsistentHashRouter(fewer, pointsPerShard);
+	}
+
+	public String route(String path) {
+		Map.Entry<Long, String> point = ring.ceilingEntry(hash(path));
+		return point != null ? point.getValue() : ring.firstEntry().getValue();
+	}
+
+	public Set<String> getShards() {
+		return shards;
+	}
+
+	/**
+	 * 64 bit FNV-1a of the UTF-8 bytes, finished with the MurmurHash3 mix so
+	 * that similar paths land far apart. Stable across JVMs.
+	 */
+	protected static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b & 0xff;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return "ConsistentHashRouter" + shards;
+	}
+}
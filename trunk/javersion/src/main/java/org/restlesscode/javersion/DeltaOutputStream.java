@@ -0,0 +1,84 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+/**
+ * Sends whatever is written to it as the full text of a file, one delta window
+ * at a time, so content of any size is committed with a single window of memory.
+ * {@link #finish()} ends the text delta and returns the MD5 checksum of the text.
+ */
+class DeltaOutputStream extends OutputStream {
+
+	protected static final int WINDOW_SIZE = 100 * 1024;
+
+	protected final String path;
+	protected final ISVNDeltaConsumer consumer;
+	protected final SVNDeltaGenerator deltaGenerator;
+	protected final MessageDigest digest;
+	protected final byte[] window = new byte[WINDOW_SIZE];
+	protected int windowLength;
+	protected boolean sentWindow;
+
+	DeltaOutputStream(String path, ISVNDeltaConsumer consumer, SVNDeltaGenerator deltaGenerator) {
+		this.path = path;
+		this.consumer = consumer;
+		this.deltaGenerator = deltaGenerator;
+		try {
+			this.digest = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (windowLength == window.length) {
+			sendWindow();
+		}
+		window[windowLength++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (windowLength == window.length) {
+				sendWindow();
+			}
+			int n = Math.min(len, window.length - windowLength);
+			System.arraycopy(b, off, window, windowLength, n);
+			windowLength += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Sends the last window and ends the text delta.
+	 * @return Hex MD5 checksum of everything written
+	 */
+	String finish() throws IOException, SVNException {
+		if (windowLength > 0 || ! sentWindow) {
+			sendWindow();
+		}
+		consumer.textDeltaEnd(path);
+		return Utils.toHex(digest.digest());
+	}
+
+	protected void sendWindow() throws IOException {
+		digest.update(window, 0, windowLength);
+		try {
+			deltaGenerator.sendDelta(path, window, windowLength, consumer);
+		} catch (SVNException e) {
+			throw new IOException(e);
+		}
+		windowLength = 0;
+		sentWindow = true;
+	}
+}
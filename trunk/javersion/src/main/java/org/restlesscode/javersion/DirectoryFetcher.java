@@ -0,0 +1,147 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Fetches every file below a directory in a single checkout exchange, which
+ * streams the text and properties of the whole subtree in one response instead
+ * of one getFile request per file. Each file is handed to {@link #fetched} as
+ * soon as it is complete.
+ */
+abstract class DirectoryFetcher implements ISVNEditor {
+
+	protected long revision = -1;
+	protected String currentPath;
+	protected SVNProperties currentProperties;
+	protected OutputStream currentContent;
+	protected final SVNDeltaProcessor deltaProcessor = new SVNDeltaProcessor();
+	protected final int spoolThreshold;
+
+	DirectoryFetcher() {
+		this(-1);
+	}
+
+	/**
+	 * @param spoolThreshold Size above which file text is spooled to a temporary
+	 *  file, -1 to collect every file in memory
+	 */
+	DirectoryFetcher(int spoolThreshold) {
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	/**
+	 * Runs the checkout of a directory.
+	 * @param repository Session to use
+	 * @param dirPath Directory relative to the session location
+	 * @param revision Revision to fetch, -1 for HEAD
+	 */
+	void fetch(SVNRepository repository, String dirPath, long revision) throws SVNException {
+		repository.checkout(revision, Utils.normalizePath(dirPath), true, this);
+	}
+
+	/**
+	 * Called for every file of the subtree, in the order the server sends them.
+	 */
+	protected abstract void fetched(FetchedObject object) throws SVNException;
+
+	public void targetRevision(long revision) throws SVNException {
+		this.revision = revision;
+	}
+
+	public void addFile(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+		currentPath = path;
+		currentProperties = new SVNProperties();
+		currentContent = spoolThreshold < 0 ? new ByteArrayOutputStream() : new SpoolOutputStream(spoolThreshold);
+	}
+
+	public void openFile(String path, long revision) throws SVNException {
+		addFile(path, null, -1);
+	}
+
+	public void changeFileProperty(String path, String propertyName, SVNPropertyValue propertyValue) throws SVNException {
+		currentProperties.put(propertyName, propertyValue);
+	}
+
+	public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+		deltaProcessor.applyTextDelta(new ByteArrayInputStream(new byte[0]), currentContent, false);
+	}
+
+	public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+		return deltaProcessor.textDeltaChunk(diffWindow);
+	}
+
+	public void textDeltaEnd(String path) throws SVNException {
+		deltaProcessor.textDeltaEnd();
+	}
+
+	public void closeFile(String path, String textChecksum) throws SVNException {
+		FetchedObject object;
+		if (currentContent instanceof SpoolOutputStream) {
+			SpoolOutputStream spool = (SpoolOutputStream) currentContent;
+			close(spool);
+			object = new FetchedObject(currentPath, revision, currentProperties, spool);
+		} else {
+			object = new FetchedObject(currentPath, revision, currentProperties,
+					((ByteArrayOutputStream) currentContent).toByteArray());
+		}
+		currentPath = null;
+		currentProperties = null;
+		currentContent = null;
+		fetched(object);
+	}
+
+	/**
+	 * Releases the spool of a fetched object that is skipped.
+	 */
+	protected void discard(FetchedObject object) throws SVNException {
+		try {
+			object.discard();
+		} catch (IOException e) {
+			throw new SVNException(SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getMessage()), e);
+		}
+	}
+
+	private void close(OutputStream out) throws SVNException {
+		try {
+			out.close();
+		} catch (IOException e) {
+			throw new SVNException(SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getMessage()), e);
+		}
+	}
+
+	public void openRoot(long revision) throws SVNException { }
+
+	public void deleteEntry(String path, long revision) throws SVNException { }
+
+	public void absentDir(String path) throws SVNException { }
+
+	public void absentFile(String path) throws SVNException { }
+
+	public void addDir(String path, String copyFromPath, long copyFromRevision) throws SVNException { }
+
+	public void openDir(String path, long revision) throws SVNException { }
+
+	public void changeDirProperty(String name, SVNPropertyValue value) throws SVNException { }
+
+	public void closeDir() throws SVNException { }
+
+	public SVNCommitInfo closeEdit() throws SVNException {
+		return null;
+	}
+
+	public void abortEdit() throws SVNException { }
+}
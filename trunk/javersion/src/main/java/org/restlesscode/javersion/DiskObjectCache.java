@@ -0,0 +1,550 @@
+package org.restlesscode.javersion;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+
+/**
+ * An {@link ObjectCache} kept on disk, so fetched objects survive restarts. Each
+ * object is appended to a log file as one record with a CRC32 checksum; an
+ * index from path and revision to the record's position is kept in memory and
+ * written to an index file on {@link #close()}, which is read back through a
+ * memory map on the next start. Records appended after the index was written
+ * are recovered by scanning the end of the log, and a torn or corrupt tail is
+ * cut off. The total size of the live records is bounded, evicting the least
+ * recently used first, and the log is compacted once evicted records take
+ * more room than live ones.
+ * <p>
+ * Paths and revisions identify objects only within one repository, so the log
+ * and the index start with the UUID and root URL of the repository the cache
+ * was filled from. A cache found to be written for another repository is
+ * discarded when it is opened.
+ */
+public class DiskObjectCache implements ObjectCache, Closeable {
+
+	private static final Log LOG = LogFactory.getLog(DiskObjectCache.class);
+
+	private static final int INDEX_MAGIC = 0x6a766e63;
+	private static final int INDEX_FORMAT = 2;
+	private static final int LOG_MAGIC = 0x6a766e6c;
+	private static final int LOG_FORMAT = 1;
+
+	protected final File directory;
+	protected final File logFile;
+	protected final File indexFile;
+	protected final long maxBytes;
+	protected final byte[] header;
+	protected final LinkedHashMap<LruObjectCache.Key, Location> index =
+			new LinkedHashMap<LruObjectCache.Key, Location>(16, 0.75f, true);
+	protected FileChannel log;
+	protected long logSize;
+	protected long liveBytes;
+	protected long hits;
+	protected long misses;
+	protected long evictions;
+	protected long corrupt;
+	protected boolean closed;
+
+	/**
+	 * Opens the cache of a store's repository in a directory, creating it if needed.
+	 * @param maxBytes Maximum total size of the cached records
+	 */
+	public DiskObjectCache(File directory, long maxBytes, SvnStore svnStore) throws IOException {
+		this(directory, maxBytes, svnStore.getRepositoryUuid(), svnStore.getRepositoryRoot());
+	}
+
+	/**
+	 * Opens the cache in a directory, creating it if needed. A cache written for
+	 * another repository is discarded.
+	 * @param maxBytes Maximum total size of the cached records
+	 * @param repositoryUuid UUID of the repository objects are fetched from
+	 * @param repositoryRoot Root URL of that repository
+	 */
+	public DiskObjectCache(File directory, long maxBytes, String repositoryUuid, String repositoryRoot) 
+			throws IOException {
+		this.directory = directory;
+		this.logFile = new File(directory, "objects.log");
+		this.indexFile = new File(directory, "objects.idx");
+		this.maxBytes = maxBytes;
+		this.header = encodeHeader(repositoryUuid, repositoryRoot);
+		if (! directory.isDirectory() && ! directory.mkdirs()) {
+			throw new IOException("Cannot create cache directory " + directory);
+		}
+		this.log = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		checkHeader();
+		recover(loadIndex());
+	}
+
+	/**
+	 * Looks up the record under the monitor but reads it outside, since positional
+	 * reads of a FileChannel are safe to run concurrently. A read that overlaps a
+	 * compaction finds the old log closed and is retried on the new one.
+	 */
+	public FetchedObject get(String path, long revision) {
+		LruObjectCache.Key key = new LruObjectCache.Key(path, revision);
+		while (true) {
+			FileChannel channel;
+			Location location;
+			long offset;
+			synchronized (this) {
+				if (closed) {
+					return null;
+				}
+				location = index.get(key);
+				if (location == null) {
+					misses++;
+					return null;
+				}
+				channel = log;
+				offset = location.offset;
+			}
+			FetchedObject object = null;
+			boolean closedWhileReading = false;
+			try {
+				ByteBuffer record = ByteBuffer.allocate(location.length);
+				readFully(channel, record, offset);
+				record.flip();
+				object = decode(record, key);
+			} catch (ClosedChannelException e) {
+				closedWhileReading = true;
+			} catch (IOException e) {
+				LOG.warn("Could not read cached " + path + "@" + revision, e);
+			} catch (RuntimeException e) {
+				// A record that passed its checksum but does not parse
+			}
+			synchronized (this) {
+				if (closedWhileReading && ! closed && log != channel) {
+					continue;
+				}
+				if (object != null) {
+					hits++;
+					return object;
+				}
+				misses++;
+				// Unless the record was cleared or replaced while it was read
+				if (! closedWhileReading && log == channel && index.get(key) == location && location.offset == offset) {
+					corrupt++;
+					remove(key);
+				}
+				return null;
+			}
+		}
+	}
+
+	public synchronized void put(String path, long revision, FetchedObject object) {
+		if (object.isSpooled() || closed) {
+			return;
+		}
+		LruObjectCache.Key key = new LruObjectCache.Key(path, revision);
+		if (index.containsKey(key)) {
+			return;
+		}
+		try {
+			byte[] record = encode(key, object);
+			if (record.length > maxBytes) {
+				return;
+			}
+			long offset = logSize;
+			ByteBuffer buffer = ByteBuffer.wrap(record);
+			while (buffer.hasRemaining()) {
+				log.write(buffer, offset + buffer.position());
+			}
+			logSize += record.length;
+			index.put(key, new Location(offset, record.length));
+			liveBytes += record.length;
+			evict();
+			if (logSize - liveBytes > Math.max(liveBytes, maxBytes / 4)) {
+				compact();
+			}
+		} catch (IOException e) {
+			LOG.warn("Could not cache " + path + "@" + revision, e);
+		}
+	}
+
+	protected void evict() {
+		Iterator<Map.Entry<LruObjectCache.Key, Location>> it = index.entrySet().iterator();
+		while (liveBytes > maxBytes && it.hasNext()) {
+			liveBytes -= it.next().getValue().length;
+			it.remove();
+			evictions++;
+		}
+	}
+
+	protected void remove(LruObjectCache.Key key) {
+		Location location = index.remove(key);
+		if (location != null) {
+			liveBytes -= location.length;
+		}
+	}
+
+	public synchronized void clear() {
+		index.clear();
+		liveBytes = 0;
+		indexFile.delete();
+		if (closed) {
+			logFile.delete();
+			return;
+		}
+		try {
+			writeHeader(log);
+		} catch (IOException e) {
+			LOG.warn("Could not truncate " + logFile, e);
+		}
+	}
+
+	public synchronized CacheStats getStats() {
+		return new CacheStats(hits, misses, evictions, index.size(), liveBytes);
+	}
+
+	/**
+	 * @return Number of records dropped because they failed their checksum
+	 */
+	public synchronized long getCorruptCount() {
+		return corrupt;
+	}
+
+	/**
+	 * @return Size of the log file, including evicted records not yet compacted away
+	 */
+	public synchronized long getLogSize() {
+		return logSize;
+	}
+
+	/**
+	 * Rewrites the log with only the live records, in least recently used order.
+	 */
+	public synchronized void compact() throws IOException {
+		if (closed) {
+			throw new IOException("Cache in " + directory + " is closed");
+		}
+		File compacted = new File(directory, "objects.log.tmp");
+		FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		long size = header.length;
+		try {
+			writeHeader(out);
+			for (Location location : index.values()) {
+				long copied = 0;
+				while (copied < location.length) {
+					copied += log.transferTo(location.offset + copied, location.length - copied, out);
+				}
+				location.offset = size;
+				size += location.length;
+			}
+		} finally {
+			out.close();
+		}
+		log.close();
+		Files.move(compacted.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		log = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		logSize = size;
+		indexFile.delete();
+	}
+
+	/**
+	 * Writes the index so the next start does not have to scan the log, and
+	 * closes the log.
+	 */
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			File temp = new File(directory, "objects.idx.tmp");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(INDEX_MAGIC);
+				out.writeInt(INDEX_FORMAT);
+				writeBytes(out, header);
+				out.writeLong(logSize);
+				out.writeInt(index.size());
+				for (Map.Entry<LruObjectCache.Key, Location> entry : index.entrySet()) {
+					writeBytes(out, entry.getKey().path.getBytes(StandardCharsets.UTF_8));
+					out.writeLong(entry.getKey().revision);
+					out.writeLong(entry.getValue().offset);
+					out.writeInt(entry.getValue().length);
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			log.close();
+			log = null;
+		}
+	}
+
+	/**
+	 * Starts an empty log with the header of this cache's repository, or discards
+	 * a log that was written for another repository or in another format.
+	 */
+	protected void checkHeader() throws IOException {
+		long size = log.size();
+		if (size >= header.length) {
+			ByteBuffer existing = ByteBuffer.allocate(header.length);
+			readFully(log, existing, 0);
+			if (Arrays.equals(existing.array(), header)) {
+				return;
+			}
+		}
+		if (size > 0) {
+			LOG.warn("Discarding cache in " + directory + ", it was not written for this repository");
+		}
+		indexFile.delete();
+		writeHeader(log);
+	}
+
+	/**
+	 * Truncates a log to its header, leaving the channel positioned after it.
+	 */
+	protected void writeHeader(FileChannel channel) throws IOException {
+		channel.truncate(0);
+		ByteBuffer buffer = ByteBuffer.wrap(header);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, buffer.position());
+		}
+		channel.position(header.length);
+		if (channel == log) {
+			logSize = header.length;
+		}
+	}
+
+	protected static byte[] encodeHeader(String repositoryUuid, String repositoryRoot) throws IOException {
+		if (repositoryUuid == null || repositoryRoot == null) {
+			throw new IllegalArgumentException("Repository UUID and root are required");
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(baos);
+		out.writeInt(LOG_MAGIC);
+		out.writeInt(LOG_FORMAT);
+		writeBytes(out, repositoryUuid.getBytes(StandardCharsets.UTF_8));
+		writeBytes(out, repositoryRoot.getBytes(StandardCharsets.UTF_8));
+		out.flush();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Loads the index written by the last close.
+	 * @return Length of the log the index covers, 0 if there is no usable index
+	 */
+	protected long loadIndex() throws IOException {
+		if (! indexFile.exists()) {
+			return 0;
+		}
+		FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+		try {
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.remaining() < 8 || in.getInt() != INDEX_MAGIC || in.getInt() != INDEX_FORMAT
+					|| ! Arrays.equals(readBytes(in), header)) {
+				return 0;
+			}
+			long covered = in.getLong();
+			if (covered > log.size()) {
+				// The log was truncated behind the index's back
+				return 0;
+			}
+			for (int count = in.getInt(); count > 0; count--) {
+				byte[] path = new byte[in.getInt()];
+				in.get(path);
+				LruObjectCache.Key key = new LruObjectCache.Key(new String(path, StandardCharsets.UTF_8), in.getLong());
+				Location location = new Location(in.getLong(), in.getInt());
+				index.put(key, location);
+				liveBytes += location.length;
+			}
+			return covered;
+		} catch (RuntimeException e) {
+			LOG.warn("Ignoring unreadable cache index " + indexFile, e);
+			index.clear();
+			liveBytes = 0;
+			return 0;
+		} finally {
+			channel.close();
+			// A stale index must not be trusted once the log grows again
+			indexFile.delete();
+		}
+	}
+
+	/**
+	 * Indexes the records after a position of the log and cuts off a torn or
+	 * corrupt tail.
+	 */
+	protected void recover(long from) throws IOException {
+		long size = log.size();
+		long position = Math.max(from, header.length);
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		while (position + 4 <= size) {
+			lengthBuffer.clear();
+			readFully(log, lengthBuffer, position);
+			int length = lengthBuffer.getInt(0);
+			if (length < 16 || position + length > size) {
+				break;
+			}
+			ByteBuffer record = ByteBuffer.allocate(length);
+			readFully(log, record, position);
+			record.flip();
+			LruObjectCache.Key key = decodeKey(record);
+			if (key == null) {
+				break;
+			}
+			remove(key);
+			index.put(key, new Location(position, length));
+			liveBytes += length;
+			position += length;
+		}
+		if (position < size) {
+			LOG.warn("Cutting off " + (size - position) + " unreadable bytes at the end of " + logFile);
+			log.truncate(position);
+		}
+		logSize = position;
+		evict();
+	}
+
+	private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of " + logFile);
+			}
+		}
+	}
+
+	/**
+	 * Record layout: length, CRC32 of what follows it, path, revision, property
+	 * count, properties as name, kind and value, then the content.
+	 */
+	protected static byte[] encode(LruObjectCache.Key key, FetchedObject object) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(256 + (object.getContent() == null ? 0
+				: object.getContent().length));
+		DataOutputStream out = new DataOutputStream(baos);
+		out.writeInt(0);
+		out.writeInt(0);
+		writeBytes(out, key.path.getBytes(StandardCharsets.UTF_8));
+		out.writeLong(key.revision);
+		SVNProperties properties = object.getProperties();
+		int count = 0;
+		for (Iterator<?> it = properties.nameSet().iterator(); it.hasNext(); ) {
+			if (properties.getSVNPropertyValue((String) it.next()) != null) {
+				count++;
+			}
+		}
+		out.writeInt(count);
+		for (Iterator<?> it = properties.nameSet().iterator(); it.hasNext(); ) {
+			String name = (String) it.next();
+			SVNPropertyValue value = properties.getSVNPropertyValue(name);
+			if (value == null) {
+				continue;
+			}
+			writeBytes(out, name.getBytes(StandardCharsets.UTF_8));
+			out.writeBoolean(value.isString());
+			writeBytes(out, SVNPropertyValue.getPropertyAsBytes(value));
+		}
+		out.writeLong(object.getRevision());
+		if (object.getContent() == null) {
+			out.writeInt(-1);
+		} else {
+			writeBytes(out, object.getContent());
+		}
+		out.flush();
+		ByteBuffer record = ByteBuffer.wrap(baos.toByteArray());
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 8, record.limit() - 8);
+		record.putInt(0, record.limit());
+		record.putInt(4, (int) crc.getValue());
+		return record.array();
+	}
+
+	/**
+	 * @return Object of a record, or null if its checksum does not match or it
+	 *  is not the record of the expected path and revision
+	 */
+	protected static FetchedObject decode(ByteBuffer record, LruObjectCache.Key expected) {
+		LruObjectCache.Key key = decodeKey(record);
+		if (key == null || ! key.equals(expected)) {
+			return null;
+		}
+		SVNProperties properties = new SVNProperties();
+		for (int count = record.getInt(); count > 0; count--) {
+			String name = new String(readBytes(record), StandardCharsets.UTF_8);
+			boolean isString = record.get() != 0;
+			byte[] value = readBytes(record);
+			if (isString) {
+				properties.put(name, new String(value, StandardCharsets.UTF_8));
+			} else {
+				properties.put(name, value);
+			}
+		}
+		long fetchedRevision = record.getLong();
+		int length = record.getInt();
+		byte[] content = null;
+		if (length >= 0) {
+			content = new byte[length];
+			record.get(content);
+		}
+		return new FetchedObject(key.path, fetchedRevision, properties, content);
+	}
+
+	/**
+	 * Checks a whole record and reads its key, leaving the buffer after it.
+	 * @return Key of the record, or null if its checksum does not match
+	 */
+	private static LruObjectCache.Key decodeKey(ByteBuffer record) {
+		int length = record.getInt();
+		int checksum = record.getInt();
+		if (length != record.limit()) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 8, length - 8);
+		if ((int) crc.getValue() != checksum) {
+			return null;
+		}
+		String path = new String(readBytes(record), StandardCharsets.UTF_8);
+		return new LruObjectCache.Key(path, record.getLong());
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return bytes;
+	}
+
+	protected static final class Location {
+		long offset;
+		final int length;
+
+		Location(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Element files of SvnCollections received in a directory checkout, kept by
+ * collection directory until the object owning them has been received too, so
+ * the object can be read without fetching its collections again.
+ */
+class ElementFiles {
+
+	protected final Map<String, Map<String, FetchedObject>> byDirectory = new HashMap<String, Map<String, FetchedObject>>();
+
+	/**
+	 * Keeps an element file. Spooled text is read into memory, as elements are
+	 * decoded from bytes.
+	 */
+	void add(FetchedObject element) throws IOException {
+		if (element.isSpooled()) {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			InputStream in = element.openContent();
+			try {
+				StreamSerializers.copy(in, content);
+			} finally {
+				in.close();
+			}
+			element = new FetchedObject(element.getPath(), element.getRevision(), element.getProperties(),
+					content.toByteArray());
+		}
+		String path = element.getPath();
+		String directory = Utils.getParentPath(path);
+		Map<String, FetchedObject> files = byDirectory.get(directory);
+		if (files == null) {
+			files = new HashMap<String, FetchedObject>();
+			byDirectory.put(directory, files);
+		}
+		files.put(path.substring(directory.length() + 1), element);
+	}
+
+	/**
+	 * @return true if every element listed by the manifests of an object has been received
+	 */
+	boolean isComplete(FetchedObject owner, List<StorableField> collections) {
+		for (StorableField collection : collections) {
+			String value = owner.getProperties().getStringValue(collection.getManifestPropertyName());
+			if (value == null) {
+				continue;
+			}
+			CollectionManifest manifest = CollectionManifest.parse(value);
+			Map<String, FetchedObject> files = byDirectory.get(collection.getCollectionPath(owner.getPath()));
+			for (int i = 0; i < manifest.size(); i++) {
+				if (files == null || ! files.containsKey(manifest.getName(i))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the element files of an object's collections.
+	 * @return Element files by collection directory and file name
+	 */
+	Map<String, Map<String, FetchedObject>> take(FetchedObject owner, List<StorableField> collections) {
+		Map<String, Map<String, FetchedObject>> taken = new HashMap<String, Map<String, FetchedObject>>();
+		for (StorableField collection : collections) {
+			String directory = collection.getCollectionPath(owner.getPath());
+			Map<String, FetchedObject> files = byDirectory.remove(directory);
+			taken.put(directory, files == null ? new HashMap<String, FetchedObject>() : files);
+		}
+		return taken;
+	}
+
+	/**
+	 * Drops the element files of an object that is not read.
+	 */
+	void drop(String ownerPath) {
+		String prefix = ownerPath + Utils.COLLECTION_MARKER;
+		for (Iterator<String> it = byDirectory.keySet().iterator(); it.hasNext(); ) {
+			if (it.next().startsWith(prefix)) {
+				it.remove();
+			}
+		}
+	}
+
+	void clear() {
+		byDirectory.clear();
+	}
+}
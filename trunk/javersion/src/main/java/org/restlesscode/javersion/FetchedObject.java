@@ -0,0 +1,123 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+
+/**
+ * The file text and properties of a stored object as fetched from SVN at a
+ * concrete revision. Since a revision never changes, fetched objects can be
+ * cached and deserialized any number of times.
+ */
+public class FetchedObject {
+
+	protected final String path;
+	protected final long revision;
+	protected final SVNProperties properties;
+	protected final byte[] content;
+	protected final SpoolOutputStream spool;
+	private long weight = -1;
+
+	/**
+	 * @param path Path of the object relative to SVN root
+	 * @param revision Revision the object was fetched at
+	 * @param properties SVN properties of the file
+	 * @param content File text
+	 */
+	public FetchedObject(String path, long revision, SVNProperties properties, byte[] content) {
+		this.path = Utils.normalizePath(path);
+		this.revision = revision;
+		this.properties = properties;
+		this.content = content;
+		this.spool = null;
+	}
+
+	/**
+	 * Creates a fetched object whose text was collected by a spool rather than
+	 * kept as a byte array. Such objects are read once and never cached.
+	 */
+	FetchedObject(String path, long revision, SVNProperties properties, SpoolOutputStream spool) {
+		this.path = Utils.normalizePath(path);
+		this.revision = revision;
+		this.properties = properties;
+		this.content = null;
+		this.spool = spool;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getRevision() {
+		return revision;
+	}
+
+	public SVNProperties getProperties() {
+		return properties;
+	}
+
+	/**
+	 * @return File text, null if the text was spooled
+	 */
+	public byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * @return true if the text was spooled and can only be read through {@link #openContent()}
+	 */
+	public boolean isSpooled() {
+		return spool != null;
+	}
+
+	/**
+	 * Releases the spool of an object that will not be read.
+	 */
+	void discard() throws IOException {
+		if (spool != null) {
+			spool.discard();
+		}
+	}
+
+	/**
+	 * Opens the file text as a stream. Spooled text can be opened only once.
+	 */
+	public InputStream openContent() throws IOException {
+		if (spool != null) {
+			return spool.openStream();
+		}
+		return new ByteArrayInputStream(content == null ? new byte[0] : content);
+	}
+
+	/**
+	 * @return Approximate number of bytes held by this object
+	 */
+	public long getWeight() {
+		if (weight < 0) {
+			weight = computeWeight();
+		}
+		return weight;
+	}
+
+	protected long computeWeight() {
+		long weight = 64 + path.length() * 2 + (content == null ? 0 : content.length);
+		for (Iterator<?> it = properties.nameSet().iterator(); it.hasNext(); ) {
+			String name = (String) it.next();
+			weight += name.length() * 2;
+			SVNPropertyValue value = properties.getSVNPropertyValue(name);
+			if (value == null) {
+				continue;
+			}
+			if (value.isString()) {
+				weight += value.getString().length() * 2;
+			} else if (value.getBytes() != null) {
+				weight += value.getBytes().length;
+			}
+		}
+		return weight;
+	}
+}
@@ -0,0 +1,145 @@
+package org.restlesscode.javersion;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+
+/**
+ * Remembers a fingerprint of the last written or read state of files, the MD5 of
+ * the text and a digest of every property, so that writes can tell which parts
+ * of an object changed without fetching it. Commits send only what differs from
+ * the fingerprint and open the file at the fingerprint's revision, so a stale
+ * fingerprint makes the commit fail as out of date rather than lose an update.
+ */
+public class FingerprintCache {
+
+	protected final int maxEntries;
+	protected final Map<String, Fingerprint> fingerprints;
+
+	/**
+	 * @param maxEntries Maximum number of fingerprints remembered, least recently
+	 *  used ones are forgotten first
+	 */
+	public FingerprintCache(final int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.fingerprints = new LinkedHashMap<String, Fingerprint>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Fingerprint> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public synchronized Fingerprint get(String path) {
+		return fingerprints.get(Utils.normalizePath(path));
+	}
+
+	/**
+	 * Records the fingerprint of a file, unless one of a later revision is already known.
+	 */
+	public synchronized void put(String path, Fingerprint fingerprint) {
+		path = Utils.normalizePath(path);
+		Fingerprint previous = fingerprints.get(path);
+		if (previous == null || previous.revision <= fingerprint.revision) {
+			fingerprints.put(path, fingerprint);
+		}
+	}
+
+	public synchronized void remove(String path) {
+		fingerprints.remove(Utils.normalizePath(path));
+	}
+
+	public synchronized void clear() {
+		fingerprints.clear();
+	}
+
+	public synchronized int size() {
+		return fingerprints.size();
+	}
+
+	/**
+	 * Digests of the text and properties of a file at a revision.
+	 */
+	public static class Fingerprint {
+		protected final long revision;
+		protected final String contentChecksum;
+		protected final Map<String, String> propertyDigests;
+
+		/**
+		 * @param revision Revision the state was seen at
+		 * @param contentChecksum Hex MD5 of the text, null if unknown
+		 * @param propertyDigests Digest of each property value by property name
+		 */
+		public Fingerprint(long revision, String contentChecksum, Map<String, String> propertyDigests) {
+			this.revision = revision;
+			this.contentChecksum = contentChecksum;
+			this.propertyDigests = Collections.unmodifiableMap(propertyDigests);
+		}
+
+		/**
+		 * Fingerprints an object about to be committed.
+		 */
+		public static Fingerprint of(SerializedObject o, long revision, String contentChecksum) {
+			return new Fingerprint(revision, contentChecksum, digests(o.getProperties()));
+		}
+
+		/**
+		 * Fingerprints the properties of a fetched file, leaving out the svn:
+		 * properties SVN adds itself.
+		 */
+		public static Fingerprint of(SVNProperties properties, long revision, String contentChecksum) {
+			Map<String, SVNPropertyValue> regular = new HashMap<String, SVNPropertyValue>();
+			for (Iterator<?> it = properties.nameSet().iterator(); it.hasNext(); ) {
+				String name = (String) it.next();
+				if (SVNProperty.isRegularProperty(name)) {
+					regular.put(name, properties.getSVNPropertyValue(name));
+				}
+			}
+			return new Fingerprint(revision, contentChecksum, digests(regular));
+		}
+
+		public long getRevision() {
+			return revision;
+		}
+
+		public String getContentChecksum() {
+			return contentChecksum;
+		}
+
+		public Map<String, String> getPropertyDigests() {
+			return propertyDigests;
+		}
+
+		protected static Map<String, String> digests(Map<String, SVNPropertyValue> properties) {
+			Map<String, String> digests = new HashMap<String, String>();
+			for (Map.Entry<String, SVNPropertyValue> property : properties.entrySet()) {
+				if (property.getValue() != null) {
+					digests.put(property.getKey(), digest(property.getValue()));
+				}
+			}
+			return digests;
+		}
+
+		/**
+		 * @return MD5 of the bytes of a property value, which are the same whether
+		 *  SVN hands the value back as a string or as binary
+		 */
+		protected static String digest(SVNPropertyValue value) {
+			try {
+				return Utils.toHex(MessageDigest.getInstance("MD5").digest(SVNPropertyValue.getPropertyAsBytes(value)));
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
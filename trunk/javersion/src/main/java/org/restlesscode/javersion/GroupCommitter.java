@@ -0,0 +1,199 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Merges objects written concurrently into shared commits. Writers enqueue a
+ * serialized object and get a future; a single committer thread takes whatever
+ * has accumulated, up to a count, byte and latency limit, and commits it as one
+ * revision. Each future completes with the revision that included its object,
+ * or -1 if the object was unchanged.
+ */
+public class GroupCommitter {
+
+	private static final Log LOG = LogFactory.getLog(GroupCommitter.class);
+
+	/**
+	 * Queued by shutdown after every accepted object, ends the commit loop.
+	 */
+	private static final Pending STOP = new Pending(null, null);
+
+	protected final SvnStore svnStore;
+	protected final int maxObjects;
+	protected final long maxBytes;
+	protected final long maxLatencyMillis;
+	protected final BlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>();
+	protected final Thread committerThread;
+	protected final Object lock = new Object();
+	protected boolean running = true;
+
+	/**
+	 * @param svnStore Store to commit into
+	 * @param maxObjects Maximum number of objects in one commit
+	 * @param maxBytes Commit is started once this many serialized bytes are queued
+	 * @param maxLatencyMillis Time to wait for more objects after the first one of a
+	 *  commit arrives, 0 to commit whatever is queued right away
+	 */
+	public GroupCommitter(SvnStore svnStore, int maxObjects, long maxBytes, long maxLatencyMillis) {
+		if (maxObjects < 1) {
+			throw new IllegalArgumentException("maxObjects must be at least 1");
+		}
+		this.svnStore = svnStore;
+		this.maxObjects = maxObjects;
+		this.maxBytes = maxBytes;
+		this.maxLatencyMillis = maxLatencyMillis;
+		this.committerThread = new Thread(new Runnable() {
+			public void run() {
+				commitLoop();
+			}
+		}, "javersion-group-commit");
+		committerThread.setDaemon(true);
+		committerThread.start();
+	}
+
+	/**
+	 * Queues an object for the next group commit.
+	 * @return Future completed with the result of the commit that included the object
+	 */
+	public CompletableFuture<WriteResult> submit(SerializedObject object) {
+		CompletableFuture<WriteResult> future = new CompletableFuture<WriteResult>();
+		synchronized (lock) {
+			if (running) {
+				queue.add(new Pending(object, future));
+				return future;
+			}
+		}
+		future.completeExceptionally(new IOException("Group commit has been shut down"));
+		return future;
+	}
+
+	/**
+	 * Stops accepting objects, commits what is queued and stops the committer thread.
+	 */
+	public void shutdown() throws InterruptedException {
+		synchronized (lock) {
+			if (running) {
+				running = false;
+				// Nothing is queued after this, so the committer gets to everything before it
+				queue.add(STOP);
+			}
+		}
+		committerThread.join();
+	}
+
+	protected void commitLoop() {
+		Pending carry = null;
+		boolean stopping = false;
+		while (! stopping || carry != null) {
+			List<Pending> group = new ArrayList<Pending>();
+			Set<String> paths = new HashSet<String>();
+			long bytes = 0;
+			try {
+				Pending first = carry;
+				carry = null;
+				if (first == null) {
+					first = queue.take();
+					if (first == STOP) {
+						break;
+					}
+				}
+				group.add(first);
+				paths.add(first.object.getPath());
+				bytes += first.object.getSize();
+
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+				while (group.size() < maxObjects && bytes < maxBytes) {
+					long wait = deadline - System.nanoTime();
+					Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+					if (next == null) {
+						break;
+					}
+					if (next == STOP) {
+						stopping = true;
+						break;
+					}
+					if (! paths.add(next.object.getPath())) {
+						// A path can only appear once per commit, later writes go in the next one
+						carry = next;
+						break;
+					}
+					group.add(next);
+					bytes += next.object.getSize();
+				}
+			} catch (InterruptedException e) {
+				// Not interrupted by shutdown, keep committing until it queues STOP
+			}
+			if (! group.isEmpty()) {
+				commitGroup(group);
+			}
+		}
+		failRemaining();
+	}
+
+	/**
+	 * Fails anything still queued once the committer stops, so no writer waits forever.
+	 */
+	protected void failRemaining() {
+		Pending p;
+		while ((p = queue.poll()) != null) {
+			if (p != STOP) {
+				p.future.completeExceptionally(new IOException("Group commit has been shut down"));
+			}
+		}
+	}
+
+	protected void commitGroup(List<Pending> group) {
+		List<SerializedObject> objects = new ArrayList<SerializedObject>(group.size());
+		for (Pending p : group) {
+			objects.add(p.object);
+		}
+		try {
+			complete(group, svnStore.commit("Saving " + objects.size() + " objects", objects));
+		} catch (IOException e) {
+			if (group.size() == 1) {
+				group.get(0).future.completeExceptionally(e);
+				return;
+			}
+			// Commit the objects one by one so a bad object only fails its own writer
+			LOG.warn("Group commit of " + group.size() + " objects failed, committing individually", e);
+			for (Pending p : group) {
+				commitGroup(Collections.singletonList(p));
+			}
+		}
+	}
+
+	/**
+	 * Completes each future with the outcome of its own object. An object the
+	 * commit left alone gets revision -1, as it would have written directly.
+	 */
+	protected void complete(List<Pending> group, WriteResult result) {
+		for (Pending p : group) {
+			String path = p.object.getPath();
+			WriteResult.Outcome outcome = result.getOutcome(path);
+			long revision = outcome == null || outcome == WriteResult.Outcome.UNCHANGED ? -1 : result.getRevision();
+			p.future.complete(new WriteResult(revision, Collections.singletonMap(path, outcome)));
+		}
+	}
+
+	protected static class Pending {
+		final SerializedObject object;
+		final CompletableFuture<WriteResult> future;
+
+		Pending(SerializedObject object, CompletableFuture<WriteResult> future) {
+			this.object = object;
+			this.future = future;
+		}
+	}
+}
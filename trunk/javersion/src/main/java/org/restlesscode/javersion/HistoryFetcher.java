@@ -0,0 +1,119 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Iterator;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.io.ISVNFileRevisionHandler;
+import org.tmatesoft.svn.core.io.SVNFileRevision;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Fetches every version of a file in a single getFileRevisions exchange. The
+ * server sends each version as a delta against the previous one, which is
+ * applied to the previous text here, so only the changes of each revision are
+ * transferred. Each version is handed to {@link #fetched} as soon as it is complete,
+ * with the path the file had in that revision, which differs from the path asked
+ * for in revisions before the file was copied or moved there.
+ */
+abstract class HistoryFetcher implements ISVNFileRevisionHandler {
+
+	protected final SVNDeltaProcessor deltaProcessor = new SVNDeltaProcessor();
+	protected String path;
+	protected String location;
+	protected String versionPath;
+	protected SVNProperties properties = new SVNProperties();
+	protected byte[] content = new byte[0];
+	protected ByteArrayOutputStream nextContent;
+	protected long revision;
+	protected String author;
+	protected Date date;
+
+	/**
+	 * Runs the exchange.
+	 * @param path File relative to the session location
+	 * @param fromRevision First revision, the version current at that revision is included
+	 * @param toRevision Last revision, -1 for HEAD
+	 */
+	void fetch(SVNRepository repository, String path, long fromRevision, long toRevision) throws SVNException {
+		this.path = Utils.normalizePath(path);
+		this.location = repository.getRepositoryPath("");
+		repository.getFileRevisions(this.path, fromRevision, toRevision, this);
+	}
+
+	/**
+	 * Called for every version in revision order.
+	 * @param object Version of the file; its path is relative to the session
+	 *  location, or starts with a slash and is relative to the repository root if
+	 *  the file was outside the location in that revision
+	 */
+	protected abstract void fetched(FetchedObject object, String author, Date date) throws SVNException;
+
+	public void openRevision(SVNFileRevision fileRevision) throws SVNException {
+		revision = fileRevision.getRevision();
+		versionPath = relativePath(fileRevision.getPath());
+		SVNProperties revisionProperties = fileRevision.getRevisionProperties();
+		author = revisionProperties.getStringValue(SVNRevisionProperty.AUTHOR);
+		String dateValue = revisionProperties.getStringValue(SVNRevisionProperty.DATE);
+		// svn:date is ISO 8601 in UTC with microseconds
+		date = dateValue == null ? null : Date.from(Instant.parse(dateValue));
+
+		// Properties arrive as changes against the previous version
+		SVNProperties next = new SVNProperties(properties);
+		SVNProperties delta = fileRevision.getPropertiesDelta();
+		for (Iterator<?> it = delta.nameSet().iterator(); it.hasNext(); ) {
+			String name = (String) it.next();
+			SVNPropertyValue value = delta.getSVNPropertyValue(name);
+			if (value == null) {
+				next.remove(name);
+			} else {
+				next.put(name, value);
+			}
+		}
+		properties = next;
+	}
+
+	public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+		nextContent = new ByteArrayOutputStream(content.length);
+		deltaProcessor.applyTextDelta(new ByteArrayInputStream(content), nextContent, false);
+	}
+
+	public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+		return deltaProcessor.textDeltaChunk(diffWindow);
+	}
+
+	public void textDeltaEnd(String path) throws SVNException {
+		deltaProcessor.textDeltaEnd();
+		content = nextContent.toByteArray();
+		nextContent = null;
+	}
+
+	public void closeRevision(String token) throws SVNException {
+		// A revision that changed only properties leaves the text as it was
+		fetched(new FetchedObject(versionPath, revision, properties, content), author, date);
+	}
+
+	/**
+	 * @return A repository path relative to the session location, or as it is if
+	 *  it is outside the location
+	 */
+	protected String relativePath(String repositoryPath) {
+		if (repositoryPath == null) {
+			return path;
+		}
+		String prefix = location.endsWith("/") ? location : location + "/";
+		if (! repositoryPath.startsWith(prefix)) {
+			return repositoryPath;
+		}
+		return Utils.normalizePath(repositoryPath.substring(prefix.length()));
+	}
+}
@@ -0,0 +1,37 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Codec using java serialization, which can store any Serializable value. Fields
+ * written by it carry no codec property, as before codecs existed.
+ */
+public class JavaSerializationCodec implements BinaryCodec {
+
+	public static final String NAME = "java";
+
+	public String getName() {
+		return NAME;
+	}
+
+	public byte[] encode(Object o) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(o);
+		oos.flush();
+		return baos.toByteArray();
+	}
+
+	public Object decode(byte[] bytes, Class<?> type) throws IOException {
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+}
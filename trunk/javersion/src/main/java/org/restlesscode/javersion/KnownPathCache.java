@@ -0,0 +1,77 @@
+package org.restlesscode.javersion;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNNodeKind;
+
+/**
+ * Remembers which directories and files are known to exist in the repository so
+ * that commits can skip checkPath round trips. Entries are learned from checkPath
+ * results and from commits made through the store. Only existence is recorded;
+ * the cache is cleared whenever a commit fails because the repository changed
+ * behind its back.
+ */
+public class KnownPathCache {
+
+	protected final int maxEntries;
+	protected final Map<String, SVNNodeKind> kinds;
+
+	/**
+	 * @param maxEntries Maximum number of paths remembered, least recently used
+	 *  paths are forgotten first
+	 */
+	public KnownPathCache(final int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.kinds = new LinkedHashMap<String, SVNNodeKind>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SVNNodeKind> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return DIR or FILE if the path is known to exist, null otherwise
+	 */
+	public synchronized SVNNodeKind get(String path) {
+		return kinds.get(path);
+	}
+
+	/**
+	 * Records that a path exists. NONE is ignored since a missing path may be
+	 * created by someone else at any time.
+	 */
+	public synchronized void put(String path, SVNNodeKind kind) {
+		if (kind == SVNNodeKind.DIR || kind == SVNNodeKind.FILE) {
+			kinds.put(path, kind);
+		}
+	}
+
+	/**
+	 * Records that a file exists, which implies that all its parents are directories.
+	 */
+	public synchronized void putFile(String path) {
+		kinds.put(path, SVNNodeKind.FILE);
+		for (String p = Utils.getParentPath(path); p.length() > 0; p = Utils.getParentPath(p)) {
+			kinds.put(p, SVNNodeKind.DIR);
+		}
+	}
+
+	/**
+	 * Forgets a path that was deleted.
+	 */
+	public synchronized void remove(String path) {
+		kinds.remove(path);
+	}
+
+	public synchronized void clear() {
+		kinds.clear();
+	}
+
+	public synchronized int size() {
+		return kinds.size();
+	}
+}
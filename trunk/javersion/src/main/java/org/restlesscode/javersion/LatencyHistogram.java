@@ -0,0 +1,99 @@
+package org.restlesscode.javersion;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies in buckets growing by powers of two, each split in
+ * SUB_BUCKETS linear steps, so percentiles are accurate to within about 12%
+ * from a nanosecond to hours. Recording is lock free and allocates nothing.
+ */
+public class LatencyHistogram {
+
+	protected static final int SUB_BUCKET_BITS = 3;
+	protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	protected final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+	protected final LongAdder count = new LongAdder();
+	protected final LongAdder totalNanos = new LongAdder();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucket(nanos));
+		count.increment();
+		totalNanos.add(nanos);
+	}
+
+	protected static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) - SUB_BUCKETS);
+	}
+
+	/**
+	 * @return Highest latency counted in a bucket
+	 */
+	protected static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long low = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return low + (1L << shift) - 1;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	/**
+	 * @return Mean latency in nanoseconds, 0 if nothing was recorded
+	 */
+	public long getMeanNanos() {
+		long n = count.sum();
+		return n == 0 ? 0 : totalNanos.sum() / n;
+	}
+
+	/**
+	 * @param quantile Between 0 and 1, such as 0.99
+	 * @return Latency in nanoseconds that the quantile of recorded latencies
+	 *  do not exceed, 0 if nothing was recorded
+	 */
+	public long getPercentileNanos(double quantile) {
+		if (quantile < 0 || quantile > 1) {
+			throw new IllegalArgumentException("quantile must be between 0 and 1");
+		}
+		long[] snapshot = new long[counts.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(snapshot.length - 1);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%dns p50=%dns p99=%dns", getCount(), getMeanNanos(),
+				getPercentileNanos(0.5), getPercentileNanos(0.99));
+	}
+}
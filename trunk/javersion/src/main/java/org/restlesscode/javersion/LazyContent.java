@@ -0,0 +1,99 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Holder for the SvnContent of an object that is fetched on first use. Declare
+ * the content getter and setter with this type, as in
+ * <pre>
+ * &#64;SvnContent
+ * public LazyContent&lt;String&gt; getBody() { return body; }
+ * public void setBody(LazyContent&lt;String&gt; body) { this.body = body; }
+ * </pre>
+ * and the content is stored exactly as a plain String field would be. Objects
+ * read with {@link SvnObjectReader#readProperties(String, long, Class)} get a
+ * holder that fetches the content from the revision the properties were read at,
+ * so the object stays consistent whatever is committed in between.
+ */
+public class LazyContent<T> {
+
+	private SvnObjectReader reader;
+	private String path;
+	private long revision;
+	private StorableField field;
+	private T value;
+	private volatile boolean loaded;
+
+	/**
+	 * @return A holder of content that is already in memory
+	 */
+	public static <T> LazyContent<T> of(T value) {
+		LazyContent<T> content = new LazyContent<T>();
+		content.value = value;
+		content.loaded = true;
+		return content;
+	}
+
+	private LazyContent() { }
+
+	/**
+	 * Creates a holder that fetches the content of the object at a path and revision.
+	 */
+	LazyContent(SvnObjectReader reader, String path, long revision, StorableField field) {
+		this.reader = reader;
+		this.path = path;
+		this.revision = revision;
+		this.field = field;
+	}
+
+	/**
+	 * @return The content, fetched on the first call unless it was already in memory
+	 * @throws UncheckedIOException If the content could not be fetched
+	 */
+	public T get() {
+		if (! loaded) {
+			synchronized (this) {
+				if (! loaded) {
+					try {
+						value = load();
+					} catch (IOException e) {
+						throw new UncheckedIOException("Cannot load content of " + path + "@" + revision, e);
+					}
+					loaded = true;
+					reader = null;
+					field = null;
+				}
+			}
+		}
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T load() throws IOException {
+		try {
+			return (T) reader.deserializeContent(reader.fetch(path, revision), field);
+		} catch (MissingObjectException e) {
+			throw new IOException("No object at " + path + "@" + revision, e);
+		}
+	}
+
+	/**
+	 * @return true if the content is in memory
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * @return Revision the content is fetched from, -1 if it was created in memory
+	 */
+	public long getRevision() {
+		return path == null ? -1 : revision;
+	}
+
+	@Override
+	public String toString() {
+		return loaded ? String.valueOf(value) : "LazyContent(" + path + "@" + revision + ")";
+	}
+}
@@ -0,0 +1,88 @@
+package org.restlesscode.javersion;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An {@link ObjectCache} bounded by the total weight of its entries, evicting the
+ * least recently used entries first.
+ */
+public class LruObjectCache implements ObjectCache {
+
+	protected final long maxWeight;
+	protected final LinkedHashMap<Key, FetchedObject> entries = new LinkedHashMap<Key, FetchedObject>(16, 0.75f, true);
+	protected long weight;
+	protected long hits;
+	protected long misses;
+	protected long evictions;
+
+	/**
+	 * @param maxWeight Maximum total weight of the entries, roughly their size in bytes
+	 */
+	public LruObjectCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	public synchronized FetchedObject get(String path, long revision) {
+		FetchedObject object = entries.get(new Key(path, revision));
+		if (object == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return object;
+	}
+
+	public synchronized void put(String path, long revision, FetchedObject object) {
+		long objectWeight = object.getWeight();
+		if (objectWeight > maxWeight) {
+			return;
+		}
+		FetchedObject previous = entries.put(new Key(path, revision), object);
+		if (previous != null) {
+			weight -= previous.getWeight();
+		}
+		weight += objectWeight;
+		Iterator<Map.Entry<Key, FetchedObject>> it = entries.entrySet().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			Map.Entry<Key, FetchedObject> eldest = it.next();
+			weight -= eldest.getValue().getWeight();
+			it.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	public synchronized CacheStats getStats() {
+		return new CacheStats(hits, misses, evictions, entries.size(), weight);
+	}
+
+	protected static final class Key {
+		final String path;
+		final long revision;
+
+		Key(String path, long revision) {
+			this.path = Utils.normalizePath(path);
+			this.revision = revision;
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode() * 31 + (int) (revision ^ (revision >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (! (o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return revision == other.revision && path.equals(other.path);
+		}
+	}
+}
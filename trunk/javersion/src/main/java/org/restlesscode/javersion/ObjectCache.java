@@ -0,0 +1,29 @@
+package org.restlesscode.javersion;
+
+/**
+ * A cache of objects fetched at concrete revisions, consulted by
+ * {@link SvnObjectReader} before going to the repository. Entries never go stale
+ * because an object at a given path and revision never changes.
+ */
+public interface ObjectCache {
+
+	/**
+	 * @return Cached object, or null if the cache does not hold it
+	 */
+	public FetchedObject get(String path, long revision);
+
+	/**
+	 * Caches an object under its path and the revision it was requested at.
+	 */
+	public void put(String path, long revision, FetchedObject object);
+
+	/**
+	 * Drops every entry.
+	 */
+	public void clear();
+
+	/**
+	 * @return Snapshot of the cache counters
+	 */
+	public CacheStats getStats();
+}
@@ -0,0 +1,645 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Commits a set of serialized objects through one commit editor, producing a single
+ * revision. Objects are sent in path order so that every directory is opened or
+ * added exactly once, and each path is checked against the repository at most once.
+ * An add-only commit, such as an import's, takes every object to be new and adds
+ * it without checking its path; the commit fails if one exists after all.
+ */
+class ObjectCommit {
+
+	private static final Log LOG = LogFactory.getLog(ObjectCommit.class);
+
+	protected final SVNRepository repository;
+	protected final String message;
+	protected final List<SerializedObject> objects;
+	protected final KnownPathCache knownPaths;
+	protected final BaseContentCache baseContents;
+	protected final FingerprintCache fingerprints;
+	protected final boolean addOnly;
+	protected final Map<String, SVNNodeKind> nodeKinds = new HashMap<String, SVNNodeKind>();
+	protected boolean usedKnownPaths;
+	protected int checkPathCalls;
+	protected int deltaCount;
+	protected boolean usedFingerprints;
+	protected int propertyFetches;
+	protected int commitCalls;
+	protected long bytesSent;
+
+	ObjectCommit(SVNRepository repository, String message, List<SerializedObject> objects, KnownPathCache knownPaths) {
+		this(repository, message, objects, knownPaths, null, null);
+	}
+
+	ObjectCommit(SVNRepository repository, String message, List<SerializedObject> objects, KnownPathCache knownPaths,
+			BaseContentCache baseContents, FingerprintCache fingerprints) {
+		this(repository, message, objects, knownPaths, baseContents, fingerprints, false);
+	}
+
+	ObjectCommit(SVNRepository repository, String message, List<SerializedObject> objects, KnownPathCache knownPaths,
+			BaseContentCache baseContents, FingerprintCache fingerprints, boolean addOnly) {
+		this.repository = repository;
+		this.message = message;
+		this.knownPaths = knownPaths;
+		this.baseContents = baseContents;
+		this.fingerprints = fingerprints;
+		this.addOnly = addOnly;
+		this.objects = new ArrayList<SerializedObject>(objects);
+		Collections.sort(this.objects);
+	}
+
+	WriteResult run() throws SVNException, IOException {
+		Map<String, WriteResult.Outcome> outcomes = new LinkedHashMap<String, WriteResult.Outcome>();
+		Set<String> objectPaths = new HashSet<String>();
+		for (SerializedObject o : objects) {
+			objectPaths.add(o.getPath());
+		}
+		Map<String, Change> changes = new HashMap<String, Change>();
+		List<SerializedObject> sent = new ArrayList<SerializedObject>(objects.size());
+		for (SerializedObject o : objects) {
+			checkParents(o.getPath(), objectPaths);
+			if (o.isDeletion()) {
+				if (nodeKinds.get(o.getPath()) == SVNNodeKind.FILE) {
+					outcomes.put(o.getPath(), WriteResult.Outcome.DELETED);
+					sent.add(o);
+				}
+				continue;
+			}
+			if (nodeKinds.get(o.getPath()) != SVNNodeKind.FILE) {
+				if (o.getExpectedRevision() >= 0) {
+					// Deleted since the writer read it
+					throw new ConflictException(o.getPath(), o.getExpectedRevision(), -1);
+				}
+				outcomes.put(o.getPath(), WriteResult.Outcome.ADDED);
+				sent.add(o);
+				continue;
+			}
+			Change change = detectChange(o);
+			if (change.isEmpty()) {
+				outcomes.put(o.getPath(), WriteResult.Outcome.UNCHANGED);
+			} else {
+				outcomes.put(o.getPath(), WriteResult.Outcome.UPDATED);
+				changes.put(o.getPath(), change);
+				sent.add(o);
+			}
+		}
+		if (sent.isEmpty()) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("commit skipped objects=" + objects.size() + " checkPaths=" + checkPathCalls
+						+ " propertyFetches=" + propertyFetches);
+			}
+			return new WriteResult(-1, outcomes);
+		}
+
+		commitCalls++;
+		ISVNEditor editor = new CountingEditor(repository.getCommitEditor(message, null));
+		try {
+			editor.openRoot(-1);
+			LinkedList<String> openDirs = new LinkedList<String>();
+			openDirs.push("");
+			SVNDeltaGenerator deltaGenerator = new SVNDeltaGenerator();
+			Map<String, String> checksums = new HashMap<String, String>();
+
+			for (SerializedObject o : sent) {
+				String path = o.getPath();
+				String parent = Utils.getParentPath(path);
+				while (! isAncestorOrSelf(openDirs.peek(), parent)) {
+					editor.closeDir();
+					openDirs.pop();
+				}
+				openDirs(editor, openDirs, parent);
+				if (o.isDeletion()) {
+					editor.deleteEntry(path, -1);
+					continue;
+				}
+
+				Change change = changes.get(path);
+				BaseContentCache.Base base = null;
+				if (change != null) {
+					base = change.contentChanged ? deltaBase(o) : null;
+					// The file must not have changed since any state this commit relies on
+					long baseRevision = base == null ? change.revision : Math.min(change.revision, base.getRevision());
+					if (o.getExpectedRevision() >= 0) {
+						baseRevision = Math.min(baseRevision, o.getExpectedRevision());
+					}
+					editor.openFile(path, baseRevision);
+				} else {
+					editor.addFile(path, null, -1);
+				}
+				String checksum = null;
+				if (change != null && ! change.contentChanged) {
+					checksum = change.storedChecksum;
+				} else if (o.isStreamed()) {
+					editor.applyTextDelta(path, null);
+					DeltaOutputStream out = new DeltaOutputStream(path, editor, deltaGenerator);
+					o.writeContent(out);
+					checksum = out.finish();
+				} else if (base != null) {
+					// Only the difference to the text at the base revision goes over the wire
+					editor.applyTextDelta(path, base.getChecksum());
+					checksum = deltaGenerator.sendDelta(path, new ByteArrayInputStream(base.getContent()), 0,
+							new ByteArrayInputStream(o.getContent()), editor, true);
+					deltaCount++;
+				} else if (o.getContent() != null) {
+					editor.applyTextDelta(path, null);
+					checksum = deltaGenerator.sendDelta(path, new ByteArrayInputStream(o.getContent()), editor, true);
+				}
+				checksums.put(path, checksum);
+				Map<String, SVNPropertyValue> properties = change == null ? o.getProperties() : change.changedProperties;
+				for (Map.Entry<String, SVNPropertyValue> property : properties.entrySet()) {
+					editor.changeFileProperty(path, property.getKey(), property.getValue());
+				}
+				if (change != null) {
+					for (String name : change.removedProperties) {
+						editor.changeFileProperty(path, name, null);
+					}
+				}
+				editor.closeFile(path, change != null && ! change.contentChanged ? null : checksum);
+			}
+			while (! openDirs.isEmpty()) {
+				editor.closeDir();
+				openDirs.pop();
+			}
+			SVNCommitInfo commitInfo = editor.closeEdit();
+			if (commitInfo.getErrorMessage() != null) {
+				LOG.warn(commitInfo.getErrorMessage());
+			}
+			long revision = commitInfo.getNewRevision();
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("commit revision=" + revision + " objects=" + objects.size() + " sent=" + sent.size()
+						+ " deltas=" + deltaCount + " bytes=" + bytesSent + " checkPaths=" + checkPathCalls
+						+ " propertyFetches=" + propertyFetches);
+			}
+			for (SerializedObject o : sent) {
+				committed(o, revision, checksums.get(o.getPath()), changes.get(o.getPath()));
+			}
+			return new WriteResult(revision, outcomes);
+		} catch (SVNException e) {
+			abort(editor);
+			throw e;
+		} catch (IOException e) {
+			abort(editor);
+			throw e;
+		} catch (RuntimeException e) {
+			abort(editor);
+			throw e;
+		}
+	}
+
+	/**
+	 * Updates the store's caches with the state of an object after it was committed.
+	 */
+	protected void committed(SerializedObject o, long revision, String checksum, Change change) {
+		String path = o.getPath();
+		if (o.isDeletion()) {
+			if (knownPaths != null) {
+				knownPaths.remove(path);
+			}
+			if (baseContents != null) {
+				baseContents.remove(path);
+			}
+			if (fingerprints != null) {
+				fingerprints.remove(path);
+			}
+			return;
+		}
+		if (knownPaths != null) {
+			knownPaths.putFile(path);
+		}
+		if (baseContents != null) {
+			if (o.isStreamed() || o.getContent() == null) {
+				baseContents.remove(path);
+			} else {
+				baseContents.put(path, revision, o.getContent(), checksum);
+			}
+		}
+		if (fingerprints != null) {
+			FingerprintCache.Fingerprint fingerprint = FingerprintCache.Fingerprint.of(o, revision, checksum);
+			if (change != null && ! change.keptMarkers.isEmpty()) {
+				Map<String, String> digests = new HashMap<String, String>(fingerprint.getPropertyDigests());
+				digests.putAll(change.keptMarkers);
+				fingerprint = new FingerprintCache.Fingerprint(revision, checksum, digests);
+			}
+			fingerprints.put(path, fingerprint);
+		}
+	}
+
+	/**
+	 * Compares an object with the stored state of its file. A fingerprint cached
+	 * by the store is trusted to find changes, since the commit opens the file at
+	 * the fingerprint's revision and fails if it is stale. An object found to be
+	 * unchanged is never sent, so that is confirmed against the repository.
+	 */
+	protected Change detectChange(SerializedObject o) throws SVNException {
+		FingerprintCache.Fingerprint stored = fingerprints == null ? null : fingerprints.get(o.getPath());
+		if (stored != null) {
+			Change change = new Change(o, stored);
+			if (! change.isEmpty()) {
+				usedFingerprints = true;
+				return change;
+			}
+		}
+		return new Change(o, fetchFingerprint(o.getPath()));
+	}
+
+	/**
+	 * Fetches the properties of a file, without its text, as a fingerprint.
+	 */
+	protected FingerprintCache.Fingerprint fetchFingerprint(String path) throws SVNException {
+		SVNProperties properties = new SVNProperties();
+		long revision = repository.getFile(path, -1, properties, null);
+		propertyFetches++;
+		FingerprintCache.Fingerprint fingerprint = FingerprintCache.Fingerprint.of(properties, revision,
+				properties.getStringValue(SVNProperty.CHECKSUM));
+		if (fingerprints != null) {
+			fingerprints.put(path, fingerprint);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * @return Cached text of an updated file to send the new text as a delta
+	 *  against, null to send full text
+	 */
+	protected BaseContentCache.Base deltaBase(SerializedObject o) {
+		if (baseContents == null || o.isStreamed() || o.getContent() == null) {
+			return null;
+		}
+		return baseContents.get(o.getPath());
+	}
+
+	/**
+	 * Opens or adds every directory between the innermost open directory and dir.
+	 */
+	protected void openDirs(ISVNEditor editor, LinkedList<String> openDirs, String dir) throws SVNException {
+		String top = openDirs.peek();
+		if (top.equals(dir)) {
+			return;
+		}
+		int from = top.length() == 0 ? 0 : top.length() + 1;
+		while (from <= dir.length()) {
+			int slash = dir.indexOf('/', from);
+			String p = slash < 0 ? dir : dir.substring(0, slash);
+			if (nodeKinds.get(p) == SVNNodeKind.DIR) {
+				editor.openDir(p, -1);
+			} else {
+				editor.addDir(p, null, -1);
+			}
+			openDirs.push(p);
+			if (slash < 0) {
+				break;
+			}
+			from = slash + 1;
+		}
+	}
+
+	/**
+	 * Resolves the node kinds of a path and its ancestors and makes sure no
+	 * ancestor is a file or another object of this commit.
+	 */
+	protected void checkParents(String path, Set<String> objectPaths) throws SVNException, IOException {
+		for (String p = Utils.getParentPath(path); p.length() > 0; p = Utils.getParentPath(p)) {
+			if (objectPaths.contains(p)) {
+				throw new IOException("Error: cannot write below object at path " + p);
+			}
+		}
+		resolve(path);
+		for (String p = Utils.getParentPath(path); p.length() > 0; p = Utils.getParentPath(p)) {
+			if (nodeKinds.get(p) == SVNNodeKind.FILE) {
+				throw new IOException("Error: cannot make directory, file exists at path " + p);
+			}
+		}
+	}
+
+	/**
+	 * Finds the node kinds of a path and all its ancestors top-down from the
+	 * deepest one already known, so that a new subtree costs a single round trip:
+	 * everything below a missing directory or a file is missing too, and objects
+	 * of the commit sharing missing ancestors find them known. Paths known from
+	 * this commit or from the store's known path cache cost no round trip.
+	 */
+	protected void resolve(String path) throws SVNException {
+		LinkedList<String> unknown = new LinkedList<String>();
+		String p = path;
+		SVNNodeKind kind = SVNNodeKind.DIR;
+		for (; p.length() > 0; p = Utils.getParentPath(p)) {
+			SVNNodeKind known = knownKindOf(p);
+			if (known != null) {
+				kind = known;
+				break;
+			}
+			unknown.addFirst(p);
+		}
+		String existing = kind == SVNNodeKind.NONE ? null : p;
+		for (String u : unknown) {
+			if (kind != SVNNodeKind.DIR || isTakenAsNew(u, path)) {
+				kind = SVNNodeKind.NONE;
+				nodeKinds.put(u, kind);
+			} else {
+				kind = checkPath(u);
+				if (kind != SVNNodeKind.NONE) {
+					existing = u;
+				}
+			}
+		}
+		if (existing != null && existing.length() > 0) {
+			for (p = Utils.getParentPath(existing); p.length() > 0; p = Utils.getParentPath(p)) {
+				if (nodeKinds.put(p, SVNNodeKind.DIR) != null) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if an add-only commit takes a path to be missing without a
+	 *  round trip: the object itself, or a collection directory of an object
+	 *  being added
+	 */
+	protected boolean isTakenAsNew(String p, String objectPath) {
+		return addOnly && (p.equals(objectPath) || isAddedCollection(p));
+	}
+
+	/**
+	 * @return true if a directory holds a collection of an object this commit adds
+	 */
+	protected boolean isAddedCollection(String dir) {
+		int marker = dir.lastIndexOf(Utils.COLLECTION_MARKER);
+		return marker > 0 && dir.indexOf('/', marker) < 0
+				&& nodeKinds.get(dir.substring(0, marker)) == SVNNodeKind.NONE;
+	}
+
+	/**
+	 * @return Node kind of a path known from this commit or from the known path
+	 *  cache, null if it would take a round trip
+	 */
+	protected SVNNodeKind knownKindOf(String path) {
+		SVNNodeKind kind = nodeKinds.get(path);
+		if (kind == null && knownPaths != null) {
+			kind = knownPaths.get(path);
+			if (kind != null) {
+				usedKnownPaths = true;
+				nodeKinds.put(path, kind);
+			}
+		}
+		return kind;
+	}
+
+	protected SVNNodeKind checkPath(String path) throws SVNException {
+		SVNNodeKind kind = repository.checkPath(path, -1);
+		checkPathCalls++;
+		if (knownPaths != null) {
+			knownPaths.put(path, kind);
+		}
+		nodeKinds.put(path, kind);
+		return kind;
+	}
+
+	/**
+	 * @return true if the commit relied on the known path cache, which may be stale
+	 */
+	boolean usedKnownPaths() {
+		return usedKnownPaths;
+	}
+
+	/**
+	 * @return true if the commit relied on paths, texts or fingerprints cached by
+	 *  the store, any of which may be stale
+	 */
+	boolean usedCachedState() {
+		return usedKnownPaths || deltaCount > 0 || usedFingerprints;
+	}
+
+	/**
+	 * @return Number of properties-only fetches made to detect changes
+	 */
+	int getPropertyFetches() {
+		return propertyFetches;
+	}
+
+	/**
+	 * @return Number of files sent as a delta against a cached text
+	 */
+	int getDeltaCount() {
+		return deltaCount;
+	}
+
+	/**
+	 * @return Number of checkPath round trips made
+	 */
+	int getCheckPathCalls() {
+		return checkPathCalls;
+	}
+
+	/**
+	 * @return Number of commit edits sent, 0 if nothing had changed
+	 */
+	int getCommitCalls() {
+		return commitCalls;
+	}
+
+	/**
+	 * @return Number of bytes of text deltas and property values sent
+	 */
+	long getBytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * Passes a commit on to the repository's editor, counting what is sent.
+	 */
+	protected class CountingEditor implements ISVNEditor {
+		private final ISVNEditor editor;
+
+		CountingEditor(ISVNEditor editor) {
+			this.editor = editor;
+		}
+
+		public void targetRevision(long revision) throws SVNException {
+			editor.targetRevision(revision);
+		}
+
+		public void openRoot(long revision) throws SVNException {
+			editor.openRoot(revision);
+		}
+
+		public void deleteEntry(String path, long revision) throws SVNException {
+			editor.deleteEntry(path, revision);
+		}
+
+		public void absentDir(String path) throws SVNException {
+			editor.absentDir(path);
+		}
+
+		public void absentFile(String path) throws SVNException {
+			editor.absentFile(path);
+		}
+
+		public void addDir(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+			editor.addDir(path, copyFromPath, copyFromRevision);
+		}
+
+		public void openDir(String path, long revision) throws SVNException {
+			editor.openDir(path, revision);
+		}
+
+		public void changeDirProperty(String name, SVNPropertyValue value) throws SVNException {
+			editor.changeDirProperty(name, value);
+		}
+
+		public void closeDir() throws SVNException {
+			editor.closeDir();
+		}
+
+		public void addFile(String path, String copyFromPath, long copyFromRevision) throws SVNException {
+			editor.addFile(path, copyFromPath, copyFromRevision);
+		}
+
+		public void openFile(String path, long revision) throws SVNException {
+			editor.openFile(path, revision);
+		}
+
+		public void changeFileProperty(String path, String name, SVNPropertyValue value) throws SVNException {
+			bytesSent += name.length() + size(value);
+			editor.changeFileProperty(path, name, value);
+		}
+
+		public void closeFile(String path, String textChecksum) throws SVNException {
+			editor.closeFile(path, textChecksum);
+		}
+
+		public SVNCommitInfo closeEdit() throws SVNException {
+			return editor.closeEdit();
+		}
+
+		public void abortEdit() throws SVNException {
+			editor.abortEdit();
+		}
+
+		public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+			editor.applyTextDelta(path, baseChecksum);
+		}
+
+		public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+			bytesSent += diffWindow.getDataLength();
+			return editor.textDeltaChunk(path, diffWindow);
+		}
+
+		public void textDeltaEnd(String path) throws SVNException {
+			editor.textDeltaEnd(path);
+		}
+	}
+
+	/**
+	 * @return Length of a property value, strings counted in characters
+	 */
+	static long size(SVNPropertyValue value) {
+		if (value == null) {
+			return 0;
+		}
+		if (value.isString()) {
+			return value.getString().length();
+		}
+		return value.getBytes() == null ? 0 : value.getBytes().length;
+	}
+
+	/**
+	 * What differs between an object and the stored state of its file.
+	 */
+	protected static class Change {
+		private static final String CODEC_PREFIX = "jvn.codec.";
+		private static final String PROPERTY_PREFIX = "jvn.property.";
+
+		final long revision;
+		final String storedChecksum;
+		final boolean contentChanged;
+		final Map<String, SVNPropertyValue> changedProperties = new LinkedHashMap<String, SVNPropertyValue>();
+		final List<String> removedProperties = new ArrayList<String>();
+		final Map<String, String> keptMarkers = new HashMap<String, String>();
+
+		Change(SerializedObject o, FingerprintCache.Fingerprint stored) {
+			this.revision = stored.getRevision();
+			this.storedChecksum = stored.getContentChecksum();
+			if (o.isStreamed()) {
+				contentChanged = true;
+			} else if (o.getContent() == null) {
+				contentChanged = false;
+			} else {
+				contentChanged = ! BaseContentCache.md5(o.getContent()).equals(storedChecksum);
+			}
+			Map<String, String> storedDigests = stored.getPropertyDigests();
+			for (Map.Entry<String, SVNPropertyValue> property : o.getProperties().entrySet()) {
+				String digest = FingerprintCache.Fingerprint.digest(property.getValue());
+				if (! digest.equals(storedDigests.get(property.getKey()))) {
+					changedProperties.put(property.getKey(), property.getValue());
+				}
+			}
+			// Properties of fields that are now null; properties set by others are left alone.
+			// Text left untouched keeps the markers it was encoded with.
+			for (String name : storedDigests.keySet()) {
+				if (name.startsWith("jvn.") && ! o.getProperties().containsKey(name)) {
+					if (! contentChanged && isContentMarker(name, storedDigests)) {
+						keptMarkers.put(name, storedDigests.get(name));
+					} else {
+						removedProperties.add(name);
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return true if the property records how the file text is encoded: its
+		 *  compression, or the codec of a content field, which unlike the codec of
+		 *  a property field has no jvn.property.&lt;field&gt; beside it
+		 */
+		static boolean isContentMarker(String name, Map<String, String> storedDigests) {
+			if (name.equals(Compression.ENCODING_PROPERTY)) {
+				return true;
+			}
+			return name.startsWith(CODEC_PREFIX)
+					&& ! storedDigests.containsKey(PROPERTY_PREFIX + name.substring(CODEC_PREFIX.length()));
+		}
+
+		boolean isEmpty() {
+			return ! contentChanged && changedProperties.isEmpty() && removedProperties.isEmpty();
+		}
+	}
+
+	protected static boolean isAncestorOrSelf(String dir, String path) {
+		return dir.length() == 0 || path.equals(dir) || path.startsWith(dir + "/");
+	}
+
+	private static void abort(ISVNEditor editor) {
+		try {
+			editor.abortEdit();
+		} catch (SVNException e) {
+			LOG.warn("Could not abort commit", e);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package org.restlesscode.javersion;
+
+import java.util.Date;
+
+/**
+ * One version of an object in its history: the object as of a revision that
+ * changed it, with the author and date of that revision.
+ */
+public class ObjectVersion<T> extends StoredObject<T> {
+
+	protected final String author;
+	protected final Date date;
+
+	public ObjectVersion(String path, long revision, String author, Date date, T object) {
+		super(path, revision, object);
+		this.author = author;
+		this.date = date;
+	}
+
+	/**
+	 * @return Author of the revision, null if unknown
+	 */
+	public String getAuthor() {
+		return author;
+	}
+
+	/**
+	 * @return Date of the revision, null if unknown
+	 */
+	public Date getDate() {
+		return date;
+	}
+
+	@Override
+	public String toString() {
+		return path + "@" + revision + " by " + author + " on " + date + ": " + object;
+	}
+}
@@ -0,0 +1,51 @@
+package org.restlesscode.javersion;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Routes paths by their longest mapped prefix, so whole subtrees live on one
+ * shard, and everything else through a fallback router.
+ */
+public class PrefixRouter implements ShardRouter {
+
+	protected final Map<String, String> shardsByPrefix = new LinkedHashMap<String, String>();
+	protected final ShardRouter fallback;
+	protected final Set<String> shards;
+
+	/**
+	 * @param shardsByPrefix Shard of the objects at or below each path
+	 * @param fallback Router of the paths below no prefix
+	 */
+	public PrefixRouter(Map<String, String> shardsByPrefix, ShardRouter fallback) {
+		Set<String> shards = new LinkedHashSet<String>(fallback.getShards());
+		for (Map.Entry<String, String> entry : shardsByPrefix.entrySet()) {
+			this.shardsByPrefix.put(Utils.normalizePath(entry.getKey()), entry.getValue());
+			shards.add(entry.getValue());
+		}
+		this.fallback = fallback;
+		this.shards = Collections.unmodifiableSet(shards);
+	}
+
+	public String route(String path) {
+		for (String prefix = path; prefix.length() > 0; prefix = Utils.getParentPath(prefix)) {
+			String shard = shardsByPrefix.get(prefix);
+			if (shard != null) {
+				return shard;
+			}
+		}
+		return fallback.route(path);
+	}
+
+	public Set<String> getShards() {
+		return shards;
+	}
+
+	@Override
+	public String toString() {
+		return "PrefixRouter" + shardsByPrefix + " else " + fallback;
+	}
+}
@@ -0,0 +1,39 @@
+package org.restlesscode.javersion;
+
+/**
+ * Gets and sets one storable field of an object. Accessors for primitive fields
+ * convert to and from the stored string form without boxing the value.
+ */
+public abstract class PropertyAccessor {
+
+	/**
+	 * @return Current value of the field, boxed if it is a primitive
+	 */
+	public abstract Object get(Object target);
+
+	/**
+	 * Sets the field to a value, unboxing it if the field is a primitive.
+	 */
+	public abstract void set(Object target, Object value);
+
+	/**
+	 * @return String form of the field as stored by the TO_STRING method, or null
+	 *  if the field is null
+	 */
+	public String getAsString(Object target) {
+		Object value = get(target);
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * Parses the string form written by {@link #getAsString(Object)} and sets the field.
+	 */
+	public abstract void setFromString(Object target, String value);
+
+	/**
+	 * @return true if this accessor was generated rather than going through reflection
+	 */
+	public boolean isGenerated() {
+		return true;
+	}
+}
@@ -0,0 +1,315 @@
+package org.restlesscode.javersion;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Builds {@link PropertyAccessor}s for getter/setter pairs. Accessors are spun with
+ * LambdaMetafactory so that calls are direct and primitives are never boxed. When the
+ * classes involved are not visible from this library's class loader, or generation
+ * fails for any other reason, a reflective accessor is used instead.
+ */
+final class PropertyAccessors {
+
+	private static final Log LOG = LogFactory.getLog(PropertyAccessors.class);
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private PropertyAccessors() { }
+
+	static PropertyAccessor create(Method getter, Method setter) {
+		Class<?> type = getter.getReturnType();
+		if (isVisible(getter.getDeclaringClass()) && isVisible(setter.getDeclaringClass()) && isVisible(type)) {
+			try {
+				MethodHandle get = LOOKUP.unreflect(getter);
+				MethodHandle set = LOOKUP.unreflect(setter);
+				return generate(type, get, set);
+			} catch (Throwable t) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Falling back to reflection for " + getter + ": " + t);
+				}
+			}
+		}
+		return new ReflectiveAccessor(getter, setter);
+	}
+
+	private static boolean isVisible(Class<?> c) {
+		if (c.isPrimitive()) {
+			return true;
+		}
+		try {
+			return Class.forName(c.getName(), false, PropertyAccessors.class.getClassLoader()) == c;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	// Class literals of the generic functional interfaces are raw
+	@SuppressWarnings("unchecked")
+	private static PropertyAccessor generate(Class<?> type, MethodHandle get, MethodHandle set) throws Throwable {
+		if (type == int.class) {
+			return new IntAccessor(
+					spin(ToIntFunction.class, "applyAsInt", MethodType.methodType(int.class, Object.class), get),
+					spin(ObjIntConsumer.class, "accept", MethodType.methodType(void.class, Object.class, int.class), set));
+		} else if (type == long.class) {
+			return new LongAccessor(
+					spin(ToLongFunction.class, "applyAsLong", MethodType.methodType(long.class, Object.class), get),
+					spin(ObjLongConsumer.class, "accept", MethodType.methodType(void.class, Object.class, long.class), set));
+		} else if (type == double.class) {
+			return new DoubleAccessor(
+					spin(ToDoubleFunction.class, "applyAsDouble", MethodType.methodType(double.class, Object.class), get),
+					spin(ObjDoubleConsumer.class, "accept", MethodType.methodType(void.class, Object.class, double.class), set));
+		} else if (type == float.class) {
+			return new FloatAccessor(
+					spin(FloatGetter.class, "get", MethodType.methodType(float.class, Object.class), get),
+					spin(FloatSetter.class, "set", MethodType.methodType(void.class, Object.class, float.class), set));
+		} else if (type == short.class) {
+			return new ShortAccessor(
+					spin(ShortGetter.class, "get", MethodType.methodType(short.class, Object.class), get),
+					spin(ShortSetter.class, "set", MethodType.methodType(void.class, Object.class, short.class), set));
+		} else if (type == byte.class) {
+			return new ByteAccessor(
+					spin(ByteGetter.class, "get", MethodType.methodType(byte.class, Object.class), get),
+					spin(ByteSetter.class, "set", MethodType.methodType(void.class, Object.class, byte.class), set));
+		} else if (type == boolean.class) {
+			return new BooleanAccessor(
+					spin(BooleanGetter.class, "get", MethodType.methodType(boolean.class, Object.class), get),
+					spin(BooleanSetter.class, "set", MethodType.methodType(void.class, Object.class, boolean.class), set));
+		} else if (type == char.class) {
+			return new CharAccessor(
+					spin(CharGetter.class, "get", MethodType.methodType(char.class, Object.class), get),
+					spin(CharSetter.class, "set", MethodType.methodType(void.class, Object.class, char.class), set));
+		} else {
+			return new ObjectAccessor(type,
+					spin(Function.class, "apply", MethodType.methodType(Object.class, Object.class), get),
+					spin(BiConsumer.class, "accept", MethodType.methodType(void.class, Object.class, Object.class), set));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <F> F spin(Class<F> functionalInterface, String methodName, MethodType erasedType,
+			MethodHandle target) throws Throwable {
+		MethodType instantiatedType = target.type();
+		if (erasedType.returnType() == void.class) {
+			instantiatedType = instantiatedType.changeReturnType(void.class);
+		}
+		CallSite site = LambdaMetafactory.metafactory(LOOKUP, methodName, MethodType.methodType(functionalInterface),
+				erasedType, target, instantiatedType);
+		return (F) site.getTarget().invoke();
+	}
+
+	/**
+	 * Parses the string form of a TO_STRING type into a boxed value.
+	 */
+	static Object parse(Class<?> type, String value) {
+		if (type == String.class) {
+			return value;
+		} else if (type == int.class) {
+			return Integer.parseInt(value);
+		} else if (type == byte.class) {
+			return Byte.parseByte(value);
+		} else if (type == short.class) {
+			return Short.parseShort(value);
+		} else if (type == long.class) {
+			return Long.parseLong(value);
+		} else if (type == float.class) {
+			return Float.parseFloat(value);
+		} else if (type == double.class) {
+			return Double.parseDouble(value);
+		} else if (type == boolean.class) {
+			return Boolean.parseBoolean(value);
+		} else if (type == char.class || type == Character.class) {
+			return value.charAt(0);
+		}
+		throw new IllegalArgumentException("Cannot parse " + type + " from a string");
+	}
+
+	interface ByteGetter { byte get(Object target); }
+	interface ByteSetter { void set(Object target, byte value); }
+	interface ShortGetter { short get(Object target); }
+	interface ShortSetter { void set(Object target, short value); }
+	interface FloatGetter { float get(Object target); }
+	interface FloatSetter { void set(Object target, float value); }
+	interface BooleanGetter { boolean get(Object target); }
+	interface BooleanSetter { void set(Object target, boolean value); }
+	interface CharGetter { char get(Object target); }
+	interface CharSetter { void set(Object target, char value); }
+
+	static final class ObjectAccessor extends PropertyAccessor {
+		private final Class<?> type;
+		private final Function<Object, Object> getter;
+		private final BiConsumer<Object, Object> setter;
+
+		ObjectAccessor(Class<?> type, Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+			this.type = type;
+			this.getter = getter;
+			this.setter = setter;
+		}
+		public Object get(Object target) { return getter.apply(target); }
+		public void set(Object target, Object value) { setter.accept(target, value); }
+		public void setFromString(Object target, String value) {
+			setter.accept(target, type == String.class ? value : parse(type, value));
+		}
+	}
+
+	static final class IntAccessor extends PropertyAccessor {
+		private final ToIntFunction<Object> getter;
+		private final ObjIntConsumer<Object> setter;
+
+		IntAccessor(ToIntFunction<Object> getter, ObjIntConsumer<Object> setter) {
+			this.getter = getter;
+			this.setter = setter;
+		}
+		public Object get(Object target) { return getter.applyAsInt(target); }
+		public void set(Object target, Object value) { setter.accept(target, (Integer) value); }
+		public String getAsString(Object target) { return Integer.toString(getter.applyAsInt(target)); }
+		public void setFromString(Object target, String value) { setter.accept(target, Integer.parseInt(value)); }
+	}
+
+	static final class LongAccessor extends PropertyAccessor {
+		private final ToLongFunction<Object> getter;
+		private final ObjLongConsumer<Object> setter;
+
+		LongAccessor(ToLongFunction<Object> getter, ObjLongConsumer<Object> setter) {
+			this.getter = getter;
+			this.setter = setter;
+		}
+		public Object get(Object target) { return getter.applyAsLong(target); }
+		public void set(Object target, Object value) { setter.accept(target, (Long) value); }
+		public String getAsString(Object target) { return Long.toString(getter.applyAsLong(target)); }
+		public void setFromString(Object target, String value) { setter.accept(target, Long.parseLong(value)); }
+	}
+
+	static final class DoubleAccessor extends PropertyAccessor {
+		private final ToDoubleFunction<Object> getter;
+		private final ObjDoubleConsumer<Object> setter;
+
+		DoubleAccessor(ToDoubleFunction<Object> getter, ObjDoubleConsumer<Object> setter) {
+			this.getter = getter;
+			this.setter = setter;
+		}
+		public Object get(Object target) { return getter.applyAsDouble(target); }
+		public void set(Object target, Object value) { setter.accept(target, (Double) value); }
+		public String getAsString(Object target) { return Double.toString(getter.applyAsDouble(target)); }
+		public void setFromString(Object target, String value) { setter.accept(target, Double.parseDouble(value)); }
+	}
+
+	static final class FloatAccessor extends PropertyAccessor {
+		private final FloatGetter getter;
+		private final FloatSetter setter;
+
+		FloatAccessor(FloatGetter getter, FloatSetter setter) {
+			this.getter = getter;
+			this.setter = setter;
+		}
+		public Object get(Object target) { return getter.get(target); }
+		public void set(Object target, Object value) { setter.set(target, (Float) value); }
+		public String getAsString(Object target) { return Float.toString(getter.get(target)); }
+		public void setFromString(Object target, String value) { setter.set(target, Float.parseFloat(value)); }
+	}
+
+	static final class ShortAccessor extends PropertyAccessor {
+		private final ShortGetter getter;
+		private final ShortSetter setter;
+
+		ShortAccessor(ShortGetter getter, ShortSetter setter) {
+			this.getter = getter;
+			this.setter = setter;
+		}
+		public Object get(Object target) { return getter.get(target); }
+		public void set(Object target, Object value) { setter.set(target, (Short) value); }
+		public String getAsString(Object target) { return Short.toString(getter.get(target)); }
+		public void setFromString(Object target, String value) { setter.set(target, Short.parseShort(value)); }
+	}
+
+	static final class ByteAccessor extends PropertyAccessor {
+		private final ByteGetter getter;
+		private final ByteSetter setter;
+
+		ByteAccessor(ByteGetter getter, ByteSetter setter) {
+			this.getter = getter;
+			this.setter = setter;
+		}
+		public Object get(Object target) { return getter.get(target); }
+		public void set(Object target, Object value) { setter.set(target, (Byte) value); }
+		public String getAsString(Object target) { return Byte.toString(getter.get(target)); }
+		public void setFromString(Object target, String value) { setter.set(target, Byte.parseByte(value)); }
+	}
+
+	static final class BooleanAccessor extends PropertyAccessor {
+		private final BooleanGetter getter;
+		private final BooleanSetter setter;
+
+		BooleanAccessor(BooleanGetter getter, BooleanSetter setter) {
+			this.getter = getter;
+			this.setter = setter;
+		}
+		public Object get(Object target) { return getter.get(target); }
+		public void set(Object target, Object value) { setter.set(target, (Boolean) value); }
+		public String getAsString(Object target) { return getter.get(target) ? "true" : "false"; }
+		public void setFromString(Object target, String value) { setter.set(target, Boolean.parseBoolean(value)); }
+	}
+
+	static final class CharAccessor extends PropertyAccessor {
+		private final CharGetter getter;
+		private final CharSetter setter;
+
+		CharAccessor(CharGetter getter, CharSetter setter) {
+			this.getter = getter;
+			this.setter = setter;
+		}
+		public Object get(Object target) { return getter.get(target); }
+		public void set(Object target, Object value) { setter.set(target, (Character) value); }
+		public String getAsString(Object target) { return String.valueOf(getter.get(target)); }
+		public void setFromString(Object target, String value) { setter.set(target, value.charAt(0)); }
+	}
+
+	static final class ReflectiveAccessor extends PropertyAccessor {
+		private final Method getter;
+		private final Method setter;
+
+		ReflectiveAccessor(Method getter, Method setter) {
+			this.getter = getter;
+			this.setter = setter;
+		}
+		public Object get(Object target) { return invoke(getter, target); }
+		public void set(Object target, Object value) { invoke(setter, target, value); }
+		public void setFromString(Object target, String value) {
+			invoke(setter, target, parse(getter.getReturnType(), value));
+		}
+		public boolean isGenerated() { return false; }
+
+		private static Object invoke(Method m, Object target, Object... args) {
+			try {
+				return m.invoke(target, args);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			} catch (InvocationTargetException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new UndeclaredThrowableException(cause);
+			}
+		}
+	}
+}
@@ -0,0 +1,350 @@
+package org.restlesscode.javersion;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A local index of the values of the SvnIndexed properties of a class, mapping
+ * each value to the paths of the objects that hold it. The index is brought up
+ * to date from the repository log, reading only the objects changed since the
+ * revision it is current to. It is saved as a single segment of entries sorted
+ * by property and value, which is read back through a memory map.
+ * @see SvnStore#createIndex(Class, String, File)
+ */
+public class PropertyIndex<T> implements ChangeListener<T> {
+
+	private static final Log LOG = LogFactory.getLog(PropertyIndex.class);
+
+	private static final int MAGIC = 0x6a766e69;
+	private static final int FORMAT = 1;
+
+	/** Orders values of the same class naturally and values of different classes by class name */
+	protected static final Comparator<Object> VALUE_ORDER = new Comparator<Object>() {
+		@SuppressWarnings("unchecked")
+		public int compare(Object a, Object b) {
+			if (a.getClass() != b.getClass()) {
+				return a.getClass().getName().compareTo(b.getClass().getName());
+			}
+			return ((Comparable<Object>) a).compareTo(b);
+		}
+	};
+
+	protected final SvnStore svnStore;
+	protected final Class<T> clazz;
+	protected final String pathPrefix;
+	protected final File file;
+	protected final List<StorableField> fields;
+	protected final CompactCodec codec = new CompactCodec();
+	protected final Map<String, TreeMap<Object, Set<String>>> values = new HashMap<String, TreeMap<Object, Set<String>>>();
+	protected final Map<String, Map<String, Object>> pathValues = new HashMap<String, Map<String, Object>>();
+	protected Subscription<T> subscription;
+
+	/**
+	 * Creates an index, loading it from its file if one was saved.
+	 * @param pathPrefix Path below which objects are indexed, "" for all
+	 * @param file File the index is saved to, null to keep it in memory only
+	 * @throws IOException If the class has no indexed properties or one of them
+	 *  is not comparable
+	 */
+	public PropertyIndex(SvnStore svnStore, Class<T> clazz, String pathPrefix, File file) throws IOException {
+		this.svnStore = svnStore;
+		this.clazz = clazz;
+		this.pathPrefix = Utils.normalizePath(pathPrefix);
+		this.file = file;
+		this.fields = svnStore.getSerializationTable().getDescriptor(clazz).getIndexedProperties();
+		if (fields.isEmpty()) {
+			throw new IOException("Class " + clazz.getName() + " has no SvnIndexed properties");
+		}
+		for (StorableField field : fields) {
+			if (! field.getType().isPrimitive() && ! Comparable.class.isAssignableFrom(field.getType())) {
+				throw new IOException("Indexed property " + field.getName() + " is not Comparable");
+			}
+			values.put(field.getName(), new TreeMap<Object, Set<String>>(VALUE_ORDER));
+		}
+		long revision = 0;
+		if (file != null && file.exists()) {
+			revision = load();
+		}
+		this.subscription = newSubscription(revision);
+	}
+
+	protected Subscription<T> newSubscription(long revision) {
+		return new Subscription<T>(svnStore, pathPrefix, revision + 1, clazz, this, 1000, 0);
+	}
+
+	/**
+	 * @return Revision the index is current to
+	 */
+	public synchronized long getRevision() {
+		return subscription.getCheckpoint();
+	}
+
+	/**
+	 * Applies the changes made since the index's revision, up to HEAD.
+	 * @return Revision the index is current to
+	 */
+	public long update() throws IOException {
+		return update(SvnRevision.HEAD);
+	}
+
+	/**
+	 * Applies the changes made since the index's revision, up to a revision.
+	 * Does nothing if the index is already current to a later revision.
+	 * @param revision Revision to bring the index to, -1 for HEAD
+	 * @return Revision the index is current to
+	 */
+	public synchronized long update(long revision) throws IOException {
+		if (revision < 0 || subscription.getCheckpoint() < revision) {
+			try {
+				subscription.poll(revision);
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+		}
+		return subscription.getCheckpoint();
+	}
+
+	/**
+	 * Throws away the index and builds it again from the whole repository log.
+	 * @return Revision the index is current to
+	 */
+	public synchronized long rebuild() throws IOException {
+		for (TreeMap<Object, Set<String>> index : values.values()) {
+			index.clear();
+		}
+		pathValues.clear();
+		subscription = newSubscription(0);
+		long revision = update();
+		save();
+		return revision;
+	}
+
+	public synchronized void onChanges(List<ChangeEvent<T>> changes) throws IOException {
+		for (ChangeEvent<T> change : changes) {
+			remove(change.getPath());
+			if (change.getObject() != null) {
+				add(change.getPath(), change.getObject());
+			}
+		}
+	}
+
+	protected void add(String path, T object) throws IOException {
+		Map<String, Object> objectValues = new HashMap<String, Object>();
+		for (StorableField field : fields) {
+			Object value = field.get(object);
+			if (value != null) {
+				add(field.getName(), value, path);
+				objectValues.put(field.getName(), value);
+			}
+		}
+		pathValues.put(path, objectValues);
+	}
+
+	private void add(String property, Object value, String path) {
+		TreeMap<Object, Set<String>> index = values.get(property);
+		Set<String> paths = index.get(value);
+		if (paths == null) {
+			paths = new TreeSet<String>();
+			index.put(value, paths);
+		}
+		paths.add(path);
+	}
+
+	protected void remove(String path) {
+		Map<String, Object> objectValues = pathValues.remove(path);
+		if (objectValues == null) {
+			return;
+		}
+		for (Map.Entry<String, Object> entry : objectValues.entrySet()) {
+			TreeMap<Object, Set<String>> index = values.get(entry.getKey());
+			Set<String> paths = index.get(entry.getValue());
+			paths.remove(path);
+			if (paths.isEmpty()) {
+				index.remove(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @return Paths of the objects whose property equals a value, in path order
+	 */
+	public synchronized List<String> findPaths(String property, Object value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not indexed");
+		}
+		Set<String> paths = getIndex(property).get(value);
+		return paths == null ? new ArrayList<String>() : new ArrayList<String>(paths);
+	}
+
+	/**
+	 * @param from Lowest value, inclusive, or null for no lower bound
+	 * @param to Highest value, exclusive, or null for no upper bound
+	 * @return Paths of the objects whose property is in a range, in value order
+	 */
+	public synchronized List<String> findPaths(String property, Object from, Object to) {
+		NavigableMap<Object, Set<String>> range = getIndex(property);
+		if (from != null) {
+			range = range.tailMap(from, true);
+		}
+		if (to != null) {
+			range = range.headMap(to, false);
+		}
+		List<String> paths = new ArrayList<String>();
+		for (Set<String> p : range.values()) {
+			paths.addAll(p);
+		}
+		return paths;
+	}
+
+	/**
+	 * @return true if a value is in a range as given to {@link #findPaths(String, Object, Object)}
+	 */
+	protected static boolean inRange(Object value, Object from, Object to) {
+		return value != null && (from == null || VALUE_ORDER.compare(value, from) >= 0)
+				&& (to == null || VALUE_ORDER.compare(value, to) < 0);
+	}
+
+	protected NavigableMap<Object, Set<String>> getIndex(String property) {
+		TreeMap<Object, Set<String>> index = values.get(property);
+		if (index == null) {
+			throw new IllegalArgumentException("Property " + property + " of " + clazz.getName() + " is not indexed");
+		}
+		return index;
+	}
+
+	/**
+	 * @return Number of objects in the index
+	 */
+	public synchronized int size() {
+		return pathValues.size();
+	}
+
+	/**
+	 * Writes the index to its file, replacing the previous segment at once.
+	 */
+	public synchronized void save() throws IOException {
+		if (file == null) {
+			return;
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeLong(subscription.getCheckpoint());
+			writeString(out, clazz.getName());
+			writeString(out, pathPrefix);
+			out.writeInt(fields.size());
+			for (StorableField field : fields) {
+				TreeMap<Object, Set<String>> index = values.get(field.getName());
+				writeString(out, field.getName());
+				out.writeInt(index.size());
+				for (Map.Entry<Object, Set<String>> entry : index.entrySet()) {
+					byte[] value = codec.encode(entry.getKey());
+					out.writeInt(value.length);
+					out.write(value);
+					out.writeInt(entry.getValue().size());
+					for (String path : entry.getValue()) {
+						writeString(out, path);
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the saved segment.
+	 * @return Revision the saved index was current to, 0 if it could not be used
+	 */
+	protected long load() throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.remaining() < 16 || in.getInt() != MAGIC || in.getInt() != FORMAT) {
+				LOG.warn("Ignoring unreadable index " + file);
+				return 0;
+			}
+			long revision = in.getLong();
+			if (! clazz.getName().equals(readString(in)) || ! pathPrefix.equals(readString(in))) {
+				LOG.warn("Ignoring index " + file + " of another class or path");
+				return 0;
+			}
+			Map<String, TreeMap<Object, Set<String>>> loaded = new LinkedHashMap<String, TreeMap<Object, Set<String>>>();
+			int properties = in.getInt();
+			for (int i = 0; i < properties; i++) {
+				String property = readString(in);
+				TreeMap<Object, Set<String>> index = new TreeMap<Object, Set<String>>(VALUE_ORDER);
+				for (int entries = in.getInt(); entries > 0; entries--) {
+					byte[] encoded = new byte[in.getInt()];
+					in.get(encoded);
+					Set<String> paths = new TreeSet<String>();
+					for (int count = in.getInt(); count > 0; count--) {
+						paths.add(readString(in));
+					}
+					index.put(codec.decode(encoded, clazz), paths);
+				}
+				loaded.put(property, index);
+			}
+			if (! loaded.keySet().equals(values.keySet())) {
+				LOG.warn("Ignoring index " + file + " of other properties than " + values.keySet());
+				return 0;
+			}
+			for (Map.Entry<String, TreeMap<Object, Set<String>>> property : loaded.entrySet()) {
+				for (Map.Entry<Object, Set<String>> entry : property.getValue().entrySet()) {
+					for (String path : entry.getValue()) {
+						add(property.getKey(), entry.getKey(), path);
+						Map<String, Object> objectValues = pathValues.get(path);
+						if (objectValues == null) {
+							objectValues = new HashMap<String, Object>();
+							pathValues.put(path, objectValues);
+						}
+						objectValues.put(property.getKey(), entry.getKey());
+					}
+				}
+			}
+			return revision;
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,257 @@
+package org.restlesscode.javersion;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+/**
+ * A bounded pool of SVNRepository sessions to the same URL. An SVNRepository may
+ * only be used by one thread at a time, so readers and writers borrow a session
+ * for the duration of an operation and release it afterwards.
+ * <p>
+ * Sessions idle for longer than the idle timeout are closed, and a session idle
+ * for longer than the validation interval is checked with testConnection before
+ * it is handed out again.
+ */
+public class RepositoryPool {
+
+	private static final Log LOG = LogFactory.getLog(RepositoryPool.class);
+
+	protected final SVNURL url;
+	protected final ISVNAuthenticationManager authManager;
+	protected final int maxSize;
+	protected final Semaphore permits;
+	protected final Deque<Entry> idle = new ArrayDeque<Entry>();
+	protected volatile long idleTimeoutMillis = 5 * 60 * 1000;
+	protected volatile long validationIntervalMillis = 30 * 1000;
+	protected volatile long maxWaitMillis = 0;
+	protected volatile boolean closed;
+
+	/**
+	 * @param url Repository URL every session is opened to
+	 * @param authManager Authentication manager of every session, may be null
+	 * @param maxSize Maximum number of sessions open at once
+	 */
+	public RepositoryPool(SVNURL url, ISVNAuthenticationManager authManager, int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		}
+		this.url = url;
+		this.authManager = authManager;
+		this.maxSize = maxSize;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Takes a session out of the pool, opening a new one if none is idle. Blocks
+	 * while maxSize sessions are in use.
+	 * @return Session that must be handed back with {@link #release(SVNRepository)}
+	 *  or {@link #invalidate(SVNRepository)}
+	 * @throws SVNException If the pool has been closed or a session could not be opened
+	 * @throws InterruptedIOException If interrupted or the wait timed out
+	 */
+	public SVNRepository borrow() throws SVNException, InterruptedIOException {
+		checkOpen();
+		acquirePermit();
+		try {
+			checkOpen();
+			while (true) {
+				Entry entry = takeIdle();
+				if (entry == null) {
+					return create();
+				}
+				if (System.currentTimeMillis() - entry.since < validationIntervalMillis || isHealthy(entry.repository)) {
+					return entry.repository;
+				}
+				entry.repository.closeSession();
+			}
+		} catch (SVNException e) {
+			permits.release();
+			throw e;
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Hands a healthy session back to the pool.
+	 */
+	public void release(SVNRepository repository) {
+		boolean keep;
+		synchronized (idle) {
+			keep = ! closed;
+			if (keep) {
+				idle.push(new Entry(repository, System.currentTimeMillis()));
+			}
+		}
+		if (! keep) {
+			repository.closeSession();
+		}
+		permits.release();
+		evictIdle();
+	}
+
+	/**
+	 * Closes a session that failed instead of returning it to the pool.
+	 */
+	public void invalidate(SVNRepository repository) {
+		repository.closeSession();
+		permits.release();
+	}
+
+	protected void checkOpen() throws SVNException {
+		if (closed) {
+			throw new SVNException(SVNErrorMessage.create(SVNErrorCode.RA_SVN_CONNECTION_CLOSED, 
+					"Connection pool to " + url + " is closed"));
+		}
+	}
+
+	/**
+	 * Closes every idle session and closes sessions as they are released. Later
+	 * borrows fail.
+	 */
+	public void close() {
+		closed = true;
+		synchronized (idle) {
+			for (Entry entry : idle) {
+				entry.repository.closeSession();
+			}
+			idle.clear();
+		}
+	}
+
+	/**
+	 * Closes sessions that have been idle for longer than the idle timeout.
+	 */
+	public void evictIdle() {
+		long now = System.currentTimeMillis();
+		synchronized (idle) {
+			// Most recently released sessions are at the head, so stale ones are at the tail
+			Iterator<Entry> it = idle.descendingIterator();
+			while (it.hasNext()) {
+				Entry entry = it.next();
+				if (now - entry.since < idleTimeoutMillis) {
+					break;
+				}
+				it.remove();
+				entry.repository.closeSession();
+			}
+		}
+	}
+
+	protected void acquirePermit() throws InterruptedIOException {
+		try {
+			if (maxWaitMillis <= 0) {
+				permits.acquire();
+			} else if (! permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+				throw new InterruptedIOException("Timed out waiting for a connection to " + url);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a connection to " + url);
+		}
+	}
+
+	protected Entry takeIdle() {
+		synchronized (idle) {
+			return idle.poll();
+		}
+	}
+
+	protected SVNRepository create() throws SVNException {
+		SVNRepository repository = SVNRepositoryFactory.create(url);
+		if (authManager != null) {
+			repository.setAuthenticationManager(authManager);
+		}
+		return repository;
+	}
+
+	protected boolean isHealthy(SVNRepository repository) {
+		try {
+			repository.testConnection();
+			return true;
+		} catch (SVNException e) {
+			LOG.warn("Dropping broken connection to " + url + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	public SVNURL getUrl() {
+		return url;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return Number of sessions currently borrowed
+	 */
+	public int getActiveCount() {
+		return maxSize - permits.availablePermits();
+	}
+
+	/**
+	 * @return Number of open sessions waiting in the pool
+	 */
+	public int getIdleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public long getValidationIntervalMillis() {
+		return validationIntervalMillis;
+	}
+
+	/**
+	 * @param validationIntervalMillis Sessions idle for longer than this are tested
+	 *  before being handed out
+	 */
+	public void setValidationIntervalMillis(long validationIntervalMillis) {
+		this.validationIntervalMillis = validationIntervalMillis;
+	}
+
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	/**
+	 * @param maxWaitMillis How long borrow waits for a free session, 0 to wait forever
+	 */
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	protected static class Entry {
+		final SVNRepository repository;
+		final long since;
+
+		Entry(SVNRepository repository, long since) {
+			this.repository = repository;
+			this.since = since;
+		}
+	}
+}
@@ -1,5 +1,10 @@
 package org.restlesscode.javersion;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -17,6 +22,12 @@ public class SerializationTable {
 	protected Set<Class> toStringClasses = new HashSet<Class>();
 	protected Set<Class> toStringConstructorRegistered = new HashSet<Class>();
 	protected Map<Class, StringSerializer> registeredConvertibleClasses = new HashMap<Class, StringSerializer>();
+	protected Map<Class, StreamSerializer> streamClasses = new HashMap<Class, StreamSerializer>();
+	protected Map<Class, BinaryCodec> binaryCodecClasses = new HashMap<Class, BinaryCodec>();
+	protected Map<String, BinaryCodec> binaryCodecs = new HashMap<String, BinaryCodec>();
+	protected final JavaSerializationCodec javaCodec = new JavaSerializationCodec();
+	protected final CompactCodec compactCodec = new CompactCodec();
+	protected volatile ClassValue<StorableClassDescriptor> descriptors = newDescriptorCache();
 	
 	
 	protected final Class[] defaultToStringClasses = { String.class, 
@@ -32,16 +43,24 @@ public class SerializationTable {
 		TO_STRING,
 		TO_STRING_CONSTRUCTOR,
 		REGISTERED,
-		SERIALIZE_OBJECT
+		SERIALIZE_OBJECT,
+		STREAM
 	}
 	
 	protected SerializationTable() {
 		toStringClasses.addAll(Arrays.asList(defaultToStringClasses));
 		toStringConstructorRegistered.addAll(Arrays.asList(defaultToStringConstructorClasses));
+		streamClasses.put(InputStream.class, new StreamSerializers.InputStreamSerializer());
+		streamClasses.put(ReadableByteChannel.class, new StreamSerializers.ChannelSerializer());
+		streamClasses.put(Path.class, new StreamSerializers.PathSerializer());
+		binaryCodecs.put(javaCodec.getName(), javaCodec);
+		binaryCodecs.put(compactCodec.getName(), compactCodec);
 	}
 	
 	public StoreMethod getStorageMethod(Class<?> c) {
-		if (registeredConvertibleClasses.containsKey(c)) {
+		if (streamClasses.containsKey(c)) {
+			return StoreMethod.STREAM;
+		} else if (registeredConvertibleClasses.containsKey(c)) {
 			return StoreMethod.REGISTERED;
 		} else if (toStringConstructorRegistered.contains(c)) {
 			return StoreMethod.TO_STRING_CONSTRUCTOR;
@@ -52,14 +71,81 @@ public class SerializationTable {
 		}
 	}
 	
+	/**
+	 * Returns the cached descriptor of an SvnStorable class, inspecting the class
+	 * on first use. Registering a class with this table drops the cached descriptors.
+	 * @param c Class annotated with SvnStorable
+	 * @return Descriptor resolved against this table
+	 * @throws IOException If the class has fields that cannot be stored
+	 */
+	public StorableClassDescriptor getDescriptor(Class<?> c) throws IOException {
+		try {
+			return descriptors.get(c);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	protected ClassValue<StorableClassDescriptor> newDescriptorCache() {
+		return new ClassValue<StorableClassDescriptor>() {
+			@Override
+			protected StorableClassDescriptor computeValue(Class<?> type) {
+				try {
+					return StorableClassDescriptor.describe(type, SerializationTable.this);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+	
 	protected String serializeCustom(Object o) {
-		return registeredConvertibleClasses.get(o.getClass()).serialize(o);
+		return serializeCustom(o, o.getClass());
+	}
+	
+	protected String serializeCustom(Object o, Class<?> c) {
+		return registeredConvertibleClasses.get(c).serialize(o);
 	}
 	
 	protected <T> T deserializeCustom(String s, Class<T> c) {
 		return (T) registeredConvertibleClasses.get(c).deserialize(s);
 	}
 	
+	/**
+	 * Picks the codec SERIALIZE_OBJECT fields of a type are written with: a codec
+	 * registered for the type, the compact codec for the JDK types it supports,
+	 * and java serialization for everything else.
+	 */
+	public BinaryCodec getBinaryCodec(Class<?> c) {
+		BinaryCodec codec = binaryCodecClasses.get(c);
+		if (codec != null) {
+			return codec;
+		}
+		return compactCodec.supports(c) ? compactCodec : javaCodec;
+	}
+	
+	/**
+	 * @param name Name stored in a field's codec property, null for fields written
+	 *  with java serialization
+	 * @throws IOException If no codec of that name is registered
+	 */
+	public BinaryCodec getBinaryCodec(String name) throws IOException {
+		if (name == null) {
+			return javaCodec;
+		}
+		BinaryCodec codec = binaryCodecs.get(name);
+		if (codec == null) {
+			throw new IOException("No binary codec named " + name);
+		}
+		return codec;
+	}
+	
+	// Safe: registerStreamClass only pairs a class with a serializer of that class
+	@SuppressWarnings("unchecked")
+	protected <T> StreamSerializer<T> getStreamSerializer(Class<T> c) {
+		return (StreamSerializer<T>) streamClasses.get(c);
+	}
+	
 	/**
 	 * Register a class that meets the following condition: 
 	 * It has a public constructor that takes the string generated by its toString()
@@ -75,6 +161,7 @@ public class SerializationTable {
 	 */
 	public void registerToStringConstructorClass(Class<?> c) {
 		toStringConstructorRegistered.add(c);
+		descriptors = newDescriptorCache();
 	}
 	
 	/**
@@ -84,6 +171,34 @@ public class SerializationTable {
 	 */
 	public void registerConvertibleClass(Class<?> c, StringSerializer<?> s) {
 		registeredConvertibleClasses.put(c, s);
+		descriptors = newDescriptorCache();
+	}
+	
+	/**
+	 * Register a stream serializer for a class. Fields of the class can only be
+	 * used as SvnContent, whose text is then streamed to and from SVN instead of
+	 * being built in memory. InputStream, ReadableByteChannel and Path are
+	 * registered by default. A Path read from SVN is a new temporary file the
+	 * caller owns and must delete, nothing else deletes it.
+	 * @param c
+	 * @param s
+	 */
+	public <T> void registerStreamClass(Class<T> c, StreamSerializer<T> s) {
+		streamClasses.put(c, s);
+		descriptors = newDescriptorCache();
+	}
+	
+	/**
+	 * Register a binary codec for a class stored as SERIALIZE_OBJECT. The codec
+	 * can also read fields written by it for other classes, since readers look
+	 * codecs up by name.
+	 * @param c
+	 * @param codec
+	 */
+	public void registerBinaryCodec(Class<?> c, BinaryCodec codec) {
+		binaryCodecClasses.put(c, codec);
+		binaryCodecs.put(codec.getName(), codec);
+		descriptors = newDescriptorCache();
 	}
 	
 }
@@ -0,0 +1,138 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNPropertyValue;
+
+/**
+ * An object in the form it is committed to SVN: the path of its file, the file's
+ * text and the file's properties.
+ */
+public class SerializedObject implements Comparable<SerializedObject> {
+
+	protected final String path;
+	protected final byte[] content;
+	protected final Map<String, SVNPropertyValue> properties;
+	protected final Object streamValue;
+	protected final StreamSerializer<Object> streamSerializer;
+	protected long expectedRevision = -1;
+	protected boolean deletion;
+
+	/**
+	 * @param path Path relative to SVN root, leading and trailing slashes are ignored
+	 * @param content File text, or null if the object has no content
+	 * @param properties SVN properties of the file
+	 */
+	public SerializedObject(String path, byte[] content, Map<String, SVNPropertyValue> properties) {
+		this.path = Utils.normalizePath(path);
+		this.content = content;
+		this.properties = properties;
+		this.streamValue = null;
+		this.streamSerializer = null;
+	}
+
+	/**
+	 * Creates an object whose file text is streamed by a serializer while it is
+	 * committed instead of being held in memory.
+	 * @param path Path relative to SVN root, leading and trailing slashes are ignored
+	 * @param value SvnContent value
+	 * @param serializer Serializer writing the file text of the value
+	 * @param properties SVN properties of the file
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> SerializedObject(String path, T value, StreamSerializer<T> serializer, Map<String, SVNPropertyValue> properties) {
+		this.path = Utils.normalizePath(path);
+		this.content = null;
+		this.properties = properties;
+		this.streamValue = value;
+		this.streamSerializer = (StreamSerializer<Object>) serializer;
+	}
+
+	/**
+	 * Creates a marker for a file to delete in the commit, such as an element
+	 * removed from a collection. A file that does not exist is left alone.
+	 * @param path Path relative to SVN root, leading and trailing slashes are ignored
+	 */
+	public static SerializedObject deletion(String path) {
+		SerializedObject deletion = new SerializedObject(path, null, Collections.<String, SVNPropertyValue>emptyMap());
+		deletion.deletion = true;
+		return deletion;
+	}
+
+	/**
+	 * @return true if the file at the path is deleted rather than written
+	 */
+	public boolean isDeletion() {
+		return deletion;
+	}
+
+	/**
+	 * @return Revision the object's file must not have changed since for the
+	 *  commit to succeed, -1 to write unconditionally
+	 */
+	public long getExpectedRevision() {
+		return expectedRevision;
+	}
+
+	public void setExpectedRevision(long expectedRevision) {
+		this.expectedRevision = expectedRevision;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * @return true if the file text is written by {@link #writeContent(OutputStream)}
+	 */
+	public boolean isStreamed() {
+		return streamSerializer != null;
+	}
+
+	/**
+	 * @return false if the file text is streamed from a source that can only be read once
+	 */
+	public boolean isRepeatable() {
+		return streamSerializer == null || streamSerializer.isRepeatable();
+	}
+
+	/**
+	 * Streams the file text of a streamed object.
+	 */
+	public void writeContent(OutputStream out) throws IOException {
+		streamSerializer.serialize(streamValue, out);
+	}
+
+	public Map<String, SVNPropertyValue> getProperties() {
+		return properties;
+	}
+
+	/**
+	 * @return Approximate number of bytes sent when committing this object, not
+	 *  counting streamed text
+	 */
+	public long getSize() {
+		long size = path.length() + (content == null ? 0 : content.length);
+		for (Map.Entry<String, SVNPropertyValue> property : properties.entrySet()) {
+			size += property.getKey().length();
+			SVNPropertyValue value = property.getValue();
+			if (value.isString()) {
+				size += value.getString().length();
+			} else if (value.getBytes() != null) {
+				size += value.getBytes().length;
+			}
+		}
+		return size;
+	}
+
+	public int compareTo(SerializedObject o) {
+		return path.compareTo(o.path);
+	}
+}
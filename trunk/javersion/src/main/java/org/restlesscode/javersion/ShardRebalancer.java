@@ -0,0 +1,284 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * Moves the objects of a {@link ShardedSvnStore} whose shard changes under a
+ * new router: each is copied to its new shard as stored, text and properties
+ * alike, then the store switches to the new router, then the old copies are
+ * deleted. Reads find every object throughout; writes should be paused while
+ * a rebalance runs, since a write to the old shard after its object was
+ * copied is lost. Directories emptied by the move are left in place.
+ */
+public class ShardRebalancer {
+
+	protected final ShardedSvnStore store;
+	protected int batchSize = 100;
+
+	public ShardRebalancer(ShardedSvnStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * @return Number of objects copied or deleted per commit
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be at least 1");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Finds the objects a router would place on another shard than the one
+	 * they are on.
+	 * @return Shard each of those objects moves to, by path in path order
+	 */
+	public Map<String, Move> plan(ShardRouter newRouter) throws IOException {
+		Map<String, Move> moves = new TreeMap<String, Move>();
+		for (Map.Entry<String, SvnStore> shard : store.getShards().entrySet()) {
+			for (String path : listObjects(shard.getValue())) {
+				// Elements of collections stay on the shard of the object owning them
+				String target = newRouter.route(Utils.getOwnerPath(path));
+				if (! target.equals(shard.getKey())) {
+					moves.put(path, new Move(path, shard.getKey(), target));
+				}
+			}
+		}
+		return moves;
+	}
+
+	/**
+	 * Moves every object whose shard changes and switches the store to the new router.
+	 * @return Number of objects moved
+	 * @throws IllegalArgumentException If the router routes to an unknown shard
+	 */
+	public int rebalance(ShardRouter newRouter) throws IOException {
+		for (String shard : newRouter.getShards()) {
+			if (! store.getShards().containsKey(shard)) {
+				throw new IllegalArgumentException("Router uses unknown shard " + shard);
+			}
+		}
+		Map<String, Move> moves = plan(newRouter);
+		Map<String, List<Move>> byTarget = new LinkedHashMap<String, List<Move>>();
+		Map<String, List<String>> bySource = new LinkedHashMap<String, List<String>>();
+		for (Move move : moves.values()) {
+			group(byTarget, move.getTarget()).add(move);
+			group(bySource, move.getSource()).add(move.getPath());
+		}
+		for (Map.Entry<String, List<Move>> target : byTarget.entrySet()) {
+			List<Move> shardMoves = target.getValue();
+			for (int i = 0; i < shardMoves.size(); i += batchSize) {
+				copy(shardMoves.subList(i, Math.min(shardMoves.size(), i + batchSize)),
+						store.getShards().get(target.getKey()));
+			}
+		}
+		store.setRouter(newRouter);
+		try {
+			for (Map.Entry<String, List<String>> source : bySource.entrySet()) {
+				List<String> paths = source.getValue();
+				for (int i = 0; i < paths.size(); i += batchSize) {
+					delete(store.getShards().get(source.getKey()), paths.subList(i, Math.min(paths.size(), i + batchSize)));
+				}
+			}
+		} catch (SVNException e) {
+			throw new IOException("Objects were moved but old copies remain, rebalance again to delete them", e);
+		}
+		return moves.size();
+	}
+
+	private static <K, V> List<V> group(Map<K, List<V>> groups, K key) {
+		List<V> group = groups.get(key);
+		if (group == null) {
+			group = new ArrayList<V>();
+			groups.put(key, group);
+		}
+		return group;
+	}
+
+	/**
+	 * Commits copies of objects, as they are stored on their source shards, to a shard.
+	 */
+	protected void copy(List<Move> moves, SvnStore target) throws IOException {
+		List<SerializedObject> copies = new ArrayList<SerializedObject>(moves.size());
+		for (Move move : moves) {
+			copies.add(fetch(store.getShards().get(move.getSource()), move.getPath()));
+		}
+		target.commit("Rebalancing " + copies.size() + " objects", copies);
+	}
+
+	/**
+	 * @return Text and regular properties of the file at a path at HEAD
+	 */
+	protected SerializedObject fetch(SvnStore source, String path) throws IOException {
+		SVNProperties fileProperties = new SVNProperties();
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		try {
+			SVNRepository repository = source.borrowRepository();
+			SVNException failure = null;
+			try {
+				repository.getFile(path, SvnRevision.HEAD, fileProperties, content);
+			} catch (SVNException e) {
+				failure = e;
+				throw e;
+			} finally {
+				source.releaseRepository(repository, failure);
+			}
+		} catch (SVNException e) {
+			throw new IOException(e);
+		}
+		Map<String, SVNPropertyValue> properties = new LinkedHashMap<String, SVNPropertyValue>();
+		for (Iterator<?> it = fileProperties.nameSet().iterator(); it.hasNext(); ) {
+			String name = (String) it.next();
+			if (SVNProperty.isRegularProperty(name)) {
+				properties.put(name, fileProperties.getSVNPropertyValue(name));
+			}
+		}
+		return new SerializedObject(path, content.toByteArray(), properties);
+	}
+
+	/**
+	 * Deletes files from a shard in a single commit and forgets what the
+	 * shard's store had cached about them.
+	 */
+	protected void delete(SvnStore source, List<String> paths) throws SVNException {
+		SVNRepository repository = source.borrowRepository();
+		SVNException failure = null;
+		try {
+			ISVNEditor editor = repository.getCommitEditor("Rebalancing: removing " + paths.size() + " objects", null);
+			try {
+				editor.openRoot(-1);
+				LinkedList<String> openDirs = new LinkedList<String>();
+				openDirs.push("");
+				for (String path : paths) {
+					String parent = Utils.getParentPath(path);
+					while (! ObjectCommit.isAncestorOrSelf(openDirs.peek(), parent)) {
+						editor.closeDir();
+						openDirs.pop();
+					}
+					String top = openDirs.peek();
+					for (int slash = parent.indexOf('/', top.length() + 1); ! top.equals(parent);
+							slash = parent.indexOf('/', slash + 1)) {
+						top = slash < 0 ? parent : parent.substring(0, slash);
+						editor.openDir(top, -1);
+						openDirs.push(top);
+						if (slash < 0) {
+							break;
+						}
+					}
+					editor.deleteEntry(path, -1);
+				}
+				while (! openDirs.isEmpty()) {
+					editor.closeDir();
+					openDirs.pop();
+				}
+				editor.closeEdit();
+			} catch (SVNException e) {
+				editor.abortEdit();
+				throw e;
+			}
+		} catch (SVNException e) {
+			failure = e;
+			throw e;
+		} finally {
+			source.releaseRepository(repository, failure);
+		}
+		source.getKnownPathCache().clear();
+		for (String path : paths) {
+			source.getFingerprintCache().remove(path);
+			BaseContentCache bases = source.getBaseContentCache();
+			if (bases != null) {
+				bases.remove(path);
+			}
+		}
+	}
+
+	/**
+	 * @return Paths of every file in a shard
+	 */
+	protected List<String> listObjects(SvnStore shard) throws IOException {
+		List<String> paths = new ArrayList<String>();
+		try {
+			SVNRepository repository = shard.borrowRepository();
+			SVNException failure = null;
+			try {
+				collectFiles(repository, "", paths);
+			} catch (SVNException e) {
+				failure = e;
+				throw e;
+			} finally {
+				shard.releaseRepository(repository, failure);
+			}
+		} catch (SVNException e) {
+			throw new IOException(e);
+		}
+		return paths;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void collectFiles(SVNRepository repository, String dir, List<String> paths) throws SVNException {
+		for (SVNDirEntry entry : (Collection<SVNDirEntry>) repository.getDir(dir, SvnRevision.HEAD, null,
+				(Collection<SVNDirEntry>) null)) {
+			String path = dir.length() == 0 ? entry.getName() : dir + "/" + entry.getName();
+			if (entry.getKind() == SVNNodeKind.DIR) {
+				collectFiles(repository, path, paths);
+			} else if (entry.getKind() == SVNNodeKind.FILE) {
+				paths.add(path);
+			}
+		}
+	}
+
+	/**
+	 * An object that changes shard.
+	 */
+	public static class Move {
+		protected final String path;
+		protected final String source;
+		protected final String target;
+
+		public Move(String path, String source, String target) {
+			this.path = path;
+			this.source = source;
+			this.target = target;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public String getSource() {
+			return source;
+		}
+
+		public String getTarget() {
+			return target;
+		}
+
+		@Override
+		public String toString() {
+			return path + ": " + source + " -> " + target;
+		}
+	}
+}
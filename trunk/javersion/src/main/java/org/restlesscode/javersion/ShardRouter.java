@@ -0,0 +1,22 @@
+package org.restlesscode.javersion;
+
+import java.util.Set;
+
+/**
+ * Decides which shard of a {@link ShardedSvnStore} holds the object at a path.
+ * Routers are immutable; a store changes routers only through a
+ * {@link ShardRebalancer}, which moves the objects first.
+ */
+public interface ShardRouter {
+
+	/**
+	 * @param path Normalized path of an object
+	 * @return Name of the shard holding it
+	 */
+	String route(String path);
+
+	/**
+	 * @return Names of every shard paths can be routed to
+	 */
+	Set<String> getShards();
+}
@@ -0,0 +1,545 @@
+package org.restlesscode.javersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.tmatesoft.svn.core.SVNException;
+
+/**
+ * Spreads objects over several repositories, each behind its own
+ * {@link SvnStore}, so that writes to different shards commit in parallel.
+ * A {@link ShardRouter} maps every path to the shard holding it, and each read
+ * or write of a path goes to that shard alone. Batch writes are split by shard
+ * and committed concurrently, and directory reads, streams and index lookups
+ * fan out to every shard.
+ * <p>
+ * Revision numbers belong to a shard: a revision given for a path is a
+ * revision of the path's shard, and a batch spanning shards creates one
+ * revision in each of them, which are not atomic together. So unlike
+ * {@link SvnObjectWriter#write(WriteBatch)}, writing a batch returns a result
+ * per shard, and reads of a directory at past revisions take a revision per
+ * shard. Rules that a single repository enforces across paths, such as not
+ * writing an object below another one, only hold within a shard.
+ */
+public class ShardedSvnStore {
+
+	protected final Map<String, SvnStore> shards;
+	protected final Map<String, SvnObjectReader> readers = new LinkedHashMap<String, SvnObjectReader>();
+	protected final Map<String, SvnObjectWriter> writers = new LinkedHashMap<String, SvnObjectWriter>();
+	protected volatile ShardRouter router;
+
+	/**
+	 * Connects to a repository per shard and routes paths by consistent hashing.
+	 * @param urlsByShard Repository URL of each shard, by shard name
+	 */
+	public ShardedSvnStore(Map<String, String> urlsByShard) throws SVNException {
+		this(connect(urlsByShard), new ConsistentHashRouter(urlsByShard.keySet()));
+	}
+
+	/**
+	 * @param shards Store of each shard, by shard name
+	 * @param router Router of paths to those shards
+	 */
+	public ShardedSvnStore(Map<String, SvnStore> shards, ShardRouter router) {
+		this.shards = Collections.unmodifiableMap(new LinkedHashMap<String, SvnStore>(shards));
+		for (Map.Entry<String, SvnStore> shard : this.shards.entrySet()) {
+			readers.put(shard.getKey(), new SvnObjectReader(shard.getValue()));
+			writers.put(shard.getKey(), new SvnObjectWriter(shard.getValue()));
+		}
+		setRouter(router);
+	}
+
+	private static Map<String, SvnStore> connect(Map<String, String> urlsByShard) throws SVNException {
+		Map<String, SvnStore> shards = new LinkedHashMap<String, SvnStore>();
+		for (Map.Entry<String, String> url : urlsByShard.entrySet()) {
+			shards.put(url.getKey(), new SvnStore(url.getValue()));
+		}
+		return shards;
+	}
+
+	/**
+	 * @return Store of each shard, by shard name
+	 */
+	public Map<String, SvnStore> getShards() {
+		return shards;
+	}
+
+	public ShardRouter getRouter() {
+		return router;
+	}
+
+	/**
+	 * Replaces the router without moving any object; use a {@link ShardRebalancer}
+	 * to change the routing of a store holding objects.
+	 * @throws IllegalArgumentException If the router routes to an unknown shard
+	 */
+	public void setRouter(ShardRouter router) {
+		for (String shard : router.getShards()) {
+			if (! shards.containsKey(shard)) {
+				throw new IllegalArgumentException("Router uses unknown shard " + shard);
+			}
+		}
+		this.router = router;
+	}
+
+	/**
+	 * @return Name of the shard holding the object at a path
+	 */
+	public String shardOf(String path) {
+		return router.route(Utils.normalizePath(path));
+	}
+
+	/**
+	 * @return Store of the shard holding the object at a path
+	 */
+	public SvnStore getStore(String path) {
+		return shards.get(shardOf(path));
+	}
+
+	/**
+	 * @return Reader of the shard holding the object at a path
+	 */
+	public SvnObjectReader getReader(String path) {
+		return readers.get(shardOf(path));
+	}
+
+	/**
+	 * @return Writer of the shard holding the object at a path
+	 */
+	public SvnObjectWriter getWriter(String path) {
+		return writers.get(shardOf(path));
+	}
+
+	/**
+	 * @param revision Revision of the path's shard, -1 for HEAD
+	 * @see SvnObjectReader#read(String, long, Class)
+	 */
+	public <T> T read(String path, long revision, Class<T> clazz) throws IOException, MissingObjectException {
+		return getReader(path).read(path, revision, clazz);
+	}
+
+	/**
+	 * @see SvnObjectReader#readStored(String, long, Class)
+	 */
+	public <T> StoredObject<T> readStored(String path, long revision, Class<T> clazz)
+			throws IOException, MissingObjectException {
+		return getReader(path).readStored(path, revision, clazz);
+	}
+
+	/**
+	 * @see SvnObjectReader#readProperties(String, long, Class)
+	 */
+	public <T> T readProperties(String path, long revision, Class<T> clazz) throws IOException, MissingObjectException {
+		return getReader(path).readProperties(path, revision, clazz);
+	}
+
+	/**
+	 * @see SvnObjectReader#readCollection(String, long, Class, String)
+	 */
+	public <C> C readCollection(String path, long revision, Class<?> clazz, String field)
+			throws IOException, MissingObjectException {
+		return getReader(path).<C>readCollection(path, revision, clazz, field);
+	}
+
+	/**
+	 * @see SvnObjectReader#readElement(String, long, Class, String, Object)
+	 */
+	public <E> E readElement(String path, long revision, Class<?> clazz, String field, Object key)
+			throws IOException, MissingObjectException {
+		return getReader(path).<E>readElement(path, revision, clazz, field, key);
+	}
+
+	/**
+	 * @see SvnObjectReader#readAsync(String, long, Class)
+	 */
+	public <T> CompletableFuture<T> readAsync(String path, long revision, Class<T> clazz) {
+		return getReader(path).readAsync(path, revision, clazz);
+	}
+
+	/**
+	 * @param fromRevision First revision of the path's shard
+	 * @see SvnObjectReader#history(String, long, long, Class)
+	 */
+	public <T> Stream<ObjectVersion<T>> history(String path, long fromRevision, long toRevision, Class<T> clazz) {
+		return getReader(path).history(path, fromRevision, toRevision, clazz);
+	}
+
+	/**
+	 * Reads the latest versions of many objects, reading from every shard at
+	 * once. Paths where there is no object are left out.
+	 * @return Future completed with the objects by path, in the order of the paths
+	 */
+	public <T> CompletableFuture<Map<String, T>> readAllAsync(final List<String> paths, Class<T> clazz) {
+		Map<String, List<String>> pathsByShard = new LinkedHashMap<String, List<String>>();
+		for (String path : paths) {
+			String shard = shardOf(path);
+			List<String> shardPaths = pathsByShard.get(shard);
+			if (shardPaths == null) {
+				shardPaths = new ArrayList<String>();
+				pathsByShard.put(shard, shardPaths);
+			}
+			shardPaths.add(path);
+		}
+		final List<CompletableFuture<Map<String, T>>> futures = new ArrayList<CompletableFuture<Map<String, T>>>();
+		for (Map.Entry<String, List<String>> shard : pathsByShard.entrySet()) {
+			futures.add(readers.get(shard.getKey()).readAllAsync(shard.getValue(), SvnRevision.HEAD, clazz));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+				.thenApply(new Function<Void, Map<String, T>>() {
+					public Map<String, T> apply(Void done) {
+						Map<String, T> found = new LinkedHashMap<String, T>();
+						for (CompletableFuture<Map<String, T>> future : futures) {
+							found.putAll(future.join());
+						}
+						Map<String, T> ordered = new LinkedHashMap<String, T>();
+						for (String path : paths) {
+							T object = found.get(path);
+							if (object != null) {
+								ordered.put(path, object);
+							}
+						}
+						return ordered;
+					}
+				});
+	}
+
+	/**
+	 * Reads the latest versions of every object in a directory, which may be
+	 * spread over all shards, reading from every shard at once.
+	 * @return Objects by path, in path order
+	 * @throws MissingObjectException If no shard has the directory
+	 */
+	public <T> Map<String, T> readAll(String dirPath, Class<T> clazz) throws IOException, MissingObjectException {
+		return readAll(dirPath, Collections.<String, Long>emptyMap(), clazz);
+	}
+
+	/**
+	 * Reads every object in a directory at a revision of each shard, reading from
+	 * every shard at once.
+	 * @param revisions Revision to read each shard at, by shard name; shards left
+	 *  out are read at HEAD
+	 * @return Objects by path, in path order
+	 * @throws MissingObjectException If no shard has the directory
+	 * @see #revisionsOf(Map)
+	 */
+	public <T> Map<String, T> readAll(final String dirPath, final Map<String, Long> revisions, final Class<T> clazz)
+			throws IOException, MissingObjectException {
+		Map<String, Map<String, T>> results = fanOut(new ShardRead<Map<String, T>>() {
+			public Map<String, T> read(String shard, SvnObjectReader reader)
+					throws IOException, MissingObjectException {
+				return reader.readAll(dirPath, revisionOf(revisions, shard), clazz);
+			}
+		});
+		if (results.isEmpty()) {
+			throw new MissingObjectException();
+		}
+		Map<String, T> all = new TreeMap<String, T>();
+		for (Map<String, T> objects : results.values()) {
+			all.putAll(objects);
+		}
+		return all;
+	}
+
+	/**
+	 * Streams the latest versions of every object in a directory.
+	 * @see #stream(String, Map, Class)
+	 */
+	public <T> Stream<StoredObject<T>> stream(String dirPath, Class<T> clazz) {
+		return stream(dirPath, Collections.<String, Long>emptyMap(), clazz);
+	}
+
+	/**
+	 * Streams every object in a directory at a revision of each shard. Every
+	 * shard is fetched at once on a background thread of its own, and the
+	 * objects come shard by shard; shards without the directory add nothing. Use
+	 * the stream in try-with-resources, as each shard's fetch holds a session
+	 * until it is read to the end or closed.
+	 * @param revisions Revision to read each shard at, by shard name; shards left
+	 *  out are read at HEAD
+	 * @see SvnObjectReader#stream(String, long, Class)
+	 */
+	public <T> Stream<StoredObject<T>> stream(String dirPath, Map<String, Long> revisions, Class<T> clazz) {
+		final List<BackgroundIterator<StoredObject<T>>> iterators = new ArrayList<BackgroundIterator<StoredObject<T>>>();
+		for (Map.Entry<String, SvnObjectReader> shard : readers.entrySet()) {
+			iterators.add(shard.getValue().iterate(dirPath, revisionOf(revisions, shard.getKey()), clazz));
+		}
+		Iterator<StoredObject<T>> chained = new Iterator<StoredObject<T>>() {
+			private int current;
+
+			public boolean hasNext() {
+				while (current < iterators.size()) {
+					try {
+						if (iterators.get(current).hasNext()) {
+							return true;
+						}
+					} catch (UncheckedIOException e) {
+						if (! (e.getCause().getCause() instanceof MissingObjectException)) {
+							throw e;
+						}
+					}
+					current++;
+				}
+				return false;
+			}
+
+			public StoredObject<T> next() {
+				if (! hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return iterators.get(current).next();
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chained, Spliterator.ORDERED), false)
+				.onClose(new Runnable() {
+					public void run() {
+						for (BackgroundIterator<StoredObject<T>> iterator : iterators) {
+							iterator.close();
+						}
+					}
+				});
+	}
+
+	/**
+	 * Creates an index of a class on every shard.
+	 * @param directory Directory each shard's index is saved to, in a file named
+	 *  after the shard, null to keep the indexes in memory only
+	 * @return Index of each shard, by shard name
+	 * @see SvnStore#createIndex(Class, String, File)
+	 */
+	public <T> Map<String, PropertyIndex<T>> createIndex(Class<T> clazz, String pathPrefix, File directory)
+			throws IOException {
+		Map<String, PropertyIndex<T>> indexes = new LinkedHashMap<String, PropertyIndex<T>>();
+		for (Map.Entry<String, SvnStore> shard : shards.entrySet()) {
+			File file = directory == null ? null : new File(directory, shard.getKey() + ".index");
+			indexes.put(shard.getKey(), shard.getValue().createIndex(clazz, pathPrefix, file));
+		}
+		return indexes;
+	}
+
+	/**
+	 * Finds the objects of a class whose indexed property equals a value, looking
+	 * them up on every shard at once.
+	 * @return Objects by path, in path order
+	 * @see SvnObjectReader#findBy(Class, String, Object)
+	 */
+	public <T> Map<String, T> findBy(final Class<T> clazz, final String property, final Object value)
+			throws IOException {
+		Map<String, T> found = new TreeMap<String, T>();
+		for (Map<String, T> objects : fanOut(new ShardRead<Map<String, T>>() {
+			public Map<String, T> read(String shard, SvnObjectReader reader) throws IOException {
+				return reader.findBy(clazz, property, value);
+			}
+		}).values()) {
+			found.putAll(objects);
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the objects of a class whose indexed property is in a range, looking
+	 * them up on every shard at once.
+	 * @return Objects by path, in value order and in path order for equal values
+	 * @see SvnObjectReader#findInRange(Class, String, Object, Object, long)
+	 */
+	public <T> Map<String, T> findInRange(final Class<T> clazz, final String property, final Object from,
+			final Object to) throws IOException {
+		List<Map.Entry<String, T>> entries = new ArrayList<Map.Entry<String, T>>();
+		for (Map<String, T> objects : fanOut(new ShardRead<Map<String, T>>() {
+			public Map<String, T> read(String shard, SvnObjectReader reader) throws IOException {
+				return reader.findInRange(clazz, property, from, to, SvnRevision.HEAD);
+			}
+		}).values()) {
+			entries.addAll(objects.entrySet());
+		}
+		StorableField field = shards.values().iterator().next().getSerializationTable()
+				.getDescriptor(clazz).getProperty(property);
+		final Map<String, Object> values = new HashMap<String, Object>();
+		for (Map.Entry<String, T> entry : entries) {
+			values.put(entry.getKey(), field.get(entry.getValue()));
+		}
+		Collections.sort(entries, new Comparator<Map.Entry<String, T>>() {
+			public int compare(Map.Entry<String, T> a, Map.Entry<String, T> b) {
+				int order = PropertyIndex.VALUE_ORDER.compare(values.get(a.getKey()), values.get(b.getKey()));
+				return order != 0 ? order : a.getKey().compareTo(b.getKey());
+			}
+		});
+		Map<String, T> found = new LinkedHashMap<String, T>();
+		for (Map.Entry<String, T> entry : entries) {
+			found.put(entry.getKey(), entry.getValue());
+		}
+		return found;
+	}
+
+	/**
+	 * @return Revision of each shard's commit, by shard name, to read a batch
+	 *  written with {@link #write(WriteBatch)} back at
+	 */
+	public static Map<String, Long> revisionsOf(Map<String, WriteResult> results) {
+		Map<String, Long> revisions = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, WriteResult> result : results.entrySet()) {
+			if (result.getValue().isCommitted()) {
+				revisions.put(result.getKey(), result.getValue().getRevision());
+			}
+		}
+		return revisions;
+	}
+
+	protected static long revisionOf(Map<String, Long> revisions, String shard) {
+		Long revision = revisions.get(shard);
+		return revision == null ? SvnRevision.HEAD : revision;
+	}
+
+	/**
+	 * Runs a read on every shard at once.
+	 * @return Result of each shard, by shard name, leaving out shards where
+	 *  the read found nothing
+	 * @throws IOException The first failure, after every read has finished
+	 */
+	protected <R> Map<String, R> fanOut(final ShardRead<R> read) throws IOException {
+		Map<String, CompletableFuture<R>> futures = new LinkedHashMap<String, CompletableFuture<R>>();
+		for (final Map.Entry<String, SvnObjectReader> shard : readers.entrySet()) {
+			futures.put(shard.getKey(), CompletableFuture.supplyAsync(new Supplier<R>() {
+				public R get() {
+					try {
+						return read.read(shard.getKey(), shard.getValue());
+					} catch (MissingObjectException e) {
+						return null;
+					} catch (IOException e) {
+						throw new CompletionException(e);
+					}
+				}
+			}, shards.get(shard.getKey()).getAsyncExecutor()));
+		}
+		Map<String, R> results = new LinkedHashMap<String, R>();
+		IOException failure = null;
+		for (Map.Entry<String, CompletableFuture<R>> future : futures.entrySet()) {
+			try {
+				R result = join(future.getValue());
+				if (result != null) {
+					results.put(future.getKey(), result);
+				}
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return results;
+	}
+
+	/**
+	 * A read run on a shard by {@link #fanOut(ShardRead)}.
+	 */
+	protected interface ShardRead<R> {
+		/**
+		 * @throws MissingObjectException If the shard has nothing to read, which
+		 *  is left out of the results
+		 */
+		R read(String shard, SvnObjectReader reader) throws IOException, MissingObjectException;
+	}
+
+	/**
+	 * @see SvnObjectWriter#write(String, Object)
+	 */
+	public WriteResult write(String path, Object o) throws IOException {
+		return getWriter(path).write(path, o);
+	}
+
+	/**
+	 * @param expectedRevision Revision of the path's shard
+	 * @see SvnObjectWriter#write(String, Object, long)
+	 */
+	public WriteResult write(String path, Object o, long expectedRevision) throws IOException {
+		return getWriter(path).write(path, o, expectedRevision);
+	}
+
+	/**
+	 * @see SvnObjectWriter#writeAsync(String, Object)
+	 */
+	public CompletableFuture<WriteResult> writeAsync(String path, Object o) {
+		return getWriter(path).writeAsync(path, o);
+	}
+
+	/**
+	 * Writes a batch as one commit per shard it touches, committing to every
+	 * shard at once. Each shard's commit succeeds or fails on its own.
+	 * @return Result of each shard's commit, by shard name
+	 * @throws IOException The first failure, after every commit has finished
+	 */
+	public Map<String, WriteResult> write(WriteBatch batch) throws IOException {
+		Map<String, WriteBatch> batches = new LinkedHashMap<String, WriteBatch>();
+		for (Map.Entry<String, Object> entry : batch.getObjects().entrySet()) {
+			String shard = shardOf(entry.getKey());
+			WriteBatch shardBatch = batches.get(shard);
+			if (shardBatch == null) {
+				shardBatch = new WriteBatch();
+				batches.put(shard, shardBatch);
+			}
+			shardBatch.add(entry.getKey(), entry.getValue(), batch.getExpectedRevision(entry.getKey()));
+		}
+		Map<String, CompletableFuture<WriteResult>> futures = new LinkedHashMap<String, CompletableFuture<WriteResult>>();
+		for (Map.Entry<String, WriteBatch> shard : batches.entrySet()) {
+			futures.put(shard.getKey(), writers.get(shard.getKey()).writeAsync(shard.getValue()));
+		}
+		Map<String, WriteResult> results = new LinkedHashMap<String, WriteResult>();
+		IOException failure = null;
+		for (Map.Entry<String, CompletableFuture<WriteResult>> future : futures.entrySet()) {
+			try {
+				results.put(future.getKey(), join(future.getValue()));
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return results;
+	}
+
+	/**
+	 * Waits for a future of a shard's work.
+	 */
+	protected static <T> T join(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Closes the store of every shard.
+	 */
+	public void close() throws InterruptedException {
+		for (SvnStore store : shards.values()) {
+			store.close();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Collects fetched file content in memory until it grows past a threshold and
+ * in a temporary file after that. The content can be read back once with
+ * {@link #openStream()}; closing that stream deletes the temporary file.
+ */
+class SpoolOutputStream extends OutputStream {
+
+	protected final int threshold;
+	protected ByteArrayOutputStream memory = new ByteArrayOutputStream();
+	protected Path file;
+	protected OutputStream fileOut;
+	protected long size;
+
+	/**
+	 * @param threshold Number of bytes kept in memory before spilling to disk
+	 */
+	SpoolOutputStream(int threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		target(1).write(b);
+		size++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		target(len).write(b, off, len);
+		size += len;
+	}
+
+	protected OutputStream target(int len) throws IOException {
+		if (fileOut == null && memory.size() + len > threshold) {
+			file = Files.createTempFile("javersion", ".spool");
+			fileOut = Files.newOutputStream(file);
+			memory.writeTo(fileOut);
+			memory = null;
+		}
+		return fileOut != null ? fileOut : memory;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (fileOut != null) {
+			fileOut.close();
+		}
+	}
+
+	/**
+	 * Closes the spool and deletes its temporary file without reading it.
+	 */
+	void discard() throws IOException {
+		close();
+		if (file != null) {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * @return Number of bytes written
+	 */
+	long size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the content spilled into a temporary file
+	 */
+	boolean isSpooled() {
+		return file != null;
+	}
+
+	/**
+	 * Opens the collected content. Must be called after {@link #close()}.
+	 */
+	InputStream openStream() throws IOException {
+		if (file == null) {
+			return new ByteArrayInputStream(memory.toByteArray());
+		}
+		final Path spooled = file;
+		return new FilterInputStream(Files.newInputStream(spooled)) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					Files.deleteIfExists(spooled);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,268 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.restlesscode.javersion.SerializationTable.StoreMethod;
+import org.restlesscode.javersion.annotations.SvnCollection;
+import org.restlesscode.javersion.annotations.SvnContent;
+import org.restlesscode.javersion.annotations.SvnIndexed;
+import org.restlesscode.javersion.annotations.SvnProperty;
+import org.restlesscode.javersion.annotations.SvnStorable;
+
+/**
+ * Everything the readers and writers need to know about an SvnStorable class:
+ * its version, its annotated properties and its content field. Descriptors are
+ * built once per class by {@link SerializationTable#getDescriptor(Class)} and
+ * are immutable, so they can be shared between threads.
+ */
+public class StorableClassDescriptor {
+
+	private static final Log LOG = LogFactory.getLog(StorableClassDescriptor.class);
+
+	protected final Class<?> storableClass;
+	protected final int version;
+	protected final List<StorableField> properties;
+	protected final StorableField content;
+	protected final List<StorableField> collections;
+	protected final int compressThreshold;
+
+	protected StorableClassDescriptor(Class<?> storableClass, int version, List<StorableField> properties,
+			StorableField content, int compressThreshold) {
+		this(storableClass, version, properties, content, Collections.<StorableField>emptyList(), compressThreshold);
+	}
+
+	protected StorableClassDescriptor(Class<?> storableClass, int version, List<StorableField> properties,
+			StorableField content, List<StorableField> collections, int compressThreshold) {
+		this.storableClass = storableClass;
+		this.version = version;
+		this.properties = Collections.unmodifiableList(properties);
+		this.content = content;
+		this.collections = Collections.unmodifiableList(collections);
+		this.compressThreshold = compressThreshold;
+	}
+
+	/**
+	 * Inspects a class and resolves its storable fields against a serialization table.
+	 * @param clazz Class annotated with SvnStorable
+	 * @param serializationTable Table used to pick a store method for each field
+	 * @return Descriptor of the class
+	 * @throws IOException If the annotated methods cannot be stored
+	 */
+	protected static StorableClassDescriptor describe(Class<?> clazz, SerializationTable serializationTable)
+			throws IOException {
+		if (! clazz.isAnnotationPresent(SvnStorable.class)) {
+			throw new IllegalArgumentException("Class " + clazz + " does not conform to SvnStorable annotation.");
+		}
+		SvnStorable s = clazz.getAnnotation(SvnStorable.class);
+		List<StorableField> properties = new ArrayList<StorableField>();
+		StorableField content = null;
+		List<StorableField> collections = new ArrayList<StorableField>();
+
+		for (Method m : clazz.getMethods()) {
+			if (m.isAnnotationPresent(SvnCollection.class)) {
+				if (m.isAnnotationPresent(SvnProperty.class) || m.isAnnotationPresent(SvnContent.class)) {
+					throw new IOException("SvnCollection " + m.getName() + " cannot also be an SvnProperty or SvnContent");
+				}
+				collections.add(describeCollection(m, clazz, serializationTable,
+						s.compress() || m.getAnnotation(SvnCollection.class).compress()));
+			}
+			if (m.isAnnotationPresent(SvnProperty.class)) {
+				StorableField field = describeField(m, clazz, serializationTable,
+						s.compress() || m.getAnnotation(SvnProperty.class).compress(),
+						m.isAnnotationPresent(SvnIndexed.class));
+				if (field.getStoreMethod() == StoreMethod.STREAM) {
+					throw new IOException("Stream field " + field.getName() + " can only be stored as SvnContent");
+				}
+				if (field.isLazy()) {
+					throw new IOException("LazyContent field " + field.getName() + " can only be stored as SvnContent");
+				}
+				properties.add(field);
+			}
+			if (m.isAnnotationPresent(SvnContent.class)) {
+				if (content != null) {
+					throw new IOException("Cannot mark more than one field as SvnContent");
+				}
+				content = describeField(m, clazz, serializationTable,
+						s.compress() || m.getAnnotation(SvnContent.class).compress(), false);
+				if (content.isLazy() && content.getStoreMethod() == StoreMethod.STREAM) {
+					throw new IOException("Stream content " + content.getName() + " is already read lazily, "
+							+ "it cannot be LazyContent");
+				}
+			}
+		}
+
+		StorableClassDescriptor descriptor = new StorableClassDescriptor(clazz, s.version(), properties, content,
+				collections, s.compressThreshold());
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Described " + clazz.getName() + ": properties " + properties + ", content " + content
+					+ ", collections " + collections);
+		}
+		return descriptor;
+	}
+
+	protected static StorableField describeField(Method getter, Class<?> clazz, SerializationTable serializationTable,
+			boolean compressed, boolean indexed) throws IOException {
+		String fieldName = Utils.checkStorability(getter, clazz);
+		Method setter;
+		try {
+			setter = clazz.getMethod(Utils.getSetMethod(fieldName), getter.getReturnType());
+		} catch (NoSuchMethodException e) {
+			throw new IOException("No setter for storable field " + fieldName);
+		}
+		Class<?> type = getter.getReturnType();
+		if (type == LazyContent.class) {
+			type = lazyType(getter, fieldName);
+		}
+		StoreMethod storeMethod = serializationTable.getStorageMethod(type);
+		BinaryCodec codec = storeMethod == StoreMethod.SERIALIZE_OBJECT ? serializationTable.getBinaryCodec(type) : null;
+		return new StorableField(fieldName, getter, setter, type, storeMethod, codec, compressed, indexed);
+	}
+
+	/**
+	 * Resolves a getter returning List&lt;E&gt; or Map&lt;String, V&gt; into a
+	 * field whose type is the class of the elements.
+	 */
+	protected static StorableField describeCollection(Method getter, Class<?> clazz,
+			SerializationTable serializationTable, boolean compressed) throws IOException {
+		String fieldName = Utils.checkStorability(getter, clazz);
+		Method setter;
+		try {
+			setter = clazz.getMethod(Utils.getSetMethod(fieldName), getter.getReturnType());
+		} catch (NoSuchMethodException e) {
+			throw new IOException("No setter for storable field " + fieldName);
+		}
+		Class<?> collectionType = getter.getReturnType();
+		if (collectionType != List.class && collectionType != Map.class) {
+			throw new IOException("SvnCollection " + fieldName + " must be declared as a List or a Map");
+		}
+		Type[] arguments = getter.getGenericReturnType() instanceof ParameterizedType
+				? ((ParameterizedType) getter.getGenericReturnType()).getActualTypeArguments() : null;
+		if (arguments == null || (collectionType == Map.class && arguments[0] != String.class)) {
+			throw new IOException("SvnCollection " + fieldName + " must declare its element class"
+					+ (collectionType == Map.class ? " and String keys" : ""));
+		}
+		Type element = arguments[arguments.length - 1];
+		if (element instanceof ParameterizedType) {
+			element = ((ParameterizedType) element).getRawType();
+		}
+		if (! (element instanceof Class)) {
+			throw new IOException("SvnCollection " + fieldName + " must declare its element class");
+		}
+		Class<?> type = (Class<?>) element;
+		StoreMethod storeMethod = serializationTable.getStorageMethod(type);
+		if (storeMethod == StoreMethod.STREAM) {
+			throw new IOException("Stream elements of " + fieldName + " can only be stored as SvnContent");
+		}
+		BinaryCodec codec = storeMethod == StoreMethod.SERIALIZE_OBJECT ? serializationTable.getBinaryCodec(type) : null;
+		return new StorableField(fieldName, getter, setter, type, collectionType, storeMethod, codec, compressed, false);
+	}
+
+	/**
+	 * @return Class of the values held by the LazyContent a getter returns
+	 */
+	private static Class<?> lazyType(Method getter, String fieldName) throws IOException {
+		Type returnType = getter.getGenericReturnType();
+		if (returnType instanceof ParameterizedType) {
+			Type held = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+			if (held instanceof ParameterizedType) {
+				held = ((ParameterizedType) held).getRawType();
+			}
+			if (held instanceof Class) {
+				return (Class<?>) held;
+			}
+		}
+		throw new IOException("LazyContent field " + fieldName + " must declare the class it holds");
+	}
+
+	public Class<?> getStorableClass() {
+		return storableClass;
+	}
+
+	/**
+	 * @return Class name stored in the jvn.class.name property
+	 */
+	public String getClassName() {
+		return storableClass.getName();
+	}
+
+	/**
+	 * @return Version declared by the SvnStorable annotation
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Minimum size of the content or a binary property for it to be compressed
+	 */
+	public int getCompressThreshold() {
+		return compressThreshold;
+	}
+
+	/**
+	 * @return Fields annotated with SvnProperty
+	 */
+	public List<StorableField> getProperties() {
+		return properties;
+	}
+
+	/**
+	 * @return Property with a name, or null if the class has none
+	 */
+	public StorableField getProperty(String name) {
+		for (StorableField property : properties) {
+			if (property.getName().equals(name)) {
+				return property;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return Properties annotated with SvnIndexed
+	 */
+	public List<StorableField> getIndexedProperties() {
+		List<StorableField> indexed = new ArrayList<StorableField>();
+		for (StorableField property : properties) {
+			if (property.isIndexed()) {
+				indexed.add(property);
+			}
+		}
+		return indexed;
+	}
+
+	/**
+	 * @return Field annotated with SvnContent, or null if the class has none
+	 */
+	public StorableField getContent() {
+		return content;
+	}
+
+	/**
+	 * @return Fields annotated with SvnCollection
+	 */
+	public List<StorableField> getCollections() {
+		return collections;
+	}
+
+	/**
+	 * @return Collection with a name, or null if the class has none
+	 */
+	public StorableField getCollection(String name) {
+		for (StorableField collection : collections) {
+			if (collection.getName().equals(name)) {
+				return collection;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,300 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.restlesscode.javersion.SerializationTable.StoreMethod;
+import org.restlesscode.javersion.annotations.SvnStorable;
+
+/**
+ * A single annotated getter/setter pair of an SvnStorable class, resolved once
+ * and shared by readers and writers through a {@link StorableClassDescriptor}.
+ */
+public class StorableField {
+
+	protected final String name;
+	protected final String svnPropertyName;
+	protected final Method getter;
+	protected final Method setter;
+	protected final Class<?> type;
+	protected final StoreMethod storeMethod;
+	protected final Constructor<?> stringConstructor;
+	protected final PropertyAccessor accessor;
+	protected final String codecPropertyName;
+	protected final BinaryCodec codec;
+	protected final String encodingPropertyName;
+	protected final boolean compressed;
+	protected final boolean indexed;
+	protected final boolean lazy;
+	protected final Class<?> collectionType;
+	protected final boolean nested;
+
+	protected StorableField(String name, Method getter, Method setter, StoreMethod storeMethod, BinaryCodec codec,
+			boolean compressed) throws IOException {
+		this(name, getter, setter, storeMethod, codec, compressed, false);
+	}
+
+	protected StorableField(String name, Method getter, Method setter, StoreMethod storeMethod, BinaryCodec codec,
+			boolean compressed, boolean indexed) throws IOException {
+		this(name, getter, setter, getter.getReturnType(), storeMethod, codec, compressed, indexed);
+	}
+
+	/**
+	 * @param type Type of the field's values, the type argument of a LazyContent getter
+	 */
+	protected StorableField(String name, Method getter, Method setter, Class<?> type, StoreMethod storeMethod,
+			BinaryCodec codec, boolean compressed, boolean indexed) throws IOException {
+		this(name, getter, setter, type, null, storeMethod, codec, compressed, indexed);
+	}
+
+	/**
+	 * @param type Type of the field's values, for a collection the type of its elements
+	 * @param collectionType List or Map for a field stored as a collection, otherwise null
+	 */
+	protected StorableField(String name, Method getter, Method setter, Class<?> type, Class<?> collectionType,
+			StoreMethod storeMethod, BinaryCodec codec, boolean compressed, boolean indexed) throws IOException {
+		this.name = name;
+		this.indexed = indexed;
+		this.svnPropertyName = "jvn.property." + name;
+		this.codecPropertyName = "jvn.codec." + name;
+		this.codec = codec;
+		this.encodingPropertyName = Compression.ENCODING_PROPERTY + "." + name;
+		this.compressed = compressed;
+		this.getter = getter;
+		this.setter = setter;
+		this.type = type;
+		this.lazy = getter.getReturnType() == LazyContent.class;
+		this.collectionType = collectionType;
+		this.nested = collectionType != null && type.isAnnotationPresent(SvnStorable.class);
+		this.storeMethod = storeMethod;
+		this.accessor = PropertyAccessors.create(getter, setter);
+		if (storeMethod == StoreMethod.TO_STRING_CONSTRUCTOR && ! nested) {
+			try {
+				this.stringConstructor = type.getConstructor(String.class);
+			} catch (NoSuchMethodException e) {
+				throw new IOException("No String constructor for " + type + " of field " + name);
+			}
+		} else {
+			this.stringConstructor = null;
+		}
+	}
+
+	/**
+	 * @return Name of the field, derived from the getter name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Name of the SVN property the field is stored under
+	 */
+	public String getSvnPropertyName() {
+		return svnPropertyName;
+	}
+
+	/**
+	 * @return Name of the SVN property recording the codec of a SERIALIZE_OBJECT field
+	 */
+	public String getCodecPropertyName() {
+		return codecPropertyName;
+	}
+
+	/**
+	 * @return Codec a SERIALIZE_OBJECT field is written with, null for other fields
+	 */
+	public BinaryCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * @return Name of the SVN property marking a compressed binary property
+	 */
+	public String getEncodingPropertyName() {
+		return encodingPropertyName;
+	}
+
+	/**
+	 * @return true if the field's bytes are compressed when large enough
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * @return true if the values of the property are indexed
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	public Method getGetter() {
+		return getter;
+	}
+
+	public Method getSetter() {
+		return setter;
+	}
+
+	/**
+	 * @return true if the getter returns a {@link LazyContent} holding the value
+	 */
+	public boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * @return true if the field is an SvnCollection stored as a file per element
+	 */
+	public boolean isCollection() {
+		return collectionType != null;
+	}
+
+	/**
+	 * @return List or Map for a collection field, otherwise null
+	 */
+	public Class<?> getCollectionType() {
+		return collectionType;
+	}
+
+	/**
+	 * @return true if the elements of a collection are SvnStorable objects
+	 */
+	public boolean isNested() {
+		return nested;
+	}
+
+	/**
+	 * @return Directory holding the element files of a collection of an object.
+	 *  An object is a file, so the directory is its sibling.
+	 */
+	public String getCollectionPath(String objectPath) {
+		return Utils.normalizePath(objectPath) + Utils.COLLECTION_MARKER + name;
+	}
+
+	/**
+	 * @return Name of the SVN property listing the elements of a collection
+	 */
+	public String getManifestPropertyName() {
+		return "jvn.collection." + name;
+	}
+
+	/**
+	 * @return Type of the field's values, for a lazy field the type it holds and
+	 *  for a collection the type of its elements
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+
+	public StoreMethod getStoreMethod() {
+		return storeMethod;
+	}
+
+	public PropertyAccessor getAccessor() {
+		return accessor;
+	}
+
+	/**
+	 * Reads the value of this field from an object. The value of a lazy field
+	 * is fetched if it was not yet.
+	 */
+	public Object get(Object target) throws IOException {
+		try {
+			Object value = accessor.get(target);
+			return lazy && value != null ? ((LazyContent<?>) value).get() : value;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} catch (Exception e) {
+			throw wrap(e);
+		}
+	}
+
+	/**
+	 * Sets the value of this field on an object, wrapped in a LazyContent for
+	 * a lazy field.
+	 */
+	public void set(Object target, Object value) throws IOException {
+		try {
+			accessor.set(target, lazy && value != null ? LazyContent.of(value) : value);
+		} catch (Exception e) {
+			throw wrap(e);
+		}
+	}
+
+	/**
+	 * Sets a lazy field to a holder of content yet to be fetched.
+	 */
+	protected void setLazy(Object target, LazyContent<?> content) throws IOException {
+		try {
+			accessor.set(target, content);
+		} catch (Exception e) {
+			throw wrap(e);
+		}
+	}
+
+	/**
+	 * Reads the string form of a TO_STRING field without boxing primitives.
+	 * @return String form of the value, null if the value is null
+	 */
+	public String getAsString(Object target) throws IOException {
+		if (lazy) {
+			Object value = get(target);
+			return value == null ? null : value.toString();
+		}
+		try {
+			return accessor.getAsString(target);
+		} catch (Exception e) {
+			throw wrap(e);
+		}
+	}
+
+	/**
+	 * Parses and sets a TO_STRING field without boxing primitives.
+	 */
+	public void setFromString(Object target, String value) throws IOException {
+		if (lazy) {
+			set(target, PropertyAccessors.parse(type, value));
+			return;
+		}
+		try {
+			accessor.setFromString(target, value);
+		} catch (Exception e) {
+			throw wrap(e);
+		}
+	}
+
+	private IOException wrap(Exception e) {
+		if (e instanceof IOException) {
+			return (IOException) e;
+		}
+		return new IOException("Cannot access field " + name, e);
+	}
+
+	/**
+	 * Creates a value of a TO_STRING_CONSTRUCTOR field from its string form.
+	 */
+	protected Object newFromString(String value) throws IOException {
+		try {
+			return stringConstructor.newInstance(value);
+		} catch (InstantiationException e) {
+			throw new IOException(e);
+		} catch (IllegalAccessException e) {
+			throw new IOException(e);
+		} catch (InvocationTargetException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (collectionType != null) {
+			return name + " (" + collectionType.getSimpleName() + " of " + type.getName() + ", "
+					+ (nested ? "nested" : storeMethod) + ")";
+		}
+		return name + " (" + type.getName() + ", " + storeMethod + ")";
+	}
+}
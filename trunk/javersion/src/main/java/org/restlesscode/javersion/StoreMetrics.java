@@ -0,0 +1,52 @@
+package org.restlesscode.javersion;
+
+import org.restlesscode.javersion.SerializationTable.StoreMethod;
+
+/**
+ * Receives measurements of a store's reads, writes and commits. Set one with
+ * {@link SvnStore#setMetrics(StoreMetrics)}; without one nothing is measured.
+ * Called on the threads doing the work, so implementations must be thread safe
+ * and quick. {@link StoreMetricsRecorder} keeps counters and latency histograms.
+ */
+public interface StoreMetrics {
+
+	enum Operation { READ, WRITE, COMMIT }
+
+	enum RoundTrip { CHECK_PATH, GET_FILE, COMMIT }
+
+	/**
+	 * A read, write or commit finished, successfully or not.
+	 * @param nanos Time it took
+	 */
+	void operation(Operation operation, long nanos);
+
+	/**
+	 * Calls were made to the repository on behalf of an operation.
+	 */
+	void roundTrips(Operation operation, RoundTrip call, int count);
+
+	/**
+	 * @param bytes File text, as deltas, and property values sent by a commit
+	 */
+	void bytesSent(long bytes);
+
+	/**
+	 * @param bytes File text and property values fetched from the repository
+	 */
+	void bytesReceived(long bytes);
+
+	/**
+	 * A field was serialized for a write.
+	 */
+	void serialized(StoreMethod method, long nanos);
+
+	/**
+	 * A field was deserialized for a read.
+	 */
+	void deserialized(StoreMethod method, long nanos);
+
+	/**
+	 * A commit waited for the store's commit lock.
+	 */
+	void commitLockWait(long nanos);
+}
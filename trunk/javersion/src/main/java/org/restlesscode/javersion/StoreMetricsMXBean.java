@@ -0,0 +1,58 @@
+package org.restlesscode.javersion;
+
+import java.util.Map;
+
+/**
+ * JMX view of a {@link StoreMetricsRecorder}. Latencies are in microseconds.
+ */
+public interface StoreMetricsMXBean {
+
+	long getReadCount();
+
+	long getReadMeanMicros();
+
+	long getReadP50Micros();
+
+	long getReadP99Micros();
+
+	long getWriteCount();
+
+	long getWriteMeanMicros();
+
+	long getWriteP50Micros();
+
+	long getWriteP99Micros();
+
+	long getCommitCount();
+
+	long getCommitMeanMicros();
+
+	long getCommitP50Micros();
+
+	long getCommitP99Micros();
+
+	/**
+	 * @return Repository calls by operation and call, such as "COMMIT.CHECK_PATH"
+	 */
+	Map<String, Long> getRoundTrips();
+
+	long getBytesSent();
+
+	long getBytesReceived();
+
+	/**
+	 * @return Total time spent serializing fields, by store method
+	 */
+	Map<String, Long> getSerializationMicros();
+
+	/**
+	 * @return Total time spent deserializing fields, by store method
+	 */
+	Map<String, Long> getDeserializationMicros();
+
+	long getCommitLockWaitMicros();
+
+	long getCommitLockWaitP99Micros();
+
+	void reset();
+}
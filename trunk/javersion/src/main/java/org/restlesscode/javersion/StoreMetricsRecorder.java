@@ -0,0 +1,239 @@
+package org.restlesscode.javersion;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.restlesscode.javersion.SerializationTable.StoreMethod;
+
+/**
+ * Keeps a store's measurements in counters and latency histograms that can
+ * be updated from any number of threads without locking. Can be exported over
+ * JMX with {@link #register(String)}.
+ */
+public class StoreMetricsRecorder implements StoreMetrics, StoreMetricsMXBean {
+
+	protected volatile Recorded recorded = new Recorded();
+
+	/**
+	 * Everything measured since creation or the last reset.
+	 */
+	protected static class Recorded {
+		final Map<Operation, LatencyHistogram> latencies = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+		final Map<Operation, Map<RoundTrip, LongAdder>> roundTrips =
+				new EnumMap<Operation, Map<RoundTrip, LongAdder>>(Operation.class);
+		final LongAdder bytesSent = new LongAdder();
+		final LongAdder bytesReceived = new LongAdder();
+		final Map<StoreMethod, LatencyHistogram> serialization =
+				new EnumMap<StoreMethod, LatencyHistogram>(StoreMethod.class);
+		final Map<StoreMethod, LatencyHistogram> deserialization =
+				new EnumMap<StoreMethod, LatencyHistogram>(StoreMethod.class);
+		final LatencyHistogram commitLockWait = new LatencyHistogram();
+
+		Recorded() {
+			for (Operation operation : Operation.values()) {
+				latencies.put(operation, new LatencyHistogram());
+				Map<RoundTrip, LongAdder> calls = new EnumMap<RoundTrip, LongAdder>(RoundTrip.class);
+				for (RoundTrip call : RoundTrip.values()) {
+					calls.put(call, new LongAdder());
+				}
+				roundTrips.put(operation, calls);
+			}
+			for (StoreMethod method : StoreMethod.values()) {
+				serialization.put(method, new LatencyHistogram());
+				deserialization.put(method, new LatencyHistogram());
+			}
+		}
+	}
+
+	public void operation(Operation operation, long nanos) {
+		recorded.latencies.get(operation).record(nanos);
+	}
+
+	public void roundTrips(Operation operation, RoundTrip call, int count) {
+		if (count > 0) {
+			recorded.roundTrips.get(operation).get(call).add(count);
+		}
+	}
+
+	public void bytesSent(long bytes) {
+		recorded.bytesSent.add(bytes);
+	}
+
+	public void bytesReceived(long bytes) {
+		recorded.bytesReceived.add(bytes);
+	}
+
+	public void serialized(StoreMethod method, long nanos) {
+		recorded.serialization.get(method).record(nanos);
+	}
+
+	public void deserialized(StoreMethod method, long nanos) {
+		recorded.deserialization.get(method).record(nanos);
+	}
+
+	public void commitLockWait(long nanos) {
+		recorded.commitLockWait.record(nanos);
+	}
+
+	/**
+	 * @return Latencies of an operation
+	 */
+	public LatencyHistogram getLatency(Operation operation) {
+		return recorded.latencies.get(operation);
+	}
+
+	/**
+	 * @return Number of calls of a kind made to the repository for an operation
+	 */
+	public long getRoundTrips(Operation operation, RoundTrip call) {
+		return recorded.roundTrips.get(operation).get(call).sum();
+	}
+
+	/**
+	 * @return Time taken to serialize fields stored with a method
+	 */
+	public LatencyHistogram getSerialization(StoreMethod method) {
+		return recorded.serialization.get(method);
+	}
+
+	/**
+	 * @return Time taken to deserialize fields stored with a method
+	 */
+	public LatencyHistogram getDeserialization(StoreMethod method) {
+		return recorded.deserialization.get(method);
+	}
+
+	public LatencyHistogram getCommitLockWait() {
+		return recorded.commitLockWait;
+	}
+
+	public long getReadCount() {
+		return getLatency(Operation.READ).getCount();
+	}
+
+	public long getReadMeanMicros() {
+		return micros(getLatency(Operation.READ).getMeanNanos());
+	}
+
+	public long getReadP50Micros() {
+		return micros(getLatency(Operation.READ).getPercentileNanos(0.5));
+	}
+
+	public long getReadP99Micros() {
+		return micros(getLatency(Operation.READ).getPercentileNanos(0.99));
+	}
+
+	public long getWriteCount() {
+		return getLatency(Operation.WRITE).getCount();
+	}
+
+	public long getWriteMeanMicros() {
+		return micros(getLatency(Operation.WRITE).getMeanNanos());
+	}
+
+	public long getWriteP50Micros() {
+		return micros(getLatency(Operation.WRITE).getPercentileNanos(0.5));
+	}
+
+	public long getWriteP99Micros() {
+		return micros(getLatency(Operation.WRITE).getPercentileNanos(0.99));
+	}
+
+	public long getCommitCount() {
+		return getLatency(Operation.COMMIT).getCount();
+	}
+
+	public long getCommitMeanMicros() {
+		return micros(getLatency(Operation.COMMIT).getMeanNanos());
+	}
+
+	public long getCommitP50Micros() {
+		return micros(getLatency(Operation.COMMIT).getPercentileNanos(0.5));
+	}
+
+	public long getCommitP99Micros() {
+		return micros(getLatency(Operation.COMMIT).getPercentileNanos(0.99));
+	}
+
+	public Map<String, Long> getRoundTrips() {
+		Map<String, Long> roundTrips = new LinkedHashMap<String, Long>();
+		for (Operation operation : Operation.values()) {
+			for (RoundTrip call : RoundTrip.values()) {
+				roundTrips.put(operation + "." + call, getRoundTrips(operation, call));
+			}
+		}
+		return roundTrips;
+	}
+
+	public long getBytesSent() {
+		return recorded.bytesSent.sum();
+	}
+
+	public long getBytesReceived() {
+		return recorded.bytesReceived.sum();
+	}
+
+	public Map<String, Long> getSerializationMicros() {
+		return totalMicros(recorded.serialization);
+	}
+
+	public Map<String, Long> getDeserializationMicros() {
+		return totalMicros(recorded.deserialization);
+	}
+
+	public long getCommitLockWaitMicros() {
+		return micros(recorded.commitLockWait.getTotalNanos());
+	}
+
+	public long getCommitLockWaitP99Micros() {
+		return micros(recorded.commitLockWait.getPercentileNanos(0.99));
+	}
+
+	/**
+	 * Starts over from zero.
+	 */
+	public void reset() {
+		recorded = new Recorded();
+	}
+
+	/**
+	 * Registers this recorder with the platform MBean server.
+	 * @param name Object name, such as "org.restlesscode.javersion:type=StoreMetrics,name=main"
+	 */
+	public void register(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(this, new ObjectName(name));
+	}
+
+	public void unregister(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.unregisterMBean(new ObjectName(name));
+	}
+
+	private static Map<String, Long> totalMicros(Map<StoreMethod, LatencyHistogram> histograms) {
+		Map<String, Long> totals = new LinkedHashMap<String, Long>();
+		for (Map.Entry<StoreMethod, LatencyHistogram> entry : histograms.entrySet()) {
+			totals.put(entry.getKey().toString(), micros(entry.getValue().getTotalNanos()));
+		}
+		return totals;
+	}
+
+	private static long micros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	@Override
+	public String toString() {
+		return "read: " + getLatency(Operation.READ) + ", write: " + getLatency(Operation.WRITE) + ", commit: "
+				+ getLatency(Operation.COMMIT) + ", round trips: " + getRoundTrips() + ", sent=" + getBytesSent()
+				+ " received=" + getBytesReceived();
+	}
+}
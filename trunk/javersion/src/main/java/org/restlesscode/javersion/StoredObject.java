@@ -0,0 +1,41 @@
+package org.restlesscode.javersion;
+
+/**
+ * An object read from the repository together with where and at which revision
+ * it was read.
+ */
+public class StoredObject<T> {
+
+	protected final String path;
+	protected final long revision;
+	protected final T object;
+
+	public StoredObject(String path, long revision, T object) {
+		this.path = path;
+		this.revision = revision;
+		this.object = object;
+	}
+
+	/**
+	 * @return Path of the object relative to SVN root
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return Revision the object was read at
+	 */
+	public long getRevision() {
+		return revision;
+	}
+
+	public T getObject() {
+		return object;
+	}
+
+	@Override
+	public String toString() {
+		return path + "@" + revision + ": " + object;
+	}
+}
@@ -0,0 +1,29 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Serializes an SvnContent value as a stream of bytes, so that large content is
+ * never held in memory as a whole. Registered with
+ * {@link SerializationTable#registerStreamClass(Class, StreamSerializer)}.
+ */
+public interface StreamSerializer<T> {
+
+	public void serialize(T t, OutputStream out) throws IOException;
+	
+	/**
+	 * @param in Content of the file, the serializer owns the stream and must
+	 *  close it or hand it over to the returned value
+	 */
+	public T deserialize(InputStream in) throws IOException;
+	
+	/**
+	 * @return true if serialize may be called more than once for the same value,
+	 *  which allows a failed commit to be retried
+	 */
+	public default boolean isRepeatable() {
+		return true;
+	}
+}
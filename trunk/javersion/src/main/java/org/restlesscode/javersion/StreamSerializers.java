@@ -0,0 +1,92 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stream serializers for the content types supported out of the box.
+ */
+final class StreamSerializers {
+
+	private StreamSerializers() { }
+
+	static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+	}
+
+	/**
+	 * Content is read from the stream once; reading hands out the stream of the
+	 * fetched file, which the caller must close.
+	 */
+	static class InputStreamSerializer implements StreamSerializer<InputStream> {
+		public void serialize(InputStream in, OutputStream out) throws IOException {
+			try {
+				copy(in, out);
+			} finally {
+				in.close();
+			}
+		}
+
+		public InputStream deserialize(InputStream in) {
+			return in;
+		}
+
+		public boolean isRepeatable() {
+			return false;
+		}
+	}
+
+	static class ChannelSerializer implements StreamSerializer<ReadableByteChannel> {
+		public void serialize(ReadableByteChannel channel, OutputStream out) throws IOException {
+			try {
+				copy(Channels.newInputStream(channel), out);
+			} finally {
+				channel.close();
+			}
+		}
+
+		public ReadableByteChannel deserialize(InputStream in) {
+			return Channels.newChannel(in);
+		}
+
+		public boolean isRepeatable() {
+			return false;
+		}
+	}
+
+	/**
+	 * Content is read from a file; reading copies the content into a new temporary
+	 * file which the caller owns and must delete once done with it. Nothing else
+	 * deletes it, not even the exit of the JVM.
+	 */
+	static class PathSerializer implements StreamSerializer<Path> {
+		public void serialize(Path path, OutputStream out) throws IOException {
+			Files.copy(path, out);
+		}
+
+		public Path deserialize(InputStream in) throws IOException {
+			Path file = Files.createTempFile("javersion", ".content");
+			boolean copied = false;
+			try {
+				Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+				copied = true;
+			} finally {
+				in.close();
+				if (! copied) {
+					Files.deleteIfExists(file);
+				}
+			}
+			return file;
+		}
+	}
+}
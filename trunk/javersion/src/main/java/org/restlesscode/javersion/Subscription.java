@@ -0,0 +1,360 @@
+package org.restlesscode.javersion;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * Tails the repository log and delivers the changes to objects of a class below
+ * a path to a listener. Only the paths named by the log are read, so the work
+ * done is proportional to the rate of change rather than to the number of
+ * objects. Changes are delivered at least once: the checkpoint is the last
+ * revision whose changes the listener accepted, and a subscription made from
+ * the revision after it resumes where this one stopped.
+ * @see SvnStore#subscribe(String, long, Class, ChangeListener)
+ */
+public class Subscription<T> implements Runnable, Closeable {
+
+	private static final Log LOG = LogFactory.getLog(Subscription.class);
+
+	/** Number of log entries requested at once */
+	protected static final long LOG_LIMIT = 1000;
+
+	protected final SvnStore svnStore;
+	protected final SvnObjectReader reader;
+	protected final String pathPrefix;
+	protected final Class<T> clazz;
+	protected final ChangeListener<T> listener;
+	protected final int maxBatchSize;
+	protected final long pollMillis;
+	protected volatile long checkpoint;
+	protected volatile boolean closed;
+	private String rootPath;
+
+	/**
+	 * @param fromRevision First revision whose changes are delivered
+	 * @param maxBatchSize Number of changes after which a batch is delivered
+	 *  without waiting for the rest of the log
+	 * @param pollMillis Time between checks for new revisions
+	 */
+	public Subscription(SvnStore svnStore, String pathPrefix, long fromRevision, Class<T> clazz,
+			ChangeListener<T> listener, int maxBatchSize, long pollMillis) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		}
+		this.svnStore = svnStore;
+		this.reader = new SvnObjectReader(svnStore);
+		this.pathPrefix = Utils.normalizePath(pathPrefix);
+		this.clazz = clazz;
+		this.listener = listener;
+		this.maxBatchSize = maxBatchSize;
+		this.pollMillis = pollMillis;
+		this.checkpoint = Math.max(0, fromRevision - 1);
+	}
+
+	/**
+	 * @return Last revision whose changes were delivered
+	 */
+	public long getCheckpoint() {
+		return checkpoint;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Stops polling. A batch being delivered is allowed to finish.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	public void run() {
+		while (! closed) {
+			try {
+				poll();
+			} catch (Exception e) {
+				if (! closed) {
+					LOG.warn("Failed to deliver changes under '" + pathPrefix + "' after revision " + checkpoint
+							+ ", retrying", e);
+				}
+			}
+			synchronized (this) {
+				if (! closed) {
+					try {
+						wait(pollMillis);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Delivers every change made since the checkpoint up to the latest revision.
+	 */
+	public void poll() throws Exception {
+		poll(SvnRevision.HEAD);
+	}
+
+	/**
+	 * Delivers every change made since the checkpoint up to a revision.
+	 * @param toRevision Last revision to deliver, -1 for HEAD
+	 */
+	public void poll(long toRevision) throws Exception {
+		long latest;
+		SVNRepository repository = svnStore.borrowRepository();
+		SVNException failure = null;
+		try {
+			latest = repository.getLatestRevision();
+			if (toRevision >= 0 && toRevision < latest) {
+				latest = toRevision;
+			}
+			if (rootPath == null) {
+				rootPath = Utils.normalizePath(repository.getRepositoryPath(""));
+			}
+		} catch (SVNException e) {
+			failure = e;
+			throw e;
+		} finally {
+			svnStore.releaseRepository(repository, failure);
+		}
+
+		List<ChangeEvent<T>> batch = new ArrayList<ChangeEvent<T>>();
+		long next = checkpoint + 1;
+		while (next <= latest && ! closed) {
+			List<SVNLogEntry> entries = log(next, latest);
+			for (SVNLogEntry entry : entries) {
+				changes(entry, batch);
+				next = entry.getRevision() + 1;
+				if (batch.size() >= maxBatchSize) {
+					deliver(batch, entry.getRevision());
+					batch = new ArrayList<ChangeEvent<T>>();
+				}
+			}
+			if (entries.size() < LOG_LIMIT) {
+				break;
+			}
+		}
+		if (! closed) {
+			deliver(batch, latest);
+		}
+	}
+
+	protected void deliver(List<ChangeEvent<T>> batch, long revision) throws Exception {
+		if (! batch.isEmpty()) {
+			listener.onChanges(Collections.unmodifiableList(batch));
+		}
+		checkpoint = revision;
+	}
+
+	/**
+	 * @return Up to LOG_LIMIT log entries with changed paths, oldest first
+	 */
+	protected List<SVNLogEntry> log(long start, long end) throws SVNException {
+		final List<SVNLogEntry> entries = new ArrayList<SVNLogEntry>();
+		ISVNLogEntryHandler handler = new ISVNLogEntryHandler() {
+			public void handleLogEntry(SVNLogEntry entry) {
+				entries.add(entry);
+			}
+		};
+		SVNRepository repository = svnStore.borrowRepository();
+		SVNException failure = null;
+		try {
+			try {
+				repository.log(new String[] { pathPrefix }, start, end, true, false, LOG_LIMIT, handler);
+			} catch (SVNException e) {
+				if (pathPrefix.length() == 0 || ! SvnObjectReader.isMissing(e)) {
+					throw e;
+				}
+				// The prefix does not exist at the end revision, go through every change instead
+				entries.clear();
+				repository.log(new String[] { "" }, start, end, true, false, LOG_LIMIT, handler);
+			}
+		} catch (SVNException e) {
+			failure = e;
+			throw e;
+		} finally {
+			svnStore.releaseRepository(repository, failure);
+		}
+		return entries;
+	}
+
+	/**
+	 * Adds the changes to objects of the class made by a revision.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void changes(SVNLogEntry entry, List<ChangeEvent<T>> events) throws IOException, SVNException {
+		long revision = entry.getRevision();
+		// Sorted so events of a revision come in path order
+		for (SVNLogEntryPath changed : new TreeMap<String, SVNLogEntryPath>(entry.getChangedPaths()).values()) {
+			String path = toStorePath(changed.getPath());
+			// Changes to collection elements come with a change to the object owning them
+			if (path == null || path.contains(Utils.COLLECTION_MARKER)
+					|| ! (isBelowPrefix(path) || isBelowPrefix(pathPrefix, path))) {
+				continue;
+			}
+			if (changed.getType() == SVNLogEntryPath.TYPE_DELETED) {
+				for (String file : files(path, revision - 1, changed.getKind())) {
+					if (isInstance(file, revision - 1)) {
+						events.add(new ChangeEvent<T>(ChangeEvent.Type.DELETED, file, revision, entry.getAuthor(),
+								entry.getDate(), null));
+					}
+				}
+			} else if (changed.getType() == SVNLogEntryPath.TYPE_MODIFIED) {
+				if (isBelowPrefix(path) && kind(path, revision, changed.getKind()) == SVNNodeKind.FILE) {
+					addObject(ChangeEvent.Type.MODIFIED, path, entry, events);
+				}
+			} else {
+				// Added or replaced. A directory's own children are listed separately
+				// unless it was copied, when only the directory is
+				SVNNodeKind kind = kind(path, revision, changed.getKind());
+				if (kind == SVNNodeKind.FILE) {
+					addObject(changed.getType() == SVNLogEntryPath.TYPE_ADDED ? ChangeEvent.Type.ADDED
+							: ChangeEvent.Type.MODIFIED, path, entry, events);
+				} else if (kind == SVNNodeKind.DIR && changed.getCopyPath() != null) {
+					for (String file : files(path, revision, kind)) {
+						addObject(ChangeEvent.Type.ADDED, file, entry, events);
+					}
+				}
+			}
+		}
+	}
+
+	protected void addObject(ChangeEvent.Type type, String path, SVNLogEntry entry, List<ChangeEvent<T>> events)
+			throws IOException {
+		FetchedObject fetched;
+		try {
+			fetched = reader.isStreamed(clazz) ? reader.fetchSpooled(path, entry.getRevision())
+					: reader.fetch(path, entry.getRevision());
+		} catch (MissingObjectException e) {
+			return;
+		}
+		if (! clazz.getName().equals(fetched.getProperties().getStringValue("jvn.class.name"))) {
+			fetched.discard();
+			return;
+		}
+		events.add(new ChangeEvent<T>(type, path, entry.getRevision(), entry.getAuthor(), entry.getDate(),
+				reader.deserialize(fetched, clazz)));
+	}
+
+	/**
+	 * @return Paths of the files below the prefix at or under a path
+	 */
+	protected List<String> files(String path, long revision, SVNNodeKind kind) throws SVNException {
+		List<String> files = new ArrayList<String>();
+		kind = kind(path, revision, kind);
+		if (kind == SVNNodeKind.FILE) {
+			if (isBelowPrefix(path)) {
+				files.add(path);
+			}
+		} else if (kind == SVNNodeKind.DIR) {
+			SVNRepository repository = svnStore.borrowRepository();
+			SVNException failure = null;
+			try {
+				collectFiles(repository, path, revision, files);
+			} catch (SVNException e) {
+				failure = e;
+				throw e;
+			} finally {
+				svnStore.releaseRepository(repository, failure);
+			}
+		}
+		return files;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void collectFiles(SVNRepository repository, String dir, long revision, List<String> files)
+			throws SVNException {
+		for (SVNDirEntry entry : (Collection<SVNDirEntry>) repository.getDir(dir, revision, null,
+				(Collection<SVNDirEntry>) null)) {
+			String path = dir.length() == 0 ? entry.getName() : dir + "/" + entry.getName();
+			if (entry.getKind() == SVNNodeKind.DIR && (isBelowPrefix(path) || isBelowPrefix(pathPrefix, path))) {
+				collectFiles(repository, path, revision, files);
+			} else if (entry.getKind() == SVNNodeKind.FILE && isBelowPrefix(path)) {
+				files.add(path);
+			}
+		}
+	}
+
+	/**
+	 * @return Kind of a changed path, asking the repository when the log did not say
+	 */
+	protected SVNNodeKind kind(String path, long revision, SVNNodeKind logged) throws SVNException {
+		if (logged == SVNNodeKind.FILE || logged == SVNNodeKind.DIR) {
+			return logged;
+		}
+		SVNRepository repository = svnStore.borrowRepository();
+		SVNException failure = null;
+		try {
+			return repository.checkPath(path, revision);
+		} catch (SVNException e) {
+			failure = e;
+			throw e;
+		} finally {
+			svnStore.releaseRepository(repository, failure);
+		}
+	}
+
+	/**
+	 * @return true if the file at a path held an object of the class, checked
+	 *  with a properties only fetch
+	 */
+	protected boolean isInstance(String path, long revision) throws SVNException {
+		SVNProperties properties = new SVNProperties();
+		SVNRepository repository = svnStore.borrowRepository();
+		SVNException failure = null;
+		try {
+			repository.getFile(path, revision, properties, null);
+		} catch (SVNException e) {
+			failure = e;
+			throw e;
+		} finally {
+			svnStore.releaseRepository(repository, failure);
+		}
+		return clazz.getName().equals(properties.getStringValue("jvn.class.name"));
+	}
+
+	/**
+	 * @return Path relative to the store's URL of a path from the repository
+	 *  root, null if it is outside the store
+	 */
+	protected String toStorePath(String repositoryPath) {
+		String path = Utils.normalizePath(repositoryPath);
+		if (rootPath.length() == 0) {
+			return path;
+		}
+		return isBelowPrefix(path, rootPath) && path.length() > rootPath.length()
+				? path.substring(rootPath.length() + 1) : null;
+	}
+
+	protected boolean isBelowPrefix(String path) {
+		return isBelowPrefix(path, pathPrefix);
+	}
+
+	/**
+	 * @return true if path is prefix or a descendant of it
+	 */
+	protected static boolean isBelowPrefix(String path, String prefix) {
+		return prefix.length() == 0 || path.equals(prefix) || path.startsWith(prefix + "/");
+	}
+}
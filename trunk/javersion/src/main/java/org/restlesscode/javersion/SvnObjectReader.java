@@ -1,31 +1,57 @@
 package org.restlesscode.javersion;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.restlesscode.javersion.SerializationTable.StoreMethod;
-import org.restlesscode.javersion.annotations.SvnContent;
-import org.restlesscode.javersion.annotations.SvnProperty;
-import org.restlesscode.javersion.annotations.SvnStorable;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.io.SVNRepository;
 
 /**
- * Reads java objects from an SVN repository.
- * Probably not thread safe yet.
+ * Reads java objects from an SVN repository. Thread safe: each read borrows its
+ * own session from the store's connection pool.
  */
 public class SvnObjectReader {
 
 	private static final Log LOG = LogFactory.getLog(SvnObjectReader.class);
 	
 	protected SvnStore svnStore;
+	protected int spoolThreshold = 1024 * 1024;
+	protected int historyParallelism = 4;
 	
 	public SvnObjectReader(SvnStore svnStore) {
 		this.svnStore = svnStore;
@@ -41,119 +67,1130 @@ public class SvnObjectReader {
 	 * @throws MissingObjectException 
 	 */
 	public <T> T read(String path, long revision, Class<T> clazz) throws IOException, MissingObjectException {
+		StoreMetrics metrics = svnStore.getMetrics();
+		long start = metrics == null ? 0 : System.nanoTime();
+		try {
+			if (isStreamed(clazz)) {
+				return deserialize(fetchSpooled(path, revision), clazz);
+			}
+			return deserialize(fetch(path, revision), clazz);
+		} finally {
+			if (metrics != null) {
+				metrics.operation(StoreMetrics.Operation.READ, System.nanoTime() - start);
+			}
+		}
+	}
+	
+	/**
+	 * Reads an object without blocking the caller, on the store's async executor.
+	 * @return Future completed with the object, or exceptionally with the
+	 *  IOException or MissingObjectException of the read
+	 * @see #read(String, long, Class)
+	 */
+	public <T> CompletableFuture<T> readAsync(final String path, final long revision, final Class<T> clazz) {
+		return CompletableFuture.supplyAsync(new Supplier<T>() {
+			public T get() {
+				try {
+					return read(path, revision, clazz);
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}
+		}, svnStore.getAsyncExecutor());
+	}
+	
+	/**
+	 * Reads many objects at once, running as many reads in parallel as the store
+	 * has connections.
+	 * @see #readAllAsync(List, long, Class, int)
+	 */
+	public <T> CompletableFuture<Map<String, T>> readAllAsync(List<String> paths, long revision, Class<T> clazz) {
+		return readAllAsync(paths, revision, clazz, svnStore.getRepositoryPool().getMaxSize());
+	}
+	
+	/**
+	 * Reads many objects at once without blocking the caller. HEAD is resolved
+	 * once, so every object is read at the same revision. Paths where there is
+	 * no object are left out of the result.
+	 * @param paths Paths of the objects
+	 * @param revision Revision to read at, -1 for HEAD
+	 * @param clazz Type of class to return
+	 * @param maxConcurrency Maximum number of reads running at once
+	 * @return Future completed with the objects by path, in the order of the
+	 *  paths, or exceptionally with the first failure
+	 */
+	public <T> CompletableFuture<Map<String, T>> readAllAsync(final List<String> paths, final long revision, 
+			final Class<T> clazz, final int maxConcurrency) {
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("maxConcurrency must be at least 1");
+		}
+		final Executor executor = svnStore.getAsyncExecutor();
+		return CompletableFuture.supplyAsync(new Supplier<Long>() {
+			public Long get() {
+				if (revision >= 0 || paths.isEmpty()) {
+					return revision;
+				}
+				try {
+					SVNRepository repository = svnStore.borrowRepository();
+					SVNException failure = null;
+					try {
+						return repository.getLatestRevision();
+					} catch (SVNException e) {
+						failure = e;
+						throw e;
+					} finally {
+						svnStore.releaseRepository(repository, failure);
+					}
+				} catch (SVNException e) {
+					throw new CompletionException(new IOException(e));
+				}
+			}
+		}, executor).thenCompose(new Function<Long, CompletableFuture<Map<String, T>>>() {
+			public CompletableFuture<Map<String, T>> apply(Long concreteRevision) {
+				return fanOut(paths, concreteRevision, clazz, maxConcurrency, executor);
+			}
+		});
+	}
+	
+	/**
+	 * Runs reads of a list of paths on up to maxConcurrency workers, each taking
+	 * the next unread path until none are left.
+	 */
+	protected <T> CompletableFuture<Map<String, T>> fanOut(final List<String> paths, final long revision, 
+			final Class<T> clazz, int maxConcurrency, Executor executor) {
+		final CompletableFuture<Map<String, T>> result = new CompletableFuture<Map<String, T>>();
+		final Object[] objects = new Object[paths.size()];
+		final AtomicInteger next = new AtomicInteger();
+		int workers = Math.min(maxConcurrency, paths.size());
+		final AtomicInteger running = new AtomicInteger(workers);
+		if (workers == 0) {
+			result.complete(new LinkedHashMap<String, T>());
+			return result;
+		}
+		Runnable worker = new Runnable() {
+			@SuppressWarnings("unchecked")
+			public void run() {
+				int i;
+				while (! result.isDone() && (i = next.getAndIncrement()) < paths.size()) {
+					try {
+						objects[i] = read(paths.get(i), revision, clazz);
+					} catch (MissingObjectException e) {
+						objects[i] = null;
+					} catch (Throwable t) {
+						result.completeExceptionally(t);
+						return;
+					}
+				}
+				if (running.decrementAndGet() == 0 && ! result.isDone()) {
+					Map<String, T> found = new LinkedHashMap<String, T>();
+					for (int j = 0; j < objects.length; j++) {
+						if (objects[j] != null) {
+							found.put(paths.get(j), (T) objects[j]);
+						}
+					}
+					result.complete(found);
+				}
+			}
+		};
+		for (int i = 0; i < workers; i++) {
+			executor.execute(worker);
+		}
+		return result;
+	}
+	
+	/**
+	 * Reads an object together with the revision it was read at, which can be
+	 * passed to {@link SvnObjectWriter#write(String, Object, long)} to write it
+	 * back only if nobody changed it in between.
+	 * @param path Path from root of SVN repository of object
+	 * @param revision Revision number to load, -1 for HEAD
+	 * @param clazz Type of class to return
+	 * @return Object with its path and the concrete revision it was read at
+	 */
+	public <T> StoredObject<T> readStored(String path, long revision, Class<T> clazz) 
+			throws IOException, MissingObjectException {
+		StoreMetrics metrics = svnStore.getMetrics();
+		long start = metrics == null ? 0 : System.nanoTime();
+		try {
+			FetchedObject fetched = isStreamed(clazz) ? fetchSpooled(path, revision) : fetch(path, revision);
+			return new StoredObject<T>(fetched.getPath(), fetched.getRevision(), deserialize(fetched, clazz));
+		} finally {
+			if (metrics != null) {
+				metrics.operation(StoreMetrics.Operation.READ, System.nanoTime() - start);
+			}
+		}
+	}
+	
+	/**
+	 * Reads an object without its SvnContent, fetching only the properties of
+	 * its file. A {@link LazyContent} field is given a holder that fetches the
+	 * content of the revision that was read when it is first used; any other
+	 * content field is left null. Writing the object back to its own path keeps
+	 * the stored content then, since a write without content leaves the file
+	 * text and its encoding as they are. SvnCollection fields are left unset too
+	 * and are cleared by writing the object back unless they are read first, see
+	 * {@link #readCollection(String, long, Class, String)}. Bypasses the object cache.
+	 * @param path Path from root of SVN repository of object
+	 * @param revision Revision number to load, -1 for HEAD
+	 * @param clazz Type of class to return
+	 * @return Object with its properties set
+	 * @throws IOException If there was an error talking to SVN or during serialization
+	 * @throws MissingObjectException If there is no object at the path
+	 */
+	public <T> T readProperties(String path, long revision, Class<T> clazz) throws IOException, MissingObjectException {
+		StoreMetrics metrics = svnStore.getMetrics();
+		long start = metrics == null ? 0 : System.nanoTime();
+		try {
+			FetchedObject fetched = fetchProperties(path, revision);
+			T obj = deserialize(fetched, clazz, false);
+			StorableField contentField = svnStore.serializationTable.getDescriptor(clazz).getContent();
+			if (contentField != null && contentField.isLazy()) {
+				contentField.setLazy(obj, new LazyContent<Object>(this, path, fetched.getRevision(), contentField));
+			}
+			return obj;
+		} finally {
+			if (metrics != null) {
+				metrics.operation(StoreMetrics.Operation.READ, System.nanoTime() - start);
+			}
+		}
+	}
+	
+	/**
+	 * Fetches the properties of an object's file, without its text.
+	 * @return Object with properties and without content
+	 */
+	protected FetchedObject fetchProperties(String path, long revision) throws IOException, MissingObjectException {
+		try {
+			SVNProperties fileProperties = new SVNProperties();
+			long fetchedRevision;
+			SVNRepository repository = svnStore.borrowRepository();
+			SVNException failure = null;
+			try {
+				fetchedRevision = repository.getFile(path, revision, fileProperties, null);
+			} catch (SVNException e) {
+				failure = e;
+				throw e;
+			} finally {
+				svnStore.releaseRepository(repository, failure);
+			}
+			received(fileProperties, 0);
+			return new FetchedObject(path, fetchedRevision, fileProperties, (byte[]) null);
+		} catch (SVNException e) {
+			if (isMissing(e)) {
+				throw new MissingObjectException();
+			}
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Reads one SvnCollection of an object, fetching the properties of the
+	 * object's file and the files of the collection's elements.
+	 * @param path Path from root of SVN repository of object
+	 * @param revision Revision number to load, -1 for HEAD
+	 * @param clazz Class of the object
+	 * @param field Name of the collection field
+	 * @return List or Map of the elements, null if the field was null when written
+	 * @throws MissingObjectException If there is no object at the path
+	 */
+	@SuppressWarnings("unchecked")
+	public <C> C readCollection(String path, long revision, Class<?> clazz, String field) 
+			throws IOException, MissingObjectException {
+		StorableField collection = getCollection(clazz, field);
+		FetchedObject fetched = fetchProperties(path, revision);
+		return (C) readCollection(fetched, collection);
+	}
+	
+	/**
+	 * Reads a single element of an SvnCollection of an object, fetching the
+	 * properties of the object's file and the file of the element.
+	 * @param path Path from root of SVN repository of object
+	 * @param revision Revision number to load, -1 for HEAD
+	 * @param clazz Class of the object
+	 * @param field Name of the collection field
+	 * @param key Integer index of a List element or String key of a Map element
+	 * @return The element
+	 * @throws MissingObjectException If there is no object at the path or no element for the key
+	 */
+	@SuppressWarnings("unchecked")
+	public <E> E readElement(String path, long revision, Class<?> clazz, String field, Object key) 
+			throws IOException, MissingObjectException {
+		StorableField collection = getCollection(clazz, field);
+		FetchedObject fetched = fetchProperties(path, revision);
+		CollectionManifest manifest = CollectionManifest.parse(
+				fetched.getProperties().getStringValue(collection.getManifestPropertyName()));
+		String name;
+		if (collection.getCollectionType() == List.class) {
+			int index = ((Integer) key).intValue();
+			if (index < 0 || index >= manifest.size()) {
+				throw new MissingObjectException();
+			}
+			name = manifest.getName(index);
+		} else {
+			name = CollectionManifest.nameOf((String) key);
+			if (! manifest.getFiles().containsKey(name)) {
+				throw new MissingObjectException();
+			}
+		}
+		FetchedObject element = fetch(collection.getCollectionPath(fetched.getPath()) + "/" + name, fetched.getRevision());
+		return (E) deserializeElement(element, collection);
+	}
+	
+	protected StorableField getCollection(Class<?> clazz, String field) throws IOException {
+		StorableField collection = svnStore.serializationTable.getDescriptor(clazz).getCollection(field);
+		if (collection == null) {
+			throw new IllegalArgumentException(clazz.getName() + " has no SvnCollection " + field);
+		}
+		return collection;
+	}
 	
+	/**
+	 * Reads the elements of a collection as listed by the manifest of a fetched
+	 * object, from the collection's directory at the revision the object was
+	 * fetched at. The element files are fetched in a single exchange.
+	 * @return List or Map of the elements, null if the object has no manifest
+	 */
+	protected Object readCollection(FetchedObject fetched, StorableField collection) throws IOException {
+		return readCollection(fetched, collection, null);
+	}
+	
+	/**
+	 * @param elements Element files already fetched with the object, by collection
+	 *  directory and file name, or null to fetch them
+	 */
+	protected Object readCollection(FetchedObject fetched, StorableField collection, 
+			Map<String, Map<String, FetchedObject>> elements) throws IOException {
+		String value = fetched.getProperties().getStringValue(collection.getManifestPropertyName());
+		if (value == null) {
+			return null;
+		}
+		CollectionManifest manifest = CollectionManifest.parse(value);
+		final Map<String, FetchedObject> files = new LinkedHashMap<String, FetchedObject>();
+		if (elements != null) {
+			Map<String, FetchedObject> fetchedFiles = elements.get(collection.getCollectionPath(fetched.getPath()));
+			if (fetchedFiles != null) {
+				files.putAll(fetchedFiles);
+			}
+		} else if (manifest.size() > 0) {
+			try {
+				SVNRepository repository = svnStore.borrowRepository();
+				SVNException failure = null;
+				try {
+					new DirectoryFetcher() {
+						protected void fetched(FetchedObject object) {
+							String path = object.getPath();
+							files.put(path.substring(path.lastIndexOf('/') + 1), object);
+						}
+					}.fetch(repository, collection.getCollectionPath(fetched.getPath()), fetched.getRevision());
+				} catch (SVNException e) {
+					failure = e;
+					throw e;
+				} finally {
+					svnStore.releaseRepository(repository, failure);
+				}
+			} catch (SVNException e) {
+				throw new IOException(e);
+			}
+		}
+		List<Object> list = new ArrayList<Object>(manifest.size());
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < manifest.size(); i++) {
+			FetchedObject file = files.get(manifest.getName(i));
+			if (file == null) {
+				throw new IOException("Missing element " + manifest.getName(i) + " of " + collection.getName() 
+						+ " at " + fetched.getPath() + " in revision " + fetched.getRevision());
+			}
+			Object element = deserializeElement(file, collection);
+			if (collection.getCollectionType() == List.class) {
+				list.add(element);
+			} else {
+				map.put(CollectionManifest.keyOf(manifest.getName(i)), element);
+			}
+		}
+		return collection.getCollectionType() == List.class ? list : map;
+	}
+	
+	/**
+	 * Decodes the file of a collection element, an SvnStorable element like an
+	 * object and any other element like SvnContent.
+	 */
+	protected Object deserializeElement(FetchedObject file, StorableField collection) throws IOException {
+		if (collection.isNested()) {
+			return deserialize(file, collection.getType());
+		}
+		return deserializeContent(file, collection);
+	}
+	
+	/**
+	 * @return true if the SvnContent of a class is a stream type, whose text is
+	 *  spooled rather than fetched into memory
+	 */
+	protected boolean isStreamed(Class<?> clazz) throws IOException {
+		StorableField contentField = svnStore.serializationTable.getDescriptor(clazz).getContent();
+		return contentField != null && contentField.getStoreMethod() == StoreMethod.STREAM;
+	}
+	
+	/**
+	 * Fetches an object with its text collected in memory up to the spool
+	 * threshold and in a temporary file beyond it. Bypasses the object cache.
+	 */
+	protected FetchedObject fetchSpooled(String path, long revision) throws IOException, MissingObjectException {
 		SVNProperties fileProperties = new SVNProperties();
-    	ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    	try {
-	        svnStore.repository.getFile(path, revision, fileProperties, baos);
-	        
-	        if (! clazz.isAnnotationPresent(SvnStorable.class)) {
-				throw new IllegalArgumentException("Class " + clazz + " does not conform to SvnStorable annotation.");
+		SpoolOutputStream spool = new SpoolOutputStream(spoolThreshold);
+		try {
+			SVNRepository repository = svnStore.borrowRepository();
+			SVNException failure = null;
+			try {
+				long fetchedRevision = repository.getFile(path, revision, fileProperties, spool);
+				spool.close();
+				received(fileProperties, spool.size());
+				return new FetchedObject(path, fetchedRevision, fileProperties, spool);
+			} catch (SVNException e) {
+				failure = e;
+				throw e;
+			} finally {
+				svnStore.releaseRepository(repository, failure);
 			}
-			
-	        T obj = clazz.newInstance();
-	        
-	        for (Method m : clazz.getMethods()) {
-	        	Class<?> returnType = m.getReturnType();
-				if (m.isAnnotationPresent(SvnProperty.class)) {
-					
-					LOG.info("Will restore " + m.getName() + " as " + returnType);
-					String fieldName = Utils.checkStorability(m, clazz);
-					String setterName = Utils.getSetMethod(fieldName);
-					Method setMethod = clazz.getMethod(setterName, returnType);
-					
-					if (svnStore.serializationTable.getStorageMethod(returnType) == StoreMethod.SERIALIZE_OBJECT) {
-						byte []val = fileProperties.getBinaryValue("jvn.property." + fieldName);
-						setFieldFromBytes(setMethod, returnType, obj, val);
-					} else {
-						String val = fileProperties.getStringValue("jvn.property." + fieldName);
-						setFieldFromString(setMethod, returnType, obj, val);
+		} catch (SVNException e) {
+			spool.discard();
+			if (isMissing(e)) {
+				throw new MissingObjectException();
+			}
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Fetches the stored form of an object, going through the store's object
+	 * cache when the revision is concrete or HEAD caching is enabled.
+	 * @param path Path from root of SVN repository of object
+	 * @param revision Revision number to load, -1 for HEAD
+	 * @return Properties and content of the object's file
+	 * @throws IOException If there was an error talking to SVN
+	 * @throws MissingObjectException If there is no object at the path
+	 */
+	public FetchedObject fetch(String path, long revision) throws IOException, MissingObjectException {
+		try {
+			ObjectCache cache = svnStore.getObjectCache();
+			long concreteRevision = revision;
+			if (cache != null && revision == SvnRevision.HEAD) {
+				concreteRevision = svnStore.resolveHead();
+			}
+			if (cache == null || concreteRevision < 0) {
+				return fetchFromRepository(path, revision);
+			}
+			FetchedObject fetched = cache.get(path, concreteRevision);
+			if (fetched == null) {
+				fetched = fetchFromRepository(path, concreteRevision);
+				cache.put(path, concreteRevision, fetched);
+			}
+			return fetched;
+		} catch (SVNException e) {
+			// Could do a checkPath call to SVN before this instead of this fuzzier check for
+			// a missing object, but figured I'd minimize calls to SVN when possible
+			if (isMissing(e)) {
+				throw new MissingObjectException();
+			}
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Finds the objects of a class whose indexed property equals a value, using
+	 * the index created with {@link SvnStore#createIndex(Class, String, java.io.File)},
+	 * which is brought up to HEAD first.
+	 * @param property Name of an SvnIndexed property
+	 * @param value Value of the property's type
+	 * @return Objects by path, in path order
+	 */
+	public <T> Map<String, T> findBy(Class<T> clazz, String property, Object value) throws IOException {
+		return findBy(clazz, property, value, SvnRevision.HEAD);
+	}
+	
+	/**
+	 * Finds the objects of a class whose indexed property equals a value at a
+	 * revision. The index is brought up to the revision if it is behind it; if it
+	 * is ahead, objects that stopped matching since are dropped, but objects that
+	 * matched only at the older revision are not found.
+	 * @param revision Revision to read at, -1 for the revision of the index
+	 * @return Objects by path, in path order
+	 */
+	public <T> Map<String, T> findBy(Class<T> clazz, String property, Object value, long revision) 
+			throws IOException {
+		PropertyIndex<T> index = getIndex(clazz);
+		long indexRevision = index.update(revision);
+		return readMatching(index.findPaths(property, value), revision < 0 ? indexRevision : revision, clazz, 
+				property, true, value, value);
+	}
+	
+	/**
+	 * Finds the objects of a class whose indexed property is in a range at a revision.
+	 * @param from Lowest value, inclusive, or null for no lower bound
+	 * @param to Highest value, exclusive, or null for no upper bound
+	 * @param revision Revision to read at, -1 for the revision of the index
+	 * @return Objects by path, in value order
+	 * @see #findBy(Class, String, Object, long)
+	 */
+	public <T> Map<String, T> findInRange(Class<T> clazz, String property, Object from, Object to, long revision) 
+			throws IOException {
+		PropertyIndex<T> index = getIndex(clazz);
+		long indexRevision = index.update(revision);
+		return readMatching(index.findPaths(property, from, to), revision < 0 ? indexRevision : revision, clazz, 
+				property, false, from, to);
+	}
+	
+	protected <T> PropertyIndex<T> getIndex(Class<T> clazz) {
+		PropertyIndex<T> index = svnStore.getIndex(clazz);
+		if (index == null) {
+			throw new IllegalStateException("No index was created for " + clazz.getName());
+		}
+		return index;
+	}
+	
+	/**
+	 * Reads the objects found in an index, dropping those whose property no
+	 * longer matches at the revision read.
+	 * @param exact true to check that the property equals from, false to check
+	 *  that it is in the range from from to to
+	 */
+	protected <T> Map<String, T> readMatching(List<String> paths, long revision, Class<T> clazz, String property, 
+			boolean exact, Object from, Object to) throws IOException {
+		StorableField field = svnStore.getSerializationTable().getDescriptor(clazz).getProperty(property);
+		Map<String, T> found = new LinkedHashMap<String, T>();
+		for (String path : paths) {
+			T object;
+			try {
+				object = read(path, revision, clazz);
+			} catch (MissingObjectException e) {
+				continue;
+			}
+			Object value = field.get(object);
+			if (exact ? from.equals(value) : PropertyIndex.inRange(value, from, to)) {
+				found.put(path, object);
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Reads every object of a class stored below a directory. The text and
+	 * properties of the whole subtree are fetched in a single exchange with the
+	 * repository; files whose jvn.class.name is not the class's name are skipped.
+	 * @param dirPath Directory from root of SVN repository
+	 * @param revision Revision number to load, -1 for HEAD
+	 * @param clazz Type of class to return
+	 * @return Objects keyed by path, in the order the repository sent them
+	 * @throws IOException If there was an error talking to SVN or during serialization
+	 * @throws MissingObjectException If the directory does not exist
+	 */
+	public <T> Map<String, T> readAll(String dirPath, long revision, Class<T> clazz) throws IOException, MissingObjectException {
+		return readAll(dirPath, revision, clazz, false);
+	}
+	
+	/**
+	 * Reads every object of a class stored below a directory, optionally
+	 * deserializing the objects in parallel once they have been fetched.
+	 * @see #readAll(String, long, Class)
+	 */
+	public <T> Map<String, T> readAll(String dirPath, long revision, final Class<T> clazz, boolean parallel) 
+			throws IOException, MissingObjectException {
+		final List<FetchedObject> fetchedObjects = new ArrayList<FetchedObject>();
+		final Map<String, Map<String, FetchedObject>> elements = new HashMap<String, Map<String, FetchedObject>>();
+		fetchAll(dirPath, revision, clazz, new FetchHandler() {
+			public void fetched(FetchedObject object, Map<String, Map<String, FetchedObject>> objectElements) {
+				fetchedObjects.add(object);
+				elements.putAll(objectElements);
+			}
+		});
+		
+		Stream<FetchedObject> stream = parallel ? fetchedObjects.parallelStream() : fetchedObjects.stream();
+		List<T> objects;
+		try {
+			objects = stream.map(new Function<FetchedObject, T>() {
+				public T apply(FetchedObject fetched) {
+					try {
+						return deserialize(fetched, clazz, elements);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
 					}
 				}
-				if (m.isAnnotationPresent(SvnContent.class)) {
-					LOG.info("Will restore " + m.getName() + " as " + m.getReturnType());
-					String fieldName = Utils.checkStorability(m, clazz);
-					String setterName = Utils.getSetMethod(fieldName);
-					Method setMethod = clazz.getMethod(setterName, returnType);
-					if (svnStore.serializationTable.getStorageMethod(returnType) == StoreMethod.SERIALIZE_OBJECT) {
-						setFieldFromBytes(setMethod, returnType, obj, baos.toByteArray());
-					} else {
-						String contents = new String(baos.toByteArray());
-						setFieldFromString(setMethod, returnType, obj, contents);
+			}).collect(Collectors.<T>toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		
+		Map<String, T> result = new LinkedHashMap<String, T>();
+		for (int i = 0; i < objects.size(); i++) {
+			result.put(fetchedObjects.get(i).getPath(), objects.get(i));
+		}
+		return result;
+	}
+	
+	/**
+	 * Streams every object of a class stored below a directory. Objects are
+	 * fetched in a single exchange on a background thread and deserialized as
+	 * they arrive, so memory use does not grow with the size of the directory.
+	 * Close the iterator with try-with-resources or in a finally block, as the
+	 * background thread holds a session until the iterator is read to the end or
+	 * closed. Errors are thrown from the iterator as UncheckedIOException.
+	 * @param dirPath Directory from root of SVN repository
+	 * @param revision Revision number to load, -1 for HEAD
+	 * @param clazz Type of class to return
+	 * @return Iterator over the objects and their paths
+	 */
+	public <T> BackgroundIterator<StoredObject<T>> iterate(final String dirPath, final long revision, final Class<T> clazz) {
+		BackgroundIterator<StoredObject<T>> iterator = new BackgroundIterator<StoredObject<T>>(256) {
+			protected void produce() throws Exception {
+				final BackgroundIterator<StoredObject<T>> self = this;
+				fetchAll(dirPath, revision, clazz, new FetchHandler() {
+					public void fetched(FetchedObject object, Map<String, Map<String, FetchedObject>> elements) 
+							throws SVNException {
+						try {
+							self.put(new StoredObject<T>(object.getPath(), object.getRevision(), 
+									deserialize(object, clazz, elements)));
+						} catch (Exception e) {
+							// Aborts the exchange, fetchAll rethrows the cause
+							throw new SVNException(SVNErrorMessage.create(SVNErrorCode.CANCELLED, e.getMessage()), e);
+						}
 					}
+				});
+			}
+		};
+		return iterator.start(svnStore.getExecutor());
+	}
+	
+	/**
+	 * Streams every object of a class stored below a directory. Use the stream in
+	 * try-with-resources:
+	 * <pre>
+	 * try (Stream&lt;StoredObject&lt;Movie&gt;&gt; movies = reader.stream("movies", -1, Movie.class)) {
+	 *     ...
+	 * }
+	 * </pre>
+	 * @see #iterate(String, long, Class)
+	 */
+	public <T> Stream<StoredObject<T>> stream(String dirPath, long revision, Class<T> clazz) {
+		return toStream(iterate(dirPath, revision, clazz));
+	}
+	
+	/**
+	 * Streams the history of an object: the version made by every revision between
+	 * two revisions that changed it, oldest first, with the author and date of the
+	 * revision. Versions are produced lazily on a background thread from a single
+	 * getFileRevisions exchange, in which each version is sent as a delta against
+	 * the previous one. The versions of a class with collections are produced once
+	 * that exchange is over, since their elements are fetched with requests of
+	 * their own. Against servers that cannot send file revisions, the
+	 * revisions are listed with a log request and read in parallel, up to the
+	 * history parallelism at a time. Use the stream in try-with-resources, as
+	 * the background thread holds a session until it is read to the end or
+	 * closed. Errors are thrown from the stream as UncheckedIOException.
+	 * @param path Path from root of SVN repository of object
+	 * @param fromRevision First revision to include
+	 * @param toRevision Last revision to include, -1 for HEAD
+	 * @param clazz Type of class to return
+	 * @return Versions in revision order
+	 */
+	public <T> Stream<ObjectVersion<T>> history(String path, long fromRevision, long toRevision, Class<T> clazz) {
+		return toStream(iterateHistory(path, fromRevision, toRevision, clazz));
+	}
+	
+	/**
+	 * Iterates over the history of an object.
+	 * @see #history(String, long, long, Class)
+	 */
+	public <T> BackgroundIterator<ObjectVersion<T>> iterateHistory(final String path, final long fromRevision, 
+			final long toRevision, final Class<T> clazz) {
+		BackgroundIterator<ObjectVersion<T>> iterator = new BackgroundIterator<ObjectVersion<T>>(64) {
+			protected void produce() throws Exception {
+				if (! fetchHistory(this, path, fromRevision, toRevision, clazz)) {
+					fetchHistoryInParallel(this, path, fromRevision, toRevision, clazz);
+				}
+			}
+		};
+		return iterator.start(svnStore.getExecutor());
+	}
+	
+	/**
+	 * Produces the history of an object from a getFileRevisions exchange.
+	 * @return false if the server does not support getFileRevisions
+	 */
+	protected <T> boolean fetchHistory(final BackgroundIterator<ObjectVersion<T>> iterator, String path, 
+			final long fromRevision, long toRevision, final Class<T> clazz) 
+			throws IOException, MissingObjectException, InterruptedException {
+		final ObjectCache cache = svnStore.getObjectCache();
+		final boolean[] produced = new boolean[1];
+		// Collections are read with a session of their own, which cannot be borrowed
+		// while the exchange holds one, so such versions are read once it is over
+		final List<ObjectVersion<FetchedObject>> deferred = hasCollections(clazz) 
+				? new ArrayList<ObjectVersion<FetchedObject>>() : null;
+		HistoryFetcher fetcher = new HistoryFetcher() {
+			protected void fetched(FetchedObject object, String author, Date date) throws SVNException {
+				// The version current at fromRevision may have been made before it
+				if (object.getRevision() < fromRevision 
+						|| ! clazz.getName().equals(object.getProperties().getStringValue("jvn.class.name"))) {
+					return;
+				}
+				// Keyed by the path the file had, which is not the one asked for before a copy
+				if (cache != null && ! object.getPath().startsWith("/")) {
+					cache.put(object.getPath(), object.getRevision(), object);
+				}
+				if (deferred != null) {
+					deferred.add(new ObjectVersion<FetchedObject>(object.getPath(), object.getRevision(), author, date, 
+							object));
+					produced[0] = true;
+					return;
+				}
+				try {
+					iterator.put(new ObjectVersion<T>(object.getPath(), object.getRevision(), author, date, 
+							deserialize(object, clazz)));
+					produced[0] = true;
+				} catch (Exception e) {
+					// Aborts the exchange, the cause is rethrown below
+					throw new SVNException(SVNErrorMessage.create(SVNErrorCode.CANCELLED, e.getMessage()), e);
 				}
 			}
+		};
+		try {
+			SVNRepository repository = svnStore.borrowRepository();
+			SVNException failure = null;
+			try {
+				fetcher.fetch(repository, path, fromRevision, toRevision);
+			} catch (SVNException e) {
+				failure = e;
+				throw e;
+			} finally {
+				svnStore.releaseRepository(repository, failure);
+			}
+		} catch (SVNException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			SVNErrorCode code = e.getErrorMessage().getErrorCode();
+			if (! produced[0] && (code == SVNErrorCode.RA_NOT_IMPLEMENTED || code == SVNErrorCode.UNSUPPORTED_FEATURE)) {
+				LOG.info("Server cannot send file revisions, reading history revision by revision");
+				return false;
+			}
+			if (isMissing(e)) {
+				throw new MissingObjectException();
+			}
+			throw new IOException(e);
+		}
+		if (deferred != null) {
+			for (ObjectVersion<FetchedObject> version : deferred) {
+				iterator.put(new ObjectVersion<T>(version.getPath(), version.getRevision(), version.getAuthor(), 
+						version.getDate(), deserialize(version.getObject(), clazz)));
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return true if a class has SvnCollection fields, whose elements are read
+	 *  from files of their own
+	 */
+	protected boolean hasCollections(Class<?> clazz) throws IOException {
+		return ! svnStore.serializationTable.getDescriptor(clazz).getCollections().isEmpty();
+	}
+	
+	/**
+	 * Produces the history of an object by listing the revisions that changed it
+	 * with a log request and reading the versions in parallel, in order.
+	 */
+	protected <T> void fetchHistoryInParallel(BackgroundIterator<ObjectVersion<T>> iterator, final String path, 
+			long fromRevision, long toRevision, Class<T> clazz) throws Exception {
+		final List<SVNLogEntry> entries = new ArrayList<SVNLogEntry>();
+		SVNRepository repository = svnStore.borrowRepository();
+		SVNException failure = null;
+		try {
+			repository.log(new String[] { Utils.normalizePath(path) }, fromRevision, toRevision, false, false, 
+					new ISVNLogEntryHandler() {
+				public void handleLogEntry(SVNLogEntry entry) {
+					entries.add(entry);
+				}
+			});
+		} catch (SVNException e) {
+			failure = e;
+			if (isMissing(e)) {
+				throw new MissingObjectException();
+			}
+			throw new IOException(e);
+		} finally {
+			svnStore.releaseRepository(repository, failure);
+		}
+		
+		LinkedList<Future<FetchedObject>> window = new LinkedList<Future<FetchedObject>>();
+		int next = 0;
+		try {
+			for (SVNLogEntry entry : entries) {
+				final long revision = entry.getRevision();
+				window.add(svnStore.getExecutor().submit(new Callable<FetchedObject>() {
+					public FetchedObject call() throws IOException {
+						try {
+							return fetch(path, revision);
+						} catch (MissingObjectException e) {
+							// Deleted by this revision
+							return null;
+						}
+					}
+				}));
+				if (window.size() >= historyParallelism) {
+					putVersion(iterator, entries.get(next++), window.removeFirst(), clazz);
+				}
+			}
+			while (! window.isEmpty()) {
+				putVersion(iterator, entries.get(next++), window.removeFirst(), clazz);
+			}
+		} finally {
+			// Reads still running when the stream was closed or failed
+			for (Future<FetchedObject> future : window) {
+				future.cancel(true);
+			}
+		}
+	}
+	
+	private <T> void putVersion(BackgroundIterator<ObjectVersion<T>> iterator, SVNLogEntry entry, 
+			Future<FetchedObject> future, Class<T> clazz) throws Exception {
+		FetchedObject object;
+		try {
+			object = future.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+		if (object != null && clazz.getName().equals(object.getProperties().getStringValue("jvn.class.name"))) {
+			iterator.put(new ObjectVersion<T>(object.getPath(), entry.getRevision(), entry.getAuthor(), entry.getDate(), 
+					deserialize(object, clazz)));
+		}
+	}
+	
+	protected <T> Stream<T> toStream(final BackgroundIterator<T> iterator) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+				.onClose(new Runnable() {
+					public void run() {
+						iterator.close();
+					}
+				});
+	}
+	
+	/**
+	 * Receives the objects of a directory fetch.
+	 */
+	protected interface FetchHandler {
+		/**
+		 * @param elements Element files of the object's collections, by collection
+		 *  directory and file name
+		 */
+		void fetched(FetchedObject object, Map<String, Map<String, FetchedObject>> elements) throws SVNException;
+	}
+	
+	/**
+	 * Runs a directory fetch, keeping only files of the class and adding them to
+	 * the object cache. The element files of collections are part of the same
+	 * checkout, so an object with collections is handed over once its elements
+	 * have been received, and reading it needs no further exchange.
+	 */
+	protected void fetchAll(String dirPath, long revision, final Class<?> clazz, final FetchHandler handler) 
+			throws IOException, MissingObjectException {
+		final ObjectCache cache = svnStore.getObjectCache();
+		final List<StorableField> collections = svnStore.serializationTable.getDescriptor(clazz).getCollections();
+		final ElementFiles elements = new ElementFiles();
+		final Map<String, FetchedObject> waiting = new LinkedHashMap<String, FetchedObject>();
+		final Set<String> skipped = new HashSet<String>();
+		DirectoryFetcher fetcher = new DirectoryFetcher(isStreamed(clazz) ? spoolThreshold : -1) {
+			protected void fetched(FetchedObject object) throws SVNException {
+				String path = object.getPath();
+				if (path.contains(Utils.COLLECTION_MARKER)) {
+					String owner = Utils.getOwnerPath(path);
+					if (collections.isEmpty() || skipped.contains(owner)) {
+						discard(object);
+						return;
+					}
+					try {
+						elements.add(object);
+					} catch (IOException e) {
+						throw new SVNException(SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getMessage()), e);
+					}
+					FetchedObject waitingOwner = waiting.get(owner);
+					if (waitingOwner != null && elements.isComplete(waitingOwner, collections)) {
+						waiting.remove(owner);
+						handler.fetched(waitingOwner, elements.take(waitingOwner, collections));
+					}
+					return;
+				}
+				if (! clazz.getName().equals(object.getProperties().getStringValue("jvn.class.name"))) {
+					discard(object);
+					if (! collections.isEmpty()) {
+						skipped.add(path);
+						elements.drop(path);
+					}
+					return;
+				}
+				if (! object.isSpooled()) {
+					if (cache != null) {
+						cache.put(path, object.getRevision(), object);
+					}
+					rememberState(object);
+				}
+				if (elements.isComplete(object, collections)) {
+					handler.fetched(object, elements.take(object, collections));
+				} else {
+					waiting.put(path, object);
+				}
+			}
+		};
+		try {
+			SVNRepository repository = svnStore.borrowRepository();
+			SVNException failure = null;
+			try {
+				if (repository.checkPath(Utils.normalizePath(dirPath), revision) != SVNNodeKind.DIR) {
+					throw new MissingObjectException();
+				}
+				fetcher.fetch(repository, dirPath, revision);
+				// The checkout sent the whole subtree, elements still missing do not exist
+				for (FetchedObject owner : waiting.values()) {
+					handler.fetched(owner, elements.take(owner, collections));
+				}
+			} catch (SVNException e) {
+				failure = e;
+				throw e;
+			} finally {
+				elements.clear();
+				svnStore.releaseRepository(repository, failure);
+			}
+		} catch (SVNException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e);
+		}
+	}
+	
+	protected FetchedObject fetchFromRepository(String path, long revision) throws SVNException {
+		SVNProperties fileProperties = new SVNProperties();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SVNRepository repository = svnStore.borrowRepository();
+		SVNException failure = null;
+		try {
+			long fetchedRevision = repository.getFile(path, revision, fileProperties, baos);
+			received(fileProperties, baos.size());
+			FetchedObject fetched = new FetchedObject(path, fetchedRevision, fileProperties, baos.toByteArray());
+			rememberState(fetched);
+			return fetched;
+		} catch (SVNException e) {
+			failure = e;
+			throw e;
+		} finally {
+			svnStore.releaseRepository(repository, failure);
+		}
+	}
+	
+	/**
+	 * Reports a getFile call and what it fetched to the store's metrics.
+	 */
+	protected void received(SVNProperties properties, long contentLength) {
+		StoreMetrics metrics = svnStore.getMetrics();
+		if (metrics == null) {
+			return;
+		}
+		metrics.roundTrips(StoreMetrics.Operation.READ, StoreMetrics.RoundTrip.GET_FILE, 1);
+		long bytes = contentLength;
+		for (Object name : properties.nameSet()) {
+			bytes += ((String) name).length() + ObjectCommit.size(properties.getSVNPropertyValue((String) name));
+		}
+		metrics.bytesReceived(bytes);
+	}
+	
+	/**
+	 * Remembers the fetched state of an object: its text as the base the next
+	 * update is sent as a delta against, and its fingerprint to detect changes.
+	 */
+	protected void rememberState(FetchedObject fetched) {
+		BaseContentCache bases = svnStore.getBaseContentCache();
+		String checksum = fetched.getProperties().getStringValue(SVNProperty.CHECKSUM);
+		if (checksum == null && fetched.getContent() != null) {
+			checksum = BaseContentCache.md5(fetched.getContent());
+		}
+		if (bases != null && fetched.getContent() != null) {
+			bases.put(fetched.getPath(), fetched.getRevision(), fetched.getContent(), checksum);
+		}
+		svnStore.getFingerprintCache().put(fetched.getPath(),
+				FingerprintCache.Fingerprint.of(fetched.getProperties(), fetched.getRevision(), checksum));
+	}
+	
+	/**
+	 * @return Number of bytes of streamed content kept in memory before it is
+	 *  spooled to a temporary file
+	 */
+	public int getSpoolThreshold() {
+		return spoolThreshold;
+	}
+	
+	public void setSpoolThreshold(int spoolThreshold) {
+		this.spoolThreshold = spoolThreshold;
+	}
+	
+	/**
+	 * @return Number of revisions read at once when history has to be read
+	 *  revision by revision
+	 */
+	public int getHistoryParallelism() {
+		return historyParallelism;
+	}
+	
+	public void setHistoryParallelism(int historyParallelism) {
+		if (historyParallelism < 1) {
+			throw new IllegalArgumentException("historyParallelism must be at least 1");
+		}
+		this.historyParallelism = historyParallelism;
+	}
+	
+	protected static boolean isMissing(SVNException e) {
+		SVNErrorCode code = e.getErrorMessage().getErrorCode();
+		return code == SVNErrorCode.FS_NOT_FOUND || code == SVNErrorCode.RA_DAV_PATH_NOT_FOUND
+				|| e.getMessage().contains("path not found");
+	}
+	
+	/**
+	 * Builds an object from its stored form.
+	 * @param fetched Properties and content of the object's file
+	 * @param clazz Type of class to return
+	 * @return Object constructed from the stored form
+	 * @throws IOException If there was an error during serialization
+	 */
+	public <T> T deserialize(FetchedObject fetched, Class<T> clazz) throws IOException {
+		return deserialize(fetched, clazz, true, null);
+	}
+	
+	/**
+	 * @param withContent false to set only the SvnProperty fields, true to also
+	 *  set the SvnContent and read the elements of every SvnCollection
+	 */
+	protected <T> T deserialize(FetchedObject fetched, Class<T> clazz, boolean withContent) throws IOException {
+		return deserialize(fetched, clazz, withContent, null);
+	}
+	
+	/**
+	 * Builds an object whose collections' element files were fetched with it.
+	 * @param elements Element files by collection directory and file name
+	 */
+	protected <T> T deserialize(FetchedObject fetched, Class<T> clazz, Map<String, Map<String, FetchedObject>> elements) 
+			throws IOException {
+		return deserialize(fetched, clazz, true, elements);
+	}
+	
+	protected <T> T deserialize(FetchedObject fetched, Class<T> clazz, boolean withContent, 
+			Map<String, Map<String, FetchedObject>> elements) throws IOException {
+		SVNProperties fileProperties = fetched.getProperties();
+		StoreMetrics metrics = svnStore.getMetrics();
+		try {
+	        StorableClassDescriptor descriptor = svnStore.serializationTable.getDescriptor(clazz);
+	        T obj = clazz.newInstance();
+	        
+	        for (StorableField field : descriptor.getProperties()) {
+				long start = metrics == null ? 0 : System.nanoTime();
+				if (field.getStoreMethod() == StoreMethod.SERIALIZE_OBJECT) {
+					// SVN hands binary values that happen to be valid UTF-8 back as strings
+					SVNPropertyValue value = fileProperties.getSVNPropertyValue(field.getSvnPropertyName());
+					byte []val = value == null ? null : Compression.decode(SVNPropertyValue.getPropertyAsBytes(value),
+							fileProperties.getStringValue(field.getEncodingPropertyName()));
+					setFieldFromBytes(field, obj, val, fileProperties.getStringValue(field.getCodecPropertyName()));
+				} else {
+					String val = fileProperties.getStringValue(field.getSvnPropertyName());
+					setFieldFromString(field, obj, val);
+				}
+				if (metrics != null) {
+					metrics.deserialized(field.getStoreMethod(), System.nanoTime() - start);
+				}
+			}
+	        
+	        StorableField contentField = descriptor.getContent();
+	        if (contentField != null && withContent) {
+				Object content = deserializeContent(fetched, contentField);
+				if (content != null) {
+					contentField.set(obj, content);
+				}
+	        }
+	        
+	        if (withContent) {
+	        	for (StorableField collection : descriptor.getCollections()) {
+	        		Object value = readCollection(fetched, collection, elements);
+	        		if (value != null) {
+	        			collection.set(obj, value);
+	        		}
+	        	}
+	        }
 	        
 	        return obj;
-    	} catch (SVNException e) {
-    		// Could do a checkPath call to SVN before this instead of this fuzzier check for
-    		// a missing object, but figured I'd minimize calls to SVN when possible
-    		if (e.getMessage().contains("path not found")) {
-    			throw new MissingObjectException();
-    		}
-    		throw new IOException(e);
     	} catch (InstantiationException e) {
     		throw new IOException(e);
 		} catch (IllegalAccessException e) {
 			throw new IOException(e);
-		} catch (SecurityException e) {
-			throw new IOException(e);
-		} catch (NoSuchMethodException e) {
-			throw new IOException(e);
 		} catch (IllegalArgumentException e) {
 			throw new IOException(e);
-		} catch (InvocationTargetException e) {
-			throw new IOException(e);
-		} catch (ClassNotFoundException e) {
-			throw new IOException(e);
 		}
 	}
 	
-	protected void setFieldFromBytes(Method setMethod, Class<?> paramType, Object obj, byte[] value) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException, IOException, ClassNotFoundException {
+	/**
+	 * Decodes the SvnContent of an object from its stored form.
+	 * @return Value of the content field, null if there is none
+	 */
+	protected Object deserializeContent(FetchedObject fetched, StorableField contentField) throws IOException {
+		StoreMetrics metrics = svnStore.getMetrics();
+		long start = metrics == null ? 0 : System.nanoTime();
+		try {
+			if (contentField.getStoreMethod() == StoreMethod.STREAM) {
+				return svnStore.serializationTable.getStreamSerializer(contentField.getType())
+						.deserialize(fetched.openContent());
+			}
+			SVNProperties fileProperties = fetched.getProperties();
+			byte[] content = Compression.decode(fetched.getContent(),
+					fileProperties.getStringValue(Compression.ENCODING_PROPERTY));
+			if (content == null) {
+				return null;
+			}
+			switch (contentField.getStoreMethod()) {
+				case SERIALIZE_OBJECT:
+					BinaryCodec codec = svnStore.serializationTable.getBinaryCodec(
+							fileProperties.getStringValue(contentField.getCodecPropertyName()));
+					return codec.decode(content, contentField.getType());
+				case TO_STRING_CONSTRUCTOR:
+					return contentField.newFromString(new String(content));
+				case REGISTERED:
+					return svnStore.serializationTable.deserializeCustom(new String(content), contentField.getType());
+				default:
+					return PropertyAccessors.parse(contentField.getType(), new String(content));
+			}
+		} finally {
+			if (metrics != null) {
+				metrics.deserialized(contentField.getStoreMethod(), System.nanoTime() - start);
+			}
+		}
+	}
+	
+	/**
+	 * Decodes a SERIALIZE_OBJECT field with the codec it was written with.
+	 * @param codecName Value of the field's codec property, null for java serialization
+	 */
+	protected void setFieldFromBytes(StorableField field, Object obj, byte[] value, String codecName) throws IOException {
 		if (value == null) return;
 		
-		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(value));
-		Object storedObj = ois.readObject();
-		setMethod.invoke(obj, storedObj);
+		BinaryCodec codec = svnStore.serializationTable.getBinaryCodec(codecName);
+		field.set(obj, codec.decode(value, field.getType()));
 	}
 	
-	protected void setFieldFromString(Method setMethod, Class<?> paramType, Object obj, String value) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException, IOException, ClassNotFoundException, SecurityException, NoSuchMethodException, InstantiationException {
+	protected void setFieldFromString(StorableField field, Object obj, String value) throws IOException {
 		if (value == null) return;
 		
-		SerializationTable.StoreMethod storeMethod = svnStore.serializationTable.getStorageMethod(paramType);
-		
-		switch (storeMethod) {
+		switch (field.getStoreMethod()) {
 			case TO_STRING: 
-				if (paramType == String.class) {
-					setMethod.invoke(obj, value);
-				} else if (paramType == int.class) {
-					setMethod.invoke(obj, Integer.parseInt(value));
-				} else if (paramType == byte.class) {
-					setMethod.invoke(obj, Byte.parseByte(value));
-				} else if (paramType == short.class) {
-					setMethod.invoke(obj, Short.parseShort(value));
-				} else if (paramType == long.class) {
-					setMethod.invoke(obj, Long.parseLong(value));
-				} else if (paramType == float.class) {
-					setMethod.invoke(obj, Float.parseFloat(value));
-				} else if (paramType == double.class) {
-					setMethod.invoke(obj, Double.parseDouble(value));
-				} else if (paramType == boolean.class) {
-					setMethod.invoke(obj, Boolean.parseBoolean(value));
-				} else if (paramType == char.class) {
-					setMethod.invoke(obj, value.charAt(0));
-				} else if (paramType == Character.class) {
-					setMethod.invoke(obj, new Character(value.charAt(0)));
-				}
+				field.setFromString(obj, value);
 				break;
 			case TO_STRING_CONSTRUCTOR: 
-				Constructor<?> c = paramType.getConstructor(String.class);
-				Object newInst = c.newInstance(value);
-				setMethod.invoke(obj, newInst);
+				field.set(obj, field.newFromString(value));
 				break;
 			case REGISTERED:
-				Object deserializedObj = svnStore.serializationTable.deserializeCustom(value, paramType);
-				setMethod.invoke(obj, deserializedObj);
+				Object deserializedObj = svnStore.serializationTable.deserializeCustom(value, field.getType());
+				field.set(obj, deserializedObj);
 				break;
 		}
 	}
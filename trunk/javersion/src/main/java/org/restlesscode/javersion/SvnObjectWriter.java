@@ -1,27 +1,26 @@
 package org.restlesscode.javersion;
 
 import java.util.List;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
-import java.lang.reflect.Method;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.restlesscode.javersion.annotations.SvnContent;
-import org.restlesscode.javersion.annotations.SvnProperty;
-import org.restlesscode.javersion.annotations.SvnStorable;
-import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.restlesscode.javersion.SerializationTable.StoreMethod;
 import org.tmatesoft.svn.core.SVNException;
-import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNPropertyValue;
-import org.tmatesoft.svn.core.io.ISVNEditor;
-import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.SVNRepository;
 
 /**
  * Writes objects into a subversion repository.
@@ -31,175 +30,534 @@ public class SvnObjectWriter {
 	private static final Log LOG = LogFactory.getLog(SvnObjectWriter.class);
 	
 	protected SvnStore svnStore;
+	protected int collectionAttempts = 3;
 	
 	public SvnObjectWriter(SvnStore svnStore) {
 		this.svnStore = svnStore;
 	}
 	
+	/**
+	 * @return Number of times an object with collections is serialized and
+	 *  committed when someone else writes it in between
+	 */
+	public int getCollectionAttempts() {
+		return collectionAttempts;
+	}
+	
+	public void setCollectionAttempts(int collectionAttempts) {
+		if (collectionAttempts < 1) {
+			throw new IllegalArgumentException("collectionAttempts must be at least 1");
+		}
+		this.collectionAttempts = collectionAttempts;
+	}
+	
 	/**
 	 * Writes an object to an SVN repository at the given path. Directories will
 	 * be created as necessary. Object need not be written already.
 	 * @param path Path relative to SVN root to save object at
 	 * @param o Object to save
+	 * @return Revision created and whether the object was added or updated
 	 * @throws IOException Serialization problem or problem with object
 	 */
-	public synchronized void write(String path, Object o) throws IOException {
-		Class<?> clazz = o.getClass();
-		if (! clazz.isAnnotationPresent(SvnStorable.class)) {
-			throw new IllegalArgumentException("Class " + clazz + " does not conform to SvnStorable annotation.");
-		}
-		
-		SvnStorable s = (SvnStorable) clazz.getAnnotation(SvnStorable.class);
-		int classVersion = s.version();
-		LOG.info("Class version = " + classVersion);
-		Serializable content = null;
-		String contentField = null;
-		Map<String, Serializable> properties = new HashMap<String, Serializable>();
-		
-		for (Method m : clazz.getMethods()) {
-			if (m.isAnnotationPresent(SvnProperty.class)) {
-				LOG.info("Will store " + m.getName() + " as " + m.getReturnType());
-				String fieldName = Utils.checkStorability(m, clazz);
+	public WriteResult write(String path, Object o) throws IOException {
+		StoreMetrics metrics = svnStore.getMetrics();
+		long start = metrics == null ? 0 : System.nanoTime();
+		try {
+			if (hasCollections(o)) {
+				return writeCollections(path, o, -1);
+			}
+			SerializedObject serialized = serialize(path, o);
+			GroupCommitter groupCommitter = svnStore.getGroupCommitter();
+			// A group commit may have to send an object twice, which a one-shot stream cannot do
+			if (groupCommitter != null && serialized.isRepeatable()) {
 				try {
-					Serializable value = (Serializable) m.invoke(o);
-					if (value != null) {
-						properties.put(fieldName, value);
+					return groupCommitter.submit(serialized).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting for group commit of " + path);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
 					}
-				} catch (Exception e) {
-					LOG.error(e);
-					throw new IOException(e);
+					throw new IOException(e.getCause());
 				}
 			}
-			if (m.isAnnotationPresent(SvnContent.class)) {
-				LOG.info("Will store " + m.getName() + " as " + m.getReturnType());
-				if (content != null) {
-					throw new IOException("Cannot mark more than one field as SvnContent");
+			return svnStore.commit("Saving object", Collections.singletonList(serialized));
+		} finally {
+			written(metrics, start);
+		}
+	}
+	
+	/**
+	 * Reports the time taken by a write to the store's metrics.
+	 */
+	protected static void written(StoreMetrics metrics, long start) {
+		if (metrics != null) {
+			metrics.operation(StoreMetrics.Operation.WRITE, System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Writes an object without blocking the caller. The object is serialized by
+	 * the caller, so later changes to it do not affect the write; the commit runs
+	 * on the store's async executor, or is the group commit's when enabled. An
+	 * object with collections fetches their stored manifests before returning, and
+	 * fails with a ConflictException if the object is written by someone else
+	 * before the commit.
+	 * @return Future completed with the result of the write, or exceptionally with
+	 *  its IOException
+	 */
+	public CompletableFuture<WriteResult> writeAsync(String path, Object o) {
+		final List<SerializedObject> serialized;
+		try {
+			serialized = serializeAll(path, o, -1);
+		} catch (IOException e) {
+			CompletableFuture<WriteResult> failed = new CompletableFuture<WriteResult>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+		GroupCommitter groupCommitter = svnStore.getGroupCommitter();
+		if (groupCommitter != null && serialized.size() == 1 && serialized.get(0).isRepeatable()) {
+			return groupCommitter.submit(serialized.get(0));
+		}
+		return CompletableFuture.supplyAsync(new Supplier<WriteResult>() {
+			public WriteResult get() {
+				try {
+					return svnStore.commit("Saving object", serialized);
+				} catch (IOException e) {
+					throw new CompletionException(e);
 				}
-				String fieldName = Utils.checkStorability(m, clazz);
-				contentField = fieldName;
+			}
+		}, svnStore.getAsyncExecutor());
+	}
+	
+	/**
+	 * Writes a batch in a single commit without blocking the caller.
+	 * @see #write(WriteBatch)
+	 */
+	public CompletableFuture<WriteResult> writeAsync(final WriteBatch batch) {
+		return CompletableFuture.supplyAsync(new Supplier<WriteResult>() {
+			public WriteResult get() {
 				try {
-					content = (Serializable) m.invoke(o);
-				} catch (Exception e) {
-					LOG.error(e);
-					throw new IOException(e);
+					return write(batch);
+				} catch (IOException e) {
+					throw new CompletionException(e);
 				}
 			}
+		}, svnStore.getAsyncExecutor());
+	}
+	
+	/**
+	 * Writes an object only if it has not changed in the repository since a
+	 * revision, typically the one it was read at, as returned by
+	 * {@link SvnObjectReader#readStored(String, long, Class)}. The write does not
+	 * wait for writes of other objects. An object equal to the stored one is not
+	 * written and raises no conflict.
+	 * @param path Path relative to SVN root to save object at
+	 * @param o Object to save
+	 * @param expectedRevision Revision the object is expected to be unchanged since
+	 * @return Revision created and whether the object was added or updated
+	 * @throws ConflictException If the object was changed or deleted after the
+	 *  expected revision
+	 * @throws IOException Serialization problem or problem with object
+	 */
+	public WriteResult write(String path, Object o, long expectedRevision) throws IOException {
+		StoreMetrics metrics = svnStore.getMetrics();
+		long start = metrics == null ? 0 : System.nanoTime();
+		try {
+			if (hasCollections(o)) {
+				return writeCollections(path, o, expectedRevision);
+			}
+			SerializedObject serialized = serialize(path, o);
+			serialized.setExpectedRevision(expectedRevision);
+			return svnStore.commit("Saving object", Collections.singletonList(serialized));
+		} finally {
+			written(metrics, start);
 		}
-		
+	}
+	
+	/**
+	 * Writes several objects in a single commit, creating one revision. Every
+	 * object is serialized before the commit starts, and shared parent
+	 * directories are opened or added once.
+	 * @param objectsByPath Objects to save keyed by path relative to SVN root
+	 * @return Revision created and the outcome for each path
+	 * @throws IOException Serialization problem or problem with an object
+	 */
+	public WriteResult writeAll(Map<String, ?> objectsByPath) throws IOException {
+		return write(new WriteBatch().addAll(objectsByPath));
+	}
+	
+	/**
+	 * Writes every object of a batch in a single commit, creating one revision.
+	 * @param batch Objects to save
+	 * @return Revision created and the outcome for each path, revision is -1 if
+	 *  the batch is empty
+	 * @throws IOException Serialization problem or problem with an object
+	 */
+	public WriteResult write(WriteBatch batch) throws IOException {
+		if (batch.isEmpty()) {
+			return new WriteResult(-1, Collections.<String, WriteResult.Outcome>emptyMap());
+		}
+		StoreMetrics metrics = svnStore.getMetrics();
+		long start = metrics == null ? 0 : System.nanoTime();
 		try {
-			svnStore.commitLock.acquire();
-			writeToSvn(path, clazz.getName(), classVersion, contentField, content, properties);
-		} catch (Throwable throwable) {
-			throw new IOException(throwable);
+			for (int attempt = 1; ; attempt++) {
+				List<SerializedObject> serialized = new ArrayList<SerializedObject>(batch.size());
+				boolean expected = false;
+				for (Map.Entry<String, Object> entry : batch.getObjects().entrySet()) {
+					long expectedRevision = batch.getExpectedRevision(entry.getKey());
+					expected |= expectedRevision >= 0;
+					serialized.addAll(serializeAll(entry.getKey(), entry.getValue(), expectedRevision));
+				}
+				try {
+					return svnStore.commit("Saving " + batch.size() + " objects", serialized);
+				} catch (ConflictException e) {
+					// Without expectations of the caller, only collection manifests were pinned
+					if (expected || attempt >= collectionAttempts) {
+						throw e;
+					}
+				}
+			}
 		} finally {
-			svnStore.commitLock.release();
+			written(metrics, start);
 		}
 	}
 	
-	protected void writeToSvn(String path, String className, int classVersion, String contentField,
-			Serializable content, Map<String, Serializable> properties) throws SVNException, IOException {
-		
-		boolean fileExistsInSvn = checkFileExists(path);
-		
-		List<String> pathsToCreate = findPathsToCreate(path);
-		
-		ISVNEditor editor = svnStore.repository.getCommitEditor("Saving object", null);
-		editor.openRoot(-1);
-		
-		for (String p : pathsToCreate) {
-			editor.addDir(p, null, -1);
+	/**
+	 * @return true if an object has SvnCollection fields, which are stored as
+	 *  files of their own
+	 */
+	protected boolean hasCollections(Object o) throws IOException {
+		return ! svnStore.serializationTable.getDescriptor(o.getClass()).getCollections().isEmpty();
+	}
+	
+	/**
+	 * Writes an object with collections, trying again with fresh manifests if
+	 * someone else wrote the object in between, unless the caller expects it
+	 * unchanged since a revision.
+	 */
+	protected WriteResult writeCollections(String path, Object o, long expectedRevision) throws IOException {
+		for (int attempt = 1; ; attempt++) {
+			List<SerializedObject> serialized = serializeAll(path, o, expectedRevision);
+			try {
+				return svnStore.commit("Saving object", serialized);
+			} catch (ConflictException e) {
+				if (expectedRevision >= 0 || attempt >= collectionAttempts) {
+					throw e;
+				}
+				LOG.info("Collections of " + path + " changed while writing, retrying: " + e.getMessage());
+			}
 		}
-		
-		if (fileExistsInSvn) {
-			editor.openFile(path, -1);
-		} else {
-			editor.addFile(path, null, -1);
+	}
+	
+	/**
+	 * Serializes an object and the files of its collections that differ from the
+	 * manifests stored with the object: added and changed elements, and deletions
+	 * of removed ones. The object comes first and is expected unchanged since
+	 * the manifests were fetched, so that concurrent writers cannot mix up the
+	 * element files.
+	 * @param expectedRevision Revision the caller expects the object unchanged
+	 *  since, -1 for none
+	 * @return The object followed by the files of its collections to commit
+	 */
+	protected List<SerializedObject> serializeAll(String path, Object o, long expectedRevision) throws IOException {
+		SerializedObject serialized = serialize(path, o);
+		serialized.setExpectedRevision(expectedRevision);
+		StorableClassDescriptor descriptor = svnStore.serializationTable.getDescriptor(o.getClass());
+		if (descriptor.getCollections().isEmpty()) {
+			return Collections.singletonList(serialized);
 		}
-		
-		String checksum = null;
-		
-		if (content != null) {
-			editor.applyTextDelta(path, null);
-			SVNDeltaGenerator deltaGenerator = new SVNDeltaGenerator();
-			SerializationTable.StoreMethod storeMethod = svnStore.serializationTable.getStorageMethod(content.getClass());
-			
-			switch (storeMethod) {
+		SVNProperties stored = new SVNProperties();
+		long storedRevision = fetchProperties(serialized.getPath(), stored);
+		List<SerializedObject> objects = serializeCollections(serialized, o, descriptor, stored);
+		if (expectedRevision < 0) {
+			serialized.setExpectedRevision(storedRevision);
+		}
+		return objects;
+	}
+	
+	/**
+	 * Serializes an object and every file of its collections without fetching
+	 * stored manifests, taking the object to be new. Only fit for an add-only
+	 * commit, which fails if the object exists after all.
+	 * @return The object followed by the files of its collections to commit
+	 */
+	protected List<SerializedObject> serializeNew(String path, Object o) throws IOException {
+		SerializedObject serialized = serialize(path, o);
+		StorableClassDescriptor descriptor = svnStore.serializationTable.getDescriptor(o.getClass());
+		if (descriptor.getCollections().isEmpty()) {
+			return Collections.singletonList(serialized);
+		}
+		return serializeCollections(serialized, o, descriptor, new SVNProperties());
+	}
+	
+	/**
+	 * Adds the manifests of an object's collections to it.
+	 * @param stored Properties stored with the object, holding the manifests its
+	 *  collections are compared with
+	 * @return The object followed by the files of its collections to commit
+	 */
+	protected List<SerializedObject> serializeCollections(SerializedObject serialized, Object o,
+			StorableClassDescriptor descriptor, SVNProperties stored) throws IOException {
+		List<SerializedObject> objects = new ArrayList<SerializedObject>();
+		objects.add(serialized);
+		for (StorableField collection : descriptor.getCollections()) {
+			CollectionManifest manifest = serializeCollection(serialized.getPath(), o, descriptor, collection,
+					CollectionManifest.parse(stored.getStringValue(collection.getManifestPropertyName())), objects);
+			if (manifest != null) {
+				serialized.getProperties().put(collection.getManifestPropertyName(),
+						SVNPropertyValue.create(manifest.toString()));
+			}
+		}
+		return objects;
+	}
+	
+	/**
+	 * Fetches the properties of an object's file at HEAD, without its text.
+	 * @return Revision fetched, -1 if there is no such file
+	 */
+	protected long fetchProperties(String path, SVNProperties properties) throws IOException {
+		StoreMetrics metrics = svnStore.getMetrics();
+		if (metrics != null) {
+			metrics.roundTrips(StoreMetrics.Operation.WRITE, StoreMetrics.RoundTrip.GET_FILE, 1);
+		}
+		try {
+			SVNRepository repository = svnStore.borrowRepository();
+			SVNException failure = null;
+			try {
+				return repository.getFile(path, SvnRevision.HEAD, properties, null);
+			} catch (SVNException e) {
+				failure = e;
+				throw e;
+			} finally {
+				svnStore.releaseRepository(repository, failure);
+			}
+		} catch (SVNException e) {
+			if (SvnObjectReader.isMissing(e)) {
+				return -1;
+			}
+			throw new IOException(e);
+		}
+	}
+	
+	/**
+	 * Serializes the elements of a collection and adds the files that differ from
+	 * the stored manifest to a commit.
+	 * @return Manifest of the collection, null if the field is null
+	 */
+	protected CollectionManifest serializeCollection(String path, Object o, StorableClassDescriptor descriptor,
+			StorableField collection, CollectionManifest stored, List<SerializedObject> objects) throws IOException {
+		Object value = collection.get(o);
+		String dir = collection.getCollectionPath(path);
+		Map<String, String> storedFiles = stored.getFiles();
+		CollectionManifest manifest = null;
+		Set<String> files = new HashSet<String>();
+		if (value != null) {
+			manifest = new CollectionManifest();
+			Map<String, Object> elements = new LinkedHashMap<String, Object>();
+			if (value instanceof Map) {
+				for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+					elements.put(CollectionManifest.nameOf((String) entry.getKey()), entry.getValue());
+				}
+			} else {
+				int index = 0;
+				for (Object element : (List<?>) value) {
+					elements.put(Integer.toString(index++), element);
+				}
+			}
+			for (Map.Entry<String, Object> element : elements.entrySet()) {
+				if (element.getValue() == null) {
+					throw new IOException("Cannot store null element " + element.getKey() + " of " + collection.getName());
+				}
+				SerializedObject serialized = serializeElement(descriptor, collection, element.getValue());
+				String digest = CollectionManifest.digest(serialized);
+				String name = value instanceof Map ? element.getKey() : digest;
+				if (files.add(name) && ! digest.equals(storedFiles.get(name))) {
+					objects.add(new SerializedObject(dir + "/" + name, serialized.getContent(), serialized.getProperties()));
+				}
+				manifest.add(name, digest);
+			}
+		}
+		for (String name : storedFiles.keySet()) {
+			if (! files.contains(name)) {
+				objects.add(SerializedObject.deletion(dir + "/" + name));
+			}
+		}
+		return manifest;
+	}
+	
+	/**
+	 * Serializes an element of a collection, an SvnStorable element like an object
+	 * and any other element like SvnContent.
+	 */
+	protected SerializedObject serializeElement(StorableClassDescriptor descriptor, StorableField collection,
+			Object element) throws IOException {
+		if (collection.isNested()) {
+			StorableClassDescriptor elementDescriptor = svnStore.serializationTable.getDescriptor(element.getClass());
+			StorableField contentField = elementDescriptor.getContent();
+			if (! elementDescriptor.getCollections().isEmpty()
+					|| (contentField != null && contentField.getStoreMethod() == StoreMethod.STREAM)) {
+				throw new IOException("Elements of " + collection.getName() + " cannot have collections or stream content");
+			}
+			return serialize(collection.getName(), element);
+		}
+		byte[] content = encode(collection, element);
+		Map<String, SVNPropertyValue> properties = new LinkedHashMap<String, SVNPropertyValue>();
+		if (collection.getStoreMethod() == StoreMethod.SERIALIZE_OBJECT) {
+			putCodec(properties, collection);
+		}
+		if (collection.isCompressed()) {
+			byte[] compressed = Compression.deflate(content, descriptor.getCompressThreshold());
+			if (compressed != null) {
+				content = compressed;
+				properties.put(Compression.ENCODING_PROPERTY, SVNPropertyValue.create(Compression.DEFLATE));
+			}
+		}
+		return new SerializedObject(collection.getName(), content, properties);
+	}
+	
+	/**
+	 * Serializes an object into the file text and properties it is stored as.
+	 * @param path Path relative to SVN root the object will be saved at
+	 * @param o Object to serialize
+	 * @throws IOException Serialization problem or problem with object
+	 * @see #serializeAll(String, Object, long) for objects with collections
+	 */
+	public SerializedObject serialize(String path, Object o) throws IOException {
+		StorableClassDescriptor descriptor = svnStore.serializationTable.getDescriptor(o.getClass());
+		StorableField contentField = descriptor.getContent();
+		if (contentField != null && contentField.getStoreMethod() == StoreMethod.STREAM) {
+			Object content = contentField.get(o);
+			if (content != null) {
+				return streamed(path, content, contentField.getType(), serializeProperties(descriptor, o));
+			}
+		}
+		byte[] content = serializeContent(descriptor, o);
+		Map<String, SVNPropertyValue> properties = serializeProperties(descriptor, o);
+		if (content != null && contentField.isCompressed()) {
+			byte[] compressed = Compression.deflate(content, descriptor.getCompressThreshold());
+			if (compressed != null) {
+				content = compressed;
+				properties.put(Compression.ENCODING_PROPERTY, SVNPropertyValue.create(Compression.DEFLATE));
+			}
+		}
+		return new SerializedObject(path, content, properties);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> SerializedObject streamed(String path, Object content, Class<T> type, Map<String, SVNPropertyValue> properties) {
+		return new SerializedObject(path, (T) content, svnStore.serializationTable.getStreamSerializer(type), properties);
+	}
+	
+	/**
+	 * Serializes the SvnContent field of an object.
+	 * @return Bytes to store as the file's text, or null if the object has no content
+	 */
+	protected byte[] serializeContent(StorableClassDescriptor descriptor, Object o) throws IOException {
+		StorableField contentField = descriptor.getContent();
+		if (contentField == null) {
+			return null;
+		}
+		Object content = contentField.get(o);
+		if (content == null) {
+			return null;
+		}
+		return encode(contentField, content);
+	}
+	
+	/**
+	 * Encodes a value of the SvnContent field, or an element of a collection,
+	 * as file text.
+	 */
+	protected byte[] encode(StorableField field, Object value) throws IOException {
+		StoreMetrics metrics = svnStore.getMetrics();
+		long start = metrics == null ? 0 : System.nanoTime();
+		try {
+			switch (field.getStoreMethod()) {
 				case TO_STRING:
 				case TO_STRING_CONSTRUCTOR:
-					checksum = deltaGenerator.sendDelta(path, new ByteArrayInputStream(content.toString().getBytes()), editor, true);
-					break;
+					return value.toString().getBytes();
 				case REGISTERED:
-					String s = svnStore.serializationTable.serializeCustom(content);
-					checksum = deltaGenerator.sendDelta(path, new ByteArrayInputStream(s.getBytes()), editor, true);
-					break;
-				case SERIALIZE_OBJECT:
-					ByteArrayOutputStream baos = new ByteArrayOutputStream();
-					ObjectOutputStream oos = new ObjectOutputStream(baos);
-					oos.writeObject(content);
-					oos.flush();
-					checksum = deltaGenerator.sendDelta(path, new ByteArrayInputStream(baos.toByteArray()), editor, true);
-					break;
+					return svnStore.serializationTable.serializeCustom(value, field.getType()).getBytes();
+				default:
+					return field.getCodec().encode(value);
+			}
+		} finally {
+			if (metrics != null) {
+				metrics.serialized(field.getStoreMethod(), System.nanoTime() - start);
 			}
-			
 		}
-		editor.changeFileProperty(path, "jvn.class.version", SVNPropertyValue.create(new Integer(classVersion).toString()));
-		editor.changeFileProperty(path, "jvn.class.name", SVNPropertyValue.create(className));
+	}
+	
+	/**
+	 * Serializes the class information and SvnProperty fields of an object into
+	 * SVN properties. Null fields are left out.
+	 */
+	protected Map<String, SVNPropertyValue> serializeProperties(StorableClassDescriptor descriptor, Object o) throws IOException {
+		Map<String, SVNPropertyValue> properties = new LinkedHashMap<String, SVNPropertyValue>();
+		properties.put("jvn.class.version", SVNPropertyValue.create(Integer.toString(descriptor.getVersion())));
+		properties.put("jvn.class.name", SVNPropertyValue.create(descriptor.getClassName()));
 		
-		for (String key : properties.keySet()) {
-			Object objToStore = properties.get(key);
-			SerializationTable.StoreMethod storeMethod = svnStore.serializationTable.getStorageMethod(objToStore.getClass());
-			switch (storeMethod) {
+		StoreMetrics metrics = svnStore.getMetrics();
+		for (StorableField field : descriptor.getProperties()) {
+			long start = metrics == null ? 0 : System.nanoTime();
+			switch (field.getStoreMethod()) {
 				case TO_STRING:
+					String s = field.getAsString(o);
+					if (s != null) {
+						properties.put(field.getSvnPropertyName(), SVNPropertyValue.create(s));
+					}
+					break;
 				case TO_STRING_CONSTRUCTOR:
-					editor.changeFileProperty(path, "jvn.property." + key, 
-							SVNPropertyValue.create(objToStore.toString()));
+					Object value = field.get(o);
+					if (value != null) {
+						properties.put(field.getSvnPropertyName(), SVNPropertyValue.create(value.toString()));
+					}
 					break;
 				case REGISTERED:
-					editor.changeFileProperty(path, "jvn.property." + key, 
-							SVNPropertyValue.create(svnStore.serializationTable.serializeCustom(objToStore)));
+					Object registered = field.get(o);
+					if (registered != null) {
+						properties.put(field.getSvnPropertyName(), 
+								SVNPropertyValue.create(svnStore.serializationTable.serializeCustom(registered, field.getType())));
+					}
 					break;
 				case SERIALIZE_OBJECT:
-					LOG.info("Serializing " + objToStore);
-					ByteArrayOutputStream baos = new ByteArrayOutputStream();
-					ObjectOutputStream oos = new ObjectOutputStream(baos);
-					oos.writeObject(objToStore);
-					oos.flush();
-					editor.changeFileProperty(path, "jvn.property." + key, 
-							SVNPropertyValue.create(key, baos.toByteArray()));
+					Object serializable = field.get(o);
+					if (serializable != null) {
+						byte[] bytes = field.getCodec().encode(serializable);
+						byte[] compressed = field.isCompressed() ? 
+								Compression.deflate(bytes, descriptor.getCompressThreshold()) : null;
+						if (compressed != null) {
+							bytes = compressed;
+							properties.put(field.getEncodingPropertyName(), SVNPropertyValue.create(Compression.DEFLATE));
+						}
+						properties.put(field.getSvnPropertyName(), SVNPropertyValue.create(field.getName(), bytes));
+						putCodec(properties, field);
+					}
 					break;
 			}
-		}
-		
-		editor.closeFile(path, checksum);
-		editor.closeDir();
-		SVNCommitInfo commitInfo = editor.closeEdit();
-		LOG.info("Commited object revision = " + commitInfo.getNewRevision());
-	}
-
-	protected List<String> findPathsToCreate(String path) throws SVNException, IOException {
-		
-		List<String> pathsToCreate = new ArrayList<String>();
-		
-		String pathElements[] = path.split("/");
-		String currPath = "";
-		
-		for (int i = 0; i < pathElements.length - 1; i++) {
-			String pathElement = pathElements[i];
-			currPath += (i > 0 ? "/" : "") + pathElement;
-			SVNNodeKind nodeKind = svnStore.repository.checkPath(currPath, -1);
-			if (nodeKind == SVNNodeKind.NONE) {
-				pathsToCreate.add(currPath);
-			} else if (nodeKind == SVNNodeKind.FILE) {
-				throw new IOException("Error: cannot make directory, file exists at path " + currPath);
+			if (metrics != null) {
+				metrics.serialized(field.getStoreMethod(), System.nanoTime() - start);
 			}
 		}
-		
-		return pathsToCreate;
+		StorableField contentField = descriptor.getContent();
+		if (contentField != null && contentField.getStoreMethod() == StoreMethod.SERIALIZE_OBJECT
+				&& contentField.get(o) != null) {
+			putCodec(properties, contentField);
+		}
+		return properties;
 	}
-
-	protected boolean checkFileExists(String path) throws SVNException {
-		return (svnStore.repository.checkPath(path, -1) == SVNNodeKind.FILE);
+	
+	/**
+	 * Records the codec of a SERIALIZE_OBJECT field. Java serialization is left
+	 * unrecorded, so such fields stay readable by versions that predate codecs.
+	 */
+	protected void putCodec(Map<String, SVNPropertyValue> properties, StorableField field) {
+		String codecName = field.getCodec().getName();
+		if (! JavaSerializationCodec.NAME.equals(codecName)) {
+			properties.put(field.getCodecPropertyName(), SVNPropertyValue.create(codecName));
+		}
 	}
-
 	
 }
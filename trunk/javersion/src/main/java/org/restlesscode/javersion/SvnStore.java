@@ -1,10 +1,30 @@
 package org.restlesscode.javersion;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
 import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
@@ -12,7 +32,6 @@ import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
 import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
 import org.tmatesoft.svn.core.io.SVNRepository;
-import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.wc.SVNWCUtil;
 
 /**
@@ -28,9 +47,36 @@ public class SvnStore {
 		SVNRepositoryFactoryImpl.setup();
 	}
 	
-	protected SVNRepository repository;
+	public static final int DEFAULT_MAX_CONNECTIONS = Math.max(2, 2 * Runtime.getRuntime().availableProcessors());
+	
+	protected RepositoryPool repositoryPool;
 	protected SerializationTable serializationTable;
 	protected Semaphore commitLock = new Semaphore(1);
+	protected volatile GroupCommitter groupCommitter;
+	protected volatile ObjectCache objectCache;
+	protected KnownPathCache knownPaths = new KnownPathCache(100000);
+	protected volatile BaseContentCache baseContents = new BaseContentCache(32 * 1024 * 1024);
+	protected FingerprintCache fingerprints = new FingerprintCache(100000);
+	protected ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "javersion-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	protected Map<Class<?>, PropertyIndex<?>> indexes = new ConcurrentHashMap<Class<?>, PropertyIndex<?>>();
+	protected Set<Subscription<?>> subscriptions = new CopyOnWriteArraySet<Subscription<?>>();
+	protected volatile boolean optimisticCommits;
+	protected volatile Executor asyncExecutor;
+	protected volatile StoreMetrics metrics;
+	protected ExecutorService virtualThreads;
+	protected volatile long headRecheckMillis = -1;
+	protected final AtomicLong latestRevision = new AtomicLong(-1);
+	protected volatile long latestRevisionCheckedAt;
+	protected final Object headLock = new Object();
+	protected String repositoryUuid;
+	protected String repositoryRoot;
 	
 	/**
 	 * Create a new connection to a Subversion repo
@@ -49,21 +95,569 @@ public class SvnStore {
 	 * @throws SVNException
 	 */
 	public SvnStore(String url, String username, String password) throws SVNException {
-		repository = SVNRepositoryFactory.create(SVNURL.parseURIDecoded(url));
+		this(url, username, password, DEFAULT_MAX_CONNECTIONS);
+	}
+	
+	/**
+	 * Create a new connection to a subversion repo supply authentication
+	 * @param url url of the repo
+	 * @param username may be null
+	 * @param password
+	 * @param maxConnections Maximum number of sessions to the repo used at once
+	 * @throws SVNException
+	 */
+	public SvnStore(String url, String username, String password, int maxConnections) throws SVNException {
+		ISVNAuthenticationManager authManager = null;
 		if (username != null) {
-			ISVNAuthenticationManager authManager = new BasicAuthenticationManager(username, password);
-			repository.setAuthenticationManager( authManager );
+			authManager = new BasicAuthenticationManager(username, password);
 		}
+		repositoryPool = new RepositoryPool(SVNURL.parseURIDecoded(url), authManager, maxConnections);
 		serializationTable = new SerializationTable();
         initialConnectionCheck();
 	}
 	
 	protected void initialConnectionCheck() throws SVNException {
-		LOG.info("Repository root: " + repository.getRepositoryRoot(true));
-		LOG.info("Repository UUID: " + repository.getRepositoryUUID(true));
+		SVNRepository repository = borrowRepository();
+		SVNException failure = null;
+		try {
+			repositoryRoot = repository.getRepositoryRoot(true).toString();
+			repositoryUuid = repository.getRepositoryUUID(true);
+			LOG.info("Repository root: " + repositoryRoot);
+			LOG.info("Repository UUID: " + repositoryUuid);
+		} catch (SVNException e) {
+			failure = e;
+			throw e;
+		} finally {
+			releaseRepository(repository, failure);
+		}
+	}
+	
+	/**
+	 * Takes a session out of the connection pool. Every session borrowed must be
+	 * handed back with {@link #releaseRepository(SVNRepository, SVNException)}.
+	 */
+	protected SVNRepository borrowRepository() throws SVNException {
+		try {
+			return repositoryPool.borrow();
+		} catch (InterruptedIOException e) {
+			SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, e.getMessage());
+			throw new SVNCancelException(err);
+		}
+	}
+	
+	protected void releaseRepository(SVNRepository repository) {
+		repositoryPool.release(repository);
+	}
+	
+	/**
+	 * Hands back a session after an exchange that may have failed. A session whose
+	 * exchange failed part way can be left unusable, so it is closed rather than
+	 * pooled, unless the repository merely reported a missing path.
+	 * @param failure What the exchange failed with, null if it succeeded
+	 */
+	protected void releaseRepository(SVNRepository repository, SVNException failure) {
+		if (failure == null || SvnObjectReader.isMissing(failure)) {
+			repositoryPool.release(repository);
+		} else {
+			repositoryPool.invalidate(repository);
+		}
+	}
+	
+	/**
+	 * @return UUID of the repository, as found when the store was created
+	 */
+	public String getRepositoryUuid() {
+		return repositoryUuid;
+	}
+	
+	/**
+	 * @return Root URL of the repository, as found when the store was created
+	 */
+	public String getRepositoryRoot() {
+		return repositoryRoot;
+	}
+	
+	public RepositoryPool getRepositoryPool() {
+		return repositoryPool;
 	}
 	
 	public SerializationTable getSerializationTable() {
 		return this.serializationTable;
 	}
+	
+	/**
+	 * Switches writes to group commit: concurrent single-object writes are queued
+	 * and merged into shared commits by one committer thread. Writers still block
+	 * until the commit containing their object is done.
+	 * @param maxObjects Maximum number of objects in one commit
+	 * @param maxBytes Commit is started once this many serialized bytes are queued
+	 * @param maxLatencyMillis Time to wait for more objects after the first one of a
+	 *  commit arrives, 0 to commit whatever is queued right away
+	 */
+	public void enableGroupCommit(int maxObjects, long maxBytes, long maxLatencyMillis) 
+			throws InterruptedException {
+		disableGroupCommit();
+		GroupCommitter committer = new GroupCommitter(this, maxObjects, maxBytes, maxLatencyMillis);
+		GroupCommitter previous;
+		synchronized (this) {
+			previous = groupCommitter;
+			groupCommitter = committer;
+		}
+		if (previous != null) {
+			previous.shutdown();
+		}
+	}
+	
+	/**
+	 * Commits anything still queued and goes back to one commit per write.
+	 */
+	public void disableGroupCommit() throws InterruptedException {
+		GroupCommitter committer;
+		synchronized (this) {
+			committer = groupCommitter;
+			groupCommitter = null;
+		}
+		// The committer thread finishes its last commits on this store, so wait
+		// for it without holding the store's monitor
+		if (committer != null) {
+			committer.shutdown();
+		}
+	}
+	
+	public GroupCommitter getGroupCommitter() {
+		return groupCommitter;
+	}
+	
+	/**
+	 * Sets the cache consulted by readers before fetching an object from the
+	 * repository. Only reads of concrete revisions are cached, unless HEAD
+	 * caching is enabled with {@link #setHeadCaching(long)}. A {@link DiskObjectCache},
+	 * alone or behind a memory cache in a {@link TieredObjectCache}, keeps fetched
+	 * objects across restarts; caches that are Closeable are closed with the store.
+	 * @param objectCache Cache to use, null to disable caching
+	 */
+	public void setObjectCache(ObjectCache objectCache) {
+		this.objectCache = objectCache;
+	}
+	
+	public ObjectCache getObjectCache() {
+		return objectCache;
+	}
+	
+	/**
+	 * Lets reads of HEAD use the object cache by resolving HEAD to the latest
+	 * revision number. The latest revision is looked up again once it is older
+	 * than the recheck interval, and is updated by every commit made through this
+	 * store, so a HEAD read may miss commits made elsewhere for up to the interval.
+	 * @param recheckIntervalMillis How long a looked up latest revision is trusted,
+	 *  a negative value disables HEAD caching
+	 */
+	public void setHeadCaching(long recheckIntervalMillis) {
+		this.headRecheckMillis = recheckIntervalMillis;
+	}
+	
+	/**
+	 * Resolves HEAD to a revision number when HEAD caching is enabled.
+	 * @return Latest revision, or {@link SvnRevision#HEAD} if HEAD caching is disabled
+	 */
+	protected long resolveHead() throws SVNException {
+		long recheckMillis = headRecheckMillis;
+		if (recheckMillis < 0) {
+			return SvnRevision.HEAD;
+		}
+		long latest = latestRevision.get();
+		if (latest >= 0 && System.currentTimeMillis() - latestRevisionCheckedAt < recheckMillis) {
+			return latest;
+		}
+		// Only one reader looks HEAD up at a time, commits update it without waiting
+		synchronized (headLock) {
+			long now = System.currentTimeMillis();
+			latest = latestRevision.get();
+			if (latest < 0 || now - latestRevisionCheckedAt >= recheckMillis) {
+				SVNRepository repository = borrowRepository();
+				SVNException failure = null;
+				try {
+					latest = repository.getLatestRevision();
+				} catch (SVNException e) {
+					failure = e;
+					throw e;
+				} finally {
+					releaseRepository(repository, failure);
+				}
+				latest = advanceLatestRevision(latest);
+				latestRevisionCheckedAt = now;
+			}
+			return latest;
+		}
+	}
+	
+	/**
+	 * Records a revision committed through this store as the latest one.
+	 */
+	protected void committedRevision(long revision) {
+		if (advanceLatestRevision(revision) == revision) {
+			latestRevisionCheckedAt = System.currentTimeMillis();
+		}
+	}
+	
+	/**
+	 * Raises the latest known revision to a revision unless it is already higher.
+	 * @return The latest known revision afterwards
+	 */
+	protected long advanceLatestRevision(long revision) {
+		while (true) {
+			long latest = latestRevision.get();
+			if (revision <= latest) {
+				return latest;
+			}
+			if (latestRevision.compareAndSet(latest, revision)) {
+				return revision;
+			}
+		}
+	}
+	
+	/**
+	 * Commits serialized objects as a single revision. Commits hold the store's
+	 * commit lock, except optimistic ones: those of objects with an expected
+	 * revision, or all of them when optimistic commits are enabled. Optimistic
+	 * commits run concurrently on their own sessions and rely on the repository
+	 * to reject changes to files that are out of date.
+	 * @param message Commit log message
+	 * @param objects Objects to commit, at most one per path
+	 * @return Revision created and the outcome for each path
+	 * @throws ConflictException If an object changed after its expected revision
+	 * @throws IOException If the commit failed
+	 */
+	protected WriteResult commit(String message, List<SerializedObject> objects) throws IOException {
+		return commit(message, objects, false);
+	}
+	
+	/**
+	 * Commits serialized objects as a single revision.
+	 * @param addOnly true to add every object without checking its path, failing
+	 *  the commit if one exists
+	 * @see #commit(String, List)
+	 */
+	protected WriteResult commit(String message, List<SerializedObject> objects, boolean addOnly) throws IOException {
+		boolean optimistic = optimisticCommits || hasExpectedRevisions(objects);
+		StoreMetrics metrics = this.metrics;
+		long start = metrics == null ? 0 : System.nanoTime();
+		try {
+			if (! optimistic) {
+				commitLock.acquire();
+				if (metrics != null) {
+					metrics.commitLockWait(System.nanoTime() - start);
+				}
+			}
+			try {
+				SVNRepository repository = borrowRepository();
+				SVNException failure = null;
+				try {
+					WriteResult result;
+					BaseContentCache bases = baseContents;
+					ObjectCommit commit = new ObjectCommit(repository, message, objects, knownPaths, bases, fingerprints, addOnly);
+					try {
+						result = commit.run();
+					} catch (SVNException e) {
+						record(metrics, commit);
+						if (optimistic) {
+							checkConflicts(repository, objects);
+						}
+						// Without the lock a concurrent commit may also have added a parent directory
+						if (! (optimistic || commit.usedCachedState()) || ! isRepeatable(objects)) {
+							throw e;
+						}
+						// The repository changed since paths, texts or fingerprints were cached,
+						// forget them and try again
+						LOG.info("Commit failed on cached state, retrying: " + e.getMessage());
+						knownPaths.clear();
+						for (SerializedObject o : objects) {
+							if (bases != null) {
+								bases.remove(o.getPath());
+							}
+							fingerprints.remove(o.getPath());
+						}
+						commit = new ObjectCommit(repository, message, objects, knownPaths, bases, fingerprints, addOnly);
+						try {
+							result = commit.run();
+						} catch (SVNException again) {
+							record(metrics, commit);
+							if (optimistic) {
+								checkConflicts(repository, objects);
+							}
+							throw again;
+						}
+					}
+					record(metrics, commit);
+					committedRevision(result.getRevision());
+					return result;
+				} catch (SVNException e) {
+					failure = e;
+					throw e;
+				} finally {
+					releaseRepository(repository, failure);
+				}
+			} finally {
+				if (! optimistic) {
+					commitLock.release();
+				}
+			}
+		} catch (IOException e) {
+			throw e;
+		} catch (Throwable throwable) {
+			throw new IOException(throwable);
+		} finally {
+			if (metrics != null) {
+				metrics.operation(StoreMetrics.Operation.COMMIT, System.nanoTime() - start);
+			}
+		}
+	}
+	
+	/**
+	 * Reports the round trips made and bytes sent by a commit attempt.
+	 */
+	protected static void record(StoreMetrics metrics, ObjectCommit commit) {
+		if (metrics == null) {
+			return;
+		}
+		metrics.roundTrips(StoreMetrics.Operation.COMMIT, StoreMetrics.RoundTrip.CHECK_PATH, commit.getCheckPathCalls());
+		metrics.roundTrips(StoreMetrics.Operation.COMMIT, StoreMetrics.RoundTrip.GET_FILE, commit.getPropertyFetches());
+		metrics.roundTrips(StoreMetrics.Operation.COMMIT, StoreMetrics.RoundTrip.COMMIT, commit.getCommitCalls());
+		metrics.bytesSent(commit.getBytesSent());
+	}
+	
+	protected static boolean hasExpectedRevisions(List<SerializedObject> objects) {
+		for (SerializedObject o : objects) {
+			if (o.getExpectedRevision() >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Finds the object a failed optimistic commit conflicted on.
+	 * @throws ConflictException For the first object changed or deleted after
+	 *  its expected revision
+	 */
+	protected void checkConflicts(SVNRepository repository, List<SerializedObject> objects) 
+			throws SVNException, ConflictException {
+		for (SerializedObject o : objects) {
+			if (o.getExpectedRevision() < 0) {
+				continue;
+			}
+			SVNDirEntry entry = repository.info(o.getPath(), -1);
+			if (entry == null || entry.getKind() != SVNNodeKind.FILE) {
+				throw new ConflictException(o.getPath(), o.getExpectedRevision(), -1);
+			}
+			if (entry.getRevision() > o.getExpectedRevision()) {
+				fingerprints.remove(o.getPath());
+				throw new ConflictException(o.getPath(), o.getExpectedRevision(), entry.getRevision());
+			}
+		}
+	}
+	
+	/**
+	 * Lets commits run without the store's commit lock, so writers contend only
+	 * when they change the same objects. Writes without an expected revision then
+	 * overwrite concurrent changes to the same object, as they always have.
+	 */
+	public void setOptimisticCommits(boolean optimisticCommits) {
+		this.optimisticCommits = optimisticCommits;
+	}
+	
+	public boolean isOptimisticCommits() {
+		return optimisticCommits;
+	}
+	
+	protected static boolean isRepeatable(List<SerializedObject> objects) {
+		for (SerializedObject o : objects) {
+			if (! o.isRepeatable()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Sets what receives measurements of reads, writes and commits, such as a
+	 * {@link StoreMetricsRecorder}.
+	 * @param metrics Receiver of measurements, null to measure nothing
+	 */
+	public void setMetrics(StoreMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	public StoreMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * @return Executor running the store's background work, such as streaming reads
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+	
+	/**
+	 * @return Cache of file texts updates are sent as deltas against, null if disabled
+	 */
+	public BaseContentCache getBaseContentCache() {
+		return baseContents;
+	}
+	
+	/**
+	 * Replaces the cache of file texts used to send updates as deltas. Defaults
+	 * to a 32MB cache.
+	 * @param baseContents Cache to use, null to always send full text
+	 */
+	public void setBaseContentCache(BaseContentCache baseContents) {
+		this.baseContents = baseContents;
+	}
+	
+	/**
+	 * @return Fingerprints of stored objects, used by commits to send only what changed
+	 */
+	public FingerprintCache getFingerprintCache() {
+		return fingerprints;
+	}
+	
+	/**
+	 * @return Cache of paths known to exist, used by commits to avoid checkPath calls
+	 */
+	public KnownPathCache getKnownPathCache() {
+		return knownPaths;
+	}
+	
+	/**
+	 * Subscribes to changes to objects of a class at or below a path, polling
+	 * every second and delivering up to 100 changes at a time.
+	 * @see #subscribe(String, long, Class, ChangeListener, int, long)
+	 */
+	public <T> Subscription<T> subscribe(String pathPrefix, long fromRevision, Class<T> clazz, 
+			ChangeListener<T> listener) {
+		return subscribe(pathPrefix, fromRevision, clazz, listener, 100, 1000);
+	}
+	
+	/**
+	 * Subscribes to changes to objects of a class at or below a path. The log is
+	 * tailed on a background thread and only the changed paths are read. To resume
+	 * after a restart, subscribe from the revision after the last checkpoint.
+	 * @param pathPrefix Path below which objects are watched, "" for all
+	 * @param fromRevision First revision whose changes are delivered
+	 * @param clazz Class of objects to watch, others are ignored
+	 * @param listener Receives the changes in batches
+	 * @param maxBatchSize Number of changes after which a batch is delivered
+	 * @param pollMillis Time between checks for new revisions
+	 * @return The running subscription, close it to stop
+	 */
+	public <T> Subscription<T> subscribe(String pathPrefix, long fromRevision, Class<T> clazz, 
+			ChangeListener<T> listener, int maxBatchSize, long pollMillis) {
+		final Subscription<T> subscription = new Subscription<T>(this, pathPrefix, fromRevision, clazz, listener, 
+				maxBatchSize, pollMillis);
+		subscriptions.add(subscription);
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					subscription.run();
+				} finally {
+					subscriptions.remove(subscription);
+				}
+			}
+		});
+		return subscription;
+	}
+	
+	/**
+	 * Creates the index of the SvnIndexed properties of a class used by
+	 * {@link SvnObjectReader#findBy(Class, String, Object)}, loading it from its
+	 * file if it was saved before and bringing it up to HEAD.
+	 * @param pathPrefix Path below which objects are indexed, "" for all
+	 * @param file File the index is saved to on {@link #close()}, null to keep it
+	 *  in memory only
+	 * @return The index
+	 * @throws IOException If the class has no indexed properties or the log
+	 *  could not be read
+	 */
+	public <T> PropertyIndex<T> createIndex(Class<T> clazz, String pathPrefix, File file) throws IOException {
+		PropertyIndex<T> index = new PropertyIndex<T>(this, clazz, pathPrefix, file);
+		index.update();
+		indexes.put(clazz, index);
+		return index;
+	}
+	
+	/**
+	 * @return Index of a class, or null if none was created
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> PropertyIndex<T> getIndex(Class<T> clazz) {
+		return (PropertyIndex<T>) indexes.get(clazz);
+	}
+	
+	/**
+	 * @return Executor running the blocking part of asynchronous reads and writes:
+	 *  one virtual thread per task on JDKs that have them, the store's executor
+	 *  otherwise
+	 */
+	public Executor getAsyncExecutor() {
+		Executor async = asyncExecutor;
+		if (async == null) {
+			synchronized (this) {
+				if (asyncExecutor == null) {
+					virtualThreads = createVirtualThreadExecutor();
+					asyncExecutor = virtualThreads == null ? executor : virtualThreads;
+				}
+				async = asyncExecutor;
+			}
+		}
+		return async;
+	}
+	
+	/**
+	 * Sets the executor used by asynchronous reads and writes. Concurrency against
+	 * the repository stays bounded by the connection pool whatever the executor.
+	 */
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+	
+	/**
+	 * @return A virtual thread per task executor, or null before Java 21
+	 */
+	protected static ExecutorService createVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Stops background work started by this store and closes its connections.
+	 */
+	public void close() throws InterruptedException {
+		for (PropertyIndex<?> index : indexes.values()) {
+			try {
+				index.save();
+			} catch (IOException e) {
+				LOG.warn("Could not save index of " + index.clazz.getName(), e);
+			}
+		}
+		for (Subscription<?> subscription : subscriptions) {
+			subscription.close();
+		}
+		disableGroupCommit();
+		if (objectCache instanceof Closeable) {
+			try {
+				((Closeable) objectCache).close();
+			} catch (IOException e) {
+				LOG.warn("Could not close object cache", e);
+			}
+		}
+		executor.shutdown();
+		if (virtualThreads != null) {
+			virtualThreads.shutdown();
+		}
+		repositoryPool.close();
+	}
 }
@@ -0,0 +1,69 @@
+package org.restlesscode.javersion;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Chains a fast cache in front of a slower, larger one, typically an
+ * {@link LruObjectCache} in front of a {@link DiskObjectCache}. Objects found
+ * only in the second cache are promoted to the first.
+ */
+public class TieredObjectCache implements ObjectCache, Closeable {
+
+	protected final ObjectCache first;
+	protected final ObjectCache second;
+
+	public TieredObjectCache(ObjectCache first, ObjectCache second) {
+		this.first = first;
+		this.second = second;
+	}
+
+	public FetchedObject get(String path, long revision) {
+		FetchedObject object = first.get(path, revision);
+		if (object == null) {
+			object = second.get(path, revision);
+			if (object != null) {
+				first.put(path, revision, object);
+			}
+		}
+		return object;
+	}
+
+	public void put(String path, long revision, FetchedObject object) {
+		first.put(path, revision, object);
+		second.put(path, revision, object);
+	}
+
+	public void clear() {
+		first.clear();
+		second.clear();
+	}
+
+	/**
+	 * @return Counters of the first cache, whose misses are the lookups that
+	 *  went to the second
+	 */
+	public CacheStats getStats() {
+		return first.getStats();
+	}
+
+	public ObjectCache getFirst() {
+		return first;
+	}
+
+	public ObjectCache getSecond() {
+		return second;
+	}
+
+	public void close() throws IOException {
+		try {
+			if (first instanceof Closeable) {
+				((Closeable) first).close();
+			}
+		} finally {
+			if (second instanceof Closeable) {
+				((Closeable) second).close();
+			}
+		}
+	}
+}
@@ -6,6 +6,12 @@ import java.lang.reflect.Method;
 
 public class Utils {
 
+	/**
+	 * Separates an object's path from the name of one of its collections in the
+	 * path of the directory holding the collection's elements.
+	 */
+	protected static final String COLLECTION_MARKER = ".jvn.";
+
 	@SuppressWarnings("unchecked")
 	protected static String checkStorability(Method m, Class c) throws IOException {
 		if (! (m.getReturnType() instanceof Serializable)) {
@@ -30,4 +36,47 @@ public class Utils {
 	protected static String getSetMethod(String fieldName) {
 		return "set" + fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1);
 	}
+
+	/**
+	 * Strips leading and trailing slashes from a repository path.
+	 */
+	protected static String normalizePath(String path) {
+		int start = 0;
+		int end = path.length();
+		while (start < end && path.charAt(start) == '/') {
+			start++;
+		}
+		while (end > start && path.charAt(end - 1) == '/') {
+			end--;
+		}
+		return path.substring(start, end);
+	}
+	
+	/**
+	 * @return Parent directory of a normalized path, "" for entries of the root
+	 */
+	protected static String getParentPath(String path) {
+		int slash = path.lastIndexOf('/');
+		return slash < 0 ? "" : path.substring(0, slash);
+	}
+	
+	/**
+	 * @return Path of the object owning the collection an element file belongs
+	 *  to, or the path itself if it is not an element
+	 */
+	protected static String getOwnerPath(String path) {
+		int marker = path.indexOf(COLLECTION_MARKER);
+		return marker < 0 ? path : path.substring(0, marker);
+	}
+	
+	/**
+	 * @return Lower case hex form of bytes, as used for SVN checksums
+	 */
+	protected static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
 }
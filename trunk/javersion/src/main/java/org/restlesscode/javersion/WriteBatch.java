@@ -0,0 +1,79 @@
+package org.restlesscode.javersion;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of objects to be written in a single commit with
+ * {@link SvnObjectWriter#write(WriteBatch)}. Adding an object at a path that is
+ * already in the batch replaces the earlier object.
+ */
+public class WriteBatch {
+
+	protected final Map<String, Object> objects = new LinkedHashMap<String, Object>();
+	protected final Map<String, Long> expectedRevisions = new HashMap<String, Long>();
+
+	/**
+	 * Adds an object to the batch.
+	 * @param path Path relative to SVN root to save object at
+	 * @param o Object to save
+	 * @return this batch
+	 */
+	public WriteBatch add(String path, Object o) {
+		return add(path, o, -1);
+	}
+
+	/**
+	 * Adds an object that must not have changed in the repository since a
+	 * revision, typically the one it was read at. If it has, the whole batch
+	 * fails with a {@link ConflictException}.
+	 * @param path Path relative to SVN root to save object at
+	 * @param o Object to save
+	 * @param expectedRevision Revision the object is expected to be unchanged
+	 *  since, -1 to write it unconditionally
+	 * @return this batch
+	 */
+	public WriteBatch add(String path, Object o, long expectedRevision) {
+		path = Utils.normalizePath(path);
+		objects.put(path, o);
+		if (expectedRevision < 0) {
+			expectedRevisions.remove(path);
+		} else {
+			expectedRevisions.put(path, expectedRevision);
+		}
+		return this;
+	}
+
+	/**
+	 * @return Revision an object is expected to be unchanged since, -1 if none
+	 */
+	public long getExpectedRevision(String path) {
+		Long expected = expectedRevisions.get(Utils.normalizePath(path));
+		return expected == null ? -1 : expected;
+	}
+
+	/**
+	 * Adds every object of a map keyed by path.
+	 * @return this batch
+	 */
+	public WriteBatch addAll(Map<String, ?> objectsByPath) {
+		for (Map.Entry<String, ?> entry : objectsByPath.entrySet()) {
+			add(entry.getKey(), entry.getValue());
+		}
+		return this;
+	}
+
+	public Map<String, Object> getObjects() {
+		return Collections.unmodifiableMap(objects);
+	}
+
+	public int size() {
+		return objects.size();
+	}
+
+	public boolean isEmpty() {
+		return objects.isEmpty();
+	}
+}
@@ -0,0 +1,63 @@
+package org.restlesscode.javersion;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of writing one or more objects in a single commit.
+ */
+public class WriteResult {
+
+	public enum Outcome {
+		/** The object did not exist and was added */
+		ADDED,
+		/** The object existed and was overwritten */
+		UPDATED,
+		/** The object was already stored as written and was not sent */
+		UNCHANGED,
+		/** The file existed and was deleted, such as an element removed from a collection */
+		DELETED
+	}
+
+	protected final long revision;
+	protected final Map<String, Outcome> outcomes;
+
+	public WriteResult(long revision, Map<String, Outcome> outcomes) {
+		this.revision = revision;
+		this.outcomes = Collections.unmodifiableMap(new LinkedHashMap<String, Outcome>(outcomes));
+	}
+
+	/**
+	 * @return Revision created by the commit, -1 if nothing was committed
+	 */
+	public long getRevision() {
+		return revision;
+	}
+
+	/**
+	 * @return true if a revision was created, false if every object was unchanged
+	 */
+	public boolean isCommitted() {
+		return revision >= 0;
+	}
+
+	/**
+	 * @return Outcome of each written path
+	 */
+	public Map<String, Outcome> getOutcomes() {
+		return outcomes;
+	}
+
+	/**
+	 * @return Outcome for a path, or null if the path was not part of the write
+	 */
+	public Outcome getOutcome(String path) {
+		return outcomes.get(Utils.normalizePath(path));
+	}
+
+	@Override
+	public String toString() {
+		return "r" + revision + " " + outcomes;
+	}
+}
@@ -0,0 +1,23 @@
+package org.restlesscode.javersion.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a List or Map&lt;String, ?&gt; field that is stored as one file per
+ * element, so that a write only sends the elements that were added, changed
+ * or removed. Elements may themselves be SvnStorable.
+ * @see org.restlesscode.javersion.SvnObjectReader#readElement(String, long, Class, String, Object)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SvnCollection {
+
+	/**
+	 * Compresses elements stored in binary form, even if the class does not ask
+	 * for compression.
+	 */
+	boolean compress() default false;
+}
@@ -8,5 +8,9 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface SvnContent {
-
+	
+	/**
+	 * Compresses the content, even if the class does not ask for compression.
+	 */
+	boolean compress() default false;
 }
@@ -0,0 +1,16 @@
+package org.restlesscode.javersion.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an SvnProperty whose values are kept in a local index, so objects can
+ * be found by the value of the property.
+ * @see org.restlesscode.javersion.SvnStore#createIndex(Class, String, java.io.File)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SvnIndexed {
+}
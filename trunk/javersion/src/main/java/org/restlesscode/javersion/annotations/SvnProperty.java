@@ -8,5 +8,10 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface SvnProperty {
-
+	
+	/**
+	 * Compresses the property if it is stored in binary form, even if the class
+	 * does not ask for compression.
+	 */
+	boolean compress() default false;
 }
@@ -9,4 +9,12 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 public @interface SvnStorable {
 	int version();
+	
+	/**
+	 * Compresses the content and binary properties of the class when they are at
+	 * least {@link #compressThreshold()} bytes long.
+	 */
+	boolean compress() default false;
+	
+	int compressThreshold() default 512;
 }
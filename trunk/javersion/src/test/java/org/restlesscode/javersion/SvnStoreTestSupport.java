@@ -0,0 +1,46 @@
+package org.restlesscode.javersion;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * Base class for tests that need a store backed by a throwaway local repository.
+ */
+public abstract class SvnStoreTestSupport extends TestCase {
+
+	protected File repositoryDir;
+	protected SVNURL repositoryUrl;
+	protected SvnStore svnStore;
+
+	public SvnStoreTestSupport(String testName) {
+		super(testName);
+	}
+
+	protected void setUp() throws IOException, SVNException {
+		repositoryDir = File.createTempFile("javersion", "repo");
+		repositoryDir.delete();
+		repositoryUrl = SVNRepositoryFactory.createLocalRepository(repositoryDir, true, false);
+		svnStore = new SvnStore(repositoryUrl.toString());
+	}
+
+	protected void tearDown() throws InterruptedException {
+		svnStore.close();
+		delete(repositoryDir);
+	}
+
+	protected static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		f.delete();
+	}
+}
@@ -0,0 +1,120 @@
+package org.restlesscode.javersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.restlesscode.javersion.StoreMetrics.Operation;
+import org.restlesscode.javersion.StoreMetrics.RoundTrip;
+import org.restlesscode.javersion.TestSvnObjectWriter.Catalog;
+import org.restlesscode.javersion.TestSvnObjectWriter.Named;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TestBulkImporter extends SvnStoreTestSupport {
+
+    public TestBulkImporter(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestBulkImporter.class);
+    }
+
+    public void testChunkedImport() throws Exception {
+    	BulkImporter importer = new BulkImporter(svnStore);
+    	importer.setMaxObjectsPerCommit(3);
+    	importer.setParallelism(2);
+    	BulkImporter.Progress progress = importer.run(objects(10).iterator());
+    	assertEquals(10, progress.getObjects());
+    	assertEquals(4, progress.getCommits());
+    	assertEquals(4, progress.getRevision());
+
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	assertEquals(10, reader.readAll("import", SvnRevision.HEAD, Named.class).size());
+    	assertEquals("object 7", reader.read("import/d7/7", SvnRevision.HEAD, Named.class).getName());
+
+    	importer.setMaxObjectsPerCommit(100);
+    	importer.setMaxBytesPerCommit(1);
+    	assertEquals(10, importer.run(objects(10).iterator()).getCommits());
+    }
+
+    public void testImportChecksOnlyNewDirectories() throws Exception {
+    	StoreMetricsRecorder metrics = new StoreMetricsRecorder();
+    	svnStore.setMetrics(metrics);
+    	List<Map.Entry<String, Catalog>> catalogs = new ArrayList<Map.Entry<String, Catalog>>();
+    	for (int i = 0; i < 12; i++) {
+    		Catalog catalog = new Catalog();
+    		catalog.setItems(Arrays.asList("item " + i, "other " + i));
+    		catalog.setEntries(Collections.singletonMap("e" + i, new Named("entry " + i)));
+    		catalogs.add(new AbstractMap.SimpleEntry<String, Catalog>("catalogs/" + i, catalog));
+    	}
+    	BulkImporter importer = new BulkImporter(svnStore);
+    	importer.setMaxObjectsPerCommit(4);
+    	assertEquals(3, importer.run(catalogs.iterator()).getCommits());
+
+    	// Only the top directory is looked up, by the first commit; nothing is fetched
+    	assertEquals(1, metrics.getRoundTrips(Operation.COMMIT, RoundTrip.CHECK_PATH));
+    	assertEquals(0, metrics.getRoundTrips(Operation.COMMIT, RoundTrip.GET_FILE));
+    	assertEquals(0, metrics.getRoundTrips(Operation.WRITE, RoundTrip.GET_FILE));
+    	assertEquals(3, metrics.getRoundTrips(Operation.COMMIT, RoundTrip.COMMIT));
+
+    	Catalog read = new SvnObjectReader(svnStore).read("catalogs/7", SvnRevision.HEAD, Catalog.class);
+    	assertEquals(Arrays.asList("item 7", "other 7"), read.getItems());
+    	assertEquals("entry 7", read.getEntries().get("e7").getName());
+
+    	// Existing paths cannot be added, so the chunks are written against what is stored
+    	catalogs.get(5).getValue().setItems(Arrays.asList("changed"));
+    	BulkImporter.Progress progress = importer.run(catalogs.iterator());
+    	assertEquals(4, progress.getRevision());
+    	read = new SvnObjectReader(svnStore).read("catalogs/5", SvnRevision.HEAD, Catalog.class);
+    	assertEquals(Arrays.asList("changed"), read.getItems());
+    }
+
+    public void testResumeFromCheckpoint() throws Exception {
+    	File checkpoint = File.createTempFile("javersion", "checkpoint");
+    	checkpoint.delete();
+    	try {
+    		BulkImporter importer = new BulkImporter(svnStore);
+    		importer.setMaxObjectsPerCommit(4);
+    		importer.setCheckpointFile(checkpoint);
+    		importer.setProgressListener(new BulkImporter.ProgressListener() {
+    			public void committed(BulkImporter.Progress progress) {
+    				if (progress.getCommits() == 2) {
+    					throw new IllegalStateException("stopped");
+    				}
+    			}
+    		});
+    		try {
+    			importer.run(objects(10).iterator());
+    			fail();
+    		} catch (IllegalStateException e) { }
+    		SvnObjectReader reader = new SvnObjectReader(svnStore);
+    		assertEquals(8, reader.readAll("import", SvnRevision.HEAD, Named.class).size());
+
+    		importer.setProgressListener(null);
+    		BulkImporter.Progress progress = importer.run(objects(10).iterator());
+    		assertEquals(8, progress.getResumedObjects());
+    		assertEquals(10, progress.getObjects());
+    		assertEquals(3, progress.getCommits());
+    		assertEquals(3, progress.getRevision());
+    		assertEquals(10, reader.readAll("import", SvnRevision.HEAD, Named.class).size());
+    	} finally {
+    		checkpoint.delete();
+    	}
+    }
+
+    private static List<Map.Entry<String, Named>> objects(int count) {
+    	List<Map.Entry<String, Named>> objects = new ArrayList<Map.Entry<String, Named>>();
+    	for (int i = 0; i < count; i++) {
+    		objects.add(new AbstractMap.SimpleEntry<String, Named>("import/d" + i + "/" + i, new Named("object " + i)));
+    	}
+    	return objects;
+    }
+}
@@ -0,0 +1,111 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import org.restlesscode.javersion.annotations.SvnProperty;
+import org.restlesscode.javersion.annotations.SvnStorable;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TestCompactCodec extends SvnStoreTestSupport {
+
+	public TestCompactCodec(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestCompactCodec.class);
+    }
+
+    public void testRoundTrip() throws IOException {
+    	CompactCodec codec = new CompactCodec();
+    	Map<String, Object> map = new LinkedHashMap<String, Object>();
+    	map.put("date", new Date(1234567890123L));
+    	map.put("list", new ArrayList<Object>(Arrays.asList(1, -2L, 3.5, "four", 'c', (short) 6, (byte) 7, true)));
+    	map.put("set", new TreeSet<String>(Arrays.asList("b", "a")));
+    	map.put("enum", Color.GREEN);
+    	map.put("bytes", new byte[] { 1, 2, 3 });
+    	map.put("big", new BigDecimal(new BigInteger("123456789012345678901234567890"), 7));
+    	map.put("uuid", new UUID(1, -1));
+    	map.put("null", null);
+    	map.put("unknown", Collections.singletonList("java serialized"));
+
+    	@SuppressWarnings("unchecked")
+    	Map<String, Object> decoded = (Map<String, Object>) codec.decode(codec.encode(map), Map.class);
+    	assertEquals(LinkedHashMap.class, decoded.getClass());
+    	assertEquals(new ArrayList<String>(map.keySet()), new ArrayList<String>(decoded.keySet()));
+    	for (String key : map.keySet()) {
+    		if (! key.equals("bytes")) {
+    			assertEquals(key, map.get(key), decoded.get(key));
+    		}
+    	}
+    	assertTrue(Arrays.equals((byte[]) map.get("bytes"), (byte[]) decoded.get("bytes")));
+    	assertEquals(Collections.singletonList("x").getClass(), decoded.get("unknown").getClass());
+    }
+
+    public void testCompactDate() throws IOException {
+    	Date date = new Date();
+    	assertTrue(new CompactCodec().encode(date).length < 10);
+    	assertTrue(new JavaSerializationCodec().encode(date).length > 40);
+    }
+
+    public void testCodecSelection() throws IOException {
+    	StorableClassDescriptor descriptor = svnStore.getSerializationTable().getDescriptor(Tagged.class);
+    	for (StorableField field : descriptor.getProperties()) {
+    		if (field.getName().equals("tags") || field.getName().equals("color")) {
+    			assertEquals(CompactCodec.NAME, field.getCodec().getName());
+    		} else {
+    			assertEquals(JavaSerializationCodec.NAME, field.getCodec().getName());
+    		}
+    	}
+    }
+
+    public void testReadsJavaSerializedFields() throws Exception {
+    	// Written the way objects were stored before codecs: java serialization, no codec property
+    	Map<String, SVNPropertyValue> properties = new HashMap<String, SVNPropertyValue>();
+    	properties.put("jvn.class.version", SVNPropertyValue.create("1"));
+    	properties.put("jvn.class.name", SVNPropertyValue.create(Tagged.class.getName()));
+    	properties.put("jvn.property.tags", SVNPropertyValue.create("tags",
+    			new JavaSerializationCodec().encode(new ArrayList<String>(Arrays.asList("old")))));
+    	svnStore.commit("legacy", Collections.singletonList(new SerializedObject("legacy", null, properties)));
+
+    	Tagged t = new SvnObjectReader(svnStore).read("legacy", SvnRevision.HEAD, Tagged.class);
+    	assertEquals(Arrays.asList("old"), t.getTags());
+
+    	t.setColor(Color.RED);
+    	new SvnObjectWriter(svnStore).write("legacy", t);
+    	Tagged again = new SvnObjectReader(svnStore).read("legacy", SvnRevision.HEAD, Tagged.class);
+    	assertEquals(Arrays.asList("old"), again.getTags());
+    	assertEquals(Color.RED, again.getColor());
+    }
+
+    public enum Color { RED, GREEN }
+
+    @SvnStorable(version=1)
+    public static class Tagged {
+    	private List<String> tags;
+    	private Color color;
+    	private StringBuilder other;
+
+    	@SvnProperty public List<String> getTags() { return tags; }
+    	public void setTags(List<String> tags) { this.tags = tags; }
+    	@SvnProperty public Color getColor() { return color; }
+    	public void setColor(Color color) { this.color = color; }
+    	@SvnProperty public StringBuilder getOther() { return other; }
+    	public void setOther(StringBuilder other) { this.other = other; }
+    }
+}
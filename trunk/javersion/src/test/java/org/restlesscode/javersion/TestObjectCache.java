@@ -0,0 +1,240 @@
+package org.restlesscode.javersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TestObjectCache extends SvnStoreTestSupport {
+
+	public TestObjectCache(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestObjectCache.class);
+    }
+
+    public void testLruEviction() {
+    	FetchedObject small = new FetchedObject("a", 1, new SVNProperties(), new byte[100]);
+    	LruObjectCache cache = new LruObjectCache(small.getWeight() * 2);
+    	cache.put("a", 1, small);
+    	cache.put("b", 1, new FetchedObject("b", 1, new SVNProperties(), new byte[100]));
+    	assertNotNull(cache.get("a", 1));
+    	cache.put("c", 1, new FetchedObject("c", 1, new SVNProperties(), new byte[100]));
+    	assertNotNull(cache.get("a", 1));
+    	assertNull(cache.get("b", 1));
+    	assertNotNull(cache.get("c", 1));
+
+    	CacheStats stats = cache.getStats();
+    	assertEquals(3, stats.getHits());
+    	assertEquals(1, stats.getMisses());
+    	assertEquals(1, stats.getEvictions());
+    	assertEquals(2, stats.getSize());
+    }
+
+    public void testDiskCacheSurvivesRestart() throws IOException, MissingObjectException {
+    	File dir = File.createTempFile("javersion", "cache");
+    	dir.delete();
+    	try {
+    		DiskObjectCache disk = new DiskObjectCache(dir, 1 << 20, svnStore);
+    		svnStore.setObjectCache(new TieredObjectCache(new LruObjectCache(1 << 20), disk));
+    		long revision = new SvnObjectWriter(svnStore).write("disk", new TestSvnObjectWriter.Named("one"))
+    				.getRevision();
+    		new SvnObjectReader(svnStore).read("disk", revision, TestSvnObjectWriter.Named.class);
+    		((TieredObjectCache) svnStore.getObjectCache()).close();
+
+    		disk = new DiskObjectCache(dir, 1 << 20, svnStore);
+    		svnStore.setObjectCache(disk);
+    		assertEquals("one", new SvnObjectReader(svnStore).read("disk", revision,
+    				TestSvnObjectWriter.Named.class).getName());
+    		assertEquals(1, disk.getStats().getHits());
+    		disk.close();
+    	} finally {
+    		delete(dir);
+    	}
+    }
+
+    public void testDiskCacheRecoveryEvictionAndCompaction() throws IOException {
+    	File dir = File.createTempFile("javersion", "cache");
+    	dir.delete();
+    	try {
+    		SVNProperties properties = new SVNProperties();
+    		properties.put("jvn.class.name", "x");
+    		properties.put("jvn.binary", new byte[] { 0, (byte) 0xff });
+    		DiskObjectCache disk = new DiskObjectCache(dir, 1 << 20, svnStore);
+    		long empty = disk.getLogSize();
+    		disk.put("a", 1, new FetchedObject("a", 1, properties, new byte[100]));
+    		disk.put("b", 1, new FetchedObject("b", 1, properties, new byte[100]));
+    		long recordSize = (disk.getLogSize() - empty) / 2;
+
+    		// Not closed, so the index is rebuilt from the log and the torn tail is cut off
+    		RandomAccessFile log = new RandomAccessFile(new File(dir, "objects.log"), "rw");
+    		log.seek(log.length());
+    		log.write(new byte[] { 0, 0, 1, 0, 42 });
+    		log.close();
+    		disk = new DiskObjectCache(dir, recordSize * 2, svnStore);
+    		assertEquals(2, disk.getStats().getSize());
+    		assertEquals(empty + recordSize * 2, disk.getLogSize());
+    		FetchedObject a = disk.get("a", 1);
+    		assertEquals(100, a.getContent().length);
+    		assertEquals("x", a.getProperties().getStringValue("jvn.class.name"));
+    		assertTrue(Arrays.equals(new byte[] { 0, (byte) 0xff },
+    				SVNPropertyValue.getPropertyAsBytes(a.getProperties().getSVNPropertyValue("jvn.binary"))));
+
+    		// b is least recently used
+    		disk.put("c", 1, new FetchedObject("c", 1, properties, new byte[100]));
+    		assertNull(disk.get("b", 1));
+    		assertEquals(1, disk.getStats().getEvictions());
+    		disk.compact();
+    		assertEquals(empty + recordSize * 2, disk.getLogSize());
+    		assertNotNull(disk.get("a", 1));
+    		assertNotNull(disk.get("c", 1));
+
+    		// A flipped byte fails the checksum
+    		disk.close();
+    		log = new RandomAccessFile(new File(dir, "objects.log"), "rw");
+    		log.seek(empty + recordSize - 1);
+    		log.write(1);
+    		log.close();
+    		disk = new DiskObjectCache(dir, recordSize * 2, svnStore);
+    		assertNull(disk.get("a", 1));
+    		assertEquals(1, disk.getCorruptCount());
+    		assertNotNull(disk.get("c", 1));
+
+    		// So does a record found under another path and revision than its own
+    		DiskObjectCache.Location c = disk.index.get(new LruObjectCache.Key("c", 1));
+    		disk.index.put(new LruObjectCache.Key("d", 1), new DiskObjectCache.Location(c.offset, c.length));
+    		disk.liveBytes += c.length;
+    		assertNull(disk.get("d", 1));
+    		assertEquals(2, disk.getCorruptCount());
+    		assertNotNull(disk.get("c", 1));
+    		disk.close();
+
+    		// A closed cache misses and can still be cleared
+    		assertNull(disk.get("c", 1));
+    		assertEquals(2, disk.getCorruptCount());
+    		try {
+    			disk.compact();
+    			fail();
+    		} catch (IOException e) { }
+    		disk.clear();
+    		assertFalse(new File(dir, "objects.log").exists());
+    	} finally {
+    		delete(dir);
+    	}
+    }
+
+    public void testDiskCacheOfAnotherRepositoryIsDiscarded() throws IOException {
+    	File dir = File.createTempFile("javersion", "cache");
+    	dir.delete();
+    	try {
+    		DiskObjectCache disk = new DiskObjectCache(dir, 1 << 20, "uuid-1", "file:///one");
+    		disk.put("a", 1, new FetchedObject("a", 1, new SVNProperties(), new byte[10]));
+    		disk.close();
+
+    		disk = new DiskObjectCache(dir, 1 << 20, "uuid-1", "file:///one");
+    		assertNotNull(disk.get("a", 1));
+    		disk.close();
+
+    		disk = new DiskObjectCache(dir, 1 << 20, "uuid-2", "file:///one");
+    		assertNull(disk.get("a", 1));
+    		assertEquals(0, disk.getStats().getSize());
+    		disk.put("b", 1, new FetchedObject("b", 1, new SVNProperties(), new byte[10]));
+    		disk.close();
+
+    		// Not closed, so the log alone is checked
+    		new File(dir, "objects.idx").delete();
+    		disk = new DiskObjectCache(dir, 1 << 20, "uuid-2", "file:///two");
+    		assertNull(disk.get("b", 1));
+    		disk.close();
+    	} finally {
+    		delete(dir);
+    	}
+    }
+
+    public void testDiskCacheReadsDuringCompaction() throws Exception {
+    	File dir = File.createTempFile("javersion", "cache");
+    	dir.delete();
+    	try {
+    		final DiskObjectCache disk = new DiskObjectCache(dir, 1 << 20, svnStore);
+    		for (int i = 0; i < 20; i++) {
+    			disk.put("o" + i, 1, new FetchedObject("o" + i, 1, new SVNProperties(), new byte[i]));
+    		}
+    		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    		final AtomicBoolean done = new AtomicBoolean();
+    		List<Thread> readers = new ArrayList<Thread>();
+    		for (int t = 0; t < 4; t++) {
+    			Thread reader = new Thread() {
+    				public void run() {
+    					try {
+    						while (! done.get()) {
+    							for (int i = 0; i < 20; i++) {
+    								FetchedObject o = disk.get("o" + i, 1);
+    								assertEquals("o" + i, o.getPath());
+    								assertEquals(i, o.getContent().length);
+    							}
+    						}
+    					} catch (Throwable e) {
+    						failure.set(e);
+    					}
+    				}
+    			};
+    			readers.add(reader);
+    			reader.start();
+    		}
+    		for (int i = 0; i < 50; i++) {
+    			disk.compact();
+    		}
+    		done.set(true);
+    		for (Thread reader : readers) {
+    			reader.join();
+    		}
+    		assertNull(failure.get());
+    		assertEquals(0, disk.getCorruptCount());
+    		disk.close();
+    	} finally {
+    		delete(dir);
+    	}
+    }
+
+    public void testReadsOfFixedRevisionsAreCached() throws IOException, MissingObjectException {
+    	LruObjectCache cache = new LruObjectCache(1 << 20);
+    	svnStore.setObjectCache(cache);
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	long revision = writer.write("cached", new TestSvnObjectWriter.Named("one")).getRevision();
+
+    	assertEquals("one", reader.read("cached", revision, TestSvnObjectWriter.Named.class).getName());
+    	assertEquals("one", reader.read("cached", revision, TestSvnObjectWriter.Named.class).getName());
+    	reader.read("cached", SvnRevision.HEAD, TestSvnObjectWriter.Named.class);
+    	assertEquals(1, cache.getStats().getHits());
+    	assertEquals(1, cache.getStats().getMisses());
+    }
+
+    public void testHeadCaching() throws IOException, MissingObjectException {
+    	LruObjectCache cache = new LruObjectCache(1 << 20);
+    	svnStore.setObjectCache(cache);
+    	svnStore.setHeadCaching(60 * 1000);
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+
+    	writer.write("head", new TestSvnObjectWriter.Named("one"));
+    	assertEquals("one", reader.read("head", SvnRevision.HEAD, TestSvnObjectWriter.Named.class).getName());
+    	assertEquals("one", reader.read("head", SvnRevision.HEAD, TestSvnObjectWriter.Named.class).getName());
+    	assertEquals(1, cache.getStats().getHits());
+
+    	writer.write("head", new TestSvnObjectWriter.Named("two"));
+    	assertEquals("two", reader.read("head", SvnRevision.HEAD, TestSvnObjectWriter.Named.class).getName());
+    }
+}
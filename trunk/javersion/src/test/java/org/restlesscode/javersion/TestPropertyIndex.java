@@ -0,0 +1,113 @@
+package org.restlesscode.javersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.restlesscode.javersion.annotations.SvnIndexed;
+import org.restlesscode.javersion.annotations.SvnProperty;
+import org.restlesscode.javersion.annotations.SvnStorable;
+import org.tmatesoft.svn.core.SVNException;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TestPropertyIndex extends SvnStoreTestSupport {
+
+    private File indexFile;
+
+    public TestPropertyIndex(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestPropertyIndex.class);
+    }
+
+    protected void setUp() throws IOException, SVNException {
+    	super.setUp();
+    	indexFile = File.createTempFile("javersion", "index");
+    	indexFile.delete();
+    }
+
+    protected void tearDown() throws InterruptedException {
+    	super.tearDown();
+    	indexFile.delete();
+    }
+
+    public void testFindBy() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	writer.write(new WriteBatch()
+    			.add("movies/avatar", new Movie("Avatar", 2009))
+    			.add("movies/up", new Movie("Up", 2009))
+    			.add("movies/alien", new Movie("Alien", 1979))
+    			.add("elsewhere/moon", new Movie("Moon", 2009)));
+    	PropertyIndex<Movie> index = svnStore.createIndex(Movie.class, "movies", indexFile);
+    	assertEquals(3, index.size());
+
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	Map<String, Movie> found = reader.findBy(Movie.class, "releaseYear", 2009);
+    	assertEquals(Arrays.asList("movies/avatar", "movies/up"), Arrays.asList(found.keySet().toArray()));
+    	assertEquals("Up", found.get("movies/up").getTitle());
+    	assertEquals(Arrays.asList("movies/alien", "movies/avatar", "movies/up"),
+    			index.findPaths("releaseYear", 1970, 2010));
+    	assertEquals(Arrays.asList("movies/alien"),
+    			Arrays.asList(reader.findInRange(Movie.class, "releaseYear", null, 2000, -1).keySet().toArray()));
+    	assertEquals(Arrays.asList("movies/alien", "movies/avatar", "movies/up"),
+    			Arrays.asList(reader.findInRange(Movie.class, "releaseYear", null, null, -1).keySet().toArray()));
+    	assertTrue(reader.findInRange(Movie.class, "releaseYear", 2009, 2009, -1).isEmpty());
+
+    	// Kept up to date from the log
+    	long before = index.getRevision();
+    	long changed = writer.write("movies/up", new Movie("Up", 2010)).getRevision();
+    	assertEquals(1, reader.findBy(Movie.class, "releaseYear", 2009).size());
+    	assertEquals(changed, index.getRevision());
+    	// An older revision drops what no longer matches without re-indexing
+    	assertEquals(0, reader.findBy(Movie.class, "releaseYear", 2010, before).size());
+    	assertEquals(1, reader.findBy(Movie.class, "releaseYear", 2010, changed).size());
+
+    	try {
+    		index.findPaths("title", "Up");
+    		fail();
+    	} catch (IllegalArgumentException e) { }
+    }
+
+    public void testSaveAndRebuild() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	writer.write("movies/avatar", new Movie("Avatar", 2009));
+    	PropertyIndex<Movie> index = svnStore.createIndex(Movie.class, "movies", indexFile);
+    	index.save();
+    	long saved = index.getRevision();
+    	writer.write("movies/alien", new Movie("Alien", 1979));
+
+    	PropertyIndex<Movie> reopened = new PropertyIndex<Movie>(svnStore, Movie.class, "movies", indexFile);
+    	assertEquals(saved, reopened.getRevision());
+    	assertEquals(Arrays.asList("movies/avatar"), reopened.findPaths("releaseYear", 2009));
+    	assertEquals(saved + 1, reopened.update());
+    	assertEquals(Arrays.asList("movies/alien"), reopened.findPaths("releaseYear", 1979));
+
+    	assertEquals(saved + 1, reopened.rebuild());
+    	assertEquals(2, reopened.size());
+    }
+
+    @SvnStorable(version=1)
+    public static class Movie {
+    	private String title;
+    	private int releaseYear;
+
+    	public Movie() { }
+    	public Movie(String title, int releaseYear) {
+    		this.title = title;
+    		this.releaseYear = releaseYear;
+    	}
+
+    	@SvnProperty
+    	public String getTitle() { return title; }
+    	public void setTitle(String title) { this.title = title; }
+
+    	@SvnProperty @SvnIndexed
+    	public int getReleaseYear() { return releaseYear; }
+    	public void setReleaseYear(int releaseYear) { this.releaseYear = releaseYear; }
+    }
+}
@@ -0,0 +1,112 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TestRepositoryPool extends SvnStoreTestSupport {
+
+	public TestRepositoryPool(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestRepositoryPool.class);
+    }
+
+    public void testSessionsAreReused() throws Exception {
+    	RepositoryPool pool = new RepositoryPool(repositoryUrl, null, 2);
+    	SVNRepository first = pool.borrow();
+    	pool.release(first);
+    	assertEquals(1, pool.getIdleCount());
+    	assertSame(first, pool.borrow());
+    	assertEquals(1, pool.getActiveCount());
+    }
+
+    public void testBorrowWaitsForFreeSession() throws Exception {
+    	RepositoryPool pool = new RepositoryPool(repositoryUrl, null, 1);
+    	pool.setMaxWaitMillis(50);
+    	SVNRepository only = pool.borrow();
+    	try {
+    		pool.borrow();
+    		fail();
+    	} catch (InterruptedIOException e) { }
+    	pool.invalidate(only);
+    	assertEquals(0, pool.getActiveCount());
+    	assertNotNull(pool.borrow());
+    }
+
+    public void testIdleSessionsAreEvicted() throws Exception {
+    	RepositoryPool pool = new RepositoryPool(repositoryUrl, null, 2);
+    	pool.setIdleTimeoutMillis(0);
+    	pool.release(pool.borrow());
+    	assertEquals(0, pool.getIdleCount());
+    }
+
+    public void testConcurrentReads() throws Exception {
+    	final SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	new SvnObjectWriter(svnStore).write("shared", new TestSvnObjectWriter.Named("shared"));
+    	final Exception[] failure = new Exception[1];
+    	Thread[] threads = new Thread[svnStore.getRepositoryPool().getMaxSize() * 2];
+    	for (int i = 0; i < threads.length; i++) {
+    		threads[i] = new Thread() {
+    			public void run() {
+    				try {
+    					for (int j = 0; j < 20; j++) {
+    						assertEquals("shared", reader.read("shared", SvnRevision.HEAD,
+    								TestSvnObjectWriter.Named.class).getName());
+    					}
+    				} catch (Exception e) {
+    					failure[0] = e;
+    				}
+    			}
+    		};
+    		threads[i].start();
+    	}
+    	for (Thread t : threads) {
+    		t.join();
+    	}
+    	assertNull(failure[0]);
+    	assertEquals(0, svnStore.getRepositoryPool().getActiveCount());
+    }
+
+    public void testFailedSessionsAreNotPooled() throws Exception {
+    	new SvnObjectWriter(svnStore).write("dir/obj", new TestSvnObjectWriter.Named("obj"));
+    	RepositoryPool pool = svnStore.getRepositoryPool();
+    	int idle = pool.getIdleCount();
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	try {
+    		reader.read("dir/missing", SvnRevision.HEAD, TestSvnObjectWriter.Named.class);
+    		fail();
+    	} catch (MissingObjectException e) { }
+    	assertEquals(idle, pool.getIdleCount());
+    	try {
+    		// Reading a directory as a file fails the exchange
+    		reader.read("dir", SvnRevision.HEAD, TestSvnObjectWriter.Named.class);
+    		fail();
+    	} catch (IOException e) { }
+    	assertEquals(idle - 1, pool.getIdleCount());
+    	assertEquals(0, pool.getActiveCount());
+    }
+
+    public void testClosedPoolRejectsBorrow() throws Exception {
+    	RepositoryPool pool = new RepositoryPool(repositoryUrl, null, 2);
+    	pool.release(pool.borrow());
+    	pool.close();
+    	try {
+    		pool.borrow();
+    		fail();
+    	} catch (SVNException e) { }
+    	assertEquals(0, pool.getActiveCount());
+    }
+
+    public void testUsesSeparateSessions() throws SVNException, InterruptedIOException {
+    	RepositoryPool pool = new RepositoryPool(repositoryUrl, null, 2);
+    	assertNotSame(pool.borrow(), pool.borrow());
+    }
+}
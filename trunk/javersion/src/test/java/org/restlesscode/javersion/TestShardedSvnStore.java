@@ -0,0 +1,202 @@
+package org.restlesscode.javersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TestShardedSvnStore extends SvnStoreTestSupport {
+
+    private List<File> shardDirs = new ArrayList<File>();
+    private ShardedSvnStore sharded;
+
+    public TestShardedSvnStore(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestShardedSvnStore.class);
+    }
+
+    protected void setUp() throws IOException, SVNException {
+    	super.setUp();
+    	Map<String, SvnStore> shards = new LinkedHashMap<String, SvnStore>();
+    	shards.put("a", svnStore);
+    	for (String name : Arrays.asList("b", "c")) {
+    		File dir = File.createTempFile("javersion", "shard");
+    		dir.delete();
+    		shardDirs.add(dir);
+    		shards.put(name, new SvnStore(SVNRepositoryFactory.createLocalRepository(dir, true, false).toString()));
+    	}
+    	sharded = new ShardedSvnStore(shards, new ConsistentHashRouter(Arrays.asList("a", "b")));
+    }
+
+    protected void tearDown() throws InterruptedException {
+    	sharded.close();
+    	super.tearDown();
+    	for (File dir : shardDirs) {
+    		delete(dir);
+    	}
+    }
+
+    public void testRoutesReadsAndWrites() throws Exception {
+    	WriteBatch batch = new WriteBatch();
+    	List<String> paths = new ArrayList<String>();
+    	for (int i = 0; i < 20; i++) {
+    		paths.add("items/" + i);
+    		batch.add("items/" + i, new TestSvnObjectWriter.Named("n" + i));
+    	}
+    	Map<String, WriteResult> results = sharded.write(batch);
+    	assertEquals(new ArrayList<String>(results.keySet()), Arrays.asList("a", "b"));
+
+    	for (int i = 0; i < 20; i++) {
+    		String path = "items/" + i;
+    		assertEquals("n" + i, sharded.read(path, SvnRevision.HEAD, TestSvnObjectWriter.Named.class).getName());
+    		// Only the path's shard has it
+    		for (Map.Entry<String, SvnStore> shard : sharded.getShards().entrySet()) {
+    			if (! shard.getKey().equals(sharded.shardOf(path))) {
+    				try {
+    					new SvnObjectReader(shard.getValue()).read(path, SvnRevision.HEAD, TestSvnObjectWriter.Named.class);
+    					fail(path + " found on " + shard.getKey());
+    				} catch (MissingObjectException e) { }
+    			}
+    		}
+    	}
+    	long revision = sharded.write("items/3", new TestSvnObjectWriter.Named("changed")).getRevision();
+    	assertEquals(results.get(sharded.shardOf("items/3")).getRevision() + 1, revision);
+
+    	Map<String, TestSvnObjectWriter.Named> all = sharded.readAll("items", TestSvnObjectWriter.Named.class);
+    	assertEquals(20, all.size());
+    	assertEquals("changed", all.get("items/3").getName());
+    	paths.add(0, "items/missing");
+    	Map<String, TestSvnObjectWriter.Named> some =
+    			sharded.readAllAsync(paths, TestSvnObjectWriter.Named.class).get();
+    	assertEquals(paths.subList(1, paths.size()), new ArrayList<String>(some.keySet()));
+    	try {
+    		sharded.readAll("nothing", TestSvnObjectWriter.Named.class);
+    		fail();
+    	} catch (MissingObjectException e) { }
+    }
+
+    public void testStreamsAndIndexesAcrossShards() throws Exception {
+    	WriteBatch batch = new WriteBatch();
+    	for (int i = 0; i < 12; i++) {
+    		batch.add("movies/" + i, new TestPropertyIndex.Movie("movie " + i, 2000 + i % 3));
+    	}
+    	Map<String, WriteResult> results = sharded.write(batch);
+    	assertEquals(2, results.size());
+    	Map<String, Long> written = ShardedSvnStore.revisionsOf(results);
+    	sharded.write("movies/4", new TestPropertyIndex.Movie("changed", 2000));
+
+    	// Shard c has no such directory and adds nothing
+    	List<String> streamed = new ArrayList<String>();
+    	try (Stream<StoredObject<TestPropertyIndex.Movie>> movies =
+    			sharded.stream("movies", TestPropertyIndex.Movie.class)) {
+    		for (StoredObject<TestPropertyIndex.Movie> movie : movies.collect(Collectors.toList())) {
+    			streamed.add(movie.getPath());
+    		}
+    	}
+    	Collections.sort(streamed);
+    	assertEquals(new ArrayList<String>(sharded.readAll("movies", TestPropertyIndex.Movie.class).keySet()), streamed);
+    	assertEquals(12, streamed.size());
+    	try (Stream<StoredObject<TestPropertyIndex.Movie>> nothing =
+    			sharded.stream("nothing", TestPropertyIndex.Movie.class)) {
+    		assertEquals(0, nothing.count());
+    	}
+
+    	// At the revisions of the batch
+    	assertEquals("movie 4",
+    			sharded.readAll("movies", written, TestPropertyIndex.Movie.class).get("movies/4").getTitle());
+    	assertEquals("changed", sharded.readAll("movies", TestPropertyIndex.Movie.class).get("movies/4").getTitle());
+
+    	assertEquals(3, sharded.createIndex(TestPropertyIndex.Movie.class, "movies", null).size());
+    	// movies/4 was moved to 2000
+    	assertEquals(Arrays.asList("movies/1", "movies/10", "movies/7"),
+    			new ArrayList<String>(sharded.findBy(TestPropertyIndex.Movie.class, "releaseYear", 2001).keySet()));
+    	assertEquals(Arrays.asList("movies/0", "movies/3", "movies/4", "movies/6", "movies/9",
+    			"movies/1", "movies/10", "movies/7"),
+    			new ArrayList<String>(sharded.findInRange(TestPropertyIndex.Movie.class, "releaseYear", null, 2002).keySet()));
+    }
+
+    public void testRouters() {
+    	ConsistentHashRouter three = new ConsistentHashRouter(Arrays.asList("a", "b", "c"));
+    	ConsistentHashRouter four = three.withShard("d");
+    	int moved = 0;
+    	int[] counts = new int[4];
+    	for (int i = 0; i < 10000; i++) {
+    		String path = "objects/" + i;
+    		String before = three.route(path);
+    		String after = four.route(path);
+    		if (! before.equals(after)) {
+    			assertEquals("d", after);
+    			moved++;
+    		}
+    		counts[after.charAt(0) - 'a']++;
+    	}
+    	// About a quarter moves, all to the new shard, and shards stay balanced
+    	assertTrue("moved " + moved, moved > 1500 && moved < 3500);
+    	for (int count : counts) {
+    		assertTrue("count " + count, count > 1500 && count < 3500);
+    	}
+    	assertEquals(three.route("x/y"), four.withoutShard("d").route("x/y"));
+
+    	PrefixRouter prefixes = new PrefixRouter(Collections.singletonMap("/archive/", "c"), three);
+    	assertEquals("c", prefixes.route("archive"));
+    	assertEquals("c", prefixes.route("archive/2009/x"));
+    	assertEquals(three.route("archived"), prefixes.route("archived"));
+    	try {
+    		sharded.setRouter(four);
+    		fail();
+    	} catch (IllegalArgumentException e) { }
+    }
+
+    public void testRebalance() throws Exception {
+    	WriteBatch batch = new WriteBatch();
+    	for (int i = 0; i < 30; i++) {
+    		batch.add("items/" + (i % 3) + "/" + i, new TestSvnObjectWriter.Named("n" + i));
+    	}
+    	sharded.write(batch);
+    	ConsistentHashRouter withC = ((ConsistentHashRouter) sharded.getRouter()).withShard("c");
+    	ShardRebalancer rebalancer = new ShardRebalancer(sharded);
+    	rebalancer.setBatchSize(4);
+    	Map<String, ShardRebalancer.Move> plan = rebalancer.plan(withC);
+    	assertFalse(plan.isEmpty());
+    	for (ShardRebalancer.Move move : plan.values()) {
+    		assertEquals("c", move.getTarget());
+    	}
+
+    	assertEquals(plan.size(), rebalancer.rebalance(withC));
+    	assertSame(withC, sharded.getRouter());
+    	for (String path : plan.keySet()) {
+    		assertEquals("c", sharded.shardOf(path));
+    	}
+    	for (int i = 0; i < 30; i++) {
+    		String path = "items/" + (i % 3) + "/" + i;
+    		assertEquals("n" + i, sharded.read(path, SvnRevision.HEAD, TestSvnObjectWriter.Named.class).getName());
+    	}
+    	for (ShardRebalancer.Move move : plan.values()) {
+    		try {
+    			new SvnObjectReader(sharded.getShards().get(move.getSource()))
+    					.read(move.getPath(), SvnRevision.HEAD, TestSvnObjectWriter.Named.class);
+    			fail(move + " left behind");
+    		} catch (MissingObjectException e) { }
+    	}
+    	assertEquals(30, sharded.readAll("items", TestSvnObjectWriter.Named.class).size());
+    	// Moved objects are written to their new shard
+    	String moved = plan.keySet().iterator().next();
+    	assertTrue(sharded.write(moved, new TestSvnObjectWriter.Named("again")).getRevision() > 0);
+    	assertTrue(rebalancer.plan(withC).isEmpty());
+    }
+}
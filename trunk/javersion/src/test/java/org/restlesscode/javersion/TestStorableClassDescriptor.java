@@ -0,0 +1,100 @@
+package org.restlesscode.javersion;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.restlesscode.javersion.SerializationTable.StoreMethod;
+import org.restlesscode.javersion.annotations.SvnContent;
+import org.restlesscode.javersion.annotations.SvnProperty;
+import org.restlesscode.javersion.annotations.SvnStorable;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+public class TestStorableClassDescriptor extends TestCase {
+
+	public TestStorableClassDescriptor(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestStorableClassDescriptor.class);
+    }
+
+    public void testDescribe() throws IOException {
+    	SerializationTable table = new SerializationTable();
+    	StorableClassDescriptor d = table.getDescriptor(Movie.class);
+    	assertEquals(2, d.getVersion());
+    	assertEquals(Movie.class.getName(), d.getClassName());
+    	assertEquals(2, d.getProperties().size());
+    	for (StorableField f : d.getProperties()) {
+    		if (f.getName().equals("year")) {
+    			assertEquals(StoreMethod.TO_STRING, f.getStoreMethod());
+    			assertEquals("jvn.property.year", f.getSvnPropertyName());
+    		} else {
+    			assertEquals("released", f.getName());
+    			assertEquals(StoreMethod.SERIALIZE_OBJECT, f.getStoreMethod());
+    		}
+    	}
+    	assertEquals("synopsis", d.getContent().getName());
+    }
+
+    public void testDescriptorIsCached() throws IOException {
+    	SerializationTable table = new SerializationTable();
+    	assertSame(table.getDescriptor(Movie.class), table.getDescriptor(Movie.class));
+    }
+
+    public void testRegistrationRefreshesDescriptor() throws IOException {
+    	SerializationTable table = new SerializationTable();
+    	StorableClassDescriptor before = table.getDescriptor(Movie.class);
+    	table.registerConvertibleClass(Date.class, new StringSerializer<Date>() {
+    		public String serialize(Date d) { return Long.toString(d.getTime()); }
+    		public Date deserialize(String s) { return new Date(Long.parseLong(s)); }
+    	});
+    	StorableClassDescriptor after = table.getDescriptor(Movie.class);
+    	assertNotSame(before, after);
+    	for (StorableField f : after.getProperties()) {
+    		if (f.getName().equals("released")) {
+    			assertEquals(StoreMethod.REGISTERED, f.getStoreMethod());
+    		}
+    	}
+    }
+
+    public void testTwoContentFields() {
+    	try {
+    		new SerializationTable().getDescriptor(TwoContents.class);
+    		fail();
+    	} catch (IOException e) { }
+    }
+
+    public void testNotStorable() throws IOException {
+    	try {
+    		new SerializationTable().getDescriptor(String.class);
+    		fail();
+    	} catch (IllegalArgumentException e) { }
+    }
+
+    @SvnStorable(version=2)
+    public static class Movie {
+    	@SvnProperty
+    	public int getYear() { return 0; }
+    	public void setYear(int i) { }
+    	@SvnProperty
+    	public Date getReleased() { return null; }
+    	public void setReleased(Date d) { }
+    	@SvnContent
+    	public String getSynopsis() { return null; }
+    	public void setSynopsis(String s) { }
+    }
+
+    @SvnStorable(version=1)
+    public static class TwoContents {
+    	@SvnContent
+    	public String getA() { return null; }
+    	public void setA(String s) { }
+    	@SvnContent
+    	public String getB() { return null; }
+    	public void setB(String s) { }
+    }
+}
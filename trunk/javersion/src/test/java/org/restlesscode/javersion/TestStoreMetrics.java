@@ -0,0 +1,122 @@
+package org.restlesscode.javersion;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.restlesscode.javersion.SerializationTable.StoreMethod;
+import org.restlesscode.javersion.StoreMetrics.Operation;
+import org.restlesscode.javersion.StoreMetrics.RoundTrip;
+import org.restlesscode.javersion.annotations.SvnContent;
+import org.restlesscode.javersion.annotations.SvnProperty;
+import org.restlesscode.javersion.annotations.SvnStorable;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TestStoreMetrics extends SvnStoreTestSupport {
+
+    public TestStoreMetrics(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestStoreMetrics.class);
+    }
+
+    public void testRecordsReadsAndWrites() throws Exception {
+    	StoreMetricsRecorder metrics = new StoreMetricsRecorder();
+    	svnStore.setMetrics(metrics);
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	long revision = writer.write("notes/a/first", new Note("first", "some text")).getRevision();
+    	assertEquals(1, metrics.getLatency(Operation.WRITE).getCount());
+    	assertEquals(1, metrics.getLatency(Operation.COMMIT).getCount());
+    	assertEquals(1, metrics.getCommitLockWait().getCount());
+    	assertEquals(1, metrics.getRoundTrips(Operation.COMMIT, RoundTrip.COMMIT));
+    	// The top directory is found missing, and so is everything below it
+    	assertEquals(1, metrics.getRoundTrips(Operation.COMMIT, RoundTrip.CHECK_PATH));
+    	assertTrue(metrics.getBytesSent() >= "some text".length());
+    	// The title and the content
+    	assertEquals(2, metrics.getSerialization(StoreMethod.TO_STRING).getCount());
+    	assertEquals(1, metrics.getSerialization(StoreMethod.TO_STRING_CONSTRUCTOR).getCount());
+
+    	// Nothing changed, so nothing is committed
+    	writer.write("notes/a/first", new Note("first", "some text"));
+    	assertEquals(1, metrics.getRoundTrips(Operation.COMMIT, RoundTrip.COMMIT));
+    	assertEquals(2, metrics.getLatency(Operation.COMMIT).getCount());
+
+    	Note note = new SvnObjectReader(svnStore).read("notes/a/first", revision, Note.class);
+    	assertEquals("some text", note.getText());
+    	assertEquals(1, metrics.getLatency(Operation.READ).getCount());
+    	assertEquals(1, metrics.getRoundTrips(Operation.READ, RoundTrip.GET_FILE));
+    	assertTrue(metrics.getBytesReceived() >= "some text".length());
+    	assertEquals(2, metrics.getDeserialization(StoreMethod.TO_STRING).getCount());
+
+    	metrics.reset();
+    	assertEquals(0, metrics.getReadCount());
+    	svnStore.setMetrics(null);
+    	new SvnObjectReader(svnStore).read("notes/a/first", revision, Note.class);
+    	assertEquals(0, metrics.getReadCount());
+    }
+
+    public void testHistogramPercentiles() {
+    	LatencyHistogram histogram = new LatencyHistogram();
+    	assertEquals(0, histogram.getPercentileNanos(0.99));
+    	for (long i = 1; i <= 1000; i++) {
+    		histogram.record(i * 1000);
+    	}
+    	assertEquals(1000, histogram.getCount());
+    	assertEquals(500500, histogram.getMeanNanos());
+    	assertWithin(500000, histogram.getPercentileNanos(0.5));
+    	assertWithin(990000, histogram.getPercentileNanos(0.99));
+    	assertWithin(1000000, histogram.getPercentileNanos(1));
+    	assertEquals(7, LatencyHistogram.upperBound(LatencyHistogram.bucket(7)));
+    	assertTrue(LatencyHistogram.upperBound(LatencyHistogram.bucket(Long.MAX_VALUE)) == Long.MAX_VALUE);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+    	assertTrue(actual + " not within 12.5% of " + expected,
+    			actual >= expected && actual <= expected + expected / 8);
+    }
+
+    public void testJmxExport() throws Exception {
+    	StoreMetricsRecorder metrics = new StoreMetricsRecorder();
+    	svnStore.setMetrics(metrics);
+    	String name = "org.restlesscode.javersion:type=StoreMetrics,name=" + getName();
+    	metrics.register(name);
+    	try {
+    		new SvnObjectWriter(svnStore).write("notes/first", new Note("first", "text"));
+    		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    		assertEquals(1L, server.getAttribute(new ObjectName(name), "WriteCount"));
+    		assertNotNull(server.getAttribute(new ObjectName(name), "RoundTrips"));
+    	} finally {
+    		metrics.unregister(name);
+    	}
+    }
+
+    @SvnStorable(version=1)
+    public static class Note {
+    	private String title;
+    	private Integer priority = 1;
+    	private String text;
+
+    	public Note() { }
+    	public Note(String title, String text) {
+    		this.title = title;
+    		this.text = text;
+    	}
+
+    	@SvnProperty
+    	public String getTitle() { return title; }
+    	public void setTitle(String title) { this.title = title; }
+
+    	@SvnProperty
+    	public Integer getPriority() { return priority; }
+    	public void setPriority(Integer priority) { this.priority = priority; }
+
+    	@SvnContent
+    	public String getText() { return text; }
+    	public void setText(String text) { this.text = text; }
+    }
+}
@@ -0,0 +1,127 @@
+package org.restlesscode.javersion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TestSubscription extends SvnStoreTestSupport {
+
+    public TestSubscription(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestSubscription.class);
+    }
+
+    public void testChangesAreDelivered() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	long added = writer.write(new WriteBatch()
+    			.add("feed/one", new TestSvnObjectWriter.Named("one"))
+    			.add("feed/sub/two", new TestSvnObjectWriter.Named("two"))
+    			.add("feed/other", new TestSvnObjectReader.Everything())
+    			.add("elsewhere", new TestSvnObjectWriter.Named("elsewhere"))).getRevision();
+    	long modified = writer.write("feed/one", new TestSvnObjectWriter.Named("one again")).getRevision();
+    	long deleted = delete("feed/sub");
+
+    	Recorder recorder = new Recorder();
+    	Subscription<TestSvnObjectWriter.Named> subscription = new Subscription<TestSvnObjectWriter.Named>(
+    			svnStore, "feed", 1, TestSvnObjectWriter.Named.class, recorder, 100, 1000);
+    	subscription.poll();
+    	assertEquals(deleted, subscription.getCheckpoint());
+    	assertEquals(1, recorder.batches);
+    	assertEquals(4, recorder.changes.size());
+    	assertChange(recorder.changes.get(0), ChangeEvent.Type.ADDED, "feed/one", added, "one");
+    	assertChange(recorder.changes.get(1), ChangeEvent.Type.ADDED, "feed/sub/two", added, "two");
+    	assertChange(recorder.changes.get(2), ChangeEvent.Type.MODIFIED, "feed/one", modified, "one again");
+    	assertChange(recorder.changes.get(3), ChangeEvent.Type.DELETED, "feed/sub/two", deleted, null);
+
+    	// Nothing new
+    	subscription.poll();
+    	assertEquals(1, recorder.batches);
+    }
+
+    public void testResumesFromCheckpointInBatches() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	for (int i = 0; i < 5; i++) {
+    		writer.write("feed/n" + i, new TestSvnObjectWriter.Named("n" + i));
+    	}
+    	Recorder recorder = new Recorder();
+    	recorder.failAfter = 2;
+    	Subscription<TestSvnObjectWriter.Named> subscription = new Subscription<TestSvnObjectWriter.Named>(
+    			svnStore, "feed", 0, TestSvnObjectWriter.Named.class, recorder, 2, 1000);
+    	try {
+    		subscription.poll();
+    		fail();
+    	} catch (IllegalStateException e) { }
+    	assertEquals(4, recorder.changes.size());
+    	long checkpoint = subscription.getCheckpoint();
+    	assertEquals(4, checkpoint);
+
+    	recorder.failAfter = -1;
+    	Subscription<TestSvnObjectWriter.Named> resumed = new Subscription<TestSvnObjectWriter.Named>(
+    			svnStore, "feed", checkpoint + 1, TestSvnObjectWriter.Named.class, recorder, 2, 1000);
+    	resumed.poll();
+    	assertEquals(5, recorder.changes.size());
+    	assertEquals("n4", recorder.changes.get(4).getObject().getName());
+    }
+
+    public void testSubscribePolls() throws Exception {
+    	Recorder recorder = new Recorder();
+    	Subscription<TestSvnObjectWriter.Named> subscription = svnStore.subscribe("", 0,
+    			TestSvnObjectWriter.Named.class, recorder, 10, 20);
+    	try {
+    		long revision = new SvnObjectWriter(svnStore).write("live", new TestSvnObjectWriter.Named("live"))
+    				.getRevision();
+    		for (int i = 0; i < 250 && subscription.getCheckpoint() < revision; i++) {
+    			Thread.sleep(20);
+    		}
+    		assertEquals(revision, subscription.getCheckpoint());
+    		assertEquals("live", recorder.changes.get(0).getObject().getName());
+    	} finally {
+    		subscription.close();
+    	}
+    	assertTrue(subscription.isClosed());
+    }
+
+    private long delete(String path) throws Exception {
+    	SVNRepository repository = svnStore.borrowRepository();
+    	try {
+    		ISVNEditor editor = repository.getCommitEditor("delete", null);
+    		editor.openRoot(-1);
+    		editor.deleteEntry(path, -1);
+    		editor.closeDir();
+    		return editor.closeEdit().getNewRevision();
+    	} finally {
+    		svnStore.releaseRepository(repository);
+    	}
+    }
+
+    private void assertChange(ChangeEvent<TestSvnObjectWriter.Named> change, ChangeEvent.Type type, String path,
+    		long revision, String name) {
+    	assertEquals(type, change.getType());
+    	assertEquals(path, change.getPath());
+    	assertEquals(revision, change.getRevision());
+    	assertEquals(name, change.getObject() == null ? null : change.getObject().getName());
+    }
+
+    static class Recorder implements ChangeListener<TestSvnObjectWriter.Named> {
+    	final List<ChangeEvent<TestSvnObjectWriter.Named>> changes =
+    			new ArrayList<ChangeEvent<TestSvnObjectWriter.Named>>();
+    	int batches;
+    	int failAfter = -1;
+
+    	public synchronized void onChanges(List<ChangeEvent<TestSvnObjectWriter.Named>> batch) {
+    		if (batches == failAfter) {
+    			throw new IllegalStateException("listener failed");
+    		}
+    		batches++;
+    		changes.addAll(batch);
+    	}
+    }
+}
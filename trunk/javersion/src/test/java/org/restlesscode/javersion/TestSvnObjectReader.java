@@ -0,0 +1,475 @@
+package org.restlesscode.javersion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.restlesscode.javersion.annotations.SvnContent;
+import org.restlesscode.javersion.annotations.SvnProperty;
+import org.restlesscode.javersion.annotations.SvnStorable;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+public class TestSvnObjectReader extends SvnStoreTestSupport {
+
+	public TestSvnObjectReader(String testName) {
+        super(testName);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestSvnObjectReader.class);
+    }
+
+    public void testRoundTrip() throws IOException, MissingObjectException {
+    	Everything e = new Everything();
+    	e.setI(-7);
+    	e.setL(1L << 40);
+    	e.setD(2.5);
+    	e.setF(1.25f);
+    	e.setS((short) 12);
+    	e.setB((byte) -3);
+    	e.setZ(true);
+    	e.setC('x');
+    	e.setBoxed(42);
+    	e.setDate(new Date(123456789L));
+    	e.setText("some text");
+
+    	new SvnObjectWriter(svnStore).write("a/b/everything", e);
+    	Everything r = new SvnObjectReader(svnStore).read("a/b/everything", SvnRevision.HEAD, Everything.class);
+
+    	assertEquals(-7, r.getI());
+    	assertEquals(1L << 40, r.getL());
+    	assertEquals(2.5, r.getD());
+    	assertEquals(1.25f, r.getF());
+    	assertEquals(12, r.getS());
+    	assertEquals(-3, r.getB());
+    	assertTrue(r.getZ());
+    	assertEquals('x', r.getC());
+    	assertEquals(Integer.valueOf(42), r.getBoxed());
+    	assertEquals(new Date(123456789L), r.getDate());
+    	assertEquals("some text", r.getText());
+    }
+
+    public void testMissingObject() throws IOException {
+    	try {
+    		new SvnObjectReader(svnStore).read("not/here", SvnRevision.HEAD, Everything.class);
+    		fail();
+    	} catch (MissingObjectException e) { }
+    }
+
+    public void testGeneratedAccessors() throws IOException {
+    	for (StorableField f : svnStore.getSerializationTable().getDescriptor(Everything.class).getProperties()) {
+    		assertTrue(f.getName(), f.getAccessor().isGenerated());
+    	}
+    }
+
+    public void testReadAll() throws IOException, MissingObjectException {
+    	WriteBatch batch = new WriteBatch();
+    	batch.add("dir/one", new TestSvnObjectWriter.Named("one"));
+    	batch.add("dir/sub/two", new TestSvnObjectWriter.Named("two"));
+    	batch.add("dir/other", new Everything());
+    	batch.add("outside", new TestSvnObjectWriter.Named("outside"));
+    	long revision = new SvnObjectWriter(svnStore).write(batch).getRevision();
+
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	Map<String, TestSvnObjectWriter.Named> all = reader.readAll("dir", SvnRevision.HEAD, TestSvnObjectWriter.Named.class, true);
+    	assertEquals(2, all.size());
+    	assertEquals("one", all.get("dir/one").getName());
+    	assertEquals("two", all.get("dir/sub/two").getName());
+
+    	int count = 0;
+    	try (BackgroundIterator<StoredObject<TestSvnObjectWriter.Named>> it =
+    			reader.iterate("dir", SvnRevision.HEAD, TestSvnObjectWriter.Named.class)) {
+    		while (it.hasNext()) {
+    			StoredObject<TestSvnObjectWriter.Named> stored = it.next();
+    			assertEquals(revision, stored.getRevision());
+    			assertEquals(all.get(stored.getPath()).getName(), stored.getObject().getName());
+    			count++;
+    		}
+    	}
+    	assertEquals(2, count);
+
+    	try {
+    		reader.readAll("nodir", SvnRevision.HEAD, Everything.class);
+    		fail();
+    	} catch (MissingObjectException e) { }
+    }
+
+    public void testStreamedContent() throws IOException, MissingObjectException {
+    	byte[] data = new byte[250 * 1024 + 17];
+    	new Random(1).nextBytes(data);
+    	Blob blob = new Blob();
+    	blob.setName("big");
+    	blob.setData(new ByteArrayInputStream(data));
+    	new SvnObjectWriter(svnStore).write("blobs/big", blob);
+    	Blob empty = new Blob();
+    	empty.setData(new ByteArrayInputStream(new byte[0]));
+    	new SvnObjectWriter(svnStore).write("blobs/empty", empty);
+
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	reader.setSpoolThreshold(1024);
+    	Blob read = reader.read("blobs/big", SvnRevision.HEAD, Blob.class);
+    	assertEquals("big", read.getName());
+    	assertTrue(Arrays.equals(data, readFully(read.getData())));
+    	assertEquals(0, readFully(reader.read("blobs/empty", SvnRevision.HEAD, Blob.class).getData()).length);
+
+    	Map<String, Blob> all = reader.readAll("blobs", SvnRevision.HEAD, Blob.class);
+    	assertTrue(Arrays.equals(data, readFully(all.get("blobs/big").getData())));
+    	assertEquals(0, readFully(all.get("blobs/empty").getData()).length);
+    }
+
+    public void testCompressedContent() throws IOException, MissingObjectException {
+    	StringBuilder text = new StringBuilder();
+    	List<String> lines = new ArrayList<String>();
+    	for (int i = 0; i < 1000; i++) {
+    		text.append("{\"id\": ").append(i).append(", \"name\": \"value\"}\n");
+    		lines.add("line " + i);
+    	}
+    	Compressed c = new Compressed();
+    	c.setText(text.toString());
+    	c.setLines(lines);
+    	c.setSmall(new ArrayList<String>(Arrays.asList("tiny")));
+    	new SvnObjectWriter(svnStore).write("compressed", c);
+
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	FetchedObject raw = reader.fetch("compressed", SvnRevision.HEAD);
+    	assertEquals("deflate", raw.getProperties().getStringValue("jvn.encoding"));
+    	assertTrue(raw.getContent().length < text.length() / 4);
+    	assertEquals("deflate", raw.getProperties().getStringValue("jvn.encoding.lines"));
+    	assertNull(raw.getProperties().getStringValue("jvn.encoding.small"));
+
+    	Compressed r = reader.read("compressed", SvnRevision.HEAD, Compressed.class);
+    	assertEquals(text.toString(), r.getText());
+    	assertEquals(lines, r.getLines());
+    	assertEquals(Arrays.asList("tiny"), r.getSmall());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream();
+    	try {
+    		StreamSerializers.copy(in, out);
+    	} finally {
+    		in.close();
+    	}
+    	return out.toByteArray();
+    }
+
+    public void testHistory() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	long first = writer.write("hist/obj", new TestSvnObjectWriter.Named("v1")).getRevision();
+    	writer.write("hist/other", new TestSvnObjectWriter.Named("other"));
+    	long second = writer.write("hist/obj", new TestSvnObjectWriter.Named("v2")).getRevision();
+    	long third = writer.write("hist/obj", new TestSvnObjectWriter.Named("v3")).getRevision();
+
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	try (Stream<ObjectVersion<TestSvnObjectWriter.Named>> history = 
+    			reader.history("hist/obj", first, -1, TestSvnObjectWriter.Named.class)) {
+    		assertHistory(history, new long[] { first, second, third }, "v1", "v2", "v3");
+    	}
+    	try (Stream<ObjectVersion<TestSvnObjectWriter.Named>> history = 
+    			reader.history("hist/obj", first + 1, third, TestSvnObjectWriter.Named.class)) {
+    		assertHistory(history, new long[] { second, third }, "v2", "v3");
+    	}
+
+    	SvnObjectReader revisionByRevision = new SvnObjectReader(svnStore) {
+    		protected <T> boolean fetchHistory(BackgroundIterator<ObjectVersion<T>> iterator, String path, 
+    				long fromRevision, long toRevision, Class<T> clazz) {
+    			return false;
+    		}
+    	};
+    	revisionByRevision.setHistoryParallelism(2);
+    	try (Stream<ObjectVersion<TestSvnObjectWriter.Named>> history = 
+    			revisionByRevision.history("hist/obj", first, third, TestSvnObjectWriter.Named.class)) {
+    		assertHistory(history, new long[] { first, second, third }, "v1", "v2", "v3");
+    	}
+    }
+
+    public void testAbandonedIteratorReleasesProducer() throws Exception {
+    	final CountDownLatch stopped = new CountDownLatch(1);
+    	BackgroundIterator<Integer> it = new BackgroundIterator<Integer>(1) {
+    		protected void produce() throws Exception {
+    			try {
+    				for (int i = 0; i < 10; i++) {
+    					put(i);
+    				}
+    			} finally {
+    				stopped.countDown();
+    			}
+    		}
+    	};
+    	it.setIdleTimeoutMillis(200);
+    	it.start(svnStore.getExecutor());
+    	assertEquals(Integer.valueOf(0), it.next());
+    	// Neither read to the end nor closed
+    	assertTrue(stopped.await(10, TimeUnit.SECONDS));
+    }
+
+    public void testHistoryAcrossCopyIsCachedByPath() throws Exception {
+    	LruObjectCache cache = new LruObjectCache(1 << 20);
+    	svnStore.setObjectCache(cache);
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	long first = writer.write("moved/old", new TestSvnObjectWriter.Named("v1")).getRevision();
+    	SVNRepository repository = svnStore.borrowRepository();
+    	try {
+    		ISVNEditor editor = repository.getCommitEditor("Copying", null);
+    		editor.openRoot(-1);
+    		editor.openDir("moved", -1);
+    		editor.addFile("moved/new", repository.getRepositoryPath("moved/old"), first);
+    		editor.closeFile("moved/new", null);
+    		editor.closeDir();
+    		editor.closeDir();
+    		editor.closeEdit();
+    	} finally {
+    		svnStore.releaseRepository(repository);
+    	}
+    	long second = writer.write("moved/new", new TestSvnObjectWriter.Named("v2")).getRevision();
+
+    	List<ObjectVersion<TestSvnObjectWriter.Named>> versions;
+    	try (Stream<ObjectVersion<TestSvnObjectWriter.Named>> history = 
+    			new SvnObjectReader(svnStore).history("moved/new", first, -1, TestSvnObjectWriter.Named.class)) {
+    		versions = history.collect(Collectors.toList());
+    	}
+    	assertEquals(3, versions.size());
+    	assertEquals("moved/old", versions.get(0).getPath());
+    	assertEquals(first, versions.get(0).getRevision());
+    	assertEquals("moved/new", versions.get(2).getPath());
+    	assertEquals(second, versions.get(2).getRevision());
+    	long age = System.currentTimeMillis() - versions.get(0).getDate().getTime();
+    	assertTrue(age >= 0 && age < 60000);
+
+    	assertNotNull(cache.get("moved/old", first));
+    	assertNull(cache.get("moved/new", first));
+    	assertNotNull(cache.get("moved/new", second));
+    }
+
+    public void testCollectionsWithOneConnection() throws Exception {
+    	SvnStore single = new SvnStore(repositoryUrl.toString(), null, null, 1);
+    	SvnObjectWriter writer = new SvnObjectWriter(single);
+    	TestSvnObjectWriter.Catalog catalog = new TestSvnObjectWriter.Catalog();
+    	catalog.setItems(new ArrayList<String>(Arrays.asList("a", "b")));
+    	long first = writer.write("d/one", catalog).getRevision();
+    	catalog.getItems().add("c");
+    	long second = writer.write("d/one", catalog).getRevision();
+    	writer.write("d/two", new TestSvnObjectWriter.Catalog());
+    	writer.write("d/other", new TestSvnObjectWriter.Named("other"));
+
+    	final int[] fetchedAgain = new int[1];
+    	SvnObjectReader reader = new SvnObjectReader(single) {
+    		protected Object readCollection(FetchedObject fetched, StorableField collection, 
+    				Map<String, Map<String, FetchedObject>> elements) throws IOException {
+    			if (elements == null) {
+    				fetchedAgain[0]++;
+    			}
+    			return super.readCollection(fetched, collection, elements);
+    		}
+    	};
+    	try (Stream<StoredObject<TestSvnObjectWriter.Catalog>> stream = 
+    			reader.stream("d", SvnRevision.HEAD, TestSvnObjectWriter.Catalog.class)) {
+    		Map<String, List<String>> items = new HashMap<String, List<String>>();
+    		for (StoredObject<TestSvnObjectWriter.Catalog> o : stream.collect(Collectors.toList())) {
+    			items.put(o.getPath(), o.getObject().getItems());
+    		}
+    		assertEquals(2, items.size());
+    		assertEquals(Arrays.asList("a", "b", "c"), items.get("d/one"));
+    		assertNull(items.get("d/two"));
+    	}
+    	Map<String, TestSvnObjectWriter.Catalog> all = reader.readAll("d", first, TestSvnObjectWriter.Catalog.class);
+    	assertEquals(Arrays.asList("a", "b"), all.get("d/one").getItems());
+    	// Element files come with the subtree checkout
+    	assertEquals(0, fetchedAgain[0]);
+
+    	try (Stream<ObjectVersion<TestSvnObjectWriter.Catalog>> history = 
+    			reader.history("d/one", first, -1, TestSvnObjectWriter.Catalog.class)) {
+    		List<ObjectVersion<TestSvnObjectWriter.Catalog>> versions = history.collect(Collectors.toList());
+    		assertEquals(2, versions.size());
+    		assertEquals(Arrays.asList("a", "b"), versions.get(0).getObject().getItems());
+    		assertEquals(second, versions.get(1).getRevision());
+    		assertEquals(Arrays.asList("a", "b", "c"), versions.get(1).getObject().getItems());
+    	}
+    	assertEquals(0, single.getRepositoryPool().getActiveCount());
+    	single.close();
+    }
+
+    public void testAsyncReads() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	List<String> paths = new ArrayList<String>();
+    	WriteBatch batch = new WriteBatch();
+    	for (int i = 0; i < 10; i++) {
+    		paths.add("async/" + i);
+    		batch.add("async/" + i, new TestSvnObjectWriter.Named("n" + i));
+    	}
+    	writer.write(batch);
+    	paths.add(3, "async/missing");
+
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	assertEquals("n1", reader.readAsync("async/1", SvnRevision.HEAD, TestSvnObjectWriter.Named.class).get()
+    			.getName());
+    	Map<String, TestSvnObjectWriter.Named> all =
+    			reader.readAllAsync(paths, SvnRevision.HEAD, TestSvnObjectWriter.Named.class, 3).get();
+    	assertEquals(10, all.size());
+    	int i = 0;
+    	for (Map.Entry<String, TestSvnObjectWriter.Named> entry : all.entrySet()) {
+    		assertEquals("async/" + i, entry.getKey());
+    		assertEquals("n" + i++, entry.getValue().getName());
+    	}
+    	assertEquals(0, svnStore.getRepositoryPool().getActiveCount());
+
+    	try {
+    		reader.readAsync("async/missing", SvnRevision.HEAD, TestSvnObjectWriter.Named.class).get();
+    		fail();
+    	} catch (ExecutionException e) {
+    		assertTrue(e.getCause() instanceof MissingObjectException);
+    	}
+    }
+
+    public void testLazyContent() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	StringBuilder body = new StringBuilder();
+    	for (int i = 0; i < 100; i++) {
+    		body.append("line ").append(i).append('\n');
+    	}
+    	writer.write("articles/a", new Article("first", body.toString()));
+
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	Article article = reader.readProperties("articles/a", SvnRevision.HEAD, Article.class);
+    	assertEquals("first", article.getTitle());
+    	assertFalse(article.getBody().isLoaded());
+    	long read = article.getBody().getRevision();
+
+    	// The content comes from the revision the properties were read at
+    	writer.write("articles/a", new Article("second", "changed"));
+    	assertEquals(body.toString(), article.getBody().get());
+    	assertTrue(article.getBody().isLoaded());
+    	assertEquals("changed", reader.read("articles/a", SvnRevision.HEAD, Article.class).getBody().get());
+    	assertEquals("first", reader.readProperties("articles/a", read, Article.class).getTitle());
+
+    	// Unloaded content is fetched to write the object back
+    	Article copy = reader.readProperties("articles/a", read, Article.class);
+    	writer.write("articles/copy", copy);
+    	assertEquals(body.toString(), reader.read("articles/copy", SvnRevision.HEAD, Article.class).getBody().get());
+
+    	// Other content is left out, and kept when the object is written back
+    	Compressed compressed = new Compressed();
+    	compressed.setText(body.toString());
+    	compressed.setSmall(Arrays.asList("a"));
+    	writer.write("articles/compressed", compressed);
+    	Compressed properties = reader.readProperties("articles/compressed", SvnRevision.HEAD, Compressed.class);
+    	assertNull(properties.getText());
+    	properties.setSmall(Arrays.asList("b"));
+    	assertTrue(writer.write("articles/compressed", properties).isCommitted());
+    	Compressed written = reader.read("articles/compressed", SvnRevision.HEAD, Compressed.class);
+    	assertEquals(body.toString(), written.getText());
+    	assertEquals(Arrays.asList("b"), written.getSmall());
+    	try {
+    		reader.readProperties("articles/missing", SvnRevision.HEAD, Article.class);
+    		fail();
+    	} catch (MissingObjectException e) { }
+    }
+
+    private void assertHistory(Stream<ObjectVersion<TestSvnObjectWriter.Named>> history, long[] revisions, 
+    		String... names) {
+    	List<ObjectVersion<TestSvnObjectWriter.Named>> versions = history.collect(Collectors.toList());
+    	assertEquals(revisions.length, versions.size());
+    	for (int i = 0; i < revisions.length; i++) {
+    		assertEquals(revisions[i], versions.get(i).getRevision());
+    		assertEquals(names[i], versions.get(i).getObject().getName());
+    		assertNotNull(versions.get(i).getDate());
+    	}
+    }
+
+    @SvnStorable(version=1, compress=true, compressThreshold=64)
+    public static class Compressed {
+    	private String text;
+    	private List<String> lines;
+    	private List<String> small;
+
+    	@SvnContent public String getText() { return text; }
+    	public void setText(String text) { this.text = text; }
+    	@SvnProperty public List<String> getLines() { return lines; }
+    	public void setLines(List<String> lines) { this.lines = lines; }
+    	@SvnProperty public List<String> getSmall() { return small; }
+    	public void setSmall(List<String> small) { this.small = small; }
+    }
+
+    @SvnStorable(version=1, compress=true, compressThreshold=64)
+    public static class Article {
+    	private String title;
+    	private LazyContent<String> body;
+
+    	public Article() { }
+    	public Article(String title, String body) {
+    		this.title = title;
+    		this.body = LazyContent.of(body);
+    	}
+
+    	@SvnProperty public String getTitle() { return title; }
+    	public void setTitle(String title) { this.title = title; }
+    	@SvnContent public LazyContent<String> getBody() { return body; }
+    	public void setBody(LazyContent<String> body) { this.body = body; }
+    }
+
+    @SvnStorable(version=1)
+    public static class Blob {
+    	private String name;
+    	private InputStream data;
+
+    	@SvnProperty public String getName() { return name; }
+    	public void setName(String name) { this.name = name; }
+    	@SvnContent public InputStream getData() { return data; }
+    	public void setData(InputStream data) { this.data = data; }
+    }
+
+    @SvnStorable(version=1)
+    public static class Everything {
+    	private int i;
+    	private long l;
+    	private double d;
+    	private float f;
+    	private short s;
+    	private byte b;
+    	private boolean z;
+    	private char c;
+    	private Integer boxed;
+    	private Date date;
+    	private String text;
+
+    	@SvnProperty public int getI() { return i; }
+    	public void setI(int i) { this.i = i; }
+    	@SvnProperty public long getL() { return l; }
+    	public void setL(long l) { this.l = l; }
+    	@SvnProperty public double getD() { return d; }
+    	public void setD(double d) { this.d = d; }
+    	@SvnProperty public float getF() { return f; }
+    	public void setF(float f) { this.f = f; }
+    	@SvnProperty public short getS() { return s; }
+    	public void setS(short s) { this.s = s; }
+    	@SvnProperty public byte getB() { return b; }
+    	public void setB(byte b) { this.b = b; }
+    	@SvnProperty public boolean getZ() { return z; }
+    	public void setZ(boolean z) { this.z = z; }
+    	@SvnProperty public char getC() { return c; }
+    	public void setC(char c) { this.c = c; }
+    	@SvnProperty public Integer getBoxed() { return boxed; }
+    	public void setBoxed(Integer boxed) { this.boxed = boxed; }
+    	@SvnProperty public Date getDate() { return date; }
+    	public void setDate(Date date) { this.date = date; }
+    	@SvnContent public String getText() { return text; }
+    	public void setText(String text) { this.text = text; }
+    }
+}
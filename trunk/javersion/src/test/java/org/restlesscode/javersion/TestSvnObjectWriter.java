@@ -2,15 +2,29 @@ package org.restlesscode.javersion;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+import org.restlesscode.javersion.annotations.SvnCollection;
+import org.restlesscode.javersion.annotations.SvnContent;
 import org.restlesscode.javersion.annotations.SvnProperty;
 import org.restlesscode.javersion.annotations.SvnStorable;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
 
 import junit.framework.Test;
-import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
-public class TestSvnObjectWriter extends TestCase {
+public class TestSvnObjectWriter extends SvnStoreTestSupport {
 
 	public TestSvnObjectWriter(String testName) {
         super(testName);
@@ -44,6 +58,477 @@ public class TestSvnObjectWriter extends TestCase {
     	}
     }
     
+    public void testWriteBatch() throws IOException, MissingObjectException {
+    	Map<String, Named> objects = new HashMap<String, Named>();
+    	objects.put("x/y/one", new Named("one"));
+    	objects.put("x/y/two", new Named("two"));
+    	objects.put("x/z/three", new Named("three"));
+    	objects.put("top", new Named("top"));
+
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	WriteResult result = writer.writeAll(objects);
+    	assertEquals(1, result.getRevision());
+    	assertEquals(4, result.getOutcomes().size());
+    	assertEquals(WriteResult.Outcome.ADDED, result.getOutcome("x/z/three"));
+
+    	WriteResult second = writer.write(new WriteBatch()
+    			.add("x/y/one", new Named("uno"))
+    			.add("x/w/four", new Named("four")));
+    	assertEquals(2, second.getRevision());
+    	assertEquals(WriteResult.Outcome.UPDATED, second.getOutcome("x/y/one"));
+    	assertEquals(WriteResult.Outcome.ADDED, second.getOutcome("x/w/four"));
+
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	assertEquals("uno", reader.read("x/y/one", SvnRevision.HEAD, Named.class).getName());
+    	assertEquals("one", reader.read("x/y/one", 1, Named.class).getName());
+    	assertEquals("three", reader.read("x/z/three", SvnRevision.HEAD, Named.class).getName());
+    	assertEquals("top", reader.read("top", SvnRevision.HEAD, Named.class).getName());
+    }
+
+    public void testGroupCommit() throws Exception {
+    	svnStore.enableGroupCommit(100, 1 << 20, 50);
+    	final SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	final List<WriteResult> results = Collections.synchronizedList(new ArrayList<WriteResult>());
+    	Thread[] threads = new Thread[8];
+    	for (int i = 0; i < threads.length; i++) {
+    		final int n = i;
+    		threads[i] = new Thread() {
+    			public void run() {
+    				try {
+    					results.add(writer.write("group/" + n, new Named("n" + n)));
+    				} catch (IOException e) {
+    					throw new RuntimeException(e);
+    				}
+    			}
+    		};
+    		threads[i].start();
+    	}
+    	for (Thread t : threads) {
+    		t.join();
+    	}
+
+    	assertEquals(threads.length, results.size());
+    	for (WriteResult r : results) {
+    		assertEquals(1, r.getOutcomes().size());
+    		assertEquals(WriteResult.Outcome.ADDED, r.getOutcomes().values().iterator().next());
+    		assertTrue(r.isCommitted());
+    	}
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	for (int i = 0; i < threads.length; i++) {
+    		assertEquals("n" + i, reader.read("group/" + i, SvnRevision.HEAD, Named.class).getName());
+    	}
+
+    	// Committed together, an unchanged object is reported as not committed
+    	GroupCommitter committer = svnStore.getGroupCommitter();
+    	CompletableFuture<WriteResult> unchanged = committer.submit(writer.serialize("group/0", new Named("n0")));
+    	CompletableFuture<WriteResult> changed = committer.submit(writer.serialize("group/1", new Named("changed")));
+    	assertEquals(WriteResult.Outcome.UNCHANGED, unchanged.get().getOutcome("group/0"));
+    	assertFalse(unchanged.get().isCommitted());
+    	assertEquals(-1, unchanged.get().getRevision());
+    	assertEquals(WriteResult.Outcome.UPDATED, changed.get().getOutcome("group/1"));
+    	assertTrue(changed.get().isCommitted());
+
+    	svnStore.close();
+    	try {
+    		committer.submit(writer.serialize("group/late", new Named("late"))).get();
+    		fail();
+    	} catch (ExecutionException e) {
+    		assertTrue(e.getCause() instanceof IOException);
+    	}
+    }
+
+    public void testCloseDuringGroupCommit() throws Exception {
+    	svnStore.enableGroupCommit(100, 1 << 20, 200);
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	List<CompletableFuture<WriteResult>> futures = new ArrayList<CompletableFuture<WriteResult>>();
+    	for (int i = 0; i < 3; i++) {
+    		futures.add(writer.writeAsync("closing/" + i, new Named("c" + i)));
+    	}
+    	Thread closer = new Thread() {
+    		public void run() {
+    			try {
+    				svnStore.close();
+    			} catch (InterruptedException e) {
+    				throw new RuntimeException(e);
+    			}
+    		}
+    	};
+    	closer.start();
+    	closer.join(30000);
+    	assertFalse("close() did not return while a group commit was in flight", closer.isAlive());
+    	for (CompletableFuture<WriteResult> f : futures) {
+    		assertTrue(f.get().isCommitted());
+    	}
+    }
+
+    public void testKnownPathsSkipCheckPath() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	SVNRepository repository = svnStore.borrowRepository();
+    	try {
+    		ObjectCommit first = new ObjectCommit(repository, "first",
+    				Collections.singletonList(writer.serialize("a/b/c/d/obj", new Named("1"))), svnStore.getKnownPathCache());
+    		first.run();
+    		// The top directory is missing, and so is everything below it
+    		assertEquals(1, first.getCheckPathCalls());
+
+    		ObjectCommit again = new ObjectCommit(repository, "again",
+    				Collections.singletonList(writer.serialize("a/b/c/d/obj", new Named("2"))), svnStore.getKnownPathCache());
+    		assertEquals(WriteResult.Outcome.UPDATED, again.run().getOutcome("a/b/c/d/obj"));
+    		assertEquals(0, again.getCheckPathCalls());
+
+    		ObjectCommit sibling = new ObjectCommit(repository, "sibling",
+    				Collections.singletonList(writer.serialize("a/b/c/d/other", new Named("3"))), svnStore.getKnownPathCache());
+    		sibling.run();
+    		assertEquals(1, sibling.getCheckPathCalls());
+    	} finally {
+    		svnStore.releaseRepository(repository);
+    	}
+    }
+
+    public void testSharedMissingAncestorsAreCheckedOnce() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	writer.write("old/dir/obj", new Named("0"));
+    	SVNRepository repository = svnStore.borrowRepository();
+    	try {
+    		List<SerializedObject> objects = new ArrayList<SerializedObject>();
+    		objects.add(writer.serialize("new/x/a", new Named("a")));
+    		objects.add(writer.serialize("new/x/b", new Named("b")));
+    		objects.add(writer.serialize("new/y/c", new Named("c")));
+    		ObjectCommit commit = new ObjectCommit(repository, "new", objects, null);
+    		commit.run();
+    		// Only "new" is looked up, everything else in the batch lies below it
+    		assertEquals(1, commit.getCheckPathCalls());
+
+    		objects.clear();
+    		objects.add(writer.serialize("old/dir/n/m/a", new Named("a")));
+    		objects.add(writer.serialize("old/dir/n/m/b", new Named("b")));
+    		objects.add(writer.serialize("old/dir/n/c", new Named("c")));
+    		commit = new ObjectCommit(repository, "below", objects, null);
+    		commit.run();
+    		// "old" and "old/dir" exist, "old/dir/n" is the first missing directory
+    		assertEquals(3, commit.getCheckPathCalls());
+    	} finally {
+    		svnStore.releaseRepository(repository);
+    	}
+    	assertEquals("c", new SvnObjectReader(svnStore).read("old/dir/n/c", SvnRevision.HEAD, Named.class).getName());
+    }
+
+    public void testUpdatesAreSentAsDeltas() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	TestSvnObjectReader.Everything e = new TestSvnObjectReader.Everything();
+    	e.setText(largeText());
+    	writer.write("delta/obj", e);
+
+    	e.setText(e.getText() + " edited");
+    	SVNRepository repository = svnStore.borrowRepository();
+    	try {
+    		ObjectCommit update = new ObjectCommit(repository, "update",
+    				Collections.singletonList(writer.serialize("delta/obj", e)), svnStore.getKnownPathCache(),
+    				svnStore.getBaseContentCache(), svnStore.getFingerprintCache());
+    		update.run();
+    		assertEquals(1, update.getDeltaCount());
+    	} finally {
+    		svnStore.releaseRepository(repository);
+    	}
+    	assertEquals(e.getText(), new SvnObjectReader(svnStore).read("delta/obj", SvnRevision.HEAD,
+    			TestSvnObjectReader.Everything.class).getText());
+    }
+
+    public void testStaleBasesAreRetried() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	TestSvnObjectReader.Everything e = new TestSvnObjectReader.Everything();
+    	e.setText(largeText());
+    	writer.write("delta/stale", e);
+
+    	// Another store updates the object, the first store's base is now out of date
+    	SvnStore other = new SvnStore(repositoryUrl.toString());
+    	try {
+    		e.setText("changed elsewhere");
+    		new SvnObjectWriter(other).write("delta/stale", e);
+    	} finally {
+    		other.close();
+    	}
+
+    	e.setText(largeText() + " again");
+    	SVNRepository repository = svnStore.borrowRepository();
+    	try {
+    		new ObjectCommit(repository, "stale", Collections.singletonList(writer.serialize("delta/stale", e)),
+    				svnStore.getKnownPathCache(), svnStore.getBaseContentCache(), svnStore.getFingerprintCache()).run();
+    		fail();
+    	} catch (SVNException expected) {
+    	} finally {
+    		svnStore.releaseRepository(repository);
+    	}
+    	assertEquals(WriteResult.Outcome.UPDATED, writer.write("delta/stale", e).getOutcome("delta/stale"));
+    	assertEquals(e.getText(), new SvnObjectReader(svnStore).read("delta/stale", SvnRevision.HEAD,
+    			TestSvnObjectReader.Everything.class).getText());
+    }
+
+    private static String largeText() {
+    	StringBuilder text = new StringBuilder();
+    	for (int i = 0; i < 5000; i++) {
+    		text.append("line ").append(i).append('\n');
+    	}
+    	return text.toString();
+    }
+
+    public void testOptimisticWrites() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	writer.write("opt", new Named("one"));
+    	writer.write("unrelated", new Named("x"));
+    	StoredObject<Named> read = reader.readStored("opt", SvnRevision.HEAD, Named.class);
+
+    	long second = writer.write("opt", new Named("two"), read.getRevision()).getRevision();
+    	try {
+    		writer.write("opt", new Named("three"), read.getRevision());
+    		fail();
+    	} catch (ConflictException e) {
+    		assertEquals("opt", e.getPath());
+    		assertEquals(second, e.getCurrentRevision());
+    	}
+    	assertEquals("two", reader.read("opt", SvnRevision.HEAD, Named.class).getName());
+    	try {
+    		writer.write(new WriteBatch().add("new", new Named("new")).add("gone", new Named("gone"), second));
+    		fail();
+    	} catch (ConflictException e) {
+    		assertEquals(-1, e.getCurrentRevision());
+    	}
+
+    	// Disjoint writes, some adding the same parent directory, run side by side
+    	svnStore.setOptimisticCommits(true);
+    	final SvnObjectWriter concurrent = new SvnObjectWriter(svnStore);
+    	final Exception[] failure = new Exception[1];
+    	Thread[] threads = new Thread[4];
+    	for (int i = 0; i < threads.length; i++) {
+    		final int n = i;
+    		threads[i] = new Thread() {
+    			public void run() {
+    				try {
+    					for (int j = 0; j < 5; j++) {
+    						concurrent.write("parallel/" + (j % 2) + "/" + n + "-" + j, new Named(n + "-" + j));
+    					}
+    				} catch (Exception e) {
+    					failure[0] = e;
+    				}
+    			}
+    		};
+    		threads[i].start();
+    	}
+    	for (Thread t : threads) {
+    		t.join();
+    	}
+    	assertNull(failure[0]);
+    	assertEquals("3-4", reader.read("parallel/0/3-4", SvnRevision.HEAD, Named.class).getName());
+    }
+
+    public void testWriteAsync() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	Named named = new Named("before");
+    	CompletableFuture<WriteResult> future = writer.writeAsync("async", named);
+    	// Serialized when called
+    	named.setName("after");
+    	WriteResult result = future.get();
+    	assertEquals(WriteResult.Outcome.ADDED, result.getOutcome("async"));
+    	assertEquals("before", new SvnObjectReader(svnStore).read("async", result.getRevision(), Named.class).getName());
+
+    	svnStore.enableGroupCommit(10, 1 << 20, 20);
+    	List<CompletableFuture<WriteResult>> futures = new ArrayList<CompletableFuture<WriteResult>>();
+    	for (int i = 0; i < 5; i++) {
+    		futures.add(writer.writeAsync("grouped/" + i, new Named("g" + i)));
+    	}
+    	for (CompletableFuture<WriteResult> f : futures) {
+    		assertTrue(f.get().isCommitted());
+    	}
+    	svnStore.disableGroupCommit();
+    }
+
+    public void testUnchangedWritesAreSkipped() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	long revision = writer.write("same/obj", new Named("1")).getRevision();
+
+    	WriteResult again = writer.write("same/obj", new Named("1"));
+    	assertFalse(again.isCommitted());
+    	assertEquals(WriteResult.Outcome.UNCHANGED, again.getOutcome("same/obj"));
+
+    	// Without a cached fingerprint the stored properties are fetched instead
+    	svnStore.getFingerprintCache().clear();
+    	assertFalse(writer.write("same/obj", new Named("1")).isCommitted());
+
+    	WriteResult cleared = writer.write("same/obj", new Named());
+    	assertEquals(revision + 1, cleared.getRevision());
+    	assertEquals(WriteResult.Outcome.UPDATED, cleared.getOutcome("same/obj"));
+    	assertNull(new SvnObjectReader(svnStore).read("same/obj", SvnRevision.HEAD, Named.class).getName());
+    }
+
+    public void testStaleKnownPathsAreRetried() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	writer.write("stale/dir/obj", new Named("1"));
+
+    	// Remove the directory behind the store's back
+    	SVNRepository repository = svnStore.borrowRepository();
+    	try {
+    		ISVNEditor editor = repository.getCommitEditor("delete", null);
+    		editor.openRoot(-1);
+    		editor.deleteEntry("stale", -1);
+    		editor.closeDir();
+    		editor.closeEdit();
+    	} finally {
+    		svnStore.releaseRepository(repository);
+    	}
+
+    	WriteResult result = writer.write("stale/dir/obj", new Named("2"));
+    	assertEquals(WriteResult.Outcome.ADDED, result.getOutcome("stale/dir/obj"));
+    	assertEquals("2", new SvnObjectReader(svnStore).read("stale/dir/obj", SvnRevision.HEAD, Named.class).getName());
+    }
+
+    public void testCollections() throws Exception {
+    	Catalog catalog = new Catalog();
+    	catalog.setItems(new ArrayList<String>(Arrays.asList("a", "b", "c")));
+    	Map<String, Named> entries = new LinkedHashMap<String, Named>();
+    	entries.put("x y", new Named("one"));
+    	entries.put(".hidden", new Named("two"));
+    	catalog.setEntries(entries);
+
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	WriteResult first = writer.write("catalogs/c", catalog);
+    	assertEquals(6, first.getOutcomes().size());
+    	assertEquals(WriteResult.Outcome.ADDED, first.getOutcome("catalogs/c"));
+
+    	catalog.getItems().add("d");
+    	WriteResult appended = writer.write("catalogs/c", catalog);
+    	assertEquals(2, appended.getOutcomes().size());
+    	assertEquals(WriteResult.Outcome.UPDATED, appended.getOutcome("catalogs/c"));
+
+    	catalog.getItems().remove("b");
+    	catalog.getEntries().get("x y").setName("uno");
+    	WriteResult changed = writer.write("catalogs/c", catalog);
+    	assertEquals(3, changed.getOutcomes().size());
+    	assertTrue(changed.getOutcomes().containsValue(WriteResult.Outcome.DELETED));
+    	assertEquals(WriteResult.Outcome.UPDATED, changed.getOutcome("catalogs/c.jvn.entries/x~20y"));
+    	assertFalse(writer.write("catalogs/c", catalog).isCommitted());
+
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	Catalog read = reader.read("catalogs/c", SvnRevision.HEAD, Catalog.class);
+    	assertEquals(Arrays.asList("a", "c", "d"), read.getItems());
+    	assertEquals(Arrays.asList("x y", ".hidden"), new ArrayList<String>(read.getEntries().keySet()));
+    	assertEquals("uno", read.getEntries().get("x y").getName());
+    	assertEquals("two", read.getEntries().get(".hidden").getName());
+
+    	assertEquals("c", reader.readElement("catalogs/c", SvnRevision.HEAD, Catalog.class, "items", 1));
+    	assertEquals("one", reader.<Named>readElement("catalogs/c", first.getRevision(), Catalog.class, "entries", "x y")
+    			.getName());
+    	assertEquals(Arrays.asList("a", "b", "c", "d"),
+    			reader.readCollection("catalogs/c", appended.getRevision(), Catalog.class, "items"));
+    	try {
+    		reader.readElement("catalogs/c", SvnRevision.HEAD, Catalog.class, "entries", "missing");
+    		fail();
+    	} catch (MissingObjectException e) { }
+    	assertNull(reader.readProperties("catalogs/c", SvnRevision.HEAD, Catalog.class).getItems());
+    	assertTrue(reader.readAll("catalogs", SvnRevision.HEAD, Named.class).isEmpty());
+
+    	catalog.setItems(null);
+    	catalog.setEntries(new HashMap<String, Named>());
+    	WriteResult cleared = writer.write("catalogs/c", catalog);
+    	assertEquals(6, cleared.getOutcomes().size());
+    	read = reader.read("catalogs/c", SvnRevision.HEAD, Catalog.class);
+    	assertNull(read.getItems());
+    	assertTrue(read.getEntries().isEmpty());
+    }
+
+    public void testNullContentKeepsEncodedText() throws Exception {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	SvnObjectReader reader = new SvnObjectReader(svnStore);
+    	StringBuilder text = new StringBuilder();
+    	for (int i = 0; i < 100; i++) {
+    		text.append("line ").append(i).append('\n');
+    	}
+    	TestSvnObjectReader.Compressed doc = new TestSvnObjectReader.Compressed();
+    	doc.setText(text.toString());
+    	doc.setSmall(Arrays.asList("a"));
+    	long revision = writer.write("encoded/doc", doc).getRevision();
+
+    	// The text is left alone, and so is the compression it was stored with
+    	doc.setText(null);
+    	doc.setSmall(Arrays.asList("b"));
+    	WriteResult result = writer.write("encoded/doc", doc);
+    	assertEquals(revision + 1, result.getRevision());
+    	assertEquals(WriteResult.Outcome.UPDATED, result.getOutcome("encoded/doc"));
+    	TestSvnObjectReader.Compressed read = reader.read("encoded/doc", SvnRevision.HEAD, TestSvnObjectReader.Compressed.class);
+    	assertEquals(text.toString(), read.getText());
+    	assertEquals(Arrays.asList("b"), read.getSmall());
+
+    	Date when = new Date(1000000L);
+    	writer.write("encoded/dated", new Dated("first", when));
+    	writer.write("encoded/dated", new Dated("second", null));
+    	Dated dated = reader.read("encoded/dated", SvnRevision.HEAD, Dated.class);
+    	assertEquals("second", dated.getName());
+    	assertEquals(when, dated.getWhen());
+
+    	// Text written later without compression drops the marker the cached fingerprint kept
+    	doc.setText("short");
+    	writer.write("encoded/doc", doc);
+    	assertEquals("short", reader.read("encoded/doc", SvnRevision.HEAD, TestSvnObjectReader.Compressed.class).getText());
+    }
+
+    public void testWriteBelowObject() throws IOException {
+    	SvnObjectWriter writer = new SvnObjectWriter(svnStore);
+    	writer.write("file", new Named("file"));
+    	try {
+    		writer.write("file/child", new Named("child"));
+    		fail();
+    	} catch (IOException e) { }
+    	try {
+    		writer.write(new WriteBatch().add("a/b", new Named("b")).add("a/b/c", new Named("c")));
+    		fail();
+    	} catch (IOException e) { }
+    }
+
+    @SvnStorable(version=1)
+    public static class Catalog {
+    	private List<String> items;
+    	private Map<String, Named> entries;
+
+    	@SvnCollection
+    	public List<String> getItems() { return items; }
+    	public void setItems(List<String> items) { this.items = items; }
+
+    	@SvnCollection
+    	public Map<String, Named> getEntries() { return entries; }
+    	public void setEntries(Map<String, Named> entries) { this.entries = entries; }
+    }
+
+    @SvnStorable(version=1)
+    public static class Named {
+    	private String name;
+
+    	public Named() { }
+    	public Named(String name) { this.name = name; }
+
+    	@SvnProperty
+    	public String getName() { return name; }
+    	public void setName(String name) { this.name = name; }
+    }
+
+    @SvnStorable(version=1)
+    public static class Dated {
+    	private String name;
+    	private Date when;
+
+    	public Dated() { }
+    	public Dated(String name, Date when) {
+    		this.name = name;
+    		this.when = when;
+    	}
+
+    	@SvnProperty
+    	public String getName() { return name; }
+    	public void setName(String name) { this.name = name; }
+    	@SvnContent
+    	public Date getWhen() { return when; }
+    	public void setWhen(Date when) { this.when = when; }
+    }
+
     @SvnStorable(version=1)
     class StorableObject {
     	